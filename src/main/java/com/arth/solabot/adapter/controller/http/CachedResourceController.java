@@ -1,25 +1,54 @@
 package com.arth.solabot.adapter.controller.http;
 
 import com.arth.solabot.adapter.controller.ApiPaths;
+import com.arth.solabot.core.general.cache.service.ImageCacheService;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.core.io.Resource;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.time.Duration;
+import java.util.regex.Pattern;
 
+/**
+ * Redis 图片缓存的读取接口：
+ * - 一次往返取得首块数据，不足一块的小图片由此直接写出；大图片按 chunk-size 逐块 GETRANGE 后直接写入响应，
+ * 堆上同时只持有一块，不再整体读入后包装为 Resource 再复制一次
+ * - 支持单个区间的 Range 请求（多区间时返回完整内容）与 If-Range
+ * - 缓存的内容在其键存活期间不会改变，以键作为强 ETag，If-None-Match 命中时只查询长度并返回 304
+ */
 @RestController
 @RequiredArgsConstructor
 public class CachedResourceController {
 
-    private final RedisTemplate<String, byte[]> redisTemplate;
+    private static final Pattern UUID_PATTERN = Pattern.compile("[a-zA-Z0-9_-]+");
+
+    private final ImageCacheService imageCacheService;
+
+    @Value("${app.parameter.cache.tmp-img.chunk-size:262144}")
+    private int chunkSize;
+
+    /**
+     * 请求的字节区间，闭区间
+     */
+    private record Range(long start, long end) {
+
+        long length() {
+            return end - start + 1;
+        }
+    }
+
+    /* 格式正确但超出内容长度的区间 */
+    private static final Range UNSATISFIABLE = new Range(-1, -2);
 
     /**
      * Redis PNG 图片缓存
@@ -28,23 +57,11 @@ public class CachedResourceController {
      * @return
      */
     @GetMapping(ApiPaths.CACHE_IMG_PNG)
-    public ResponseEntity<Resource> getPng(@PathVariable String uuid) {
-        // 400: 校验 uuid 格式
-        if (!uuid.matches("[a-zA-Z0-9_-]+")) return ResponseEntity.badRequest().build();
-
-        String key = "temp:image:png:" + uuid;
-        byte[] imageBytes = redisTemplate.opsForValue().get(key);
-
-        // 404
-        if (imageBytes == null || imageBytes.length == 0) return ResponseEntity.notFound().build();
-
-        // 200
-        ByteArrayResource resource = new ByteArrayResource(imageBytes);
-        return ResponseEntity.ok()
-                .contentType(MediaType.IMAGE_PNG)
-                .cacheControl(CacheControl.maxAge(Duration.ofMinutes(3)))
-                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + uuid + ".png\"")
-                .body(resource);
+    public ResponseEntity<StreamingResponseBody> getPng(@PathVariable String uuid,
+                                                        @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+                                                        @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+                                                        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return serve("png", MediaType.IMAGE_PNG, uuid, range, ifRange, ifNoneMatch);
     }
 
     /**
@@ -54,22 +71,113 @@ public class CachedResourceController {
      * @return
      */
     @GetMapping(ApiPaths.CACHE_IMG_GIF)
-    public ResponseEntity<Resource> getGif(@PathVariable String uuid) {
+    public ResponseEntity<StreamingResponseBody> getGif(@PathVariable String uuid,
+                                                        @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+                                                        @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+                                                        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return serve("gif", MediaType.IMAGE_GIF, uuid, range, ifRange, ifNoneMatch);
+    }
+
+    private ResponseEntity<StreamingResponseBody> serve(String type, MediaType mediaType, String uuid,
+                                                        String rangeHeader, String ifRange, String ifNoneMatch) {
         // 400: 校验 uuid 格式
-        if (!uuid.matches("[a-zA-Z0-9_-]+")) return ResponseEntity.badRequest().build();
+        if (!UUID_PATTERN.matcher(uuid).matches()) return ResponseEntity.badRequest().build();
 
-        String key = "temp:image:gif:" + uuid;
-        byte[] imageBytes = redisTemplate.opsForValue().get(key);
+        String etag = "\"" + type + "-" + uuid + "\"";
+
+        // 304: 客户端已持有同一内容，只需确认仍在缓存中
+        if (ifNoneMatch != null && etagMatches(ifNoneMatch, etag)) {
+            if (imageCacheService.size(type, uuid) <= 0) return ResponseEntity.notFound().build();
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .cacheControl(CacheControl.maxAge(Duration.ofMinutes(3)))
+                    .build();
+        }
+
+        ImageCacheService.Head head = imageCacheService.head(type, uuid, chunkSize);
 
         // 404
-        if (imageBytes == null || imageBytes.length == 0) return ResponseEntity.notFound().build();
+        if (head == null) return ResponseEntity.notFound().build();
+
+        long total = head.length();
+        Range range = null;
+        if (rangeHeader != null && (ifRange == null || ifRange.trim().equals(etag))) {
+            range = parseRange(rangeHeader, total);
+            // 416
+            if (range == UNSATISFIABLE) {
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + total)
+                        .build();
+            }
+        }
+        Range body = range != null ? range : new Range(0, total - 1);
 
-        // 200
-        ByteArrayResource resource = new ByteArrayResource(imageBytes);
-        return ResponseEntity.ok()
-                .contentType(MediaType.IMAGE_GIF)
+        // 200 / 206
+        ResponseEntity.BodyBuilder builder = range != null
+                ? ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).header(HttpHeaders.CONTENT_RANGE, "bytes " + range.start() + "-" + range.end() + "/" + total)
+                : ResponseEntity.ok();
+        return builder
+                .contentType(mediaType)
+                .contentLength(body.length())
+                .eTag(etag)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
                 .cacheControl(CacheControl.maxAge(Duration.ofMinutes(3)))
-                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + uuid + ".gif\"")
-                .body(resource);
+                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + uuid + "." + type + "\"")
+                .body(out -> {
+                    byte[] prefix = head.prefix();
+                    long pos = body.start();
+                    // 首块已随长度一并取得
+                    if (pos < prefix.length) {
+                        int n = (int) Math.min(prefix.length - pos, body.length());
+                        out.write(prefix, (int) pos, n);
+                        pos += n;
+                    }
+                    while (pos <= body.end()) {
+                        long end = Math.min(pos + chunkSize - 1, body.end());
+                        byte[] chunk = imageCacheService.readRange(type, uuid, pos, end);
+                        // 响应头已发出，只能中断连接让客户端重试
+                        if (chunk.length != end - pos + 1) throw new IOException("cached image " + uuid + " expired while streaming");
+                        out.write(chunk);
+                        pos = end + 1;
+                    }
+                });
+    }
+
+    /**
+     * 解析单个区间的 Range 头：bytes=a-b、bytes=a-、bytes=-n；多区间或格式错误时返回 null（按完整内容响应），
+     * 起点超出内容长度或后缀长度为 0 时返回 UNSATISFIABLE
+     */
+    private static Range parseRange(String header, long total) {
+        String h = header.trim();
+        if (!h.startsWith("bytes=") || h.indexOf(',') >= 0) return null;
+        String spec = h.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) return null;
+        try {
+            String a = spec.substring(0, dash).trim(), b = spec.substring(dash + 1).trim();
+            if (a.isEmpty()) {
+                long suffix = Long.parseLong(b);
+                if (suffix < 0) return null;
+                if (suffix == 0) return UNSATISFIABLE;
+                return new Range(Math.max(0, total - suffix), total - 1);
+            }
+            long start = Long.parseLong(a);
+            long end = b.isEmpty() ? Long.MAX_VALUE : Long.parseLong(b);
+            if (start < 0 || end < start) return null;
+            if (start >= total) return UNSATISFIABLE;
+            return new Range(start, Math.min(end, total - 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean etagMatches(String header, String etag) {
+        for (String candidate : header.split(",")) {
+            String c = candidate.trim();
+            if (c.equals("*")) return true;
+            if (c.startsWith("W/")) c = c.substring(2);
+            if (c.equals(etag)) return true;
+        }
+        return false;
     }
-}
\ No newline at end of file
+}
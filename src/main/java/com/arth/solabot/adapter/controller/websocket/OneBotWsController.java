@@ -1,14 +1,16 @@
 package com.arth.solabot.adapter.controller.websocket;
 
 import com.arth.solabot.adapter.fetcher.websocket.EchoWaiter;
+import com.arth.solabot.adapter.fetcher.websocket.ReplyFetcher;
+import com.arth.solabot.adapter.io.LaneDispatcher;
+import com.arth.solabot.adapter.io.OutboundWriter;
+import com.arth.solabot.adapter.parser.CommandPrefilter;
 import com.arth.solabot.adapter.parser.PayloadParser;
 import com.arth.solabot.adapter.io.SessionRegistry;
 import com.arth.solabot.adapter.utils.LogUtils;
 import com.arth.solabot.core.bot.dto.ParsedPayloadDTO;
 import com.arth.solabot.core.bot.exception.BusinessException;
 import com.arth.solabot.core.bot.invoker.CommandInvoker;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Controller;
@@ -18,7 +20,6 @@ import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
 
 @Slf4j
 @Controller
@@ -26,11 +27,13 @@ import java.util.concurrent.ExecutorService;
 public class OneBotWsController extends TextWebSocketHandler {
 
     private final SessionRegistry sessionRegistry;
-    private final ExecutorService executorService;
+    private final LaneDispatcher laneDispatcher;
+    private final OutboundWriter outboundWriter;
     private final CommandInvoker commandInvoker;
     private final PayloadParser payloadParser;
-    private final ObjectMapper objectMapper;
+    private final CommandPrefilter commandPrefilter;
     private final EchoWaiter echoWaiter;
+    private final ReplyFetcher replyFetcher;
 
     /* 分片大小 */
     private static final int MAX_TEXT_MESSAGE_BYTES = 5 * 1024 * 1024;  // 5MB
@@ -79,27 +82,38 @@ public class OneBotWsController extends TextWebSocketHandler {
                 rawPayload = message.getPayload();
             }
 
-            JsonNode root = objectMapper.readTree(rawPayload);
+            /* 前置过滤：session 已绑定后，非命令消息在解码前直接丢弃，带图片的只写入引用消息缓存 */
+            CommandPrefilter.Decision decision = session.getAttributes().get("self_id") != null
+                    ? commandPrefilter.decide(rawPayload)
+                    : CommandPrefilter.Decision.PASS;
+            if (decision == CommandPrefilter.Decision.DROP) return;
+
+            /* 流式解码，不构建完整 JSON 树 */
+            PayloadParser.Frame frame = payloadParser.decode(rawPayload);
+
+            if (decision == CommandPrefilter.Decision.REMEMBER) {
+                replyFetcher.remember(frame.payload());
+                return;
+            }
 
             /* 分流消息（拦截 echo） */
-            final JsonNode echoNode = root.get("echo");
-            if (echoNode != null && !echoNode.isNull() && root.get("post_type") == null) {
-                final String echo = echoNode.asText();
-                if (echoWaiter.complete(echo, rawPayload)) return;
+            if (frame.isEchoResponse()) {
+                if (echoWaiter.complete(frame.echo(), rawPayload)) return;
             }
 
             /* 注册 session，绑定至 self_id */
             if (session.getAttributes().get("self_id") == null) {
-                final long selfId = root.path("self_id").asLong(0L);
+                final long selfId = frame.selfId();
                 if (selfId != 0L) {
-                    sessionRegistry.put(selfId, session);
+                    // 登记线程安全的会话包装，所有出站消息经由其出站队列串行写入
+                    sessionRegistry.put(selfId, outboundWriter.attach(session));
                     session.getAttributes().put("self_id", selfId);
                 }
             }
 
-            ParsedPayloadDTO dto = payloadParser.parseRawToDTO(root, rawPayload);
+            ParsedPayloadDTO dto = frame.payload();
 
-            if ("message".equals(dto.getPostType()) || "message_sent".equals(dto.getPostType())) {
+            if (dto != null) {
                 if (dto.getMessageType().equals("group")) {
                     log.info("[adapter.ws] receive group message, group id: {}, user id: {}, text: {}", dto.getGroupId(), dto.getUserId(), LogUtils.limitLen(dto.getRawText()));
                 } else {
@@ -107,9 +121,10 @@ public class OneBotWsController extends TextWebSocketHandler {
                 }
                 log.debug("[adapter.ws] raw payload: {}", rawPayload);
 
-                /* 多线程异步解析命令 */
-                executorService.execute(() -> {
+                /* 按会话分道、多线程异步解析命令，同一群聊 / 私聊内保序 */
+                laneDispatcher.dispatch(dto, () -> {
                     try {
+                        replyFetcher.remember(dto);
                         commandInvoker.invoke(dto);
                     } catch (BusinessException ignored) {
                     } catch (Exception e) {
@@ -150,6 +165,7 @@ public class OneBotWsController extends TextWebSocketHandler {
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
         Object sid = session.getAttributes().get("self_id");
         if (sid instanceof Long selfId) sessionRegistry.remove(selfId);
+        outboundWriter.detach(session);
         int code = status.getCode();
         String reason = status.getReason();
         // 有些时候并不是我们主动希望断开的，可能是缓冲区溢出等问题，例如 code 1009，打印信息
@@ -0,0 +1,468 @@
+package com.arth.solabot.adapter.fetcher.http;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 按需逐帧解码 GIF，直接解析 GIF 块结构与 LZW 数据，不经过 ImageIO 的元数据树：
+ * - 每次 next() 在内部画布上合成一帧，并返回该完整画布的独立拷贝，调用方可自由修改或丢弃
+ * - 处置方式：restoreToBackgroundColor 将帧矩形清为透明；restoreToPrevious 仅保存并还原帧矩形区域，而非整张画布
+ * - 内存占用与帧数无关：内部只保留一张画布与（必要时）一块帧矩形快照
+ * - 帧数与 帧数 x 画布像素数 超出 Limits、或帧矩形面积大于画布时抛出 IOException（迭代期间以 UncheckedIOException 抛出）
+ * - 合成结果与原先基于 ImageIO 的 getGifFlattened 一致：画布初始透明，缺省或为 0 的延时按 10cs 处理
+ */
+public final class GifDecoder implements Iterator<GifDecoder.Frame> {
+
+    /**
+     * 解码上限
+     *
+     * @param maxFrames      最大帧数
+     * @param maxTotalPixels 帧数 x 画布像素数 的上限
+     */
+    public record Limits(int maxFrames, long maxTotalPixels) {
+        public static final Limits UNLIMITED = new Limits(Integer.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * 合成后的完整画布帧
+     *
+     * @param image   TYPE_INT_ARGB，尺寸为画布尺寸
+     * @param delayCs 延时（1/100 秒）
+     * @param index   帧序号，从 0 开始
+     */
+    public record Frame(BufferedImage image, int delayCs, int index) {
+    }
+
+    private static final int DISPOSE_BACKGROUND = 2;
+    private static final int DISPOSE_PREVIOUS = 3;
+    private static final int MAX_CODES = 4096;
+
+    private final byte[] data;
+    private final Limits limits;
+    private final int width;
+    private final int height;
+    private final int[] globalTable;
+    private final int[] canvas;
+    private int pos;
+
+    private int loopCount;
+    private int frameCount;
+    private long totalPixels;
+    private boolean done;
+    private Frame next;
+
+    /* 上一帧的处置，在合成下一帧前执行 */
+    private int pendingDisposal;
+    private int prevX, prevY, prevW, prevH;
+    private int[] prevSnapshot;
+
+    /* LZW 解码缓冲，逐帧复用 */
+    private final short[] prefix = new short[MAX_CODES];
+    private final byte[] suffix = new byte[MAX_CODES];
+    private final byte[] stack = new byte[MAX_CODES + 1];
+
+    private GifDecoder(byte[] data, Limits limits) throws IOException {
+        this.data = data;
+        this.limits = limits;
+        if (data.length < 13) throw new IOException("not a gif: too short");
+        String sig = new String(data, 0, 6, StandardCharsets.US_ASCII);
+        if (!"GIF87a".equals(sig) && !"GIF89a".equals(sig)) throw new IOException("not a gif: bad signature");
+        pos = 6;
+        int w = u16();
+        int h = u16();
+        int packed = u8();
+        pos += 2;  // 背景色下标与像素宽高比，合成时不使用
+        globalTable = (packed & 0x80) != 0 ? readTable(packed & 0x07) : null;
+        if (w <= 0 || h <= 0) {
+            // 逻辑屏幕尺寸缺失时以首帧矩形为准
+            int[] rect = peekFirstImageRect();
+            w = rect[0];
+            h = rect[1];
+        }
+        if (w <= 0 || h <= 0) throw new IOException("gif has no frames");
+        if ((long) w * h > limits.maxTotalPixels()) {
+            throw new IOException("gif canvas too large: " + w + "x" + h);
+        }
+        this.width = w;
+        this.height = h;
+        this.canvas = new int[w * h];
+    }
+
+    /**
+     * 复制出从当前位置继续解码的检查点：内部画布与处置快照各自独立，源数据共享
+     */
+    private GifDecoder(GifDecoder src) {
+        this.data = src.data;
+        this.limits = src.limits;
+        this.width = src.width;
+        this.height = src.height;
+        this.globalTable = src.globalTable;
+        this.canvas = src.canvas.clone();
+        this.pos = src.pos;
+        this.loopCount = src.loopCount;
+        this.frameCount = src.frameCount;
+        this.totalPixels = src.totalPixels;
+        this.done = src.done;
+        this.pendingDisposal = src.pendingDisposal;
+        this.prevX = src.prevX;
+        this.prevY = src.prevY;
+        this.prevW = src.prevW;
+        this.prevH = src.prevH;
+        this.prevSnapshot = src.prevSnapshot == null ? null : src.prevSnapshot.clone();
+    }
+
+    /**
+     * 解析文件头，此时尚未解码任何帧
+     *
+     * @throws IOException 不是 GIF 或画布已超出上限
+     */
+    public static GifDecoder open(byte[] data, Limits limits) throws IOException {
+        return new GifDecoder(data, limits == null ? Limits.UNLIMITED : limits);
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    /**
+     * NETSCAPE 2.0 循环次数，0 表示无限；通常位于首帧之前，首次 hasNext() 后即可读取
+     */
+    public int loopCount() {
+        return loopCount;
+    }
+
+    /**
+     * 复制出一个从当前位置继续解码的独立解码器，两者此后互不影响，额外占用一张画布的内存；
+     * 用于倒序处理时设置检查点，不必每次都从首帧重新解码
+     *
+     * @throws IllegalStateException hasNext() 已预读出下一帧但尚未被 next() 取走
+     */
+    public GifDecoder fork() {
+        if (next != null) throw new IllegalStateException("fork() must not be called between hasNext() and next()");
+        return new GifDecoder(this);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !done) {
+            try {
+                next = advance();
+            } catch (IOException e) {
+                done = true;
+                throw new UncheckedIOException(e);
+            }
+            if (next == null) done = true;
+        }
+        return next != null;
+    }
+
+    @Override
+    public Frame next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        Frame f = next;
+        next = null;
+        return f;
+    }
+
+    // ++=============** 块解析 **=============++
+
+    private Frame advance() throws IOException {
+        int disposal = 0, delayCs = 0, transIndex = -1;
+        while (pos < data.length) {
+            int b = u8();
+            if (b == 0x21) {
+                int label = u8();
+                if (label == 0xF9) {
+                    int size = u8();
+                    int start = pos;
+                    int packed = u8();
+                    delayCs = u16();
+                    int ti = u8();
+                    disposal = (packed >> 2) & 0x07;
+                    transIndex = (packed & 0x01) != 0 ? ti : -1;
+                    pos = start + size;
+                    skipSubBlocks();
+                } else if (label == 0xFF) {
+                    readApplicationExtension();
+                } else {
+                    skipSubBlocks();
+                }
+            } else if (b == 0x2C) {
+                return readImage(disposal, delayCs, transIndex);
+            } else {
+                // 0x3B 结束符，或无法识别的数据：结束迭代
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private void readApplicationExtension() throws IOException {
+        int size = u8();
+        boolean netscape = size == 11 && pos + 11 <= data.length
+                && (new String(data, pos, 11, StandardCharsets.US_ASCII).equals("NETSCAPE2.0")
+                || new String(data, pos, 11, StandardCharsets.US_ASCII).equals("ANIMEXTS1.0"));
+        pos += size;
+        if (netscape && pos + 4 <= data.length && (data[pos] & 0xFF) >= 3 && (data[pos + 1] & 0xFF) == 1) {
+            loopCount = (data[pos + 2] & 0xFF) | ((data[pos + 3] & 0xFF) << 8);
+        }
+        skipSubBlocks();
+    }
+
+    private Frame readImage(int disposal, int delayCs, int transIndex) throws IOException {
+        int fx = u16(), fy = u16(), fw = u16(), fh = u16();
+        int packed = u8();
+        int[] table = (packed & 0x80) != 0 ? readTable(packed & 0x07) : globalTable;
+        boolean interlaced = (packed & 0x40) != 0;
+        int minCodeSize = u8();
+        if (minCodeSize < 1 || minCodeSize > 11) throw new IOException("bad lzw code size: " + minCodeSize);
+
+        if (++frameCount > limits.maxFrames()) {
+            throw new IOException("gif has too many frames (> " + limits.maxFrames() + ")");
+        }
+        totalPixels += (long) width * height;
+        if (totalPixels > limits.maxTotalPixels()) {
+            throw new IOException("gif too large: frames x pixels exceeds " + limits.maxTotalPixels());
+        }
+
+        // 帧矩形可以越出画布（越出部分不绘制），但不能大于画布，否则一个极小的文件即可声明上 G 的索引缓冲
+        if ((long) fw * fh > (long) width * height) {
+            throw new IOException("gif frame " + fw + "x" + fh + " larger than canvas " + width + "x" + height);
+        }
+        byte[] indexes = new byte[fw * fh];
+        int decoded = decodeLzw(minCodeSize, indexes);
+
+        applyPendingDisposal();
+        if (disposal == DISPOSE_PREVIOUS) saveRect(fx, fy, fw, fh);
+        if (table != null) draw(indexes, decoded, fx, fy, fw, fh, interlaced, table, transIndex);
+
+        BufferedImage out = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        System.arraycopy(canvas, 0, ((DataBufferInt) out.getRaster().getDataBuffer()).getData(), 0, canvas.length);
+
+        pendingDisposal = disposal;
+        prevX = fx;
+        prevY = fy;
+        prevW = fw;
+        prevH = fh;
+        return new Frame(out, delayCs > 0 ? delayCs : 10, frameCount - 1);
+    }
+
+    // ++=============** 合成 **=============++
+
+    private void applyPendingDisposal() {
+        if (pendingDisposal == DISPOSE_BACKGROUND) {
+            forRect(prevX, prevY, prevW, prevH, (row, x0, len, k) -> java.util.Arrays.fill(canvas, row + x0, row + x0 + len, 0));
+        } else if (pendingDisposal == DISPOSE_PREVIOUS && prevSnapshot != null) {
+            int[] snap = prevSnapshot;
+            forRect(prevX, prevY, prevW, prevH, (row, x0, len, k) -> System.arraycopy(snap, k, canvas, row + x0, len));
+            prevSnapshot = null;
+        }
+        pendingDisposal = 0;
+    }
+
+    private void saveRect(int fx, int fy, int fw, int fh) {
+        int[] snap = new int[Math.max(0, Math.min(fw, width - fx)) * Math.max(0, Math.min(fh, height - fy))];
+        forRect(fx, fy, fw, fh, (row, x0, len, k) -> System.arraycopy(canvas, row + x0, snap, k, len));
+        prevSnapshot = snap;
+    }
+
+    @FunctionalInterface
+    private interface RowOp {
+        /* row 为画布行首下标，k 为矩形内按行紧凑排列的偏移 */
+        void apply(int row, int x0, int len, int k);
+    }
+
+    /**
+     * 遍历帧矩形与画布相交部分的每一行
+     */
+    private void forRect(int fx, int fy, int fw, int fh, RowOp op) {
+        int x0 = Math.max(0, fx), x1 = Math.min(width, fx + fw);
+        int y0 = Math.max(0, fy), y1 = Math.min(height, fy + fh);
+        if (x0 >= x1 || y0 >= y1) return;
+        int len = x1 - x0;
+        for (int y = y0, k = 0; y < y1; y++, k += len) op.apply(y * width, x0, len, k);
+    }
+
+    private void draw(byte[] idx, int decoded, int fx, int fy, int fw, int fh,
+                      boolean interlaced, int[] table, int transIndex) {
+        int pass = 0, step = interlaced ? 8 : 1, y = 0;
+        for (int r = 0, p = 0; r < fh; r++) {
+            int cy = fy + y;
+            if (cy >= 0 && cy < height) {
+                int row = cy * width;
+                for (int x = 0, q = p; x < fw && q < decoded; x++, q++) {
+                    int cx = fx + x;
+                    if (cx < 0 || cx >= width) continue;
+                    int i = idx[q] & 0xFF;
+                    if (i == transIndex || i >= table.length) continue;
+                    canvas[row + cx] = table[i];
+                }
+            }
+            p += fw;
+            y += step;
+            if (interlaced) {
+                while (y >= fh && pass < 3) {
+                    pass++;
+                    y = pass == 1 ? 4 : pass == 2 ? 2 : 1;
+                    step = pass == 1 ? 8 : pass == 2 ? 4 : 2;
+                }
+            }
+        }
+    }
+
+    // ++=============** LZW **=============++
+
+    /**
+     * 解码一帧的 LZW 子块序列到 out，数据不足时提前结束
+     *
+     * @return 实际解出的像素数
+     */
+    private int decodeLzw(int minCodeSize, byte[] out) throws IOException {
+        int clear = 1 << minCodeSize;
+        int eoi = clear + 1;
+        int codeSize = minCodeSize + 1;
+        int codeMask = (1 << codeSize) - 1;
+        int avail = clear + 2;
+        int oldCode = -1;
+        int first = 0;
+        for (int c = 0; c < clear; c++) {
+            prefix[c] = 0;
+            suffix[c] = (byte) c;
+        }
+
+        int n = 0, total = out.length;
+        int bits = 0, acc = 0;
+        int blockLeft = 0;
+        int top = 0;
+        outer:
+        while (n < total) {
+            while (bits < codeSize) {
+                if (blockLeft == 0) {
+                    if (pos >= data.length) break outer;
+                    blockLeft = u8();
+                    if (blockLeft == 0) {
+                        pos--;  // 交给 skipSubBlocks 消费终止符
+                        break outer;
+                    }
+                }
+                if (pos >= data.length) break outer;
+                acc |= u8() << bits;
+                bits += 8;
+                blockLeft--;
+            }
+            int code = acc & codeMask;
+            acc >>>= codeSize;
+            bits -= codeSize;
+
+            if (code == clear) {
+                codeSize = minCodeSize + 1;
+                codeMask = (1 << codeSize) - 1;
+                avail = clear + 2;
+                oldCode = -1;
+                continue;
+            }
+            if (code == eoi) break;
+            if (oldCode == -1) {
+                if (code >= clear) break;  // 非法起始码
+                out[n++] = suffix[code];
+                oldCode = code;
+                first = code;
+                continue;
+            }
+
+            int inCode = code;
+            if (code >= avail) {
+                if (code > avail) break;  // 损坏的数据
+                stack[top++] = (byte) first;
+                code = oldCode;
+            }
+            while (code >= clear) {
+                stack[top++] = suffix[code];
+                code = prefix[code];
+            }
+            first = suffix[code] & 0xFF;
+            stack[top++] = (byte) first;
+
+            if (avail < MAX_CODES) {
+                prefix[avail] = (short) oldCode;
+                suffix[avail] = (byte) first;
+                avail++;
+                if ((avail & codeMask) == 0 && avail < MAX_CODES) {
+                    codeSize++;
+                    codeMask += avail;
+                }
+            }
+            oldCode = inCode;
+            while (top > 0 && n < total) out[n++] = stack[--top];
+            top = 0;
+        }
+        // 跳过本帧剩余的子块（含 EOI 之后的填充）
+        pos += blockLeft;
+        skipSubBlocks();
+        return n;
+    }
+
+    // ++=============** helpers **=============++
+
+    private int[] readTable(int sizeBits) throws IOException {
+        int n = 1 << (sizeBits + 1);
+        if (pos + n * 3 > data.length) throw new IOException("truncated color table");
+        int[] t = new int[n];
+        for (int i = 0; i < n; i++) {
+            t[i] = 0xFF000000 | ((data[pos] & 0xFF) << 16) | ((data[pos + 1] & 0xFF) << 8) | (data[pos + 2] & 0xFF);
+            pos += 3;
+        }
+        return t;
+    }
+
+    /**
+     * 向后扫描首个图像描述符，返回 {x + w, y + h}，不改变当前位置
+     */
+    private int[] peekFirstImageRect() {
+        int saved = pos;
+        try {
+            while (pos < data.length) {
+                int b = u8();
+                if (b == 0x21) {
+                    u8();
+                    skipSubBlocks();
+                } else if (b == 0x2C) {
+                    int x = u16(), y = u16(), w = u16(), h = u16();
+                    return new int[]{x + w, y + h};
+                } else {
+                    break;
+                }
+            }
+        } catch (IOException ignored) {
+        } finally {
+            pos = saved;
+        }
+        return new int[]{0, 0};
+    }
+
+    private void skipSubBlocks() throws IOException {
+        while (pos < data.length) {
+            int len = u8();
+            if (len == 0) return;
+            pos += len;
+        }
+    }
+
+    private int u8() throws IOException {
+        if (pos >= data.length) throw new IOException("truncated gif");
+        return data[pos++] & 0xFF;
+    }
+
+    private int u16() throws IOException {
+        return u8() | (u8() << 8);
+    }
+}
@@ -0,0 +1,229 @@
+package com.arth.solabot.adapter.fetcher.http;
+
+/**
+ * 只读文件头的图片探测：格式、画布尺寸与帧数，不解码像素
+ * - 支持 PNG（含 APNG，QQ 商城表情 mface 多为 GIF / APNG）、JPEG、GIF、WebP（有损 / 无损 / 扩展格式含动图）、BMP
+ * - 可作用于尚未下载完的前缀：尺寸通常在前几百字节内即可确定（JPEG 的 EXIF 缩略图可能把 SOF 推后到数十 KB）
+ * - 帧数：APNG 取 acTL 声明的帧数；GIF 与动态 WebP 逐块跳读计数，只有数据完整时才是确切值，否则为已见到的帧数（下界）
+ * - 数据不足或结构损坏时对应字段为 -1，从不抛出异常
+ */
+public final class ImageProbe {
+
+    /* 流式下载中等待尺寸出现的最大前缀，超出后放弃探测，交由解码阶段处理 */
+    public static final int MAX_HEADER_BYTES = 128 * 1024;
+
+    private ImageProbe() {
+    }
+
+    /**
+     * 探测结果
+     *
+     * @param type        格式，如 gif / png / jpeg / webp / bmp / unknown，与 ImgService.detectImageType 一致
+     * @param width       画布宽度，未知时为 -1
+     * @param height      画布高度，未知时为 -1
+     * @param frames      帧数，未知时为 -1；framesExact 为 false 时是下界
+     * @param framesExact 帧数是否确切
+     */
+    public record Info(String type, int width, int height, int frames, boolean framesExact) {
+
+        static final Info UNKNOWN = new Info("unknown", -1, -1, -1, false);
+
+        public boolean isKnown() {
+            return !"unknown".equals(type);
+        }
+
+        public boolean hasSize() {
+            return width > 0 && height > 0;
+        }
+
+        /**
+         * 单帧画布像素数，尺寸未知时为 -1
+         */
+        public long pixels() {
+            return hasSize() ? (long) width * height : -1;
+        }
+    }
+
+    /**
+     * 探测 data[0, length)
+     */
+    public static Info probe(byte[] data, int length) {
+        if (data == null) return Info.UNKNOWN;
+        int n = Math.min(length, data.length);
+        String type = detectType(data, n);
+        return switch (type) {
+            case "gif" -> gif(data, n);
+            case "png" -> png(data, n);
+            case "jpeg" -> jpeg(data, n);
+            case "webp" -> webp(data, n);
+            case "bmp" -> bmp(data, n);
+            default -> Info.UNKNOWN;
+        };
+    }
+
+    public static Info probe(byte[] data) {
+        return data == null ? Info.UNKNOWN : probe(data, data.length);
+    }
+
+    /**
+     * 按魔数判断格式，只需前 12 字节
+     */
+    public static String detectType(byte[] d, int n) {
+        if (d == null || n < 4) return "unknown";
+        if (n >= 6 && d[0] == 'G' && d[1] == 'I' && d[2] == 'F' && d[3] == '8' && (d[4] == '7' || d[4] == '9') && d[5] == 'a')
+            return "gif";
+        if (n >= 8 && (d[0] & 0xFF) == 0x89 && d[1] == 'P' && d[2] == 'N' && d[3] == 'G'
+                && d[4] == 0x0D && d[5] == 0x0A && d[6] == 0x1A && d[7] == 0x0A)
+            return "png";
+        if ((d[0] & 0xFF) == 0xFF && (d[1] & 0xFF) == 0xD8 && (d[2] & 0xFF) == 0xFF) return "jpeg";
+        if (d[0] == 'B' && d[1] == 'M') return "bmp";
+        if (n >= 12 && d[0] == 'R' && d[1] == 'I' && d[2] == 'F' && d[3] == 'F'
+                && d[8] == 'W' && d[9] == 'E' && d[10] == 'B' && d[11] == 'P')
+            return "webp";
+        return "unknown";
+    }
+
+    // ++=============** 各格式 **=============++
+
+    private static Info gif(byte[] d, int n) {
+        if (n < 13) return new Info("gif", -1, -1, -1, false);
+        int w = le16(d, 6), h = le16(d, 8);
+        int packed = d[10] & 0xFF;
+        int p = 13 + ((packed & 0x80) != 0 ? 3 << ((packed & 7) + 1) : 0);
+        int frames = 0;
+        // 跳读块结构计数图像描述符，不做 LZW 解码
+        while (p < n) {
+            int b = d[p] & 0xFF;
+            if (b == 0x3B) return new Info("gif", w, h, frames, true);
+            if (b == 0x21) {
+                p = skipSubBlocks(d, n, p + 2);
+            } else if (b == 0x2C) {
+                if (p + 10 > n) break;
+                frames++;
+                int lp = d[p + 9] & 0xFF;
+                p += 10 + ((lp & 0x80) != 0 ? 3 << ((lp & 7) + 1) : 0);
+                p = skipSubBlocks(d, n, p + 1);  // LZW 最小码长
+            } else {
+                // 结构损坏，按已读到的帧计数（与解码器容忍截断的行为一致）
+                return new Info("gif", w, h, frames, n == d.length);
+            }
+            if (p < 0) break;
+        }
+        // 数据完整但缺少结束符时同样视为确切
+        return new Info("gif", w, h, frames, n == d.length && p >= n);
+    }
+
+    /**
+     * 跳过从 p 开始的子块序列，返回结束符之后的位置；数据不足时返回 -1
+     */
+    private static int skipSubBlocks(byte[] d, int n, int p) {
+        while (p < n) {
+            int size = d[p] & 0xFF;
+            if (size == 0) return p + 1;
+            p += size + 1;
+        }
+        return -1;
+    }
+
+    private static Info png(byte[] d, int n) {
+        if (n < 24) return new Info("png", -1, -1, -1, false);
+        int w = be32(d, 16), h = be32(d, 20);
+        // acTL 必须出现在 IDAT 之前
+        int p = 8;
+        while (p + 8 <= n) {
+            int len = be32(d, p);
+            if (len < 0 || len > n) break;
+            if (is(d, p + 4, 'a', 'c', 'T', 'L')) {
+                if (p + 12 > n) break;
+                return new Info("png", w, h, be32(d, p + 8), true);
+            }
+            if (is(d, p + 4, 'I', 'D', 'A', 'T')) return new Info("png", w, h, 1, true);
+            p += 12 + len;
+        }
+        return new Info("png", w, h, 1, false);
+    }
+
+    private static Info jpeg(byte[] d, int n) {
+        int p = 2;
+        while (p + 4 <= n) {
+            if ((d[p] & 0xFF) != 0xFF) return new Info("jpeg", -1, -1, 1, true);
+            int m = d[p + 1] & 0xFF;
+            if (m == 0xFF) {  // 填充字节
+                p++;
+                continue;
+            }
+            if (m == 0x01 || (m >= 0xD0 && m <= 0xD8)) {  // 无长度的标记
+                p += 2;
+                continue;
+            }
+            if (m == 0xD9 || m == 0xDA) break;  // 在 SOF 之前就到了扫描数据或结束
+            int len = be16(d, p + 2);
+            boolean sof = m >= 0xC0 && m <= 0xCF && m != 0xC4 && m != 0xC8 && m != 0xCC;
+            if (sof) {
+                if (p + 9 > n) break;
+                return new Info("jpeg", be16(d, p + 7), be16(d, p + 5), 1, true);
+            }
+            p += 2 + len;
+        }
+        return new Info("jpeg", -1, -1, 1, true);
+    }
+
+    private static Info webp(byte[] d, int n) {
+        if (n < 30) return new Info("webp", -1, -1, -1, false);
+        if (is(d, 12, 'V', 'P', '8', ' ')) {
+            // 帧标签 3 字节 + 起始码 9d 01 2a 之后是 14 位宽高
+            return new Info("webp", le16(d, 26) & 0x3FFF, le16(d, 28) & 0x3FFF, 1, true);
+        }
+        if (is(d, 12, 'V', 'P', '8', 'L')) {
+            if ((d[20] & 0xFF) != 0x2F) return new Info("webp", -1, -1, 1, true);
+            int bits = le32(d, 21);
+            return new Info("webp", (bits & 0x3FFF) + 1, ((bits >>> 14) & 0x3FFF) + 1, 1, true);
+        }
+        if (is(d, 12, 'V', 'P', '8', 'X')) {
+            boolean animated = (d[20] & 0x02) != 0;
+            int w = le24(d, 24) + 1, h = le24(d, 27) + 1;
+            if (!animated) return new Info("webp", w, h, 1, true);
+            int end = (int) Math.min((le32(d, 4) & 0xFFFFFFFFL) + 8, n);
+            int p = 30, frames = 0;
+            while (p + 8 <= end) {
+                if (is(d, p, 'A', 'N', 'M', 'F')) frames++;
+                long size = le32(d, p + 4) & 0xFFFFFFFFL;
+                p += (int) Math.min(8 + size + (size & 1), Integer.MAX_VALUE - p);
+            }
+            return new Info("webp", w, h, frames, n == d.length && p >= end);
+        }
+        return new Info("webp", -1, -1, -1, false);
+    }
+
+    private static Info bmp(byte[] d, int n) {
+        if (n < 26) return new Info("bmp", -1, -1, 1, true);
+        if (le32(d, 14) == 12) return new Info("bmp", le16(d, 18), le16(d, 20), 1, true);  // BITMAPCOREHEADER
+        return new Info("bmp", Math.abs(le32(d, 18)), Math.abs(le32(d, 22)), 1, true);  // 高度为负表示自上而下
+    }
+
+    // ++=============** helpers **=============++
+
+    private static boolean is(byte[] d, int p, char a, char b, char c, char e) {
+        return d[p] == a && d[p + 1] == b && d[p + 2] == c && d[p + 3] == e;
+    }
+
+    private static int le16(byte[] d, int p) {
+        return (d[p] & 0xFF) | (d[p + 1] & 0xFF) << 8;
+    }
+
+    private static int le24(byte[] d, int p) {
+        return le16(d, p) | (d[p + 2] & 0xFF) << 16;
+    }
+
+    private static int le32(byte[] d, int p) {
+        return le24(d, p) | (d[p + 3] & 0xFF) << 24;
+    }
+
+    private static int be16(byte[] d, int p) {
+        return (d[p] & 0xFF) << 8 | (d[p + 1] & 0xFF);
+    }
+
+    private static int be32(byte[] d, int p) {
+        return be16(d, p) << 16 | be16(d, p + 2);
+    }
+}
@@ -0,0 +1,267 @@
+package com.arth.solabot.adapter.fetcher.http;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 图片下载的内容寻址缓存（两级）：
+ * - 内容以 md5（小写十六进制）为键，堆内层为按字节数加权的有界缓存，磁盘层位于 data/ 下按总字节数淘汰最久未访问的文件
+ * - 规范化 url（去掉 fragment 与一次性的 rkey 等鉴权参数）→ md5 的索引，来自已完成的下载或引用消息中 OneBot 给出的 md5；
+ *   写入后定时过期，同一 url 的内容若被替换，过期后会重新下载而不是一直命中旧内容
+ * - 同一 url 的并发下载合并为一次（single-flight）
+ * - 命中、未命中与节省的下载字节数通过 solabot.img.download.* 指标暴露
+ */
+@Slf4j
+@Component
+public class ImgDownloadCache {
+
+    /**
+     * 实际执行下载的加载器
+     */
+    @FunctionalInterface
+    public interface Loader {
+        byte[] load() throws IOException;
+    }
+
+    /* url 中每次获取都会变化、与内容无关的查询参数 */
+    private static final Set<String> VOLATILE_QUERY_KEYS = Set.of("rkey");
+
+    private final Path diskDir;
+    private final long diskLimitBytes;
+    private final Cache<String, byte[]> heap;
+    private final Cache<String, String> urlIndex;
+    private final ConcurrentHashMap<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong diskBytes = new AtomicLong();
+
+    private final Counter heapHits;
+    private final Counter diskHits;
+    private final Counter misses;
+    private final Counter coalesced;
+    private final Counter bytesSaved;
+
+    public ImgDownloadCache(MeterRegistry meterRegistry,
+                            @Value("${app.parameter.cache.download.heap-size:67108864}") long heapLimitBytes,
+                            @Value("${app.parameter.cache.download.disk-size:536870912}") long diskLimitBytes,
+                            @Value("${app.parameter.cache.download.disk-dir:data/cache/img}") String diskDir,
+                            @Value("${app.parameter.cache.download.url-ttl:60}") long urlTtlMinutes) {
+        this.diskDir = Path.of(diskDir);
+        this.diskLimitBytes = diskLimitBytes;
+        this.heap = Caffeine.newBuilder()
+                .maximumWeight(heapLimitBytes)
+                .weigher((String k, byte[] v) -> v.length)
+                .build();
+        this.urlIndex = Caffeine.newBuilder()
+                .maximumSize(16_384)
+                .expireAfterWrite(Duration.ofMinutes(urlTtlMinutes))
+                .build();
+
+        heapHits = meterRegistry.counter("solabot.img.download.cache", "result", "heap_hit");
+        diskHits = meterRegistry.counter("solabot.img.download.cache", "result", "disk_hit");
+        misses = meterRegistry.counter("solabot.img.download.cache", "result", "miss");
+        coalesced = meterRegistry.counter("solabot.img.download.cache", "result", "coalesced");
+        bytesSaved = meterRegistry.counter("solabot.img.download.bytes.saved");
+        Gauge.builder("solabot.img.download.disk.bytes", diskBytes, AtomicLong::get).register(meterRegistry);
+    }
+
+    @PostConstruct
+    void init() {
+        try {
+            Files.createDirectories(diskDir);
+            try (Stream<Path> files = Files.list(diskDir)) {
+                files.filter(Files::isRegularFile).forEach(p -> {
+                    try {
+                        diskBytes.addAndGet(Files.size(p));
+                    } catch (IOException ignored) {
+                    }
+                });
+            }
+            log.info("[adapter.fetcher] image download cache ready, disk dir: {}, disk usage: {} bytes", diskDir, diskBytes.get());
+        } catch (IOException e) {
+            log.warn("[adapter.fetcher] failed to prepare image download cache dir: {}", diskDir, e);
+        }
+    }
+
+    /**
+     * 记录 url 对应内容的 md5（例如引用消息图片段中的 md5 字段），使不同 url 的同一张图共享缓存
+     */
+    public void hint(String url, String md5) {
+        if (url == null || md5 == null || md5.isBlank()) return;
+        urlIndex.put(normalizeUrl(url), md5.trim().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * 获取 url 对应的内容，依次查询堆内层、磁盘层，均未命中时调用 loader 下载并回填
+     *
+     * @throws IOException loader 抛出的异常
+     */
+    public byte[] get(String url, Loader loader) throws IOException {
+        String key = normalizeUrl(url);
+        String md5 = urlIndex.getIfPresent(key);
+        if (md5 != null) {
+            byte[] cached = lookup(md5);
+            if (cached != null) return cached;
+        }
+
+        CompletableFuture<byte[]> mine = new CompletableFuture<>();
+        CompletableFuture<byte[]> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            coalesced.increment();
+            try {
+                byte[] bytes = running.join();
+                bytesSaved.increment(bytes.length);
+                return bytes;
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof IOException io) throw io;
+                if (e.getCause() instanceof RuntimeException re) throw re;
+                throw e;
+            }
+        }
+
+        try {
+            misses.increment();
+            byte[] bytes = loader.load();
+            String contentMd5 = md5Hex(bytes);
+            heap.put(contentMd5, bytes);
+            writeDisk(contentMd5, bytes);
+            urlIndex.put(key, contentMd5);
+            mine.complete(bytes);
+            return bytes;
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    // ++=============** helpers **=============++
+
+    private byte[] lookup(String md5) {
+        byte[] bytes = heap.getIfPresent(md5);
+        if (bytes != null) {
+            heapHits.increment();
+            bytesSaved.increment(bytes.length);
+            return bytes;
+        }
+        Path file = diskDir.resolve(md5);
+        try {
+            bytes = Files.readAllBytes(file);
+            // 以修改时间记录最近访问，供磁盘层淘汰使用
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            log.debug("[adapter.fetcher] failed to read cached image {}", file, e);
+            return null;
+        }
+        heap.put(md5, bytes);
+        diskHits.increment();
+        bytesSaved.increment(bytes.length);
+        return bytes;
+    }
+
+    private void writeDisk(String md5, byte[] bytes) {
+        if (diskLimitBytes <= 0 || bytes.length > diskLimitBytes) return;
+        Path file = diskDir.resolve(md5);
+        if (Files.exists(file)) return;
+        try {
+            Path tmp = Files.createTempFile(diskDir, md5, ".tmp");
+            Files.write(tmp, bytes);
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            if (diskBytes.addAndGet(bytes.length) > diskLimitBytes) evictDisk();
+        } catch (IOException e) {
+            log.debug("[adapter.fetcher] failed to write cached image {}", file, e);
+        }
+    }
+
+    /**
+     * 磁盘层超限时按最近访问时间从旧到新删除，直到降至上限的 90%
+     */
+    private synchronized void evictDisk() {
+        if (diskBytes.get() <= diskLimitBytes) return;
+        long target = diskLimitBytes / 10 * 9;
+        List<Path> files;
+        try (Stream<Path> s = Files.list(diskDir)) {
+            files = new ArrayList<>(s.filter(p -> Files.isRegularFile(p) && !p.toString().endsWith(".tmp")).toList());
+        } catch (IOException e) {
+            log.warn("[adapter.fetcher] failed to list image download cache dir", e);
+            return;
+        }
+        files.sort(Comparator.comparingLong(p -> {
+            try {
+                return Files.getLastModifiedTime(p).toMillis();
+            } catch (IOException e) {
+                return 0L;
+            }
+        }));
+        for (Path p : files) {
+            if (diskBytes.get() <= target) break;
+            try {
+                long size = Files.size(p);
+                if (Files.deleteIfExists(p)) diskBytes.addAndGet(-size);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * 规范化 url：scheme 与 host 小写，去掉 fragment 与一次性鉴权参数，其余查询参数排序
+     */
+    static String normalizeUrl(String url) {
+        String u = url.trim();
+        try {
+            URI uri = URI.create(u);
+            if (uri.getScheme() == null || uri.getRawAuthority() == null) return u;
+            StringBuilder sb = new StringBuilder(u.length())
+                    .append(uri.getScheme().toLowerCase(Locale.ROOT)).append("://")
+                    .append(uri.getRawAuthority().toLowerCase(Locale.ROOT));
+            if (uri.getRawPath() != null) sb.append(uri.getRawPath());
+            String query = uri.getRawQuery();
+            if (query != null && !query.isEmpty()) {
+                List<String> params = new ArrayList<>();
+                for (String kv : query.split("&")) {
+                    if (kv.isEmpty()) continue;
+                    int eq = kv.indexOf('=');
+                    String k = eq >= 0 ? kv.substring(0, eq) : kv;
+                    if (!VOLATILE_QUERY_KEYS.contains(k.toLowerCase(Locale.ROOT))) params.add(kv);
+                }
+                if (!params.isEmpty()) {
+                    Collections.sort(params);
+                    sb.append('?').append(String.join("&", params));
+                }
+            }
+            return sb.toString();
+        } catch (IllegalArgumentException e) {
+            return u;
+        }
+    }
+
+    private static String md5Hex(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
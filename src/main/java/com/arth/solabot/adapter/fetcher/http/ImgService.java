@@ -6,35 +6,28 @@ import com.arth.solabot.core.bot.dto.ParsedPayloadDTO;
 import com.arth.solabot.core.bot.dto.ReplayedMessagePayloadDTO;
 import com.arth.solabot.core.bot.dto.replay.ImageRef;
 import com.arth.solabot.core.bot.dto.replay.MfaceRef;
+import com.arth.solabot.core.bot.exception.BusinessException;
 import com.arth.solabot.core.bot.exception.InvalidCommandArgsException;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.HttpStatusCode;
-import org.springframework.http.MediaType;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Exceptions;
 import reactor.core.publisher.Mono;
 
-// 新增的 imports（用于流式下载）
-import org.springframework.core.io.buffer.DataBuffer;
-import org.springframework.core.io.buffer.DataBufferUtils;
-import reactor.core.publisher.Flux;
-
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
 import javax.imageio.ImageReader;
-import javax.imageio.metadata.IIOMetadata;
-import javax.imageio.metadata.IIOMetadataNode;
 import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.*;
-import java.nio.channels.Channels;
-import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -49,7 +42,23 @@ public class ImgService {
 
     private final Sender sender;
     private final ReplyFetcher replyFetcher;
-    private final WebClient webClient;
+    private final ImgDownloadCache downloadCache;
+    private final StreamingDownloader downloader;
+
+    @Value("${app.parameter.cache.download.max-size:26214400}")
+    private long maxDownloadBytes;
+
+    @Value("${app.parameter.cache.download.max-file-size:1073741824}")
+    private long maxFileBytes;
+
+    @Value("${app.parameter.plugin.img.gif-max-frames:1000}")
+    private int gifMaxFrames;
+
+    @Value("${app.parameter.plugin.img.gif-max-total-pixels:150000000}")
+    private long gifMaxTotalPixels;
+
+    @Value("${app.parameter.plugin.img.max-image-pixels:50000000}")
+    private long maxImagePixels;
 
     /**
      * 从 url 下载一张静态图片，返回 BufferedImage
@@ -117,43 +126,132 @@ public class ImgService {
 
     /**
      * 从 url 流式分块下载一张图片，返回二进制数据 byte[]
+     * 经过 ImgDownloadCache：同一内容只下载一次，并发请求同一 url 时合并为一次下载
      *
      * @param url
-     * @return
+     * @return 下载失败或超出 max-size 时返回 null
+     * @throws InvalidCommandArgsException 文件头显示格式无法识别，或尺寸、帧数超出上限
      */
     public byte[] getBytes(String url) {
         try {
-            // 流式 bodyToFlux(DataBuffer) 写入 ByteArrayOutputStream
-            Flux<DataBuffer> flux = webClient.get()
-                    .uri(url)
-                    .accept(MediaType.APPLICATION_OCTET_STREAM)
-                    .retrieve()
-                    .onStatus(HttpStatusCode::isError, rsp -> rsp.createException().flatMap(Mono::error))
-                    .bodyToFlux(DataBuffer.class);
-
-            try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                 WritableByteChannel channel = Channels.newChannel(baos)) {
-
-                // 将每个 DataBuffer 写入 channel 并释放 DataBuffer
-                flux.doOnNext(dataBuffer -> {
-                            try {
-                                channel.write(dataBuffer.asByteBuffer());
-                            } catch (IOException e) {
-                                throw new RuntimeException(e);
-                            } finally {
-                                DataBufferUtils.release(dataBuffer);
-                            }
-                        })
-                        .blockLast(Duration.ofSeconds(60));  // 超时时间
-
-                return baos.toByteArray();
-            }
+            return downloadCache.get(url, () -> download(url));
+        } catch (BusinessException e) {
+            // 文件头探测的拒绝原因需要反馈给用户
+            throw e;
         } catch (Exception e) {
             log.error("Failed to get response from " + url, e);
             return null;
         }
     }
 
+    /**
+     * 实际下载：按 Content-Length 预分配缓冲，Content-Length 或累计字节数超过 max-size 时立即中止；
+     * 收到的前缀足以确定格式与尺寸时立即检查，格式无法识别或尺寸超限的图片不再继续下载；
+     * 等待期间线程被中断时取消订阅并断开连接
+     */
+    private byte[] download(String url) throws IOException {
+        byte[] data = await(downloader.fetchBytes(url, maxDownloadBytes, this::checkHeader), Duration.ofSeconds(60));
+        // 完整数据上的探测可以得到确切的 GIF 帧数
+        checkHeader(ImageProbe.probe(data));
+        return data;
+    }
+
+    /**
+     * 非阻塞地下载一张图片，不经过 ImgDownloadCache；文件头检查与 getBytes(String) 相同，取消订阅即断开连接
+     *
+     * @return 以 IOException 或 InvalidCommandArgsException 结束时表示下载失败或图片被拒绝
+     */
+    public Mono<byte[]> fetchBytes(String url) {
+        return downloader.fetchBytes(url, maxDownloadBytes, this::checkHeader)
+                .doOnNext(data -> checkHeader(ImageProbe.probe(data)));
+    }
+
+    /**
+     * 在当前线程上等待 mono，超时或被中断时取消订阅；受检异常还原为 IOException
+     */
+    private static <T> T await(Mono<T> mono, Duration timeout) throws IOException {
+        try {
+            return mono.block(timeout);
+        } catch (RuntimeException e) {
+            Throwable cause = Exceptions.unwrap(e);
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while downloading");
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 探测图片的格式、尺寸与帧数，只读取文件头（GIF / 动态 WebP 计数帧时跳读块结构），不解码像素
+     */
+    public ImageProbe.Info probe(byte[] data) {
+        return ImageProbe.probe(data);
+    }
+
+    /**
+     * 依据文件头拒绝无法处理的图片：单帧像素数超出 max-image-pixels、GIF 帧数或 帧数 x 画布像素数 超限；
+     * 尚未确定的字段不做判断。ImageProbe 不认识的格式（TIFF 等）不在此拒绝，下载仍受 download.max-size 限制，
+     * 能否解码与尺寸上限交由 readImage 判断
+     *
+     * @throws InvalidCommandArgsException 图片被拒绝，description 为可读原因
+     */
+    public void checkHeader(ImageProbe.Info info) {
+        if (info.pixels() > maxImagePixels) {
+            throw tooLarge(info.width(), info.height());
+        }
+        if ("gif".equals(info.type()) && info.frames() > 0) {
+            if (info.frames() > gifMaxFrames) {
+                throw new InvalidCommandArgsException("gif has too many frames: " + info.frames(), "GIF 帧数过多");
+            }
+            if (info.hasSize() && info.frames() * info.pixels() > gifMaxTotalPixels) {
+                throw new InvalidCommandArgsException("gif too large: " + info.frames() + " frames of "
+                        + info.width() + "x" + info.height(), "GIF 过大");
+            }
+        }
+    }
+
+    private static InvalidCommandArgsException tooLarge(int width, int height) {
+        return new InvalidCommandArgsException("image too large: " + width + "x" + height, "图片尺寸过大");
+    }
+
+    /**
+     * 解码静态图片（动态图片取首帧），单帧像素数超过 maxPixels 时由解码器按整数步长隔行隔列采样，
+     * 直接得到缩小后的图像而不必先解码原尺寸；ImageProbe 无法给出尺寸时向解码器读取，并补做 max-image-pixels 检查
+     *
+     * @param maxPixels 期望的最大像素数，<= 0 表示不限制
+     * @return 无法解码时返回 null
+     * @throws InvalidCommandArgsException 单帧像素数超出 max-image-pixels
+     */
+    public BufferedImage readImage(byte[] data, long maxPixels) throws IOException {
+        ImageProbe.Info info = ImageProbe.probe(data);
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                long pixels = info.pixels();
+                if (pixels < 0) {
+                    // 只读取文件头
+                    int w = reader.getWidth(0), h = reader.getHeight(0);
+                    if ((long) w * h > maxImagePixels) throw tooLarge(w, h);
+                    pixels = (long) w * h;
+                }
+                int step = 1;
+                if (maxPixels > 0 && pixels > maxPixels) {
+                    step = (int) Math.ceil(Math.sqrt((double) pixels / maxPixels));
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (step > 1) param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
     /**
      * 从输入流流式分块读取全部二进制数据，返回 byte[]
      * 注意，本方法不会主动关闭传入的 InputStream
@@ -208,118 +306,14 @@ public class ImgService {
 
     /**
      * 从 url 下载一份 GIF 的二进制流并将流解析为可逐帧操作的数据结构
+     * 会一次性持有全部帧；只需逐帧处理时使用 openGif 按需解码
      *
      * @param url
      * @return
      * @throws IOException
      */
     public GifData getGifFlattened(String url) throws IOException {
-        byte[] inBytes = getBytes(url);
-        if (inBytes == null || inBytes.length == 0) throw new IOException("empty file");
-        GifData g = new GifData();
-        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(inBytes))) {
-            Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("gif");
-            if (!readers.hasNext()) throw new IOException("No GIF reader");
-            ImageReader reader = readers.next();
-            reader.setInput(in, false);
-            int num = reader.getNumImages(true);
-            if (num <= 0) {
-                reader.dispose();
-                return g;
-            }
-            // ----------- 1) 取画布尺寸：先 stream metadata 的 LSD，兜底遍历帧，再兜底第0帧尺寸 -----------
-            int canvasW = 0, canvasH = 0;
-            IIOMetadata streamMeta = reader.getStreamMetadata();
-            if (streamMeta != null) {
-                try {
-                    String sfmt = streamMeta.getNativeMetadataFormatName();
-                    if (sfmt != null) {
-                        IIOMetadataNode sroot = (IIOMetadataNode) streamMeta.getAsTree(sfmt);
-                        IIOMetadataNode lsd = findNode(sroot, "LogicalScreenDescriptor");
-                        if (lsd != null) {
-                            canvasW = parseIntSafe(lsd, "logicalScreenWidth", 0);
-                            canvasH = parseIntSafe(lsd, "logicalScreenHeight", 0);
-                        }
-                    }
-                } catch (Exception ignore) {
-                }
-            }
-            if (canvasW <= 0 || canvasH <= 0) {
-                // 遍历每帧，基于 ImageDescriptor 的 (x,y,w,h) 求最大包围盒
-                for (int i = 0; i < num; i++) {
-                    try {
-                        IIOMetadata im = reader.getImageMetadata(i);
-                        String ifmt = im.getNativeMetadataFormatName();
-                        IIOMetadataNode iroot = (IIOMetadataNode) im.getAsTree(ifmt);
-                        IIOMetadataNode imgDesc = findNode(iroot, "ImageDescriptor");
-                        int fx = 0, fy = 0, fw, fh;
-                        if (imgDesc != null) {
-                            fx = parseIntSafe(imgDesc, "imageLeftPosition", 0);
-                            fy = parseIntSafe(imgDesc, "imageTopPosition", 0);
-                            fw = parseIntSafe(imgDesc, "imageWidth", reader.getWidth(i));
-                            fh = parseIntSafe(imgDesc, "imageHeight", reader.getHeight(i));
-                        } else {
-                            // 有些实现没有 ImageDescriptor，就退回帧图尺寸
-                            fw = reader.getWidth(i);
-                            fh = reader.getHeight(i);
-                        }
-                        canvasW = Math.max(canvasW, fx + fw);
-                        canvasH = Math.max(canvasH, fy + fh);
-                    } catch (Exception e) {
-                        // continue
-                    }
-                }
-            }
-            if (canvasW <= 0) canvasW = reader.getWidth(0);
-            if (canvasH <= 0) canvasH = reader.getHeight(0);
-            // ----------- 2) 准备工作画布 -----------
-            BufferedImage work = new BufferedImage(canvasW, canvasH, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D wg = work.createGraphics();
-            wg.setComposite(AlphaComposite.SrcOver);
-            // ----------- 3) 帧循环：按处置规则拍平为“独立全画布帧” -----------
-            for (int i = 0; i < num; i++) {
-                BufferedImage raw = reader.read(i);
-                IIOMetadata im = reader.getImageMetadata(i);
-                String ifmt = im.getNativeMetadataFormatName();
-                IIOMetadataNode iroot = (IIOMetadataNode) im.getAsTree(ifmt);
-                // 读取帧矩形
-                IIOMetadataNode imgDesc = findNode(iroot, "ImageDescriptor");
-                int fx = (imgDesc != null) ? parseIntSafe(imgDesc, "imageLeftPosition", 0) : 0;
-                int fy = (imgDesc != null) ? parseIntSafe(imgDesc, "imageTopPosition", 0) : 0;
-                int fw = (imgDesc != null) ? parseIntSafe(imgDesc, "imageWidth", raw.getWidth()) : raw.getWidth();
-                int fh = (imgDesc != null) ? parseIntSafe(imgDesc, "imageHeight", raw.getHeight()) : raw.getHeight();
-                // 读取处置
-                IIOMetadataNode gce = findNode(iroot, "GraphicControlExtension");
-                String disposal = (gce != null) ? gce.getAttribute("disposalMethod") : "none";
-                if (disposal == null || disposal.isEmpty()) disposal = "none";
-                // 在绘制当前帧之前保存快照（仅当本帧的处置是 restoreToPrevious 时需要）
-                BufferedImage prevSnapshot = null;
-                if ("restoreToPrevious".equals(disposal)) {
-                    prevSnapshot = deepCopy(work);
-                }
-                // 把当前帧绘制到工作画布 (fx, fy)
-                wg.drawImage(raw, fx, fy, null);
-                // 生成独立全画布帧快照
-                g.frames.add(deepCopy(work));
-                // 记录延时和循环
-                int delayCs = readDelayCs(im);
-                g.delaysCs.add(delayCs > 0 ? delayCs : 10);
-                if (i == 0) g.loopCount = readLoopCount(im);
-                // 根据处置法处理工作画布
-                if ("restoreToBackgroundColor".equals(disposal)) {
-                    clearRectTransparent(work, fx, fy, fw, fh);
-                } else if ("restoreToPrevious".equals(disposal) && prevSnapshot != null) {
-                    Graphics2D g2 = work.createGraphics();
-                    g2.setComposite(AlphaComposite.Src);
-                    g2.drawImage(prevSnapshot, 0, 0, null);
-                    g2.dispose();
-                }
-                // nothing to do for case none
-            }
-            wg.dispose();
-            reader.dispose();
-        }
-        return g;
+        return flatten(getBytes(url));
     }
 
     /**
@@ -332,111 +326,48 @@ public class ImgService {
      * @throws IOException
      */
     public GifData getGifFlattened(InputStream inputStream) throws IOException {
-        byte[] inBytes = getBytes(inputStream);
-        if (inBytes == null || inBytes.length == 0) throw new IOException("empty file");
+        return flatten(getBytes(inputStream));
+    }
+
+    /**
+     * 将已下载的 GIF 数据解析为可逐帧操作的数据结构
+     *
+     * @param data
+     * @return
+     * @throws IOException
+     */
+    public GifData getGifFlattened(byte[] data) throws IOException {
+        return flatten(data);
+    }
+
+    /**
+     * 打开 GIF 的逐帧解码器，帧在迭代时才解码合成，受 gif-max-frames / gif-max-total-pixels 限制
+     *
+     * @param data
+     * @return
+     * @throws IOException                 数据为空、不是 GIF，或画布已超出上限
+     * @throws InvalidCommandArgsException 文件头显示帧数或尺寸超出上限
+     */
+    public GifDecoder openGif(byte[] data) throws IOException {
+        if (data == null || data.length == 0) throw new IOException("empty file");
+        // 按文件头先行拒绝，超限的 GIF 不必解码到超限那一帧
+        checkHeader(ImageProbe.probe(data));
+        return GifDecoder.open(data, new GifDecoder.Limits(gifMaxFrames, gifMaxTotalPixels));
+    }
+
+    private GifData flatten(byte[] data) throws IOException {
+        GifDecoder decoder = openGif(data);
         GifData g = new GifData();
-        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(inBytes))) {
-            Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("gif");
-            if (!readers.hasNext()) throw new IOException("No GIF reader");
-            ImageReader reader = readers.next();
-            reader.setInput(in, false);
-            int num = reader.getNumImages(true);
-            if (num <= 0) {
-                reader.dispose();
-                return g;
-            }
-            // ----------- 1) 取画布尺寸：先 stream metadata 的 LSD，兜底遍历帧，再兜底第0帧尺寸 -----------
-            int canvasW = 0, canvasH = 0;
-            IIOMetadata streamMeta = reader.getStreamMetadata();
-            if (streamMeta != null) {
-                try {
-                    String sfmt = streamMeta.getNativeMetadataFormatName();
-                    if (sfmt != null) {
-                        IIOMetadataNode sroot = (IIOMetadataNode) streamMeta.getAsTree(sfmt);
-                        IIOMetadataNode lsd = findNode(sroot, "LogicalScreenDescriptor");
-                        if (lsd != null) {
-                            canvasW = parseIntSafe(lsd, "logicalScreenWidth", 0);
-                            canvasH = parseIntSafe(lsd, "logicalScreenHeight", 0);
-                        }
-                    }
-                } catch (Exception ignore) {
-                }
-            }
-            if (canvasW <= 0 || canvasH <= 0) {
-                // 遍历每帧，基于 ImageDescriptor 的 (x,y,w,h) 求最大包围盒
-                for (int i = 0; i < num; i++) {
-                    try {
-                        IIOMetadata im = reader.getImageMetadata(i);
-                        String ifmt = im.getNativeMetadataFormatName();
-                        IIOMetadataNode iroot = (IIOMetadataNode) im.getAsTree(ifmt);
-                        IIOMetadataNode imgDesc = findNode(iroot, "ImageDescriptor");
-                        int fx = 0, fy = 0, fw, fh;
-                        if (imgDesc != null) {
-                            fx = parseIntSafe(imgDesc, "imageLeftPosition", 0);
-                            fy = parseIntSafe(imgDesc, "imageTopPosition", 0);
-                            fw = parseIntSafe(imgDesc, "imageWidth", reader.getWidth(i));
-                            fh = parseIntSafe(imgDesc, "imageHeight", reader.getHeight(i));
-                        } else {
-                            // 有些实现没有 ImageDescriptor，就退回帧图尺寸
-                            fw = reader.getWidth(i);
-                            fh = reader.getHeight(i);
-                        }
-                        canvasW = Math.max(canvasW, fx + fw);
-                        canvasH = Math.max(canvasH, fy + fh);
-                    } catch (Exception e) {
-                        // continue
-                    }
-                }
-            }
-            if (canvasW <= 0) canvasW = reader.getWidth(0);
-            if (canvasH <= 0) canvasH = reader.getHeight(0);
-            // ----------- 2) 准备工作画布 -----------
-            BufferedImage work = new BufferedImage(canvasW, canvasH, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D wg = work.createGraphics();
-            wg.setComposite(AlphaComposite.SrcOver);
-            // ----------- 3) 帧循环：按处置规则拍平为“独立全画布帧” -----------
-            for (int i = 0; i < num; i++) {
-                BufferedImage raw = reader.read(i);
-                IIOMetadata im = reader.getImageMetadata(i);
-                String ifmt = im.getNativeMetadataFormatName();
-                IIOMetadataNode iroot = (IIOMetadataNode) im.getAsTree(ifmt);
-                // 读取帧矩形
-                IIOMetadataNode imgDesc = findNode(iroot, "ImageDescriptor");
-                int fx = (imgDesc != null) ? parseIntSafe(imgDesc, "imageLeftPosition", 0) : 0;
-                int fy = (imgDesc != null) ? parseIntSafe(imgDesc, "imageTopPosition", 0) : 0;
-                int fw = (imgDesc != null) ? parseIntSafe(imgDesc, "imageWidth", raw.getWidth()) : raw.getWidth();
-                int fh = (imgDesc != null) ? parseIntSafe(imgDesc, "imageHeight", raw.getHeight()) : raw.getHeight();
-                // 读取处置
-                IIOMetadataNode gce = findNode(iroot, "GraphicControlExtension");
-                String disposal = (gce != null) ? gce.getAttribute("disposalMethod") : "none";
-                if (disposal == null || disposal.isEmpty()) disposal = "none";
-                // 在绘制当前帧之前保存快照（仅当本帧的处置是 restoreToPrevious 时需要）
-                BufferedImage prevSnapshot = null;
-                if ("restoreToPrevious".equals(disposal)) {
-                    prevSnapshot = deepCopy(work);
-                }
-                // 把当前帧绘制到工作画布 (fx, fy)
-                wg.drawImage(raw, fx, fy, null);
-                // 生成独立全画布帧快照
-                g.frames.add(deepCopy(work));
-                // 记录延时和循环
-                int delayCs = readDelayCs(im);
-                g.delaysCs.add(delayCs > 0 ? delayCs : 10);
-                if (i == 0) g.loopCount = readLoopCount(im);
-                // 根据处置法处理工作画布
-                if ("restoreToBackgroundColor".equals(disposal)) {
-                    clearRectTransparent(work, fx, fy, fw, fh);
-                } else if ("restoreToPrevious".equals(disposal) && prevSnapshot != null) {
-                    Graphics2D g2 = work.createGraphics();
-                    g2.setComposite(AlphaComposite.Src);
-                    g2.drawImage(prevSnapshot, 0, 0, null);
-                    g2.dispose();
-                }
-                // nothing to do for case none
+        try {
+            while (decoder.hasNext()) {
+                GifDecoder.Frame f = decoder.next();
+                g.frames.add(f.image());
+                g.delaysCs.add(f.delayCs());
             }
-            wg.dispose();
-            reader.dispose();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
+        g.loopCount = decoder.loopCount();
         return g;
     }
 
@@ -496,6 +427,11 @@ public class ImgService {
             return List.of();
         }
 
+        // OneBot 给出的 md5 可让不同 url 的同一张图命中下载缓存
+        for (ImageRef img : r.getImages()) {
+            if (img.getSource() != null) downloadCache.hint(img.getSource().trim(), img.getMd5());
+        }
+
         // 提取图片 URL
         List<String> imgUrls = r.getImages().stream()
                 .map(ImageRef::getSource)
@@ -531,17 +467,6 @@ public class ImgService {
     // ==================  helper  ==================
     // ==================  helper  ==================
 
-    public int parseIntSafe(IIOMetadataNode n, String attr, int defVal) {
-        if (n == null) return defVal;
-        try {
-            String v = n.getAttribute(attr);
-            if (v == null || v.isEmpty()) return defVal;
-            return Integer.parseInt(v);
-        } catch (Exception e) {
-            return defVal;
-        }
-    }
-
     public BufferedImage deepCopy(BufferedImage src) {
         BufferedImage dst = new BufferedImage(src.getWidth(), src.getHeight(), BufferedImage.TYPE_INT_ARGB);
         Graphics2D g2 = dst.createGraphics();
@@ -551,62 +476,6 @@ public class ImgService {
         return dst;
     }
 
-    public IIOMetadataNode findNode(IIOMetadataNode root, String name) {
-        if (root == null) return null;
-        if (name.equals(root.getNodeName())) return root;
-        for (int i = 0; i < root.getLength(); i++) {
-            IIOMetadataNode res = findNode((IIOMetadataNode) root.item(i), name);
-            if (res != null) return res;
-        }
-        return null;
-    }
-
-    public int readLoopCount(IIOMetadata metadata) {
-        try {
-            String format = metadata.getNativeMetadataFormatName();
-            IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(format);
-            IIOMetadataNode aes = findNode(root, "ApplicationExtensions");
-            if (aes != null) {
-                for (int i = 0; i < aes.getLength(); i++) {
-                    IIOMetadataNode ae = (IIOMetadataNode) aes.item(i);
-                    if ("ApplicationExtension".equals(ae.getNodeName())) {
-                        String appID = ae.getAttribute("applicationID");
-                        String auth = ae.getAttribute("authenticationCode");
-                        if ("NETSCAPE".equals(appID) && "2.0".equals(auth)) {
-                            byte[] bytes = (byte[]) ae.getUserObject();
-                            if (bytes != null && bytes.length >= 3) {
-                                return ((bytes[2] & 0xFF) << 8) | (bytes[1] & 0xFF);
-                            }
-                        }
-                    }
-                }
-            }
-        } catch (Exception ignore) {
-        }
-        return 0;
-    }
-
-    public int readDelayCs(IIOMetadata metadata) {
-        try {
-            String format = metadata.getNativeMetadataFormatName();
-            IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(format);
-            IIOMetadataNode gce = findNode(root, "GraphicControlExtension");
-            if (gce != null) {
-                String delay = gce.getAttribute("delayTime");
-                return Integer.parseInt(delay);
-            }
-        } catch (Exception ignore) {
-        }
-        return 10;
-    }
-
-    public void clearRectTransparent(BufferedImage img, int x, int y, int w, int h) {
-        Graphics2D g2 = img.createGraphics();
-        g2.setComposite(AlphaComposite.Clear);
-        g2.fillRect(x, y, w, h);
-        g2.dispose();
-    }
-
     /**
      * 打开一个 url 并返回可读的 InputStream，stream.close() 会在关闭时断开底层连接
      *
@@ -616,11 +485,15 @@ public class ImgService {
      */
     public InputStream openUrlInputStream(String url) throws IOException {
         try {
-            // 使用流式下载到临时文件并返回 FileInputStream 以避免内存聚合
+            // 使用流式下载到临时文件以避免内存聚合，关闭流时删除临时文件
             Path tmp = Files.createTempFile("imgsvc-", ".tmp");
-            // 下载并覆盖写入临时文件
-            downloadToFile(url, tmp);
-            return new FileInputStream(tmp.toFile());
+            try {
+                await(downloader.fetchToFile(url, tmp, maxDownloadBytes), Duration.ofSeconds(60));
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            }
+            return Files.newInputStream(tmp, StandardOpenOption.DELETE_ON_CLOSE);
         } catch (Exception e) {
             throw new IOException("Failed to fetch URL: " + url, e);
         }
@@ -648,28 +521,7 @@ public class ImgService {
      * @return 文件类型字符串，如 "gif"、"png"、"jpeg"、"bmp"、"webp"、"unknown"
      */
     public String detectImageType(byte[] data) {
-        if (data == null || data.length < 4) return "unknown";
-        // GIF
-        if (data.length >= 6) {
-            String h6 = new String(data, 0, 6, StandardCharsets.US_ASCII);
-            if ("GIF87a".equals(h6) || "GIF89a".equals(h6)) return "gif";
-        }
-        // PNG
-        if (data.length >= 8) {
-            if ((data[0] & 0xFF) == 0x89 && data[1] == 'P' && data[2] == 'N' && data[3] == 'G' && data[4] == 0x0D && data[5] == 0x0A && data[6] == 0x1A && data[7] == 0x0A)
-                return "png";
-        }
-        // JPEG
-        if ((data[0] & 0xFF) == 0xFF && (data[1] & 0xFF) == 0xD8 && (data[2] & 0xFF) == 0xFF) return "jpeg";
-        // BMP
-        if (data[0] == 'B' && data[1] == 'M') return "bmp";
-        // WEBP (RIFF....WEBP)
-        if (data.length >= 12) {
-            String riff = new String(data, 0, 4, StandardCharsets.US_ASCII);
-            String webp = new String(data, 8, 4, StandardCharsets.US_ASCII);
-            if ("RIFF".equals(riff) && "WEBP".equals(webp)) return "webp";
-        }
-        return "unknown";
+        return data == null ? "unknown" : ImageProbe.detectType(data, data.length);
     }
 
     /**
@@ -687,39 +539,15 @@ public class ImgService {
 
     /**
      * 从 URL 流式下载并写入指定文件（自动创建且覆盖 targetPath）。
-     * 适用于视频/大文件等不希望全部加载到内存的场景。
+     * 适用于视频/大文件等不希望全部加载到内存的场景，经 AsynchronousFileChannel 边收边写，超过 max-file-size 时中止。
      *
      * @param url
      * @param targetPath
-     * @return
+     * @return 失败时返回 null，targetPath 保持原状
      */
     public Path downloadToFile(String url, Path targetPath) {
-        Flux<DataBuffer> flux = webClient.get()
-                .uri(url)
-                .accept(MediaType.APPLICATION_OCTET_STREAM)
-                .retrieve()
-                .onStatus(HttpStatusCode::isError, rsp -> rsp.createException().flatMap(Mono::error))
-                .bodyToFlux(DataBuffer.class);
-
         try {
-            if (targetPath.getParent() != null) Files.createDirectories(targetPath.getParent());
-            // StandardOpenOption.CREATE, TRUNCATE_EXISTING, WRITE
-            try (FileOutputStream fos = new FileOutputStream(targetPath.toFile());
-                 WritableByteChannel channel = Channels.newChannel(fos)) {
-
-                flux.doOnNext(dataBuffer -> {
-                            try {
-                                channel.write(dataBuffer.asByteBuffer());
-                            } catch (IOException e) {
-                                throw new RuntimeException(e);
-                            } finally {
-                                DataBufferUtils.release(dataBuffer);
-                            }
-                        })
-                        .blockLast(Duration.ofMinutes(10));  // 考虑大文件，超时设置 10min
-
-                return targetPath;
-            }
+            return await(downloader.fetchToFile(url, targetPath, maxFileBytes), Duration.ofMinutes(10)).path();  // 考虑大文件，超时设置 10min
         } catch (Exception e) {
             log.error("Failed to downloadToFile: " + url, e);
             return null;
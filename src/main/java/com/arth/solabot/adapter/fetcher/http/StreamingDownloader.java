@@ -0,0 +1,265 @@
+package com.arth.solabot.adapter.fetcher.http;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * 非阻塞的流式下载，所有方法返回冷的 Mono，订阅时才发起请求：
+ * - fetchBytes：按 Content-Length 预分配缓冲，长度吻合时直接交出该数组，不再经过 ByteArrayOutputStream 的扩容与复制
+ * - fetchToFile：以 AsynchronousFileChannel 边收边写入磁盘，先写同目录临时文件，完成后原子替换
+ * - Content-Length 或累计字节数超过 maxBytes 时立即中止并断开连接
+ * - 取消订阅（如 block 所在线程被中断、命令被放弃）会断开连接、释放已收到的缓冲并删除未完成的临时文件
+ * - 按 host 记录耗时 solabot.http.download.latency{host,outcome}、字节数 solabot.http.download.bytes{host}
+ * 与吞吐 solabot.http.download.throughput{host}（字节/秒）
+ */
+@Slf4j
+@Component
+public class StreamingDownloader {
+
+    /**
+     * 下载到文件的结果
+     *
+     * @param path        最终文件
+     * @param bytes       写入的字节数
+     * @param contentType 响应的 Content-Type，缺失时为 null
+     */
+    public record FileDownload(Path path, long bytes, MediaType contentType) {
+    }
+
+    private final WebClient webClient;
+    private final MeterRegistry meterRegistry;
+
+    public StreamingDownloader(WebClient webClient, MeterRegistry meterRegistry) {
+        this.webClient = webClient;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 下载到内存
+     *
+     * @param maxBytes    字节上限
+     * @param headerCheck 每收到一块数据都以已有前缀的文件头探测结果调用，直到尺寸确定或前缀达到 ImageProbe.MAX_HEADER_BYTES；
+     *                    抛出的异常会中止下载并原样传给订阅者；为 null 时不探测
+     * @return 完整的响应体；Content-Length 或累计字节数超过上限时以 IOException 结束
+     */
+    public Mono<byte[]> fetchBytes(String url, long maxBytes, Consumer<ImageProbe.Info> headerCheck) {
+        return Mono.defer(() -> {
+            BoundedSink sink = new BoundedSink(maxBytes, headerCheck);
+            return webClient.get()
+                    .uri(url)
+                    .accept(MediaType.APPLICATION_OCTET_STREAM)
+                    .exchangeToFlux(rsp -> {
+                        if (rsp.statusCode().isError()) return rsp.createException().flatMapMany(Flux::error);
+                        long declared = rsp.headers().contentLength().orElse(-1L);
+                        if (declared > maxBytes) {
+                            return rsp.releaseBody().thenMany(Flux.error(tooLarge(declared, maxBytes)));
+                        }
+                        sink.presize(declared);
+                        return rsp.bodyToFlux(DataBuffer.class);
+                    })
+                    .doOnNext(dataBuffer -> {
+                        try {
+                            sink.write(dataBuffer);
+                        } finally {
+                            DataBufferUtils.release(dataBuffer);
+                        }
+                    })
+                    .then(Mono.fromSupplier(sink::toByteArray))
+                    .onErrorMap(UncheckedIOException.class, UncheckedIOException::getCause)
+                    .transform(m -> measure(url, m, () -> sink.size));
+        });
+    }
+
+    /**
+     * 下载到 target，target 已存在时被覆盖
+     */
+    public Mono<FileDownload> fetchToFile(String url, Path target, long maxBytes) {
+        return fetchToFile(url, contentType -> target, maxBytes);
+    }
+
+    /**
+     * 下载到由响应 Content-Type 决定的文件，如按类型选择后缀名
+     *
+     * @param resolver Content-Type（可能为 null）-> 目标文件，在收到响应头后调用一次
+     */
+    public Mono<FileDownload> fetchToFile(String url, Function<MediaType, Path> resolver, long maxBytes) {
+        return Mono.defer(() -> {
+            AtomicLong written = new AtomicLong();
+            return webClient.get()
+                    .uri(url)
+                    .exchangeToMono(rsp -> {
+                        if (rsp.statusCode().isError()) return rsp.createException().flatMap(Mono::error);
+                        long declared = rsp.headers().contentLength().orElse(-1L);
+                        if (declared > maxBytes) {
+                            return rsp.releaseBody().then(Mono.error(tooLarge(declared, maxBytes)));
+                        }
+                        MediaType contentType = rsp.headers().contentType().orElse(null);
+                        Path target = resolver.apply(contentType);
+                        Flux<DataBuffer> body = rsp.bodyToFlux(DataBuffer.class).doOnNext(dataBuffer -> {
+                            if (written.addAndGet(dataBuffer.readableByteCount()) > maxBytes) {
+                                DataBufferUtils.release(dataBuffer);
+                                throw new UncheckedIOException(tooLarge(written.get(), maxBytes));
+                            }
+                        });
+                        return writeAtomically(body, target)
+                                .then(Mono.fromSupplier(() -> new FileDownload(target, written.get(), contentType)));
+                    })
+                    .onErrorMap(UncheckedIOException.class, UncheckedIOException::getCause)
+                    .transform(m -> measure(url, m, written::get));
+        });
+    }
+
+    // ++=============** helpers **=============++
+
+    /**
+     * 写入 target 同目录下的临时文件，成功后替换 target；失败或取消时删除临时文件
+     */
+    private static Mono<Void> writeAtomically(Flux<DataBuffer> body, Path target) {
+        return Mono.fromCallable(() -> {
+                    Path dir = target.toAbsolutePath().getParent();
+                    Files.createDirectories(dir);
+                    return Files.createTempFile(dir, target.getFileName().toString(), ".part");
+                })
+                .flatMap(tmp -> Mono.using(
+                                () -> AsynchronousFileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING),
+                                channel -> DataBufferUtils.write(body, channel)
+                                        .doOnNext(DataBufferUtils::release)
+                                        .then(),
+                                channel -> {
+                                    try {
+                                        channel.close();
+                                    } catch (IOException ignored) {
+                                    }
+                                })
+                        .then(Mono.fromCallable(() -> Files.move(tmp, target,
+                                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)))
+                        // 在错误传给下游之前删除，调用方拿到异常时临时文件已不存在
+                        .doOnError(e -> deleteQuietly(tmp))
+                        .doOnCancel(() -> deleteQuietly(tmp)))
+                .then();
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.debug("[adapter.http] failed to delete partial download {}", file, e);
+        }
+    }
+
+    private <T> Mono<T> measure(String url, Mono<T> download, LongSupplier bytes) {
+        String host = host(url);
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return download.doFinally(signal -> {
+                long elapsed = System.nanoTime() - start;
+                String outcome = switch (signal) {
+                    case ON_COMPLETE -> "success";
+                    case CANCEL -> "cancelled";
+                    default -> "error";
+                };
+                Timer.builder("solabot.http.download.latency")
+                        .tag("host", host)
+                        .tag("outcome", outcome)
+                        .register(meterRegistry)
+                        .record(elapsed, TimeUnit.NANOSECONDS);
+                if (signal != SignalType.ON_COMPLETE) return;
+                long n = bytes.getAsLong();
+                DistributionSummary.builder("solabot.http.download.bytes")
+                        .baseUnit("bytes")
+                        .tag("host", host)
+                        .register(meterRegistry)
+                        .record(n);
+                if (elapsed > 0) {
+                    DistributionSummary.builder("solabot.http.download.throughput")
+                            .baseUnit("bytes/s")
+                            .tag("host", host)
+                            .register(meterRegistry)
+                            .record(n * 1e9 / elapsed);
+                }
+            });
+        });
+    }
+
+    private static String host(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host == null ? "unknown" : host;
+        } catch (IllegalArgumentException e) {
+            return "unknown";
+        }
+    }
+
+    private static IOException tooLarge(long size, long limit) {
+        return new IOException("download exceeds limit: " + size + " > " + limit + " bytes");
+    }
+
+    /**
+     * 带字节上限的下载缓冲：直接持有按 Content-Length 预分配的数组，长度恰好吻合时无需再复制；
+     * 在尺寸确定前每收到一块数据都对已有前缀做一次文件头探测
+     */
+    private static final class BoundedSink {
+        private final long limit;
+        private final Consumer<ImageProbe.Info> headerCheck;
+        private byte[] buf;
+        private volatile int size;
+        private boolean probed;
+
+        BoundedSink(long limit, Consumer<ImageProbe.Info> headerCheck) {
+            this.limit = limit;
+            this.headerCheck = headerCheck;
+            this.probed = headerCheck == null;
+        }
+
+        void presize(long declared) {
+            if (buf == null) buf = new byte[declared > 0 ? (int) declared : 64 * 1024];
+        }
+
+        void write(DataBuffer chunk) {
+            int n = chunk.readableByteCount();
+            if (size + (long) n > limit) throw new UncheckedIOException(tooLarge(size + (long) n, limit));
+            presize(-1);
+            if (size + n > buf.length) buf = Arrays.copyOf(buf, (int) Math.min(limit, Math.max(size + n, 2L * buf.length)));
+            chunk.read(buf, size, n);
+            size += n;
+            if (!probed) {
+                ImageProbe.Info info = ImageProbe.probe(buf, size);
+                // 格式在前 12 字节即可确定；尺寸出现或前缀已足够长时做一次检查，此后不再探测
+                if (size >= 12 && !info.isKnown() || info.hasSize() || size >= ImageProbe.MAX_HEADER_BYTES) {
+                    probed = true;
+                    headerCheck.accept(info);
+                }
+            }
+        }
+
+        byte[] toByteArray() {
+            if (buf == null) return new byte[0];
+            return size == buf.length ? buf : Arrays.copyOf(buf, size);
+        }
+    }
+}
@@ -1,34 +1,85 @@
 package com.arth.solabot.adapter.fetcher.websocket;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * action 请求与回包的配对器：
+ * - echo 由自增计数器生成，短小且进程内唯一，同一会话可同时有任意多个请求在途
+ * - 超时由共享的时间轮统一调度，不占用 CompletableFuture 的公共 delayer 线程
+ * - future 无论以回包、超时还是取消结束，都会从 pending 中移除；迟到或重复的回包不会再创建条目
+ */
 @Slf4j
 @Component
 public class EchoWaiter {
+
+    private static final String ECHO_PREFIX = "sb-";
+
+    private final AtomicLong seq = new AtomicLong();
     private final ConcurrentHashMap<String, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
 
-    /** 可反复调用；若已存在则复用旧 future，避免回包先到的竞态 **/
-    public void register(String echo) {
-        pending.computeIfAbsent(echo, k -> new CompletableFuture<>());
+    /* 时间轮：tick 50ms，超时精度对 get_msg 这类秒级等待足够 */
+    private final HashedWheelTimer timer = new HashedWheelTimer(
+            Thread.ofPlatform().name("echo-timeout").daemon().factory(), 50, TimeUnit.MILLISECONDS, 512);
+
+    public EchoWaiter(MeterRegistry meterRegistry) {
+        Gauge.builder("solabot.echo.pending", pending, ConcurrentHashMap::size).register(meterRegistry);
     }
 
-    /** 控制器收到回包时调用 **/
-    public boolean complete(String echo, String rawJson) {
-        var fut = pending.computeIfAbsent(echo, k -> new CompletableFuture<>());
-        boolean ok = fut.complete(rawJson);
-        return ok;
+    @PreDestroy
+    void shutdown() {
+        timer.stop();
+        pending.values().forEach(f -> f.cancel(false));
+    }
+
+    /**
+     * 生成一个新的 echo
+     */
+    public String nextEcho() {
+        return ECHO_PREFIX + Long.toString(seq.incrementAndGet(), 36);
     }
 
-    /** 发送端等待回包（带超时）；返回原始 JSON 字符串 **/
-    public String await(String echo, long timeoutMillis) {
-        var fut = pending.computeIfAbsent(echo, k -> new CompletableFuture<>());
-        try {
-            return fut.orTimeout(timeoutMillis, java.util.concurrent.TimeUnit.MILLISECONDS).join();
-        } finally {
-            pending.remove(echo);
+    /**
+     * 登记等待回包，须在发出请求之前调用
+     *
+     * @param echo          由 nextEcho 生成的 echo
+     * @param timeoutMillis 超时时间，到期后 future 以 TimeoutException 异常结束
+     * @return 以原始回包 JSON 字符串完成的 future
+     */
+    public CompletableFuture<String> register(String echo, long timeoutMillis) {
+        CompletableFuture<String> fut = new CompletableFuture<>();
+        if (pending.putIfAbsent(echo, fut) != null) {
+            throw new IllegalStateException("duplicate echo: " + echo);
+        }
+        Timeout timeout = timer.newTimeout(
+                t -> fut.completeExceptionally(new TimeoutException("no response for echo " + echo + " in " + timeoutMillis + " ms")),
+                timeoutMillis, TimeUnit.MILLISECONDS);
+        fut.whenComplete((r, e) -> {
+            pending.remove(echo, fut);
+            timeout.cancel();
+        });
+        return fut;
+    }
+
+    /**
+     * 控制器收到回包时调用
+     *
+     * @return 是否有对应的等待者；迟到（已超时）或非本进程发起的回包返回 false
+     */
+    public boolean complete(String echo, String rawJson) {
+        CompletableFuture<String> fut = pending.remove(echo);
+        if (fut == null) {
+            log.debug("[adapter.fetcher] no pending request for echo: {}", echo);
+            return false;
         }
+        return fut.complete(rawJson);
     }
 }
@@ -1,7 +1,10 @@
 package com.arth.solabot.adapter.fetcher.websocket;
 
+import com.arth.solabot.core.bot.dto.ParsedPayloadDTO;
 import com.arth.solabot.core.bot.dto.ReplayedMessagePayloadDTO;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface ReplyFetcher {
 
     /**
@@ -12,4 +15,21 @@ public interface ReplyFetcher {
      * @return
      */
     ReplayedMessagePayloadDTO fetch(long selfId, long messageId);
+
+    /**
+     * 异步获取当前消息所引用的消息，不阻塞调用线程
+     *
+     * @param selfId
+     * @param messageId
+     * @return
+     */
+    CompletableFuture<ReplayedMessagePayloadDTO> fetchAsync(long selfId, long messageId);
+
+    /**
+     * 记住一条已解析的入站消息，之后引用它时可免去一次 get_msg 请求
+     *
+     * @param payload
+     */
+    default void remember(ParsedPayloadDTO payload) {
+    }
 }
\ No newline at end of file
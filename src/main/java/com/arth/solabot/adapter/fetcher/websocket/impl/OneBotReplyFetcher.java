@@ -3,29 +3,106 @@ package com.arth.solabot.adapter.fetcher.websocket.impl;
 import com.arth.solabot.adapter.fetcher.websocket.ReplyFetcher;
 import com.arth.solabot.adapter.sender.Sender;
 import com.arth.solabot.adapter.utils.CQUtils;
+import com.arth.solabot.core.bot.dto.ParsedPayloadDTO;
 import com.arth.solabot.core.bot.dto.ReplayedMessagePayloadDTO;
+import com.arth.solabot.core.bot.dto.message.ImageSegment;
+import com.arth.solabot.core.bot.dto.message.MessageSegment;
+import com.arth.solabot.core.bot.dto.message.MfaceSegment;
+import com.arth.solabot.core.bot.dto.message.TextSegment;
 import com.arth.solabot.core.bot.dto.replay.*;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import lombok.RequiredArgsConstructor;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 通过 get_msg 获取引用消息，结果按 (self_id, message_id) 缓存：
+ * - 有界 + 写入后定时过期，多个图片命令连续引用同一条消息时只请求一次
+ * - 同一消息的并发获取合并为同一个在途请求（single-flight），失败结果不入缓存
+ * - 已解析过的入站图片消息会被提前放入缓存
+ * - 命中率通过 cache.gets{cache=reply} 等指标暴露
+ */
+@Slf4j
 @Component
-@RequiredArgsConstructor
 public class OneBotReplyFetcher implements ReplyFetcher {
 
     private final Sender sender;
     private final ObjectMapper objectMapper;
+    private final AsyncCache<ReplyKey, ReplayedMessagePayloadDTO> cache;
+
+    private static final Duration GET_MSG_TIMEOUT = Duration.ofSeconds(5);
+
+    public OneBotReplyFetcher(Sender sender,
+                              ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.parameter.cache.reply.max-size:2048}") long maxSize,
+                              @Value("${app.parameter.cache.reply.ttl:10}") long ttlMinutes) {
+        this.sender = sender;
+        this.objectMapper = objectMapper;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "reply");
+    }
 
     public ReplayedMessagePayloadDTO fetch(long selfId, long messageId) {
-        ObjectNode params = objectMapper.createObjectNode().put("message_id", messageId);
-        JsonNode resp = sender.request(selfId, "get_msg", params, java.time.Duration.ofSeconds(5));
+        try {
+            return fetchAsync(selfId, messageId).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new RuntimeException("get_msg failed/timeout", e.getCause());
+        }
+    }
+
+    public CompletableFuture<ReplayedMessagePayloadDTO> fetchAsync(long selfId, long messageId) {
+        return cache.get(new ReplyKey(selfId, messageId), (key, executor) -> {
+            ObjectNode params = objectMapper.createObjectNode().put("message_id", messageId);
+            return sender.requestAsync(selfId, "get_msg", params, GET_MSG_TIMEOUT).thenApply(this::toDTO);
+        });
+    }
 
+    /**
+     * 仅缓存带图片 / 表情包的消息：引用消息的主要使用者是图片命令
+     * - 直接由解码时已得到的 segments 构建，不再解析原始报文（WS 读线程上也会调用）
+     * - segments 只保留图片 / 表情的 url 与图片 md5，语音、视频段及其余元数据不在其中；图片命令只用到前者
+     */
+    @Override
+    public void remember(ParsedPayloadDTO payload) {
+        if (payload == null || payload.getMessageId() == 0 || !hasMedia(payload)) return;
+        ReplyKey key = new ReplyKey(payload.getSelfId(), payload.getMessageId());
+        if (cache.getIfPresent(key) != null) return;
+        cache.put(key, CompletableFuture.completedFuture(toDTOFromSegments(payload)));
+    }
+
+    private static boolean hasMedia(ParsedPayloadDTO payload) {
+        if (payload.getSegments() == null) return false;
+        for (MessageSegment seg : payload.getSegments()) {
+            if (seg instanceof ImageSegment || seg instanceof MfaceSegment) return true;
+        }
+        return false;
+    }
+
+    private ReplayedMessagePayloadDTO toDTO(JsonNode resp) {
         if (!"ok".equals(resp.path("status").asText()) || !resp.has("data")) {
             throw new RuntimeException("get_msg failed: " + resp.toString());
         }
-        JsonNode data = resp.path("data");
+        return toDTOFromData(resp.path("data"));
+    }
+
+    private ReplayedMessagePayloadDTO toDTOFromData(JsonNode data) {
 
         ReplayedMessagePayloadDTO dto = new ReplayedMessagePayloadDTO();
         dto.setMessageId(data.path("message_id").asLong(0));
@@ -53,6 +130,30 @@ public class OneBotReplyFetcher implements ReplyFetcher {
         return dto;
     }
 
+    private static ReplayedMessagePayloadDTO toDTOFromSegments(ParsedPayloadDTO payload) {
+        ReplayedMessagePayloadDTO dto = new ReplayedMessagePayloadDTO();
+        dto.setMessageId(payload.getMessageId());
+        dto.setUserId(payload.getUserId());
+        dto.setGroupId(payload.getGroupId() != null ? payload.getGroupId() : 0L);
+        dto.setTimeEpochSec(payload.getTime());
+        dto.setRawMessage(payload.getRawText() != null ? payload.getRawText() : "");
+
+        for (MessageSegment seg : payload.getSegments()) {
+            Map<String, String> d = seg.getData();
+            switch (seg) {
+                case TextSegment t -> dto.addText(d.get("text"));
+                case ImageSegment i -> dto.addImage(SegmentMappers.toImageRef(d));
+                case MfaceSegment m -> dto.addMface(SegmentMappers.toMfaceRef(d));
+                default -> {
+                }
+            }
+        }
+        return dto;
+    }
+
+    private record ReplyKey(long selfId, long messageId) {
+    }
+
     // 段映射
     static final class SegmentMappers {
 
@@ -70,6 +171,24 @@ public class OneBotReplyFetcher implements ReplyFetcher {
             return r;
         }
 
+        /* 由 ImageSegment 构建：解码时 url 缺失已回退为 file，按协议前缀区分来源 */
+        static ImageRef toImageRef(Map<String, String> d) {
+            String src = d.getOrDefault("url", "");
+            ImageRef r = new ImageRef();
+            boolean url = src.regionMatches(true, 0, "http://", 0, 7) || src.regionMatches(true, 0, "https://", 0, 8);
+            r.setSourceType(url ? MediaSourceType.URL : MediaSourceType.FILE_ID);
+            r.setSource(src);
+            r.setMd5(d.get("md5"));
+            return r;
+        }
+
+        static MfaceRef toMfaceRef(Map<String, String> d) {
+            MfaceRef r = new MfaceRef();
+            String url = d.get("url");
+            r.setUrl(notBlank(url) ? url : null);
+            return r;
+        }
+
         static MfaceRef toMfaceRef(JsonNode d) {
             MfaceRef r = new MfaceRef();
             r.setUrl(textOrNull(d, "url"));
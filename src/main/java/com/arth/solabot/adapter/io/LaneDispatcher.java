@@ -0,0 +1,252 @@
+package com.arth.solabot.adapter.io;
+
+import com.arth.solabot.core.bot.dto.ParsedPayloadDTO;
+import io.micrometer.core.instrument.*;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按会话分道的命令派发器：
+ * - 以 (self_id, group_id / user_id) 为键，每个键对应一条有界、保序的 lane
+ * - 所有 lane 共享同一个工作线程池，每条 lane 同一时刻至多占用一个工作线程
+ * - lane 溢出时按配置丢弃最新消息（drop-newest）或挤掉最旧消息（drop-oldest，即合并为最近的请求）
+ * - 工作池饱和拒绝 drain 任务时保留 lane 中的积压，稍后重试提交；期间 lane 仍按容量与溢出策略只丢弃超出的部分
+ * - 任何情况下都不会回退到 ws 读线程执行命令，避免一个群的刷屏阻塞整条连接
+ * - 丢弃不逐条打日志，按 lane 累计后每 REPORT_INTERVAL 汇总输出一次
+ */
+@Slf4j
+@Component
+public class LaneDispatcher {
+
+    public enum OverflowPolicy {
+        DROP_NEWEST,
+        DROP_OLDEST
+    }
+
+    private final ExecutorService executorService;
+    private final MeterRegistry meterRegistry;
+    private final TaskScheduler taskScheduler;
+
+    /* 单条 lane 的最大排队数 */
+    private final int laneCapacity;
+    /* 单条 lane 连续执行的最大任务数，超过后让出工作线程给其他 lane */
+    private final int drainBatch;
+    private final OverflowPolicy overflowPolicy;
+
+    /* 工作池拒绝后重新提交 drain 任务的延迟 */
+    private static final Duration RESUBMIT_DELAY = Duration.ofMillis(50);
+    /* 丢弃汇总日志的间隔 */
+    private static final Duration REPORT_INTERVAL = Duration.ofSeconds(30);
+
+    private final ConcurrentHashMap<LaneKey, Lane> lanes = new ConcurrentHashMap<>();
+
+    /* 上次汇总以来各 lane 的丢弃数与工作池拒绝次数 */
+    private final ConcurrentHashMap<LaneKey, LongAdder> droppedSinceReport = new ConcurrentHashMap<>();
+    private final LongAdder rejectedSinceReport = new LongAdder();
+
+    private Counter acceptedCounter;
+    private Counter droppedCounter;
+    private Counter rejectedCounter;
+    private MultiGauge laneDepthGauge;
+
+    public LaneDispatcher(ExecutorService executorService,
+                          MeterRegistry meterRegistry,
+                          TaskScheduler taskScheduler,
+                          @Value("${app.parameter.dispatch.lane-capacity:64}") int laneCapacity,
+                          @Value("${app.parameter.dispatch.drain-batch:16}") int drainBatch,
+                          @Value("${app.parameter.dispatch.overflow-policy:drop-oldest}") String overflowPolicy) {
+        this.executorService = executorService;
+        this.meterRegistry = meterRegistry;
+        this.taskScheduler = taskScheduler;
+        this.laneCapacity = Math.max(1, laneCapacity);
+        this.drainBatch = Math.max(1, drainBatch);
+        this.overflowPolicy = OverflowPolicy.valueOf(overflowPolicy.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+
+    @PostConstruct
+    void init() {
+        acceptedCounter = meterRegistry.counter("solabot.dispatch.accepted");
+        droppedCounter = meterRegistry.counter("solabot.dispatch.dropped", "policy", overflowPolicy.name().toLowerCase(Locale.ROOT));
+        rejectedCounter = meterRegistry.counter("solabot.dispatch.rejected");
+        Gauge.builder("solabot.dispatch.lanes", lanes, Map::size).register(meterRegistry);
+        Gauge.builder("solabot.dispatch.queued", this, LaneDispatcher::totalQueued).register(meterRegistry);
+        laneDepthGauge = MultiGauge.builder("solabot.dispatch.lane.depth").register(meterRegistry);
+        // lane 随消息动态创建与回收，定期刷新 per-lane 深度
+        taskScheduler.scheduleAtFixedRate(this::refreshLaneDepthGauge, Duration.ofSeconds(5));
+        taskScheduler.scheduleAtFixedRate(this::reportDropped, REPORT_INTERVAL);
+        log.info("[adapter.io] lane dispatcher ready, capacity: {}, drain batch: {}, overflow policy: {}",
+                laneCapacity, drainBatch, overflowPolicy);
+    }
+
+    /**
+     * 将消息对应的命令任务投递到所属 lane
+     *
+     * @param payload 用于计算 lane 键
+     * @param task    命令任务
+     * @return 是否被接收（drop-newest 策略下溢出时返回 false）
+     */
+    public boolean dispatch(ParsedPayloadDTO payload, Runnable task) {
+        LaneKey key = LaneKey.of(payload);
+        while (true) {
+            Lane lane = lanes.computeIfAbsent(key, Lane::new);
+            boolean schedule;
+            synchronized (lane) {
+                // lane 已被回收（刚好排空），重新获取
+                if (lane.retired) continue;
+
+                if (lane.queue.size() >= laneCapacity) {
+                    recordDropped(key, 1);
+                    if (overflowPolicy == OverflowPolicy.DROP_NEWEST) return false;
+                    lane.queue.pollFirst();
+                }
+                lane.queue.addLast(task);
+                schedule = !lane.running;
+                if (schedule) lane.running = true;
+            }
+            acceptedCounter.increment();
+            if (schedule) submit(lane);
+            return true;
+        }
+    }
+
+    /**
+     * 当前各 lane 的排队深度快照
+     */
+    public Map<String, Integer> laneDepths() {
+        Map<String, Integer> out = new HashMap<>();
+        for (Lane lane : lanes.values()) {
+            synchronized (lane) {
+                out.put(lane.key.toString(), lane.queue.size());
+            }
+        }
+        return out;
+    }
+
+    // ++=============** helpers **=============++
+
+    private void submit(Lane lane) {
+        try {
+            executorService.execute(() -> drain(lane));
+        } catch (RejectedExecutionException e) {
+            if (executorService.isShutdown()) {
+                // 应用关闭中，积压已无法执行
+                int shed;
+                synchronized (lane) {
+                    shed = lane.queue.size();
+                    lane.queue.clear();
+                    retire(lane);
+                }
+                recordDropped(lane.key, shed);
+                return;
+            }
+            // 工作池已饱和：lane 保持 running，积压留在队列中稍后重试，新消息照常入队、只有超出容量的部分被丢弃；
+            // 绝不回退到调用线程（即 ws 读线程）
+            rejectedCounter.increment();
+            rejectedSinceReport.increment();
+            taskScheduler.schedule(() -> submit(lane), Instant.now().plus(RESUBMIT_DELAY));
+        }
+    }
+
+    private void recordDropped(LaneKey key, int n) {
+        if (n <= 0) return;
+        droppedCounter.increment(n);
+        droppedSinceReport.computeIfAbsent(key, k -> new LongAdder()).add(n);
+    }
+
+    private void reportDropped() {
+        long rejected = rejectedSinceReport.sumThenReset();
+        if (droppedSinceReport.isEmpty() && rejected == 0) return;
+        Map<String, Long> dropped = new TreeMap<>();
+        long total = 0;
+        for (LaneKey key : List.copyOf(droppedSinceReport.keySet())) {
+            LongAdder adder = droppedSinceReport.remove(key);
+            if (adder == null) continue;
+            long n = adder.sum();
+            dropped.put(key.toString(), n);
+            total += n;
+        }
+        log.warn("[adapter.io] last {}s: {} messages dropped by lane overflow {}, {} drain submissions rejected by saturated worker pool",
+                REPORT_INTERVAL.toSeconds(), total, dropped, rejected);
+    }
+
+    private void drain(Lane lane) {
+        for (int i = 0; i < drainBatch; i++) {
+            Runnable task;
+            synchronized (lane) {
+                task = lane.queue.pollFirst();
+                if (task == null) {
+                    retire(lane);
+                    return;
+                }
+            }
+            try {
+                task.run();
+            } catch (Throwable t) {
+                log.error("[adapter.io] lane {} task failed", lane.key, t);
+            }
+        }
+        // 本轮额度用尽，重新排队以让出工作线程，保证各 lane 之间的公平性
+        submit(lane);
+    }
+
+    /* 须持有 lane 锁 */
+    private void retire(Lane lane) {
+        lane.running = false;
+        lane.retired = true;
+        lanes.remove(lane.key, lane);
+    }
+
+    private int totalQueued() {
+        int sum = 0;
+        for (Lane lane : lanes.values()) {
+            synchronized (lane) {
+                sum += lane.queue.size();
+            }
+        }
+        return sum;
+    }
+
+    private void refreshLaneDepthGauge() {
+        List<MultiGauge.Row<?>> rows = new ArrayList<>();
+        laneDepths().forEach((lane, depth) -> rows.add(MultiGauge.Row.of(Tags.of("lane", lane), depth)));
+        laneDepthGauge.register(rows, true);
+    }
+
+    /* ============== lane ============== */
+
+    private record LaneKey(long selfId, boolean group, long targetId) {
+
+        static LaneKey of(ParsedPayloadDTO payload) {
+            return payload.getGroupId() != null
+                    ? new LaneKey(payload.getSelfId(), true, payload.getGroupId())
+                    : new LaneKey(payload.getSelfId(), false, payload.getUserId());
+        }
+
+        @Override
+        public String toString() {
+            return selfId + (group ? ":g:" : ":u:") + targetId;
+        }
+    }
+
+    private static final class Lane {
+        final LaneKey key;
+        final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+        boolean running;  // 是否已有 drain 任务在池中排队或执行
+        boolean retired;  // 是否已从 lanes 中移除
+
+        Lane(LaneKey key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.arth.solabot.adapter.io;
+
+import io.micrometer.core.instrument.*;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 按 ws 会话划分的出站写入器：
+ * - 每个会话一条有界队列，仅由一个写任务消费，命令线程只负责入队
+ * - 队列元素是整条 action JSON，分片在写任务内连续发出，不同消息的分片不会交错
+ * - 队列满时生产者最多阻塞 offer-timeout-ms（背压），超时或会话已关闭时立即抛出 IOException
+ * - 底层会话包装为 ConcurrentWebSocketSessionDecorator，发送耗时与缓冲超限时关闭会话
+ */
+@Slf4j
+@Component
+public class OutboundWriter {
+
+    private final MeterRegistry meterRegistry;
+    private final int queueCapacity;
+    private final long offerTimeoutMs;
+    private final int sendTimeLimitMs;
+    private final int bufferSizeLimit;
+
+    /* 写任务线程池，每个会话同一时刻至多占用一个线程 */
+    private final ExecutorService writerPool =
+            Executors.newCachedThreadPool(Thread.ofPlatform().name("ws-writer-", 0).daemon().factory());
+
+    /* session id -> 出站队列 */
+    private final ConcurrentHashMap<String, Outbox> outboxes = new ConcurrentHashMap<>();
+
+    private Timer sendLatency;
+    private Counter droppedCounter;
+
+    public OutboundWriter(MeterRegistry meterRegistry,
+                          @Value("${app.parameter.outbound.queue-capacity:256}") int queueCapacity,
+                          @Value("${app.parameter.outbound.offer-timeout-ms:3000}") long offerTimeoutMs,
+                          @Value("${app.parameter.outbound.send-time-limit-ms:10000}") int sendTimeLimitMs,
+                          @Value("${app.parameter.outbound.buffer-size-limit:8388608}") int bufferSizeLimit) {
+        this.meterRegistry = meterRegistry;
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.offerTimeoutMs = Math.max(0, offerTimeoutMs);
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.bufferSizeLimit = bufferSizeLimit;
+    }
+
+    @PostConstruct
+    void init() {
+        // 入队到最后一个分片发出的耗时，包含排队时间
+        sendLatency = Timer.builder("solabot.outbound.send.latency")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        droppedCounter = meterRegistry.counter("solabot.outbound.dropped");
+        Gauge.builder("solabot.outbound.queued", this, OutboundWriter::totalQueued).register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        outboxes.values().forEach(Outbox::close);
+        writerPool.shutdownNow();
+    }
+
+    /**
+     * 为会话创建出站队列（幂等）
+     *
+     * @return 线程安全的会话包装，应以此替代原始会话登记到 SessionRegistry
+     */
+    public WebSocketSession attach(WebSocketSession session) {
+        Outbox box = outboxes.computeIfAbsent(session.getId(), k -> new Outbox(session));
+        // 与 detach 并发、会话已关闭时，立即回收刚建出的队列
+        if (!session.isOpen()) detach(session);
+        return box.session;
+    }
+
+    /**
+     * 会话关闭时调用，丢弃尚未发出的消息
+     */
+    public void detach(WebSocketSession session) {
+        Outbox box = outboxes.remove(session.getId());
+        if (box != null) box.close();
+    }
+
+    /**
+     * 将一条完整消息放入会话的出站队列，按 chunkSize 分片后由写任务连续发出
+     *
+     * @param session   须已经过 attach
+     * @param chunkSize 分片大小，以字符数为单位
+     * @throws IOException 会话已关闭或未 attach、队列在等待时限内仍满或等待被中断
+     */
+    public void send(WebSocketSession session, String json, int chunkSize) throws IOException {
+        if (!session.isOpen()) throw new IOException("session " + session.getId() + " is closed");
+        // 出站队列只由 attach 创建：detach 之后与关闭并发的发送不会再建出一个无人关闭的队列
+        Outbox box = outboxes.get(session.getId());
+        if (box == null || box.closed) throw new IOException("session " + session.getId() + " is closed or not attached");
+
+        Outbound item = new Outbound(json, Math.max(1, chunkSize), System.nanoTime());
+        try {
+            if (!box.queue.offer(item, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                droppedCounter.increment();
+                throw new IOException("outbound queue of session " + session.getId() + " is full (" + queueCapacity + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for outbound queue");
+        }
+        // 入队与关闭并发时，保证不会把消息留在已关闭的队列里
+        if (box.closed && box.queue.remove(item)) {
+            throw new IOException("session " + session.getId() + " is closed");
+        }
+        box.schedule();
+    }
+
+    // ++=============** helpers **=============++
+
+    private int totalQueued() {
+        int sum = 0;
+        for (Outbox box : outboxes.values()) sum += box.queue.size();
+        return sum;
+    }
+
+    private record Outbound(String json, int chunkSize, long enqueuedAt) {
+    }
+
+    private final class Outbox {
+        final ConcurrentWebSocketSessionDecorator session;
+        final LinkedBlockingQueue<Outbound> queue = new LinkedBlockingQueue<>(queueCapacity);
+        final AtomicBoolean running = new AtomicBoolean();
+        final Gauge depthGauge;
+        volatile boolean closed;
+
+        Outbox(WebSocketSession raw) {
+            this.session = raw instanceof ConcurrentWebSocketSessionDecorator d
+                    ? d
+                    : new ConcurrentWebSocketSessionDecorator(raw, sendTimeLimitMs, bufferSizeLimit);
+            this.depthGauge = Gauge.builder("solabot.outbound.depth", queue, LinkedBlockingQueue::size)
+                    .tag("session", raw.getId())
+                    .register(meterRegistry);
+        }
+
+        void schedule() {
+            if (closed || !running.compareAndSet(false, true)) return;
+            try {
+                writerPool.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                running.set(false);
+                close();
+            }
+        }
+
+        void drain() {
+            try {
+                Outbound item;
+                while (!closed && (item = queue.poll()) != null) write(item);
+            } finally {
+                running.set(false);
+                // 释放 running 之后再检查一次，避免与入队竞争导致消息滞留
+                if (!closed && !queue.isEmpty()) schedule();
+            }
+        }
+
+        void write(Outbound item) {
+            String json = item.json();
+            int length = json.length();
+            try {
+                for (int offset = 0; offset < length; ) {
+                    int end = Math.min(length, offset + item.chunkSize());
+                    if (end < length && Character.isHighSurrogate(json.charAt(end - 1))) end--;
+                    boolean isLast = (end == length);
+                    session.sendMessage(new TextMessage(json.substring(offset, end), isLast));
+                    offset = end;
+                }
+                sendLatency.record(System.nanoTime() - item.enqueuedAt(), TimeUnit.NANOSECONDS);
+            } catch (Exception e) {
+                // 分片中途失败后该连接上的帧序列已不可信，直接关闭
+                log.warn("[adapter.io] outbound write failed, closing session {}", session.getId(), e);
+                droppedCounter.increment();
+                close();
+                try {
+                    session.close(CloseStatus.SESSION_NOT_RELIABLE);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        synchronized void close() {
+            if (closed) return;
+            closed = true;
+            int dropped = queue.size();
+            queue.clear();
+            if (dropped > 0) {
+                droppedCounter.increment(dropped);
+                log.warn("[adapter.io] session {} closed, {} outbound messages dropped", session.getId(), dropped);
+            }
+            meterRegistry.remove(depthGauge);
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package com.arth.solabot.adapter.parser;
+
+import com.arth.solabot.plugin.system.DefaultStrategy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 解码前的命令前置过滤器：
+ * 群聊中绝大多数消息不是 '/' 命令，最终只会落到 DefaultStrategy.defaultHandle。
+ * 本过滤器直接在原始报文字符上做一次结构扫描（不做 JSON 解析、不分配对象），
+ * 找到 post_type、echo 与 message 中首个非空白的文本字符，据此提前丢弃非命令消息。
+ * - array 模式：按段顺序取首个 text 段中的首个非空白字符，其余段（at / reply / image 等）忽略
+ * - string (CQ) 模式：与 OneBotPayloadParser 相同，先剥掉行首的 [CQ:reply] / [CQ:at]，再取首个非空白字符
+ * - 遇到转义字符、报文格式异常或无法判断时一律放行，交由完整解码处理
+ * - bot 自身发出的消息（message_sent）一律放行，其中的图片常被后续命令引用，需要经完整解码进入引用消息缓存
+ * - 带图片 / 商城表情的普通消息同样常被引用（如回复一张图发 /img l），判为 REMEMBER：
+ * 仍需完整解码以写入引用消息缓存，但不再打印日志、不进入 lane 派发与命令解析
+ * - DefaultStrategy.wantsNonCommandMessages() 返回 true 时整体停用，非命令消息照常下发
+ */
+@Component
+public class CommandPrefilter {
+
+    /**
+     * 过滤结果
+     */
+    public enum Decision {
+        /* 照常解码与派发 */
+        PASS,
+        /* 解码前丢弃 */
+        DROP,
+        /* 非命令但带图片 / 表情：解码后只写入引用消息缓存 */
+        REMEMBER
+    }
+
+    private static final int UNKNOWN = 0;
+    private static final int COMMAND = 1;
+    private static final int NON_COMMAND = 2;
+    private static final int NON_COMMAND_MEDIA = 3;
+
+    /* 首字符扫描的特殊返回值 */
+    private static final int ALL_BLANK = -1;
+    private static final int ESCAPED = -2;
+
+    private final DefaultStrategy defaultStrategy;
+    private final boolean enabled;
+    private final Counter droppedCounter;
+    private final Counter rememberCounter;
+
+    public CommandPrefilter(DefaultStrategy defaultStrategy,
+                            MeterRegistry meterRegistry,
+                            @Value("${app.parameter.dispatch.prefilter:true}") boolean enabled) {
+        this.defaultStrategy = defaultStrategy;
+        this.enabled = enabled;
+        this.droppedCounter = meterRegistry.counter("solabot.prefilter.dropped");
+        this.rememberCounter = meterRegistry.counter("solabot.prefilter.remember");
+    }
+
+    /**
+     * 判断该帧的处理方式
+     *
+     * @param raw 完整的原始报文
+     * @return echo 响应、非消息事件、命令及无法判断的报文均为 PASS
+     */
+    public Decision decide(String raw) {
+        if (!enabled || defaultStrategy.wantsNonCommandMessages()) return Decision.PASS;
+        switch (classify(raw)) {
+            case NON_COMMAND -> {
+                droppedCounter.increment();
+                return Decision.DROP;
+            }
+            case NON_COMMAND_MEDIA -> {
+                rememberCounter.increment();
+                return Decision.REMEMBER;
+            }
+            default -> {
+                return Decision.PASS;
+            }
+        }
+    }
+
+    // ++=============** helpers **=============++
+
+    /**
+     * 扫描顶层字段，仅当 post_type 为 message 且 message 确定不是命令时返回 NON_COMMAND / NON_COMMAND_MEDIA
+     */
+    static int classify(String s) {
+        int n = s.length();
+        int i = skipWs(s, 0);
+        if (i >= n || s.charAt(i) != '{') return UNKNOWN;
+        i++;
+
+        boolean postTypeSeen = false;
+        int verdict = UNKNOWN;
+        while (true) {
+            i = skipWs(s, i);
+            if (i >= n) return UNKNOWN;
+            char c = s.charAt(i);
+            if (c == '}') break;
+            if (c == ',') {
+                i++;
+                continue;
+            }
+            if (c != '"') return UNKNOWN;
+
+            int keyStart = i + 1;
+            int keyEnd = skipString(s, i);  // 闭合引号之后
+            if (keyEnd < 0) return UNKNOWN;
+            int keyLen = keyEnd - 1 - keyStart;
+            i = skipWs(s, keyEnd);
+            if (i >= n || s.charAt(i) != ':') return UNKNOWN;
+            i = skipWs(s, i + 1);
+            if (i >= n) return UNKNOWN;
+
+            if (is(s, keyStart, keyLen, "echo")) {
+                return UNKNOWN;  // action 响应，必须交给 EchoWaiter
+            } else if (is(s, keyStart, keyLen, "post_type")) {
+                if (s.charAt(i) != '"') return UNKNOWN;
+                int end = skipString(s, i);
+                if (end < 0) return UNKNOWN;
+                int len = end - 1 - (i + 1);
+                if (!is(s, i + 1, len, "message")) return UNKNOWN;
+                postTypeSeen = true;
+                i = end;
+            } else if (is(s, keyStart, keyLen, "message")) {
+                char v = s.charAt(i);
+                if (v == '[') verdict = scanSegments(s, i);
+                else if (v == '"') verdict = scanCq(s, i);
+                if (verdict == UNKNOWN) return UNKNOWN;
+                i = skipValue(s, i);
+            } else {
+                i = skipValue(s, i);
+            }
+            if (i < 0) return UNKNOWN;
+            if (postTypeSeen && verdict != UNKNOWN) return verdict;
+        }
+        return postTypeSeen ? verdict : UNKNOWN;
+    }
+
+    /**
+     * array 模式：i 指向 '['，按段顺序寻找首个含非空白字符的 text 段；确定不是命令后继续扫描剩余段是否带图片 / 表情
+     */
+    private static int scanSegments(String s, int i) {
+        int n = s.length();
+        int verdict = UNKNOWN;
+        boolean media = false;
+        i++;
+        while (true) {
+            i = skipWs(s, i);
+            if (i >= n) return UNKNOWN;
+            char c = s.charAt(i);
+            if (c == ']') {
+                // 无任何文本时命令文本为空
+                return media ? NON_COMMAND_MEDIA : NON_COMMAND;
+            }
+            if (c == ',') {
+                i++;
+                continue;
+            }
+            if (c != '{') return UNKNOWN;
+
+            // 段内 type 与 data 顺序不定
+            boolean isText = false;
+            boolean isMedia = false;
+            int first = ALL_BLANK;
+            i++;
+            while (true) {
+                i = skipWs(s, i);
+                if (i >= n) return UNKNOWN;
+                c = s.charAt(i);
+                if (c == '}') {
+                    i++;
+                    break;
+                }
+                if (c == ',') {
+                    i++;
+                    continue;
+                }
+                if (c != '"') return UNKNOWN;
+                int keyStart = i + 1;
+                int keyEnd = skipString(s, i);
+                if (keyEnd < 0) return UNKNOWN;
+                int keyLen = keyEnd - 1 - keyStart;
+                i = skipWs(s, keyEnd);
+                if (i >= n || s.charAt(i) != ':') return UNKNOWN;
+                i = skipWs(s, i + 1);
+                if (i >= n) return UNKNOWN;
+
+                if (is(s, keyStart, keyLen, "type") && s.charAt(i) == '"') {
+                    int end = skipString(s, i);
+                    if (end < 0) return UNKNOWN;
+                    int len = end - 1 - (i + 1);
+                    isText = is(s, i + 1, len, "text");
+                    isMedia = is(s, i + 1, len, "image") || is(s, i + 1, len, "mface");
+                    i = end;
+                } else if (is(s, keyStart, keyLen, "data") && s.charAt(i) == '{') {
+                    long r = scanDataText(s, i);
+                    if (r < 0) return UNKNOWN;
+                    i = (int) (r >>> 32);
+                    first = (int) r;
+                } else {
+                    i = skipValue(s, i);
+                    if (i < 0) return UNKNOWN;
+                }
+            }
+
+            media |= isMedia;
+            if (verdict != UNKNOWN || !isText || first == ALL_BLANK) continue;
+            if (first == ESCAPED) return UNKNOWN;
+            if (first == '/') return COMMAND;
+            verdict = NON_COMMAND;
+        }
+    }
+
+    /**
+     * i 指向 data 对象的 '{'，读取其中 text 字段的首个非空白字符
+     *
+     * @return 高 32 位为对象结束后的位置，低 32 位为首字符（或 ALL_BLANK / ESCAPED）；格式异常返回 -1
+     */
+    private static long scanDataText(String s, int i) {
+        int n = s.length();
+        int first = ALL_BLANK;
+        i++;
+        while (true) {
+            i = skipWs(s, i);
+            if (i >= n) return -1;
+            char c = s.charAt(i);
+            if (c == '}') return ((long) (i + 1) << 32) | (first & 0xFFFFFFFFL);
+            if (c == ',') {
+                i++;
+                continue;
+            }
+            if (c != '"') return -1;
+            int keyStart = i + 1;
+            int keyEnd = skipString(s, i);
+            if (keyEnd < 0) return -1;
+            int keyLen = keyEnd - 1 - keyStart;
+            i = skipWs(s, keyEnd);
+            if (i >= n || s.charAt(i) != ':') return -1;
+            i = skipWs(s, i + 1);
+            if (i >= n) return -1;
+
+            if (is(s, keyStart, keyLen, "text") && s.charAt(i) == '"') first = firstNonBlank(s, i + 1);
+            i = skipValue(s, i);
+            if (i < 0) return -1;
+        }
+    }
+
+    /**
+     * string (CQ) 模式：i 指向字符串的起始引号
+     */
+    private static int scanCq(String s, int i) {
+        int n = s.length();
+        int j = i + 1;
+        if (j < n && s.charAt(j) == '[') {
+            // 与 OneBotPayloadParser.stripLeadingReplyOrAtCq 一致：剥掉行首的 reply / at 段（可重复）
+            while (true) {
+                while (j < n && isCqSpace(s.charAt(j))) j++;
+                if (!s.startsWith("[CQ:", j)) break;
+                int typeStart = j + 4, k = typeStart;
+                while (k < n && s.charAt(k) != ',' && s.charAt(k) != ']') {
+                    char c = s.charAt(k);
+                    if (c == '"' || c == '\\') return UNKNOWN;
+                    k++;
+                }
+                if (k >= n) return UNKNOWN;
+                int typeLen = k - typeStart;
+                boolean strip = (typeLen == 5 && s.regionMatches(true, typeStart, "reply", 0, 5))
+                        || (typeLen == 2 && s.regionMatches(true, typeStart, "at", 0, 2));
+                if (!strip) break;
+                while (k < n && s.charAt(k) != ']') {
+                    char c = s.charAt(k);
+                    if (c == '"' || c == '\\') return UNKNOWN;
+                    k++;
+                }
+                if (k >= n) return UNKNOWN;
+                j = k + 1;
+            }
+        }
+        int first = firstNonBlank(s, j);
+        if (first == ESCAPED) return UNKNOWN;
+        if (first == '/') return COMMAND;
+        int end = skipString(s, i);
+        if (end < 0) return UNKNOWN;
+        return containsCq(s, j, end, "[CQ:image") || containsCq(s, j, end, "[CQ:mface") ? NON_COMMAND_MEDIA : NON_COMMAND;
+    }
+
+    /**
+     * s[from, to) 中是否出现以 head（如 "[CQ:image"）开头、其后紧跟 ',' 或 ']' 的 CQ 码
+     */
+    private static boolean containsCq(String s, int from, int to, String head) {
+        for (int k = s.indexOf(head, from); k >= 0 && k + head.length() < to; k = s.indexOf(head, k + 1)) {
+            char c = s.charAt(k + head.length());
+            if (c == ',' || c == ']') return true;
+        }
+        return false;
+    }
+
+    /**
+     * 从 j 开始（位于 JSON 字符串内部）寻找首个非空白字符，直到闭合引号
+     */
+    private static int firstNonBlank(String s, int j) {
+        int n = s.length();
+        for (; j < n; j++) {
+            char c = s.charAt(j);
+            if (c == '"') return ALL_BLANK;
+            if (c == '\\') return ESCAPED;
+            if (!Character.isWhitespace(c)) return c;
+        }
+        return ESCAPED;
+    }
+
+    private static boolean isCqSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    private static boolean is(String s, int from, int len, String expected) {
+        return len == expected.length() && s.regionMatches(from, expected, 0, len);
+    }
+
+    private static int skipWs(String s, int i) {
+        int n = s.length();
+        while (i < n) {
+            char c = s.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\r') i++;
+            else break;
+        }
+        return i;
+    }
+
+    /**
+     * i 指向起始引号，返回闭合引号之后的位置，未闭合返回 -1
+     */
+    private static int skipString(String s, int i) {
+        int n = s.length();
+        for (i++; i < n; i++) {
+            char c = s.charAt(i);
+            if (c == '\\') i++;
+            else if (c == '"') return i + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * 跳过 i 处开始的任意 JSON 值，返回其后的位置，格式异常返回 -1
+     */
+    private static int skipValue(String s, int i) {
+        int n = s.length();
+        char c = s.charAt(i);
+        if (c == '"') return skipString(s, i);
+        if (c == '{' || c == '[') {
+            int depth = 0;
+            while (i < n) {
+                c = s.charAt(i);
+                if (c == '"') {
+                    i = skipString(s, i);
+                    if (i < 0) return -1;
+                    continue;
+                }
+                if (c == '{' || c == '[') depth++;
+                else if (c == '}' || c == ']') {
+                    if (--depth == 0) return i + 1;
+                }
+                i++;
+            }
+            return -1;
+        }
+        // 数字与 true / false / null
+        while (i < n) {
+            c = s.charAt(i);
+            if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\t' || c == '\n' || c == '\r') break;
+            i++;
+        }
+        return i;
+    }
+}
@@ -1,10 +1,32 @@
 package com.arth.solabot.adapter.parser;
 
 import com.arth.solabot.core.bot.dto.ParsedPayloadDTO;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
 
 public interface PayloadParser {
 
-    ParsedPayloadDTO parseRawToDTO(JsonNode root, String raw) throws JsonProcessingException;
+    /**
+     * 以 token 流方式解码一帧原始报文，不构建完整 JSON 树：
+     * 非消息事件与 action 响应在读到必要字段后即返回，不解析消息体
+     */
+    Frame decode(String raw) throws IOException;
+
+    /**
+     * 单帧解码结果
+     *
+     * @param selfId   bot 账号 ID，缺失为 0
+     * @param postType 上报类型，action 响应等无该字段时为 null
+     * @param echo     action 响应携带的 echo，缺失为 null
+     * @param payload  消息事件（message / message_sent）的解析结果，其他帧为 null
+     */
+    record Frame(long selfId, String postType, String echo, ParsedPayloadDTO payload) {
+
+        /**
+         * 是否为 action 响应（有 echo 且无 post_type）
+         */
+        public boolean isEchoResponse() {
+            return echo != null && postType == null;
+        }
+    }
 }
@@ -3,9 +3,13 @@ package com.arth.solabot.adapter.parser.impl;
 import com.arth.solabot.adapter.parser.PayloadParser;
 import com.arth.solabot.core.bot.dto.ParsedPayloadDTO;
 import com.arth.solabot.core.bot.dto.message.*;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -13,76 +17,76 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 @Service
+@RequiredArgsConstructor
 public class OneBotPayloadParser implements PayloadParser {
 
     private static final Pattern CQ_REPLY_ID = Pattern.compile("\\[CQ:reply,([^]]+)]");
 
-    public ParsedPayloadDTO parseRawToDTO(JsonNode root, String raw) {
-        List<MessageSegment> segments = new ArrayList<>();
+    private final ObjectMapper objectMapper;
 
-        String format = root.path("message_format").asText("string");
-        String replyId = null;
+    /**
+     * 流式解码：单次顺序扫描顶层字段，直接填充 ParsedPayloadDTO
+     * - 只读取 DTO 需要的字段，其余子树 skipChildren 跳过，不产生节点对象
+     * - 一旦确认为非消息事件且已拿到 self_id，立即返回，不再扫描剩余报文
+     * - rawRoot 不在此处构建，由 ParsedPayloadDTO 在首次访问时惰性解析
+     */
+    @Override
+    public Frame decode(String raw) throws IOException {
+        long selfId = 0, userId = 0, messageId = 0, time = 0;
+        Long groupId = null;
+        String postType = null, messageType = null, rawText = null, senderRole = null, echo = null;
+        String cq = null, replyId = null;
+        List<MessageSegment> segments = null;
+        StringBuilder textOnly = null;
 
-        String commandText = null;
-
-        if (root.path("message").isArray()) {
-            // ---------- A 方案：array 模式 ----------
-            StringBuilder textOnly = new StringBuilder();
-
-            for (JsonNode s : root.path("message")) {
-                String type = s.path("type").asText("");
-                JsonNode data = s.path("data");
-
-                switch (type) {
-                    case "text" -> {
-                        String txt = data.path("text").asText("");
-                        // 填充 segments
-                        TextSegment seg = new TextSegment();
-                        seg.setData(Map.of("text", txt));
-                        segments.add(seg);
-                        // 供命令识别：只拼 text 段
-                        textOnly.append(txt);
-                    }
-                    case "at", "mention" -> {
-                        AtSegment seg = new AtSegment();
-                        seg.setData(Map.of("qq", data.path("qq").asText("")));
-                        segments.add(seg);
-                        // 命令识别里忽略
-                    }
-                    case "image" -> {
-                        ImageSegment seg = new ImageSegment();
-                        String url = data.hasNonNull("url")
-                                ? data.get("url").asText("")
-                                : data.path("file").asText("");
-                        seg.setData(Map.of("url", url));
-                        segments.add(seg);
-                    }
-                    case "mface" -> {
-                        MfaceSegment seg = new MfaceSegment();
-                        String url = data.hasNonNull("url")
-                                ? data.get("url").asText("")
-                                : data.path("file").asText("");
-                        seg.setData(Map.of("url", url));
-                        segments.add(seg);
-                    }
-                    case "reply" -> {
-                        String id = data.path("id").asText(null);
-                        if (id != null && !id.isBlank()) replyId = id;
-                        // 命令识别里忽略
+        try (JsonParser p = objectMapper.getFactory().createParser(raw)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) return new Frame(0, null, null, null);
+
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String name = p.currentName();
+                JsonToken t = p.nextToken();
+                switch (name) {
+                    case "post_type" -> postType = t.isScalarValue() ? p.getValueAsString("") : skip(p, "");
+                    case "self_id" -> selfId = p.getValueAsLong(0);
+                    case "echo" -> {
+                        if (t == JsonToken.VALUE_NULL) break;
+                        echo = t.isScalarValue() ? p.getValueAsString("") : skip(p, "");
                     }
-                    default -> {
-                        // ...
+                    case "user_id" -> userId = p.getValueAsLong(0);
+                    case "group_id" -> groupId = p.getValueAsLong(0);
+                    case "message_id" -> messageId = p.getValueAsLong(0);
+                    case "time" -> time = p.getValueAsLong(0);
+                    case "message_type" -> messageType = t.isScalarValue() ? p.getValueAsString("") : skip(p, "");
+                    case "raw_message" -> rawText = t.isScalarValue() ? p.getValueAsString("") : skip(p, "");
+                    case "sender" -> senderRole = readSenderRole(p);
+                    case "message" -> {
+                        if (t == JsonToken.START_ARRAY) {
+                            // ---------- A 方案：array 模式 ----------
+                            segments = new ArrayList<>();
+                            textOnly = new StringBuilder();
+                            replyId = readSegments(p, segments, textOnly);
+                        } else {
+                            // ---------- B 方案：string (CQ) 模式 ----------
+                            cq = t.isScalarValue() ? p.getValueAsString("") : skip(p, "");
+                        }
                     }
+                    default -> p.skipChildren();
                 }
+
+                // 非消息事件：拿到 self_id 即可结束，后续字段与本 bot 无关
+                if (postType != null && !isMessagePost(postType) && selfId != 0) break;
             }
+        }
+
+        if (postType == null || !isMessagePost(postType)) return new Frame(selfId, postType, echo, null);
 
+        String commandText;
+        if (segments != null) {
             commandText = stripLeadingSpaces(textOnly.toString());
         } else {
-            // ---------- B 方案：string (CQ) 模式 ----------
-            String cq = root.path("message").asText("");
+            segments = new ArrayList<>();
+            if (cq == null) cq = "";
             replyId = extractReplyIdFromCq(cq);
-
-            // 命令识别：剥掉“行首的 [CQ:reply/**] 和 [CQ:at/**] 段”，再去前导空白
             commandText = cq;
             if (!commandText.isEmpty() && commandText.charAt(0) == '[') {
                 commandText = stripLeadingReplyOrAtCq(commandText);
@@ -90,21 +94,127 @@ public class OneBotPayloadParser implements PayloadParser {
         }
 
         ParsedPayloadDTO payload = new ParsedPayloadDTO();
-        payload.setPostType(root.path("post_type").asText());
-        payload.setMessageType(root.path("message_type").asText());
-        payload.setSelfId(root.path("self_id").asLong(0));
-        payload.setUserId(root.path("user_id").asLong(0));
-        payload.setGroupId(root.has("group_id") ? root.path("group_id").asLong() : null);
-        payload.setMessageId(root.path("message_id").asLong(0));
+        payload.setPostType(postType);
+        payload.setMessageType(messageType != null ? messageType : "");
+        payload.setSelfId(selfId);
+        payload.setUserId(userId);
+        payload.setGroupId(groupId);
+        payload.setMessageId(messageId);
         payload.setReplyToMessageId(replyId);
-        payload.setTime(root.path("time").asLong(0));
-        payload.setRawText(root.path("raw_message").asText(""));
-        payload.setSenderRole(root.path("sender").path("role").asText(""));
+        payload.setTime(time);
+        payload.setRawText(rawText != null ? rawText : "");
+        payload.setSenderRole(senderRole != null ? senderRole : "");
         payload.setSegments(segments);
         payload.setCommandText(commandText);
-        payload.setRawRoot(root);
         payload.setOriginalJsonString(raw);
-        return payload;
+        return new Frame(selfId, postType, echo, payload);
+    }
+
+    private static boolean isMessagePost(String postType) {
+        return "message".equals(postType) || "message_sent".equals(postType);
+    }
+
+    /* 跳过当前（非标量）值并返回默认值 */
+    private static String skip(JsonParser p, String def) throws IOException {
+        p.skipChildren();
+        return def;
+    }
+
+    /* 当前 token 为 sender 值：仅取 role，其余跳过 */
+    private static String readSenderRole(JsonParser p) throws IOException {
+        if (p.currentToken() != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            return "";
+        }
+        String role = "";
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.currentName();
+            JsonToken t = p.nextToken();
+            if ("role".equals(name) && t.isScalarValue()) role = p.getValueAsString("");
+            else p.skipChildren();
+        }
+        return role;
+    }
+
+    /**
+     * 当前 token 为 message 数组的 START_ARRAY：逐段读取并填充 segments，text 段同时拼入 textOnly
+     *
+     * @return reply 段的 id，无则为 null
+     */
+    private static String readSegments(JsonParser p, List<MessageSegment> segments, StringBuilder textOnly) throws IOException {
+        String replyId = null;
+        JsonToken t;
+        while ((t = p.nextToken()) != JsonToken.END_ARRAY && t != null) {
+            if (t != JsonToken.START_OBJECT) {
+                p.skipChildren();
+                continue;
+            }
+            // 段内 type 与 data 的先后顺序不定，先收集 data 中关心的标量字段
+            String type = "", text = null, qq = null, url = null, file = null, md5 = null, id = null;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String name = p.currentName();
+                JsonToken v = p.nextToken();
+                if ("type".equals(name) && v.isScalarValue()) {
+                    type = p.getValueAsString("");
+                } else if ("data".equals(name) && v == JsonToken.START_OBJECT) {
+                    while (p.nextToken() == JsonToken.FIELD_NAME) {
+                        String key = p.currentName();
+                        JsonToken dv = p.nextToken();
+                        if (!dv.isScalarValue()) {
+                            p.skipChildren();
+                            continue;
+                        }
+                        String val = p.getValueAsString();  // JSON null 得到 null
+                        switch (key) {
+                            case "text" -> text = val;
+                            case "qq" -> qq = val;
+                            case "url" -> url = val;
+                            case "file" -> file = val;
+                            case "md5" -> md5 = val;
+                            case "id" -> id = val;
+                            default -> {
+                            }
+                        }
+                    }
+                } else {
+                    p.skipChildren();
+                }
+            }
+
+            switch (type) {
+                case "text" -> {
+                    String txt = text != null ? text : "";
+                    TextSegment seg = new TextSegment();
+                    seg.setData(Map.of("text", txt));
+                    segments.add(seg);
+                    textOnly.append(txt);
+                }
+                case "at", "mention" -> {
+                    AtSegment seg = new AtSegment();
+                    seg.setData(Map.of("qq", qq != null ? qq : ""));
+                    segments.add(seg);
+                }
+                case "image" -> {
+                    ImageSegment seg = new ImageSegment();
+                    String src = url != null ? url : file != null ? file : "";
+                    // md5 供引用消息缓存直接构建 ImageRef，使下载缓存可按内容命中
+                    seg.setData(md5 != null && !md5.isBlank() ? Map.of("url", src, "md5", md5) : Map.of("url", src));
+                    segments.add(seg);
+                }
+                case "mface" -> {
+                    MfaceSegment seg = new MfaceSegment();
+                    seg.setData(Map.of("url", url != null ? url : file != null ? file : ""));
+                    segments.add(seg);
+                }
+                case "reply" -> {
+                    if (id != null && !id.isBlank()) replyId = id;
+                }
+                default -> {
+                    // ...
+                }
+            }
+        }
+        return replyId;
     }
 
     /* 仅为 reply 段做一个轻量级 CQ 解析（无需完整 CQ 解析器） */
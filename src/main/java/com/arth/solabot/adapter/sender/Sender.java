@@ -5,6 +5,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import org.springframework.web.socket.WebSocketSession;
 
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 
 public interface Sender {
@@ -60,9 +61,20 @@ public interface Sender {
      */
     void pushActionJSON(long selfId, String json);
 
+    /**
+     * 异步向 bot 发起请求，不阻塞调用线程
+     * 回包到达时 future 以解析后的 JSON 完成；超时以 TimeoutException、会话不可用以 IOException 异常完成
+     * @param selfId
+     * @param action
+     * @param params
+     * @param timeout
+     * @return
+     */
+    CompletableFuture<JsonNode> requestAsync(long selfId, String action, JsonNode params, Duration timeout);
+
     /**
      * 向 bot 发起请求，例如请求引用消息的内容
-     * 这依赖于 EchoWaiter 以实现 “请求-响应”
+     * 这依赖于 EchoWaiter 以实现 “请求-响应”，是 requestAsync 的阻塞封装
      * @param selfId
      * @param action
      * @param params
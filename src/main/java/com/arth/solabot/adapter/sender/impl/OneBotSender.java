@@ -2,6 +2,7 @@ package com.arth.solabot.adapter.sender.impl;
 
 import com.arth.solabot.adapter.fetcher.websocket.EchoWaiter;
 import com.arth.solabot.adapter.sender.Sender;
+import com.arth.solabot.adapter.io.OutboundWriter;
 import com.arth.solabot.adapter.sender.action.SimpleActionBuilder;
 import com.arth.solabot.adapter.io.SessionRegistry;
 import com.arth.solabot.core.bot.dto.ParsedPayloadDTO;
@@ -11,14 +12,14 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
-import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 
 import java.io.IOException;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
 import java.util.function.Function;
 
 @Slf4j
@@ -27,10 +28,10 @@ import java.util.function.Function;
 public class OneBotSender implements Sender {
 
     private final SessionRegistry sessions;
+    private final OutboundWriter outboundWriter;
     private final SimpleActionBuilder simpleActionBuilder;
     private final ObjectMapper objectMapper;
     private final EchoWaiter echoWaiter;
-    private final ConcurrentHashMap<String, CompletableFuture<JsonNode>> pending = new ConcurrentHashMap<>();
 
     private static final int PARTIAL_MESSAGE_MAX_CHAR_NUM = 300_000;
 
@@ -232,22 +233,42 @@ public class OneBotSender implements Sender {
     }
 
     @Override
-    public JsonNode request(long selfId, String action, JsonNode params, Duration timeout) {
-        String echo = java.util.UUID.randomUUID().toString();
-        echoWaiter.register(echo);
+    public CompletableFuture<JsonNode> requestAsync(long selfId, String action, JsonNode params, Duration timeout) {
+        String echo = echoWaiter.nextEcho();
+        CompletableFuture<String> fut = echoWaiter.register(echo, timeout.toMillis());
 
         ObjectNode req = objectMapper.createObjectNode();
         req.put("action", action);
         if (params != null) req.set("params", params);
         req.put("echo", echo);
 
-        pushActionJSON(selfId, req.toString());
+        WebSocketSession session = sessions.get(selfId);
+        try {
+            if (session == null || !session.isOpen()) {
+                throw new IOException("session missing/closed, selfId=" + selfId);
+            }
+            log.debug("[adapter.sender] request action `{}`, echo: {}", action, echo);
+            sendPartialMessage(session, req.toString(), PARTIAL_MESSAGE_MAX_CHAR_NUM);
+        } catch (IOException e) {
+            // 发送失败立即结束，同时清理 pending
+            fut.completeExceptionally(e);
+        }
+
+        return fut.thenApply(raw -> {
+            try {
+                return objectMapper.readTree(raw);
+            } catch (com.fasterxml.jackson.core.JsonProcessingException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
 
+    @Override
+    public JsonNode request(long selfId, String action, JsonNode params, Duration timeout) {
         try {
-            String raw = echoWaiter.await(echo, timeout.toMillis()); // 等待 controller 完成的回包
-            return objectMapper.readTree(raw);
-        } catch (Exception e) {
-            throw new RuntimeException("request '" + action + "' failed/timeout", e);
+            return requestAsync(selfId, action, params, timeout).join();
+        } catch (CompletionException | CancellationException e) {
+            throw new RuntimeException("request '" + action + "' failed/timeout", e.getCause() != null ? e.getCause() : e);
         }
     }
 
@@ -372,25 +393,16 @@ public class OneBotSender implements Sender {
 
     /**
      * partial message 发送，避免 The decoded text message was too big for the output buffer
+     * 消息交由会话的出站写入器排队发送，同一条消息的分片保证连续发出
      * @param session
      * @param json
      * @param chunkSize 分片大小，以 UTF-8 字符数为单位
-     * @throws IOException
+     * @throws IOException 会话已关闭或出站队列已满
      */
     private void sendPartialMessage(WebSocketSession session, Object json, int chunkSize) throws IOException {
         if (session == null || !session.isOpen() || json == null) return;
 
         String jsonStr = (json instanceof String s) ? s : objectMapper.writeValueAsString(json);
-        int length = jsonStr.length();
-
-        for (int offset = 0; offset < length; ) {
-            int end = Math.min(length, offset + chunkSize);
-            if (Character.isHighSurrogate(jsonStr.charAt(end - 1))) end--;
-
-            boolean isLast = (end == length);
-            String chunk = jsonStr.substring(offset, end);
-            session.sendMessage(new TextMessage(chunk, isLast));
-            offset = end;
-        }
+        outboundWriter.send(session, jsonStr, chunkSize);
     }
-}
\ No newline at end of file
+}
@@ -1,8 +1,12 @@
 package com.arth.solabot.core.bot.dto;
 
 import com.arth.solabot.core.bot.dto.message.MessageSegment;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
 import java.util.List;
 
@@ -10,6 +14,9 @@ import java.util.List;
 @Data
 public class ParsedPayloadDTO {
 
+    /* 仅用于惰性构建 rawRoot */
+    private static final ObjectMapper TREE_MAPPER = new ObjectMapper();
+
     /* 消息类型，例如 message */
     private String postType;
 
@@ -46,9 +53,24 @@ public class ParsedPayloadDTO {
     /* 命令文本 */
     private String commandText;
 
-    /* 协议原始报文解析后的 JSON 对象 */
-    private JsonNode rawRoot;
+    /* 协议原始报文解析后的 JSON 对象，流式解码时不构建，首次访问时由 originalJsonString 惰性解析 */
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private volatile JsonNode rawRoot;
 
     /* 协议原始报文 */
     private String originalJsonString;
+
+    public JsonNode getRawRoot() {
+        JsonNode root = rawRoot;
+        if (root == null && originalJsonString != null) {
+            try {
+                root = TREE_MAPPER.readTree(originalJsonString);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("malformed original payload", e);
+            }
+            rawRoot = root;
+        }
+        return root;
+    }
 }
@@ -0,0 +1,130 @@
+package com.arth.solabot.core.bot.invoker;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * 不可变的别名字符前缀树（大小写不敏感），在 PluginRegistry 初始化时一次性构建：
+ * - 模块别名 → PluginHolder，用于一次扫描内同时完成 “精确匹配根命令” 与 “glue 最长前缀匹配”
+ * - 子命令别名 → 规范化别名，用于分组与粘合模式的子命令识别
+ * 节点的子边以有序 char[] 存储并二分查找，查询过程不产生任何中间字符串。
+ * 别名中不应包含空白字符（空白即 token 边界）。
+ */
+final class AliasTrie<V> {
+
+    private final Node<V> root;
+
+    private AliasTrie(Node<V> root) {
+        this.root = root;
+    }
+
+    /**
+     * 以 “小写别名 → 值” 构建前缀树
+     */
+    static <V> AliasTrie<V> of(Map<String, V> entries) {
+        Builder<V> b = new Builder<>();
+        for (Map.Entry<String, V> e : entries.entrySet()) {
+            Builder<V> cur = b;
+            String key = e.getKey();
+            for (int i = 0; i < key.length(); i++) {
+                cur = cur.children.computeIfAbsent(Character.toLowerCase(key.charAt(i)), k -> new Builder<>());
+            }
+            cur.value = e.getValue();
+        }
+        return new AliasTrie<>(b.freeze());
+    }
+
+    /**
+     * 精确匹配 s[from, to) 整段
+     *
+     * @return 命中的值，未命中返回 null
+     */
+    V get(CharSequence s, int from, int to) {
+        Node<V> node = root;
+        for (int i = from; i < to && node != null; i++) {
+            node = node.child(Character.toLowerCase(s.charAt(i)));
+        }
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * 从 from 开始扫描一个 token（至空白或结尾），一次遍历中同时给出：
+     * - token 的结束位置
+     * - token 整体的精确匹配值
+     * - token 内满足 prefixFilter 的最长前缀匹配（结束位置与值）
+     */
+    TokenMatch<V> scanToken(CharSequence s, int from, Predicate<V> prefixFilter) {
+        int n = s.length();
+        Node<V> node = root;
+        int prefixEnd = -1;
+        V prefixValue = null;
+        if (node.value != null && prefixFilter.test(node.value)) {
+            prefixEnd = from;
+            prefixValue = node.value;
+        }
+
+        int i = from;
+        for (; i < n; i++) {
+            char c = s.charAt(i);
+            if (CommandTokenizer.isSpace(c)) break;
+            if (node == null) continue;  // 已脱离前缀树，仅继续寻找 token 边界
+            node = node.child(Character.toLowerCase(c));
+            if (node != null && node.value != null && prefixFilter.test(node.value)) {
+                prefixEnd = i + 1;
+                prefixValue = node.value;
+            }
+        }
+        V exact = node == null ? null : node.value;
+        return new TokenMatch<>(i, exact, prefixEnd, prefixValue);
+    }
+
+    /**
+     * token 扫描结果
+     *
+     * @param tokenEnd    token 结束位置（不含）
+     * @param exact       token 整体精确匹配的值，可为 null
+     * @param prefixEnd   最长前缀匹配的结束位置（不含），未命中为 -1
+     * @param prefixValue 最长前缀匹配的值，可为 null
+     */
+    record TokenMatch<V>(int tokenEnd, V exact, int prefixEnd, V prefixValue) {
+    }
+
+    /* ============== nodes ============== */
+
+    private static final class Node<V> {
+        final char[] keys;
+        final Node<V>[] next;
+        final V value;
+
+        Node(char[] keys, Node<V>[] next, V value) {
+            this.keys = keys;
+            this.next = next;
+            this.value = value;
+        }
+
+        Node<V> child(char c) {
+            int idx = Arrays.binarySearch(keys, c);
+            return idx >= 0 ? next[idx] : null;
+        }
+    }
+
+    private static final class Builder<V> {
+        final TreeMap<Character, Builder<V>> children = new TreeMap<>();
+        V value;
+
+        @SuppressWarnings("unchecked")
+        Node<V> freeze() {
+            char[] keys = new char[children.size()];
+            Node<V>[] next = (Node<V>[]) new Node<?>[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, Builder<V>> e : children.entrySet()) {
+                keys[i] = e.getKey();
+                next[i] = e.getValue().freeze();
+                i++;
+            }
+            return new Node<>(keys, next, value);
+        }
+    }
+}
@@ -1,26 +1,55 @@
 package com.arth.solabot.core.bot.invoker;
 
 import com.arth.solabot.core.bot.dto.ParsedPayloadDTO;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
  * 在整个链路中共享上下文与中间结果以支持链式调用
+ * - bag 供同一插件的多个步骤传递中间结果
+ * - onFinish 注册的收尾动作在最后一步执行完后按注册顺序执行，供插件把多个步骤合并为一次输出
  */
 @Data
-class CommandChainContext {
+public class CommandChainContext {
+
+    /**
+     * 链路收尾动作
+     */
+    @FunctionalInterface
+    public interface Finisher {
+        void finish() throws Throwable;
+    }
 
     private final ParsedPayloadDTO payload;
     private final Map<String, Object> bag = new HashMap<>();
     private Object state;
+    @Getter(AccessLevel.NONE)
+    private final Map<String, Finisher> finishers = new LinkedHashMap<>();
 
     CommandChainContext(ParsedPayloadDTO payload) {
         this.payload = payload;
     }
 
-    <T> T getState(Class<T> t) {
+    public <T> T getState(Class<T> t) {
         return t.cast(state);
     }
-}
\ No newline at end of file
+
+    /**
+     * 注册收尾动作，同一 key 只保留首次注册的动作
+     */
+    public void onFinish(String key, Finisher finisher) {
+        finishers.putIfAbsent(key, finisher);
+    }
+
+    /**
+     * 依次执行收尾动作，由 CommandInvoker 在最后一步之后调用
+     */
+    void finish() throws Throwable {
+        for (Finisher f : finishers.values()) f.finish();
+    }
+}
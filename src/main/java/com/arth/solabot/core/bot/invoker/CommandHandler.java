@@ -6,7 +6,7 @@ import java.util.List;
 
 /**
  * 统一的命令处理器抽象。
- * - 直接以函数式封装插件方法（通过 MethodHandle 绑定）
+ * - 每个插件方法由 CommandHandlers 生成一个独立的实现类（隐藏类，目标方法句柄为常量），必要时回退到 MethodHandle 绑定
  * - 兼容链式上下文（CommandChainContext）
  * - 返回 Object：用于老逻辑“将返回值写入 ctx.state”
  */
@@ -25,16 +25,16 @@ interface CommandHandler {
     Object handle(CommandChainContext chainCtx, ParsedPayloadDTO payload, List<String> args) throws Throwable;
 
     /**
-     * 打分（默认实现：0），PluginRegistry.createHandler 将重写此方法
-     * (ctx,args)=6 > (ctx)=5 > (payload,args)=4 > (payload)=3 > (args)=2 > ()=1
+     * 打分（默认实现：0），仅取决于插件方法签名，CommandHandlers 将按签名重写此方法
+     * (ctx,args)=7 > (ctx)=5 = (payload,args)=5 > (payload)=3 > (args)=2 > ()=1
      */
-    default int score(ParsedPayloadDTO payload, List<String> args) {
+    default int score() {
         return 0;
     }
 
     /**
      * 用于 “分步分组” 时判断当前处理器是否 “接收 List 参数”，从而决定是否吞掉后续别名 token；
-     * PluginRegistry.createHandler 将按签名覆写该行为。
+     * CommandHandlers 将按签名覆写该行为。
      */
     default boolean acceptsArgs() {
         return false;
@@ -0,0 +1,202 @@
+package com.arth.solabot.core.bot.invoker;
+
+import com.arth.solabot.core.bot.dto.ParsedPayloadDTO;
+import com.arth.solabot.core.bot.exception.InternalServerErrorException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * 将插件方法绑定为 CommandHandler 的工厂。
+ * - 每个插件方法对应一个独立的隐藏类（以 SpecializedHandler 的字节码为模板定义），
+ * 目标方法句柄作为该类的 class data 存入 static final 字段：handle() 内的 invokeExact 对 JIT 是常量调用点，
+ * 插件方法连同绑定的实例可被完整内联；不同命令不再共享同一个调用点，不会因签名相同而退化为 megamorphic
+ * - 生成失败（例如模板字节码不可读）时，回退到普通的 MethodHandle 绑定
+ * - 签名对应的 score / acceptsArgs 在绑定时即已确定，供 PluginHolder 预计算分派表
+ */
+@Slf4j
+final class CommandHandlers {
+
+    private CommandHandlers() {
+    }
+
+    /**
+     * 受支持的插件方法签名，score 越高越优先：
+     * (ctx,args)=7 > (ctx)=5 = (payload,args)=5 > (payload)=3 > (args)=2 > ()=1
+     */
+    enum Signature {
+        NONE(1, false),
+        PAYLOAD(3, false, ParsedPayloadDTO.class),
+        PAYLOAD_ARGS(5, true, ParsedPayloadDTO.class, List.class),
+        ARGS(2, true, List.class),
+        CTX(5, false, CommandChainContext.class),
+        CTX_ARGS(7, true, CommandChainContext.class, List.class);
+
+        final int score;
+        final boolean acceptsArgs;
+        /* 插件方法形参类型（擦除后） */
+        final Class<?>[] params;
+
+        Signature(int score, boolean acceptsArgs, Class<?>... params) {
+            this.score = score;
+            this.acceptsArgs = acceptsArgs;
+            this.params = params;
+        }
+
+        /**
+         * 参数在统一入参 (ctx, payload, args) 中的位置，用于方法句柄的参数重排
+         */
+        int[] positions() {
+            int[] out = new int[params.length];
+            for (int i = 0; i < params.length; i++) {
+                out[i] = params[i] == CommandChainContext.class ? 0 : params[i] == ParsedPayloadDTO.class ? 1 : 2;
+            }
+            return out;
+        }
+
+        static Signature of(Class<?>[] types) {
+            if (types.length == 0) return NONE;
+            if (types.length == 1) {
+                if (types[0] == ParsedPayloadDTO.class) return PAYLOAD;
+                if (types[0] == CommandChainContext.class) return CTX;
+                if (List.class.isAssignableFrom(types[0])) return ARGS;
+            }
+            if (types.length == 2 && List.class.isAssignableFrom(types[1])) {
+                if (types[0] == ParsedPayloadDTO.class) return PAYLOAD_ARGS;
+                if (types[0] == CommandChainContext.class) return CTX_ARGS;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 将插件方法绑定为 CommandHandler。
+     * 支持以下签名：
+     * ()、(ParsedPayloadDTO)、(ParsedPayloadDTO, List)、(List)、
+     * (CommandChainContext)、(CommandChainContext, List)
+     */
+    static CommandHandler create(Object instance, Method m) throws Exception {
+        Signature sig = Signature.of(m.getParameterTypes());
+        if (sig == null) {
+            throw new InternalServerErrorException(
+                    "Internal Server Error: unsupported plugin method signature",
+                    "服务器内部错误：不支持的插件方法签名（仅支持 (), (Payload), (Payload,List), (List), (Ctx), (Ctx,List)）");
+        }
+
+        MethodHandle uniform = uniform(sig, instance, m);
+        try {
+            return specialize(sig, uniform);
+        } catch (Throwable e) {
+            log.warn("[core.bot.invoker] failed to specialize handler for {}.{}, falling back to MethodHandle: {}",
+                    m.getDeclaringClass().getSimpleName(), m.getName(), e.toString());
+            return new BoundHandler(sig, uniform);
+        }
+    }
+
+    // ++=============** helpers **=============++
+
+    /* 模板类字节码，只读一次 */
+    private static volatile byte[] templateBytes;
+
+    /**
+     * 以模板字节码定义一个新的隐藏类，uniform 作为其 class data
+     */
+    private static CommandHandler specialize(Signature sig, MethodHandle uniform) throws Throwable {
+        MethodHandles.Lookup hidden = MethodHandles.lookup()
+                .defineHiddenClassWithClassData(templateBytes(), uniform, true, MethodHandles.Lookup.ClassOption.NESTMATE);
+        MethodHandle ctor = hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class, Signature.class));
+        return (CommandHandler) ctor.invoke(sig);
+    }
+
+    private static byte[] templateBytes() throws IOException {
+        byte[] bytes = templateBytes;
+        if (bytes == null) {
+            String name = SpecializedHandler.class.getName();
+            try (InputStream in = CommandHandlers.class.getResourceAsStream(name.substring(name.lastIndexOf('.') + 1) + ".class")) {
+                if (in == null) throw new IOException("template class file not found: " + name);
+                templateBytes = bytes = in.readAllBytes();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 绑定实例后重排为统一的 (ctx, payload, args) -> Object，返回 void 的方法得到 null
+     */
+    private static MethodHandle uniform(Signature sig, Object instance, Method m) throws IllegalAccessException {
+        MethodHandle mh = MethodHandles.lookup().unreflect(m).bindTo(instance)
+                .asType(MethodType.methodType(Object.class, sig.params));
+        return MethodHandles.permuteArguments(mh,
+                MethodType.methodType(Object.class, CommandChainContext.class, ParsedPayloadDTO.class, List.class),
+                sig.positions());
+    }
+
+    /* ============== handlers ============== */
+
+    private abstract static class SignedHandler implements CommandHandler {
+        private final Signature sig;
+
+        SignedHandler(Signature sig) {
+            this.sig = sig;
+        }
+
+        @Override
+        public int score() {
+            return sig.score;
+        }
+
+        @Override
+        public boolean acceptsArgs() {
+            return sig.acceptsArgs;
+        }
+    }
+
+    /**
+     * 隐藏类模板，本身从不加载初始化：specialize 以它的字节码为每个插件方法定义一个副本，
+     * 副本的 TARGET 取自各自的 class data
+     */
+    static final class SpecializedHandler extends SignedHandler {
+        private static final MethodHandle TARGET;
+
+        static {
+            try {
+                TARGET = MethodHandles.classData(MethodHandles.lookup(), ConstantDescs.DEFAULT_NAME, MethodHandle.class);
+            } catch (IllegalAccessException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        SpecializedHandler(Signature sig) {
+            super(sig);
+        }
+
+        @Override
+        public Object handle(CommandChainContext chainCtx, ParsedPayloadDTO payload, List<String> args) throws Throwable {
+            return (Object) TARGET.invokeExact(chainCtx, payload, args);
+        }
+    }
+
+    /**
+     * 回退路径：非常量的方法句柄，调用点由所有回退处理器共享
+     */
+    private static final class BoundHandler extends SignedHandler {
+        private final MethodHandle mh;
+
+        BoundHandler(Signature sig, MethodHandle mh) {
+            super(sig);
+            this.mh = mh;
+        }
+
+        @Override
+        public Object handle(CommandChainContext chainCtx, ParsedPayloadDTO payload, List<String> args) throws Throwable {
+            return (Object) mh.invokeExact(chainCtx, payload, args);
+        }
+    }
+}
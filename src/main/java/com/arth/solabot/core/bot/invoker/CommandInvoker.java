@@ -22,7 +22,7 @@ import java.util.*;
 public class CommandInvoker {
 
     private final PluginRegistry pluginRegistry;
-    private final DefaultStrategy defaultStrategy = new DefaultStrategy();
+    private final DefaultStrategy defaultStrategy;
 
     /**
      * 入口：解析并执行命令
@@ -42,36 +42,32 @@ public class CommandInvoker {
                 return null;
             }
 
-            Parsed parsed = parse(commandText);
-            if (parsed == null) return null;
-
-            // 1) 常规精准匹配：root 作为模块别名
-            String parsedRoot = parsed.root();
+            // 单次扫描根命令 token：同时得到模块别名的精确匹配与 glue 模块的最长前缀匹配
+            int rootStart = CommandTokenizer.commandStart(commandText);
+            AliasTrie.TokenMatch<PluginHolder> rootMatch = pluginRegistry.resolveRoot(commandText, rootStart);
+            String parsedRoot = commandText.substring(rootStart, rootMatch.tokenEnd()).toLowerCase(Locale.ROOT);
             log.info("[core.bot.invoker] plugin calling detected: {}", parsedRoot);
 
-            PluginHolder holder = resolvePluginHolder(parsedRoot);
-            List<String> stepsTokens = parsed.subAndArgs();
-
-            // 2) 常规失败 → 尝试 glue 模块“最长前缀匹配”
-            if (holder == null) {
-                PluginRegistry.GlueMatch gm = pluginRegistry.matchGlueByLongestPrefix(parsed.rawNoSlash());
-                if (gm != null) {
-                    holder = gm.holder;
-                    String rest = parsed.rawNoSlash().substring(gm.matchedAlias.length()).trim();
-                    stepsTokens = rest.isEmpty() ? List.of() : new ArrayList<>(Arrays.asList(rest.split(" ")));
-                    log.info("[core.bot.invoker] glue matched plugin `{}`; rest=`{}`", gm.matchedAlias, rest);
-                    return runGrouped(payload, holder, groupStepsGlue(stepsTokens, holder));
-                }
+            // 1) 常规精准匹配：root 作为模块别名
+            PluginHolder holder = rootMatch.exact();
+            if (holder != null) {
+                List<String> stepsTokens = CommandTokenizer.tokenize(commandText, rootMatch.tokenEnd());
+                return runLimited(payload, holder, groupSteps(stepsTokens, holder));
             }
 
-            if (holder == null) {
-                throw new CommandNotFoundException(
-                        "[core.bot.invoker] plugin not found: " + parsedRoot,
-                        "不存在名为 \"" + parsedRoot + "\" 的插件/模块，请检查输入。");
+            // 2) 常规失败 → glue 模块“最长前缀匹配”
+            if (rootMatch.prefixValue() != null) {
+                holder = rootMatch.prefixValue();
+                int restStart = rootMatch.prefixEnd();
+                log.info("[core.bot.invoker] glue matched plugin `{}`; rest=`{}`",
+                        commandText.substring(rootStart, restStart).toLowerCase(Locale.ROOT),
+                        commandText.substring(restStart).strip());
+                return runLimited(payload, holder, groupStepsGlue(commandText, restStart, holder));
             }
 
-            // 3) 常规子命令分组执行
-            return runGrouped(payload, holder, groupSteps(stepsTokens, holder));
+            throw new CommandNotFoundException(
+                    "[core.bot.invoker] plugin not found: " + parsedRoot,
+                    "不存在名为 \"" + parsedRoot + "\" 的插件/模块，请检查输入。");
 
         } catch (BusinessException e) {
             log.error(e.getMessage(), e);
@@ -85,54 +81,45 @@ public class CommandInvoker {
     }
 
     /**
-     * 执行分组后的命令链
+     * 在插件并发许可内执行命令链（未配置许可时直接执行）
+     */
+    private Object runLimited(ParsedPayloadDTO payload, PluginHolder holder, List<Step> steps) throws Throwable {
+        if (holder.permits == null) return runGrouped(payload, holder, steps);
+        holder.permits.acquire();
+        try {
+            return runGrouped(payload, holder, steps);
+        } finally {
+            holder.permits.release();
+        }
+    }
+
+    /**
+     * 执行分组后的命令链，全部步骤执行完后执行链路上注册的收尾动作
      */
     private Object runGrouped(ParsedPayloadDTO payload, PluginHolder holder, List<Step> steps) throws Throwable {
         CommandChainContext chainCtx = new CommandChainContext(payload);
         Object last = null;
 
         for (Step s : steps) {
-            List<CommandHandler> candidates = getCandidatesWithIndexFallback(holder, s.name());
-            if (candidates.isEmpty()) {
+            PluginHolder.Dispatch dispatch = holder.dispatch(s.name());
+            if (dispatch == null) {
                 throw new CommandNotFoundException(
                         "[core.bot.invoker] command not supported: " + s.name(),
                         "不支持的命令: " + s.name());
             }
 
             boolean hasArgs = s.args() != null && !s.args().isEmpty();
-            String cacheKey = s.name() + (hasArgs ? ":args" : ":noarg");
-            CommandHandler preferred = holder.getPreferred(cacheKey);
-            if (preferred == null) {
-                preferred = chooseBest(candidates, payload, s.args());
-                holder.setPreferred(cacheKey, preferred);
-            }
-            Object ret = preferred.handle(chainCtx, payload, s.args());
+            Object ret = dispatch.select(hasArgs).handle(chainCtx, payload, s.args());
             if (ret != null) chainCtx.setState(ret);
             last = ret;
         }
 
+        chainCtx.finish();
         return last;
     }
 
     /* ===================== 解析 ===================== */
 
-    /**
-     * 解析命令字符串，返回 Parsed 对象（根命令（首个 token）与 tokens，tokens 包含子命令与参数）
-     *
-     * @param raw 原始命令字符串
-     * @return Parsed 对象
-     */
-    private Parsed parse(String raw) {
-        String s = raw.trim()
-                .replaceAll("\\s+", " ")
-                .replaceAll("^/+", "/");
-        String cmdNoSlash = s.substring(1).trim();  // 去掉首个 '/'
-        List<String> tokens = new ArrayList<>(Arrays.asList(cmdNoSlash.split(" ")));
-        if (tokens.isEmpty()) return null;
-        String root = tokens.remove(0).toLowerCase(Locale.ROOT);
-        return new Parsed(root, tokens, cmdNoSlash);
-    }
-
     /**
      * 常规：空格分组
      */
@@ -145,14 +132,13 @@ public class CommandInvoker {
 
         String curName = null;
         List<String> curArgs = new ArrayList<>();
-        Set<String> methodNames = holder.aliases();
+        AliasTrie<String> subCommands = holder.subCommandTrie();
 
         for (int idx = 0; idx < tokens.size(); idx++) {
             String tk = tokens.get(idx);
-            String low = tk.toLowerCase(Locale.ROOT);
-            boolean isAlias = methodNames.contains(low);
+            String low = subCommands.get(tk, 0, tk.length());  // 命中时即为小写规范别名
 
-            if (isAlias) {
+            if (low != null) {
                 if (curName == null) {
                     curName = low;
                     log.debug("[core.bot.invoker] matched first command: {}", curName);
@@ -189,108 +175,49 @@ public class CommandInvoker {
     /**
      * 粘合模式：第一个 token 可能是“子命令+参数”贴在一起
      * 规则：
-     * - 在 tokens[0] 上对 methodNames 做“最长前缀”匹配；
+     * - 在 text[from..] 的首个 token 上对子命令别名前缀树做“最长前缀”匹配；
      * - 命中则：子命令=前缀，余串（若非空）作为第一个参数；其余 tokens 仍按普通参数；
      * - 未命中则：回落到 index。
      */
-    private List<Step> groupStepsGlue(List<String> tokens, PluginHolder holder) {
+    private List<Step> groupStepsGlue(String text, int from, PluginHolder holder) {
         List<Step> out = new ArrayList<>();
-        if (tokens == null || tokens.isEmpty()) {
+        int firstStart = CommandTokenizer.skipSpaces(text, from);
+        if (firstStart >= text.length()) {
             out.add(new Step(indexAlias(), List.of()));
             return out;
         }
 
-        Set<String> methodNames = holder.aliases();
-        String first = tokens.get(0);
-        String firstLow = first.toLowerCase(Locale.ROOT);
-
-        String bestAlias = null;
-        for (String a : methodNames) {
-            if (firstLow.startsWith(a)) {
-                if (bestAlias == null || a.length() > bestAlias.length()) bestAlias = a;
-            }
-        }
-
-        if (bestAlias == null) {
+        AliasTrie.TokenMatch<String> m = holder.subCommandTrie().scanToken(text, firstStart, a -> true);
+        if (m.prefixValue() == null) {
             // 没有任何子命令前缀命中，整个输入交给 index
-            out.add(new Step(indexAlias(), List.copyOf(tokens)));
+            out.add(new Step(indexAlias(), CommandTokenizer.tokenize(text, firstStart)));
             return out;
         }
 
-        List<String> args = new ArrayList<>();
-        String remain = first.substring(bestAlias.length());
-        if (!remain.isEmpty()) args.add(remain);
-        if (tokens.size() > 1) args.addAll(tokens.subList(1, tokens.size()));
+        List<String> rest = CommandTokenizer.tokenize(text, m.tokenEnd());
+        List<String> args = new ArrayList<>(rest.size() + 1);
+        if (m.prefixEnd() < m.tokenEnd()) args.add(text.substring(m.prefixEnd(), m.tokenEnd()));
+        args.addAll(rest);
 
-        out.add(new Step(bestAlias, List.copyOf(args)));
+        out.add(new Step(m.prefixValue(), List.copyOf(args)));
         return out;
     }
 
-    /* ===================== 选择实现 ===================== */
-
-    private List<CommandHandler> getCandidatesWithIndexFallback(PluginHolder holder, String aliasLower) {
-        Map<String, List<CommandHandler>> all = holder.getHandlers();
-        List<CommandHandler> list = all.get(aliasLower);
-        if (list != null && !list.isEmpty()) return list;
-        list = all.get(indexAlias());  // 这里 "" 视为 index
-        if (list != null && !list.isEmpty()) return list;
-        list = all.get("index");
-        if (list != null && !list.isEmpty()) return list;
-        return List.of();
-    }
-
-    /**
-     * 评分择优：ctx+args > ctx > payload+args > payload > args > none
-     */
-    private CommandHandler chooseBest(List<CommandHandler> cands, ParsedPayloadDTO payload, List<String> args) {
-        boolean hasArgs = args != null && !args.isEmpty();
-        int best = Integer.MIN_VALUE;
-        CommandHandler bestH = null;
-        for (CommandHandler h : cands) {
-            int s = h.score(payload, args);
-            if (hasArgs && !h.acceptsArgs()) {
-                s -= 1000;  // 带参但命令不接参，狠狠惩罚
-            } else if (!hasArgs && h.acceptsArgs()) {
-                s -= 100;   // 无参但命令接参，惩罚
-            } else {
-                s += 10;    // 匹配期望，加分
-            }
-            if (s > best) {
-                best = s;
-                bestH = h;
-            }
-        }
-        return bestH != null ? bestH : cands.get(0);
-    }
-
     private String indexAlias() {
         return "";
     }
 
-    private PluginHolder resolvePluginHolder(String rootKey) {
-        return pluginRegistry.getPluginHolder(rootKey);
-    }
-
     /**
      * 分组阶段判断“是否接收参数”的专用逻辑：
      * 不做精细打分，只要存在任一接参实现，就认为当前命令可吞参（贪心参数），
      * 这样可避免在 args 仍为空时误选无参实现，导致把后续别名 token 当作“新命令”。
      */
     private boolean acceptsArgsForGrouping(PluginHolder holder, String aliasLower) {
-        CommandHandler preferred = holder.getPreferred(aliasLower);
-        if (preferred != null) return preferred.acceptsArgs();
-        List<CommandHandler> candidates = getCandidatesWithIndexFallback(holder, aliasLower);
-        if (candidates.isEmpty()) return false;
-        for (CommandHandler h : candidates) {
-            if (h.acceptsArgs()) return true;
-        }
-        return false;
+        PluginHolder.Dispatch dispatch = holder.dispatch(aliasLower);
+        return dispatch != null && dispatch.acceptsArgs();
     }
 
     /* ===================== data records ===================== */
-    private record Parsed(String root, List<String> subAndArgs, String rawNoSlash) {
-    }
-
     private record Step(String name, List<String> args) {
     }
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+package com.arth.solabot.core.bot.invoker;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 无正则的命令文本切分工具，语义与旧实现
+ * {@code raw.trim().replaceAll("\\s+", " ").replaceAll("^/+", "/")} 后按空格切分保持一致：
+ * - 空白字符与正则 \s 相同，即 [ \t\n\x0B\f\r]
+ * - 连续空白视为一个分隔符
+ */
+final class CommandTokenizer {
+
+    private CommandTokenizer() {
+    }
+
+    static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    static int skipSpaces(CharSequence s, int from) {
+        int n = s.length();
+        while (from < n && isSpace(s.charAt(from))) from++;
+        return from;
+    }
+
+    /**
+     * 跳过前导空白、全部前导 '/' 及其后的空白，返回根命令的起始位置
+     */
+    static int commandStart(CharSequence s) {
+        int i = skipSpaces(s, 0);
+        int n = s.length();
+        while (i < n && s.charAt(i) == '/') i++;
+        return skipSpaces(s, i);
+    }
+
+    /**
+     * 返回 from 处开始（可为空白）的 token 的结束位置
+     */
+    static int tokenEnd(CharSequence s, int from) {
+        int n = s.length();
+        while (from < n && !isSpace(s.charAt(from))) from++;
+        return from;
+    }
+
+    /**
+     * 将 s[from, end) 按空白切分为 token，先计数再一次性分配数组
+     *
+     * @return 不可增删的 token 列表，无 token 时返回空列表
+     */
+    static List<String> tokenize(String s, int from) {
+        int n = s.length();
+        int count = 0;
+        for (int i = skipSpaces(s, from); i < n; i = skipSpaces(s, tokenEnd(s, i))) count++;
+        if (count == 0) return List.of();
+
+        String[] out = new String[count];
+        int k = 0;
+        for (int i = skipSpaces(s, from); i < n; ) {
+            int end = tokenEnd(s, i);
+            out[k++] = s.substring(i, end);
+            i = skipSpaces(s, end);
+        }
+        return Arrays.asList(out);
+    }
+}
@@ -2,12 +2,14 @@ package com.arth.solabot.core.bot.invoker;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
 
 /**
  * 封装插件实例与其命令映射（函数式处理器）
  * - 相较于旧实现，不再暴露反射 Method（反射的实现太丑陋了）
  * - 支持 “别名 → 多候选（重载）”
- * - 支持 “别名 → 优选缓存”
+ * - 注册完成后预计算 “别名 → 分派项” 表，运行期无需再打分择优
+ * - 支持按插件限制并发（虚拟线程执行模式下使用）
  */
 class PluginHolder {
 
@@ -15,21 +17,41 @@ class PluginHolder {
 
     public final boolean isGlued;
 
+    /**
+     * 插件级并发许可，为 null 时不限制
+     */
+    final Semaphore permits;
+
     /**
      * 子命令别名（小写） -> 多个候选处理器（允许重载）
      */
     protected final Map<String, List<CommandHandler>> commandHandlers = new ConcurrentHashMap<>();
 
     /**
-     * 计算后的优选处理器缓存（小写） -> 处理器
+     * 子命令别名（小写） -> 预计算的分派项，由 freeze() 构建，此后只读
+     */
+    private volatile Map<String, Dispatch> dispatchTable = Map.of();
+
+    /**
+     * 别名未命中时回落的 index 分派项（"" 优先，其次 "index"），可为 null
      */
-    protected final Map<String, CommandHandler> preferredHandlers = new ConcurrentHashMap<>();
+    private volatile Dispatch indexDispatch;
 
     PluginHolder(Object instance, boolean glued) {
+        this(instance, glued, 0);
+    }
+
+    PluginHolder(Object instance, boolean glued, int maxConcurrency) {
         this.instance = instance;
         this.isGlued = glued;
+        this.permits = maxConcurrency > 0 ? new Semaphore(maxConcurrency, true) : null;
     }
 
+    /**
+     * 子命令别名前缀树，注册完成后由 freeze() 构建
+     */
+    private volatile AliasTrie<String> subCommandTrie = AliasTrie.of(Map.of());
+
     void addHandler(String aliasLowerCase, CommandHandler handler) {
         commandHandlers.computeIfAbsent(aliasLowerCase, k -> new ArrayList<>()).add(handler);
     }
@@ -38,14 +60,15 @@ class PluginHolder {
         return commandHandlers;
     }
 
-    void setPreferred(String aliasLowerCase, CommandHandler h) {
-        if (aliasLowerCase == null) aliasLowerCase = "";
-        preferredHandlers.put(aliasLowerCase, h);
-    }
-
-    CommandHandler getPreferred(String aliasLowerCase) {
+    /**
+     * 查询子命令的分派项，未命中时回落到 index
+     *
+     * @return 分派项，插件既无该别名也无 index 时返回 null
+     */
+    Dispatch dispatch(String aliasLowerCase) {
         if (aliasLowerCase == null) aliasLowerCase = "";
-        return preferredHandlers.get(aliasLowerCase);
+        Dispatch d = dispatchTable.get(aliasLowerCase);
+        return d != null ? d : indexDispatch;
     }
 
     /**
@@ -54,5 +77,67 @@ class PluginHolder {
     Set<String> aliases() {
         return commandHandlers.keySet();
     }
-}
 
+    /**
+     * 所有处理器注册完成后调用，构建不可变的子命令别名前缀树与分派表
+     */
+    void freeze() {
+        Map<String, String> m = new HashMap<>();
+        Map<String, Dispatch> table = new HashMap<>();
+        for (Map.Entry<String, List<CommandHandler>> e : commandHandlers.entrySet()) {
+            m.put(e.getKey(), e.getKey());
+            if (!e.getValue().isEmpty()) table.put(e.getKey(), Dispatch.of(e.getValue()));
+        }
+        subCommandTrie = AliasTrie.of(m);
+        dispatchTable = Map.copyOf(table);
+        Dispatch index = table.get("");
+        indexDispatch = index != null ? index : table.get("index");
+    }
+
+    AliasTrie<String> subCommandTrie() {
+        return subCommandTrie;
+    }
+
+    /**
+     * 单个子命令的分派项：按 “本步是否带参” 预先择优好的处理器
+     *
+     * @param noArgs      本步无参时调用的处理器
+     * @param withArgs    本步带参时调用的处理器
+     * @param acceptsArgs 是否存在任一接参实现（分组阶段据此决定是否贪心吞参）
+     */
+    record Dispatch(CommandHandler noArgs, CommandHandler withArgs, boolean acceptsArgs) {
+
+        CommandHandler select(boolean hasArgs) {
+            return hasArgs ? withArgs : noArgs;
+        }
+
+        static Dispatch of(List<CommandHandler> candidates) {
+            boolean accepts = false;
+            for (CommandHandler h : candidates) accepts |= h.acceptsArgs();
+            return new Dispatch(chooseBest(candidates, false), chooseBest(candidates, true), accepts);
+        }
+
+        /**
+         * 评分择优：ctx+args > ctx = payload+args > payload > args > none
+         */
+        private static CommandHandler chooseBest(List<CommandHandler> cands, boolean hasArgs) {
+            int best = Integer.MIN_VALUE;
+            CommandHandler bestH = null;
+            for (CommandHandler h : cands) {
+                int s = h.score();
+                if (hasArgs && !h.acceptsArgs()) {
+                    s -= 1000;  // 带参但命令不接参，狠狠惩罚
+                } else if (!hasArgs && h.acceptsArgs()) {
+                    s -= 100;   // 无参但命令接参，惩罚
+                } else {
+                    s += 10;    // 匹配期望，加分
+                }
+                if (s > best) {
+                    best = s;
+                    bestH = h;
+                }
+            }
+            return bestH != null ? bestH : cands.get(0);
+        }
+    }
+}
@@ -10,14 +10,12 @@ import com.arth.solabot.plugin.custom.Plugin;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
 import org.springframework.core.type.filter.AnnotationTypeFilter;
 import org.springframework.stereotype.Component;
 
-import java.lang.invoke.MethodHandle;
-import java.lang.invoke.MethodHandles;
-import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -45,6 +43,15 @@ public class PluginRegistry {
     @Resource
     private ForwardChainBuilder forwardChainBuilder;
 
+    @Value("${app.parameter.dispatch.execution-mode:platform}")
+    private String executionMode;
+
+    /**
+     * 虚拟线程模式下单个插件的最大并发命令数，平台线程模式下由线程池规模自然约束，不做限制
+     */
+    @Value("${app.parameter.dispatch.plugin-concurrency:16}")
+    private int pluginConcurrency;
+
     /**
      * 模块别名（小写） -> 插件持有者
      */
@@ -55,6 +62,11 @@ public class PluginRegistry {
      */
     private final Map<String, String> helpTextMap = new ConcurrentHashMap<>();
 
+    /**
+     * 模块别名前缀树，init 完成后构建，此后只读
+     */
+    private volatile AliasTrie<PluginHolder> rootTrie = AliasTrie.of(Map.of());
+
     @PostConstruct
     void init() {
         log.info("[core.bot.invoker] scanning plugins under {}", PLUGIN_BASE_PACKAGE);
@@ -74,8 +86,9 @@ public class PluginRegistry {
                 Object instance = applicationContext.getAutowireCapableBeanFactory().createBean(clazz);
                 if (instance instanceof Plugin plugin) plugin.setPluginRegistry(this);
 
-                // plugin holder（带 glue 标记）
-                PluginHolder holder = new PluginHolder(instance, pluginAnn.glued());
+                // plugin holder（带 glue 标记与并发许可）
+                int maxConcurrency = "virtual".equalsIgnoreCase(executionMode) ? pluginConcurrency : 0;
+                PluginHolder holder = new PluginHolder(instance, pluginAnn.glued(), maxConcurrency);
 
                 // 扫描 public 方法并注册命令别名
                 for (Method m : clazz.getMethods()) {
@@ -83,7 +96,7 @@ public class PluginRegistry {
                     if (cmdAnn == null) continue;
                     if (!java.lang.reflect.Modifier.isPublic(m.getModifiers())) continue;
 
-                    CommandHandler handler = createHandler(instance, m);
+                    CommandHandler handler = CommandHandlers.create(instance, m);
                     for (String alias : cmdAnn.value()) {
                         String key = alias == null ? "" : alias.trim().toLowerCase(Locale.ROOT);
                         holder.addHandler(key, handler);
@@ -91,6 +104,8 @@ public class PluginRegistry {
                     }
                 }
 
+                holder.freeze();
+
                 // 为每个模块别名注册
                 for (String alias : pluginAnn.value()) {
                     String key = alias.trim().toLowerCase(Locale.ROOT);
@@ -123,152 +138,7 @@ public class PluginRegistry {
         if (pluginRegistryMap.isEmpty()) {
             log.warn("[core.bot.invoker] no plugins found under {}", PLUGIN_BASE_PACKAGE);
         }
-    }
-
-    /**
-     * 将插件方法绑定为 CommandHandler。
-     * 支持以下签名：
-     * ()、(ParsedPayloadDTO)、(ParsedPayloadDTO, List)、
-     * (CommandChainContext)、(CommandChainContext, List)
-     */
-    private CommandHandler createHandler(Object instance, Method m) throws Exception {
-        MethodHandles.Lookup lk = MethodHandles.lookup();
-        Class<?>[] types = m.getParameterTypes();
-
-        // === () ===
-        if (types.length == 0) {
-            MethodHandle mh = lk.unreflect(m).bindTo(instance).asType(MethodType.methodType(Object.class));
-            return new CommandHandler() {
-                @Override
-                public Object handle(CommandChainContext chainCtx, ParsedPayloadDTO payload, List<String> args) throws Throwable {
-                    return mh.invoke();
-                }
-
-                @Override
-                public int score(ParsedPayloadDTO payload, List<String> args) {
-                    return 1;
-                }
-
-                @Override
-                public boolean acceptsArgs() {
-                    return false;
-                }
-            };
-        }
-
-        // === (ParsedPayloadDTO) ===
-        if (types.length == 1 && types[0] == ParsedPayloadDTO.class) {
-            MethodHandle mh = lk.unreflect(m).bindTo(instance)
-                    .asType(MethodType.methodType(Object.class, ParsedPayloadDTO.class));
-            return new CommandHandler() {
-                @Override
-                public Object handle(CommandChainContext chainCtx, ParsedPayloadDTO payload, List<String> args) throws Throwable {
-                    return mh.invoke(payload);
-                }
-
-                @Override
-                public int score(ParsedPayloadDTO payload, List<String> args) {
-                    return 3;
-                }
-
-                @Override
-                public boolean acceptsArgs() {
-                    return false;
-                }
-            };
-        }
-
-        // === (ParsedPayloadDTO, List) ===
-        if (types.length == 2 && types[0] == ParsedPayloadDTO.class && List.class.isAssignableFrom(types[1])) {
-            MethodHandle mh = lk.unreflect(m).bindTo(instance)
-                    .asType(MethodType.methodType(Object.class, ParsedPayloadDTO.class, List.class));
-            return new CommandHandler() {
-                @Override
-                public Object handle(CommandChainContext chainCtx, ParsedPayloadDTO payload, List<String> args) throws Throwable {
-                    return mh.invoke(payload, args);
-                }
-
-                @Override
-                public int score(ParsedPayloadDTO payload, List<String> args) {
-                    return 5;
-                }
-
-                @Override
-                public boolean acceptsArgs() {
-                    return true;
-                }
-            };
-        }
-
-        // === (List) ===
-        if (types.length == 1 && List.class.isAssignableFrom(types[0])) {
-            MethodHandle mh = lk.unreflect(m).bindTo(instance)
-                    .asType(MethodType.methodType(Object.class, List.class));
-            return new CommandHandler() {
-                @Override
-                public Object handle(CommandChainContext chainCtx, ParsedPayloadDTO payload, List<String> args) throws Throwable {
-                    return mh.invoke(args);
-                }
-
-                @Override
-                public int score(ParsedPayloadDTO payload, List<String> args) {
-                    return 2;
-                }
-
-                @Override
-                public boolean acceptsArgs() {
-                    return true;
-                }
-            };
-        }
-
-        // === (CommandChainContext) ===
-        if (types.length == 1 && types[0] == CommandChainContext.class) {
-            MethodHandle mh = lk.unreflect(m).bindTo(instance)
-                    .asType(MethodType.methodType(Object.class, CommandChainContext.class));
-            return new CommandHandler() {
-                @Override
-                public Object handle(CommandChainContext chainCtx, ParsedPayloadDTO payload, List<String> args) throws Throwable {
-                    return mh.invoke(chainCtx);
-                }
-
-                @Override
-                public int score(ParsedPayloadDTO payload, List<String> args) {
-                    return 5;
-                }
-
-                @Override
-                public boolean acceptsArgs() {
-                    return false;
-                }
-            };
-        }
-
-        // === (CommandChainContext, List) ===
-        if (types.length == 2 && types[0] == CommandChainContext.class && List.class.isAssignableFrom(types[1])) {
-            MethodHandle mh = lk.unreflect(m).bindTo(instance)
-                    .asType(MethodType.methodType(Object.class, CommandChainContext.class, List.class));
-            return new CommandHandler() {
-                @Override
-                public Object handle(CommandChainContext chainCtx, ParsedPayloadDTO payload, List<String> args) throws Throwable {
-                    return mh.invoke(chainCtx, args);
-                }
-
-                @Override
-                public int score(ParsedPayloadDTO payload, List<String> args) {
-                    return 7;
-                }
-
-                @Override
-                public boolean acceptsArgs() {
-                    return true;
-                }
-            };
-        }
-
-        throw new InternalServerErrorException(
-                "Internal Server Error: unsupported plugin method signature",
-                "服务器内部错误：不支持的插件方法签名（仅支持 (), (Payload), (Payload,List), (Ctx), (Ctx,List)）");
+        rootTrie = AliasTrie.of(pluginRegistryMap);
     }
 
     /* ===================== 运行期查询 ===================== */
@@ -279,24 +149,14 @@ public class PluginRegistry {
     }
 
     /**
-     * 按“最长前缀”在原始命令串（去掉首个 '/'）中匹配 glue=true 的模块别名。
+     * 在原始命令串 text 的 from 处扫描根命令 token，一次遍历内同时给出
+     * 模块别名的精确匹配与 glue=true 模块别名的“最长前缀”匹配。
      *
-     * @param rawNoSlash 去掉首个'/'后的原始命令串，已做 trim 与多空格压缩，但未再做分词
+     * @param text 原始命令串
+     * @param from 根命令起始位置（已跳过前导空白与 '/'）
      */
-    GlueMatch matchGlueByLongestPrefix(String rawNoSlash) {
-        String s = rawNoSlash.toLowerCase(Locale.ROOT);
-        GlueMatch best = null;
-        for (Map.Entry<String, PluginHolder> e : pluginRegistryMap.entrySet()) {
-            String alias = e.getKey().toLowerCase(Locale.ROOT);
-            PluginHolder holder = e.getValue();
-            if (!holder.isGlued) continue;
-            if (s.startsWith(alias)) {
-                if (best == null || alias.length() > best.matchedAlias.length()) {
-                    best = new GlueMatch(alias, holder);
-                }
-            }
-        }
-        return best;
+    AliasTrie.TokenMatch<PluginHolder> resolveRoot(String text, int from) {
+        return rootTrie.scanToken(text, from, h -> h.isGlued);
     }
 
     public String getPluginHelpText(String pluginSimpleName) {
@@ -320,16 +180,4 @@ public class PluginRegistry {
                 : building.toPrivateJson(payload.getUserId());
         sender.pushActionJSON(payload.getSelfId(), json);
     }
-
-    /* ============== glue 匹配结果封装 ============== */
-
-    static final class GlueMatch {
-        final String matchedAlias;  // 小写
-        final PluginHolder holder;
-
-        GlueMatch(String matchedAlias, PluginHolder holder) {
-            this.matchedAlias = matchedAlias;
-            this.holder = holder;
-        }
-    }
-}
\ No newline at end of file
+}
@@ -1,27 +1,129 @@
 package com.arth.solabot.core.general.cache.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import com.arth.solabot.core.general.utils.PngEncoder;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.stereotype.Service;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Redis 临时图片缓存，Redis 为唯一的数据源；本地另有一层按字节数加权的近缓存（Caffeine W-TinyLFU）：
+ * - 写入时同时放入近缓存（write-through），OneBot 客户端随后的多次读取不再经过网络
+ * - 读取未命中时，若一次往返已取得完整内容，则按 Redis 返回的剩余 TTL 回填，多节点部署下其他节点写入的图片同样受益
+ * - 每个条目的本地过期时间不晚于本节点所知的 Redis 过期时间（touch 续期时同步延长），键不会被改写，过期即唯一的失效方式
+ * - 命中率与节省的 Redis 读取字节数通过 solabot.img.near.* 指标暴露
+ * 批量写入时各图片在有界的编码线程池上并行编码（每个线程复用自己的输出缓冲），全部完成后以一次往返写入；
+ * 编码线程池只承担 CPU 工作，阻塞的 Redis 写入在调用线程（同步方法）或默认异步执行器（异步方法）上进行
+ */
 @Service
 @RequiredArgsConstructor
 public class ImageCacheService {
 
     private final RedisTemplate<String, byte[]> redisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final PngEncoder pngEncoder;
 
     @Value("${app.parameter.cache.tmp-img.ttl}")
     private int ttl;
+    @Getter
     @Value("${app.parameter.cache.tmp-img.max-size}")
     private int maxSize;
+    @Value("${app.parameter.cache.tmp-img.near-size:134217728}")
+    private long nearSize;
+    @Value("${app.parameter.cache.tmp-img.encode-parallelism:0}")
+    private int encodeParallelism;
+
+    /* 单次往返中全部 Redis 命令的等待上限 */
+    private static final Duration REDIS_TIMEOUT = Duration.ofSeconds(30);
+
+    /* 编码线程复用的输出缓冲，超过该容量的缓冲用后丢弃，避免长期占用大块堆内存 */
+    private static final int MAX_RETAINED_BUFFER = 8 * 1024 * 1024;
+    private static final ThreadLocal<ByteArrayOutputStream> ENCODE_BUFFER =
+            ThreadLocal.withInitial(() -> new ByteArrayOutputStream(256 * 1024));
+
+    private ExecutorService encoders;
+
+    /* 完整 Redis 键 -> 图片内容；near-size 为 0 时为 null */
+    private Cache<String, byte[]> near;
+    private Counter nearHits;
+    private Counter nearMisses;
+    private Counter bytesAvoided;
+
+    @PostConstruct
+    void init() {
+        int parallelism = encodeParallelism > 0 ? encodeParallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger seq = new AtomicInteger();
+        encoders = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "img-encode-" + seq.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        nearHits = meterRegistry.counter("solabot.img.near.cache", "result", "hit");
+        nearMisses = meterRegistry.counter("solabot.img.near.cache", "result", "miss");
+        bytesAvoided = meterRegistry.counter("solabot.img.near.bytes.avoided");
+        if (nearSize <= 0) return;
+        // 过期时间逐条指定（见 putNear），读取不改变过期时间
+        near = Caffeine.newBuilder()
+                .maximumWeight(nearSize)
+                .weigher((String k, byte[] v) -> v.length)
+                .expireAfter(new Expiry<String, byte[]>() {
+                    @Override
+                    public long expireAfterCreate(String key, byte[] value, long currentTime) {
+                        return TimeUnit.MINUTES.toNanos(ttl);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, byte[] value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, byte[] value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+        Gauge.builder("solabot.img.near.bytes", near, c -> c.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L))
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        encoders.shutdownNow();
+    }
 
     /**
      * 缓存静态图片方法，要求输入 BufferedImage，返回 Redis 缓存的 UUID
@@ -32,12 +134,10 @@ public class ImageCacheService {
      * @throws IOException
      */
     public String cacheImage(BufferedImage img, String imgType) throws IOException {
-        String uuid = UUID.randomUUID().toString();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ImageIO.write(img, imgType, baos);
-        byte[] bytes = baos.toByteArray();
-        redisTemplate.opsForValue().set("temp:image:" + imgType + ":" + uuid, bytes, Duration.ofMinutes(ttl));
-        return uuid;
+        // 单张图片无可并行之处，直接在调用线程上编码；调用线程不在编码线程池中，不使用线程复用的缓冲
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(256 * 1024);
+        write(img, imgType, baos);
+        return cacheImage(baos.toByteArray(), imgType);
     }
 
     /**
@@ -53,19 +153,188 @@ public class ImageCacheService {
 
     /**
      * 缓存静态图片方法，要求输入 byte[]，返回 Redis 缓存的 UUID
-     * ** 所有缓存方法都以本方法为入口 **
+     * ** 所有单张缓存方法都以本方法为入口，批量写入见 cacheImage(byte[][], List) **
+     * UUID 由内容哈希得到：相同内容得到相同的 UUID 与 URL，TTL 内只存一份，重复写入时只刷新 TTL
      *
      * @param bytes
      * @param imgType
      * @return
      */
     public String cacheImage(byte[] bytes, String imgType) {
-        if (bytes.length > maxSize) {
-            throw new IllegalArgumentException("Image size exceeds limit: " + bytes.length + " > " + maxSize);
+        return cacheImage(new byte[][]{bytes}, List.of(imgType)).get(0);
+    }
+
+    /**
+     * 若 UUID 对应的图片仍在缓存中，将其过期时间重置为完整的 ttl
+     *
+     * @param imgType
+     * @param uuid
+     * @return 图片是否仍在缓存中
+     */
+    public boolean touch(String imgType, String uuid) {
+        String key = "temp:image:" + imgType + ":" + uuid;
+        boolean alive = Boolean.TRUE.equals(redisTemplate.expire(key, Duration.ofMinutes(ttl)));
+        if (near != null) {
+            if (alive) {
+                near.policy().expireVariably().ifPresent(p -> p.setExpiresAfter(key, Duration.ofMinutes(ttl)));
+            } else {
+                near.invalidate(key);
+            }
         }
-        String uuid = UUID.randomUUID().toString();
-        redisTemplate.opsForValue().set("temp:image:" + imgType + ":" + uuid, bytes, Duration.ofMinutes(ttl));
-        return uuid;
+        return alive;
+    }
+
+    /**
+     * 缓存图片的开头部分
+     *
+     * @param length 图片总字节数
+     * @param prefix 开头的至多 n 个字节，length <= n 时即为完整图片
+     */
+    public record Head(long length, byte[] prefix) {
+    }
+
+    /**
+     * 读取缓存图片开头的至多 n 个字节（GETRANGE）与总长度：不足 n 字节的图片一次往返即读完，
+     * 否则再以 STRLEN 取得总长度
+     *
+     * @return 图片不在缓存中时返回 null
+     */
+    public Head head(String imgType, String uuid, int n) {
+        String key = "temp:image:" + imgType + ":" + uuid;
+        byte[] local = getNear(key);
+        // 近缓存命中时 prefix 即完整内容，调用方不会再读取 Redis
+        if (local != null) {
+            bytesAvoided.increment(local.length);
+            return new Head(local.length, local);
+        }
+        byte[] raw = serialize(key);
+        List<Object> results = redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+            RedisClusterAsyncCommands<byte[], byte[]> async = async(connection);
+            // 剩余 TTL 只用于回填近缓存
+            return near == null
+                    ? await(async.getrange(raw, 0, n - 1))
+                    : await(async.getrange(raw, 0, n - 1), async.pttl(raw));
+        });
+        if (!(results.get(0) instanceof byte[] prefix) || prefix.length == 0) return null;
+        // 不足 n 字节即为完整内容，按剩余 TTL 回填近缓存；否则再以 STRLEN 取得总长度（大图片本就需要多次往返）
+        if (prefix.length < n) {
+            if (results.size() > 1 && results.get(1) instanceof Long pttl && pttl > 0) {
+                putNear(key, prefix, Duration.ofMillis(pttl));
+            }
+            return new Head(prefix.length, prefix);
+        }
+        Long length = redisTemplate.execute((RedisCallback<Long>) connection -> connection.stringCommands().strLen(raw));
+        if (length == null || length <= 0) return null;
+        if (length == prefix.length && results.size() > 1 && results.get(1) instanceof Long pttl && pttl > 0) {
+            putNear(key, prefix, Duration.ofMillis(pttl));
+        }
+        return new Head(length, prefix);
+    }
+
+    /**
+     * 缓存图片的字节数（STRLEN），不在缓存中时为 0
+     */
+    public long size(String imgType, String uuid) {
+        String key = "temp:image:" + imgType + ":" + uuid;
+        byte[] local = getNear(key);
+        if (local != null) return local.length;
+        Long length = redisTemplate.execute((RedisCallback<Long>) connection -> connection.stringCommands().strLen(serialize(key)));
+        return length == null ? 0 : length;
+    }
+
+    /**
+     * 读取缓存图片 [start, end] 闭区间内的字节（GETRANGE），图片在此期间过期时返回的长度会不足
+     */
+    public byte[] readRange(String imgType, String uuid, long start, long end) {
+        String key = "temp:image:" + imgType + ":" + uuid;
+        byte[] local = getNear(key);
+        if (local != null) {
+            byte[] slice = start >= local.length ? new byte[0] : Arrays.copyOfRange(local, (int) start, (int) Math.min(end + 1, local.length));
+            bytesAvoided.increment(slice.length);
+            return slice;
+        }
+        byte[] bytes = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().getRange(serialize(key), start, end));
+        return bytes == null ? new byte[0] : bytes;
+    }
+
+    /**
+     * 在编码线程上以该线程复用的输出缓冲编码，返回恰好长度的副本
+     */
+    private byte[] encode(BufferedImage img, String imgType) throws IOException {
+        ByteArrayOutputStream baos = ENCODE_BUFFER.get();
+        baos.reset();
+        try {
+            write(img, imgType, baos);
+            return baos.toByteArray();
+        } finally {
+            if (baos.size() > MAX_RETAINED_BUFFER) ENCODE_BUFFER.remove();
+        }
+    }
+
+    /**
+     * PNG 使用 PngEncoder，其余格式使用 ImageIO
+     */
+    private void write(BufferedImage img, String imgType, ByteArrayOutputStream out) throws IOException {
+        if ("png".equals(imgType)) {
+            pngEncoder.write(img, out);
+        } else if (!ImageIO.write(img, imgType, out)) {
+            throw new IOException("no ImageIO writer for " + imgType);
+        }
+    }
+
+    /**
+     * 内容哈希：SHA-256 的前 128 位，URL 安全的 Base64（22 字符，满足读取接口的 UUID 校验）
+     * 键即公开的 URL，使用抗碰撞的哈希，避免构造的内容覆盖他人的图片
+     */
+    private static String contentHash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private byte[] serialize(String key) {
+        return ((StringRedisSerializer) redisTemplate.getStringSerializer()).serialize(key);
+    }
+
+    /**
+     * 共享的原生连接上的异步命令：连续发出的多条命令只等待一次往返，效果与 pipeline 相同
+     * executePipelined 要求独占连接，未配置连接池时每次调用都会新建并关闭一条 TCP 连接，高并发读取时代价远超命令本身
+     */
+    @SuppressWarnings("unchecked")
+    private static RedisClusterAsyncCommands<byte[], byte[]> async(RedisConnection connection) {
+        return (RedisClusterAsyncCommands<byte[], byte[]>) connection.getNativeConnection();
+    }
+
+    /**
+     * 等待全部命令完成，按顺序返回结果
+     */
+    private static List<Object> await(RedisFuture<?>... futures) {
+        if (!LettuceFutures.awaitAll(REDIS_TIMEOUT, futures)) {
+            throw new RedisCommandTimeoutException("image cache commands timed out after " + REDIS_TIMEOUT);
+        }
+        List<Object> results = new ArrayList<>(futures.length);
+        for (RedisFuture<?> f : futures) results.add(f.toCompletableFuture().join());
+        return results;
+    }
+
+    private byte[] getNear(String key) {
+        if (near == null) return null;
+        byte[] bytes = near.getIfPresent(key);
+        (bytes != null ? nearHits : nearMisses).increment();
+        return bytes;
+    }
+
+    /**
+     * 放入近缓存，本地过期时间为 expiresAfter（不晚于 Redis 中的过期时间）
+     */
+    private void putNear(String key, byte[] bytes, Duration expiresAfter) {
+        if (near == null) return;
+        near.policy().expireVariably().ifPresentOrElse(
+                p -> p.put(key, bytes, expiresAfter),
+                () -> near.put(key, bytes));
     }
 
     /**
@@ -87,12 +356,59 @@ public class ImageCacheService {
      * @throws IOException
      */
     public List<String> cacheImage(List<BufferedImage> imgs, List<String> imgTypes) throws IOException {
+        byte[][] bytesList;
+        try {
+            bytesList = encodeAll(imgs, imgTypes).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) throw io.getCause();
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+        return cacheImage(bytesList, imgTypes);
+    }
+
+    /**
+     * 异步缓存多张图片：各图片在编码线程池上并行编码，全部完成后在默认异步执行器上以一次往返写入，调用方可在此期间继续其他工作
+     * 编码期间调用方不得再修改这些图片
+     *
+     * @param imgs
+     * @param imgTypes
+     * @return 按输入顺序的 UUIDs；编码失败时以 UncheckedIOException 结束
+     */
+    public CompletableFuture<List<String>> cacheImageAsync(List<BufferedImage> imgs, List<String> imgTypes) {
+        return encodeAll(imgs, imgTypes).thenApplyAsync(bytesList -> cacheImage(bytesList, imgTypes));
+    }
+
+    /**
+     * 在编码线程池上并行编码，按输入顺序返回；编码失败时以 UncheckedIOException 结束
+     */
+    private CompletableFuture<byte[][]> encodeAll(List<BufferedImage> imgs, List<String> imgTypes) {
         if (imgs.size() != imgTypes.size()) throw new IllegalArgumentException("size of imgs and types not matched");
-        List<String> uuids = new ArrayList<>(imgs.size());
+        List<CompletableFuture<byte[]>> encoded = new ArrayList<>(imgs.size());
         for (int i = 0; i < imgs.size(); i++) {
-            uuids.add(cacheImage(imgs.get(i), imgTypes.get(i)));
+            BufferedImage img = imgs.get(i);
+            String type = imgTypes.get(i);
+            encoded.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return encode(img, type);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, encoders));
         }
-        return uuids;
+        return CompletableFuture.allOf(encoded.toArray(CompletableFuture[]::new))
+                .thenApply(v -> {
+                    byte[][] bytesList = new byte[encoded.size()][];
+                    for (int i = 0; i < bytesList.length; i++) bytesList[i] = encoded.get(i).join();
+                    return bytesList;
+                });
+    }
+
+    /**
+     * 异步缓存单张图片，见 cacheImageAsync(List, List)
+     */
+    public CompletableFuture<String> cacheImageAsync(BufferedImage img, String imgType) {
+        return cacheImageAsync(List.of(img), List.of(imgType)).thenApply(uuids -> uuids.get(0));
     }
 
     /**
@@ -109,6 +425,8 @@ public class ImageCacheService {
 
     /**
      * 缓存多张静态图片的方法，要求输入 byte[][]，返回 Redis 缓存的 UUIDs
+     * 全部写入在一次往返中完成（见 async）；任意一张超出大小限制时整批不写入
+     * 每张以 SET NX EX 写入内容哈希键，随后 EXPIRE 刷新 TTL：内容已存在时不再重复写入，只延长其存活时间
      *
      * @param bytesList
      * @param imgTypes
@@ -117,9 +435,27 @@ public class ImageCacheService {
     public List<String> cacheImage(byte[][] bytesList, List<String> imgTypes) {
         if (bytesList.length != imgTypes.size())
             throw new IllegalArgumentException("size of bytes list and types not matched");
+        for (byte[] bytes : bytesList) {
+            if (bytes.length > maxSize) {
+                throw new IllegalArgumentException("Image size exceeds limit: " + bytes.length + " > " + maxSize);
+            }
+        }
         List<String> uuids = new ArrayList<>(bytesList.length);
+        for (byte[] bytes : bytesList) uuids.add(contentHash(bytes));
+        long seconds = Duration.ofMinutes(ttl).toSeconds();
+        SetArgs setArgs = SetArgs.Builder.nx().ex(seconds);
+        redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+            RedisClusterAsyncCommands<byte[], byte[]> async = async(connection);
+            RedisFuture<?>[] futures = new RedisFuture<?>[bytesList.length * 2];
+            for (int i = 0; i < bytesList.length; i++) {
+                byte[] key = serialize("temp:image:" + imgTypes.get(i) + ":" + uuids.get(i));
+                futures[2 * i] = async.set(key, bytesList[i], setArgs);
+                futures[2 * i + 1] = async.expire(key, seconds);
+            }
+            return await(futures);
+        });
         for (int i = 0; i < bytesList.length; i++) {
-            uuids.add(cacheImage(bytesList[i], imgTypes.get(i)));
+            putNear("temp:image:" + imgTypes.get(i) + ":" + uuids.get(i), bytesList[i], Duration.ofMinutes(ttl));
         }
         return uuids;
     }
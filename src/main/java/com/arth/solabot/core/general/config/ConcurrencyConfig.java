@@ -1,19 +1,31 @@
 package com.arth.solabot.core.general.config;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 
+@Slf4j
 @Configuration
 public class ConcurrencyConfig {
 
+    /**
+     * 命令执行线程池，由 app.parameter.dispatch.execution-mode 切换：
+     * - platform: 固定规模的平台线程池
+     * - virtual: 每个命令一个虚拟线程，适合插件中大量阻塞等待（下载、echo 回包等）的场景，
+     * 并发上限改由 PluginRegistry 按插件的信号量控制
+     */
     @Bean(destroyMethod = "shutdown")
-    public ExecutorService executorService() {
+    public ExecutorService executorService(@Value("${app.parameter.dispatch.execution-mode:platform}") String executionMode) {
+        if ("virtual".equalsIgnoreCase(executionMode)) {
+            log.info("[core.general.config] command execution mode: virtual threads");
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("cmd-vt-", 0).factory());
+        }
+
         int cores = Math.max(2, Runtime.getRuntime().availableProcessors());
+        log.info("[core.general.config] command execution mode: platform threads ({}..{})", cores, cores * 2);
         return new ThreadPoolExecutor(
                 cores, cores * 2,
                 60L, TimeUnit.SECONDS,
@@ -23,7 +35,7 @@ public class ConcurrencyConfig {
                     t.setDaemon(true);
                     return t;
                 },
-                new ThreadPoolExecutor.CallerRunsPolicy()  // 回退策略：队满回退至调用线程
+                new ThreadPoolExecutor.AbortPolicy()  // 队满直接拒绝，由 LaneDispatcher 负责丢弃，不回退至 ws 读线程
         );
     }
 }
@@ -0,0 +1,72 @@
+package com.arth.solabot.core.general.diagnostics;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 虚拟线程 pinning 检测器：
+ * 仅在虚拟线程执行模式下启用，通过 JFR 事件流订阅 jdk.VirtualThreadPinned，
+ * 当虚拟线程在 synchronized 块（或 native 帧）内阻塞导致载体线程被钉住超过阈值时打印调用栈，
+ * 用于定位诸如 Pjsk.getCtx、Gallery 中 idToFile 监视器之类的 pinning 热点
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.parameter.dispatch.execution-mode", havingValue = "virtual")
+public class VirtualThreadPinningDetector {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int MAX_LOGGED_FRAMES = 12;
+
+    @Value("${app.parameter.dispatch.pinning-threshold-ms:20}")
+    private long thresholdMs;
+
+    private RecordingStream stream;
+
+    @PostConstruct
+    void start() {
+        try {
+            stream = new RecordingStream();
+            stream.enable(PINNED_EVENT).withThreshold(Duration.ofMillis(thresholdMs)).withStackTrace();
+            stream.onEvent(PINNED_EVENT, this::report);
+            stream.startAsync();
+            log.info("[core.general.diagnostics] virtual thread pinning detector started, threshold: {} ms", thresholdMs);
+        } catch (Exception e) {
+            log.warn("[core.general.diagnostics] failed to start virtual thread pinning detector", e);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (stream != null) stream.close();
+    }
+
+    private void report(RecordedEvent event) {
+        StringBuilder sb = new StringBuilder();
+        RecordedStackTrace st = event.getStackTrace();
+        if (st != null) {
+            List<RecordedFrame> frames = st.getFrames();
+            for (int i = 0; i < Math.min(frames.size(), MAX_LOGGED_FRAMES); i++) {
+                RecordedFrame f = frames.get(i);
+                sb.append("\n\tat ")
+                        .append(f.getMethod().getType().getName()).append('.')
+                        .append(f.getMethod().getName())
+                        .append(" (line ").append(f.getLineNumber()).append(')');
+            }
+            if (frames.size() > MAX_LOGGED_FRAMES) sb.append("\n\t...");
+        }
+        String thread = event.getThread() != null ? event.getThread().getJavaName() : "unknown";
+        log.warn("[core.general.diagnostics] virtual thread {} pinned its carrier for {} ms{}",
+                thread, event.getDuration().toMillis(), sb);
+    }
+}
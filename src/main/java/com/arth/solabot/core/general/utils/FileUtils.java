@@ -1,11 +1,10 @@
 package com.arth.solabot.core.general.utils;
 
+import com.arth.solabot.adapter.fetcher.http.StreamingDownloader;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
-import org.springframework.web.reactive.function.client.WebClient;
-import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 
 import java.io.File;
 import java.io.IOException;
@@ -18,7 +17,10 @@ import java.util.concurrent.CompletableFuture;
 @RequiredArgsConstructor
 public class FileUtils {
 
-    private final WebClient webClient;
+    private final StreamingDownloader downloader;
+
+    @Value("${app.parameter.cache.download.max-file-size:1073741824}")
+    private long maxFileBytes;
 
     // 常见图片类型响应头到后缀名的映射
     private static final Map<String, String> EXT_MAP = Map.of(
@@ -30,6 +32,7 @@ public class FileUtils {
 
     /**
      * 从 url 下载图片并保存到指定路径，需指定基本文件名（无后缀），返回文件名（带后缀）
+     * 响应体经 AsynchronousFileChannel 边收边写入磁盘，不在内存中聚合
      *
      * @param url
      * @param saveDir
@@ -37,40 +40,14 @@ public class FileUtils {
      * @return
      */
     public CompletableFuture<String> downloadImageAsync(String url, Path saveDir, String baseName) {
-        return webClient.get()
-                .uri(url)
-//                .headers(h -> {
-//                    if (authToken != null && !authToken.isEmpty()) {
-//                        h.setBearerAuth(authToken);
-//                    }
-//                })
-                .retrieve()
-                .toEntity(byte[].class)
-                .flatMap(entity -> {
-                    var contentType = entity.getHeaders().getContentType();
+        return downloader.fetchToFile(url, contentType -> {
                     String extension = EXT_MAP.getOrDefault(
-                            contentType != null ? contentType.toString() : "",
+                            contentType != null ? contentType.getType() + "/" + contentType.getSubtype() : "",
                             ".bin"
                     );
-                    byte[] body = entity.getBody();
-                    if (body == null) {
-                        return Mono.error(new IllegalStateException("Empty response body"));
-                    }
-
-                    String fileName = baseName + extension;
-                    Path savePath = saveDir.resolve(fileName);
-
-                    return Mono.fromRunnable(() -> {
-                                try {
-                                    Files.createDirectories(saveDir);
-                                    Files.write(savePath, body);
-                                } catch (Exception e) {
-                                    throw new RuntimeException(e);
-                                }
-                            })
-                            .subscribeOn(Schedulers.boundedElastic())
-                            .thenReturn(fileName);
-                })
+                    return saveDir.resolve(baseName + extension);
+                }, maxFileBytes)
+                .map(download -> download.path().getFileName().toString())
                 .toFuture();
     }
 
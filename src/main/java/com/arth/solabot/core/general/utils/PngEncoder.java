@@ -0,0 +1,400 @@
+package com.arth.solabot.core.general.utils;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.stream.IntStream;
+
+/**
+ * Bot 渲染图片的 PNG 编码器，替代单线程、参数固定的 ImageIO PNG writer：
+ * - 颜色数不超过 256 时输出 8 位索引色（PLTE，含透明时附 tRNS），否则按是否含透明输出 RGB / RGBA，每通道 8 位
+ * - 行过滤可选 none / sub / up / average / paeth / adaptive（逐行取残差绝对值和最小者）；索引色固定不过滤
+ * - 过滤后的数据按行切为约 block-size 字节的块，各块在 ForkJoin 公共池上独立 deflate（pigz 式）：
+ * 非末块以 SYNC_FLUSH 收尾对齐到字节边界，后一块以前一块末尾 32KB 作为预置字典以保持压缩率，
+ * 各块首尾相接即为一个完整的 deflate 流，Adler-32 由各块的校验值合并得到，输出仍是单个合法的 zlib 流
+ * - 每通道超过 8 位的图片（如 16 位灰度）交由 ImageIO 处理，避免丢失精度
+ * - 无状态，可被多个线程并发调用
+ */
+@Component
+public class PngEncoder {
+
+    /**
+     * 行过滤策略，取值对应 PNG 规范中的过滤类型，ADAPTIVE 为逐行选择
+     */
+    public enum Filter {
+        NONE, SUB, UP, AVERAGE, PAETH, ADAPTIVE
+    }
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int WINDOW = 32 * 1024;
+
+    private final int level;
+    private final Filter filter;
+    private final int blockSize;
+    private final boolean palette;
+
+    /* 容器使用的构造器；另一个构造器供测试与非 Spring 场景直接指定参数 */
+    @Autowired
+    public PngEncoder(@Value("${app.parameter.png.level:4}") int level,
+                      @Value("${app.parameter.png.filter:adaptive}") String filter,
+                      @Value("${app.parameter.png.block-size:262144}") int blockSize,
+                      @Value("${app.parameter.png.palette:true}") boolean palette) {
+        this(level, Filter.valueOf(filter.trim().toUpperCase(Locale.ROOT)), blockSize, palette);
+    }
+
+    public PngEncoder(int level, Filter filter, int blockSize, boolean palette) {
+        if (level < 0 || level > 9) throw new IllegalArgumentException("deflate level must be in [0, 9]: " + level);
+        this.level = level;
+        this.filter = filter;
+        this.blockSize = Math.max(WINDOW, blockSize);
+        this.palette = palette;
+    }
+
+    /**
+     * 编码为 PNG 字节
+     */
+    public byte[] encode(BufferedImage img) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        write(img, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * 编码为 PNG 写入 out，不关闭 out
+     */
+    public void write(BufferedImage img, OutputStream out) throws IOException {
+        for (int size : img.getColorModel().getComponentSize()) {
+            if (size > 8) {
+                if (!ImageIO.write(img, "png", out)) throw new IOException("no ImageIO writer for png");
+                return;
+            }
+        }
+
+        int w = img.getWidth(), h = img.getHeight();
+        int[] px = argb(img);
+        boolean alpha = img.getColorModel().hasAlpha() && hasTranslucentPixel(px);
+        Palette pal = palette ? Palette.of(px, alpha) : null;
+
+        int bpp = pal != null ? 1 : alpha ? 4 : 3;
+        int colorType = pal != null ? 3 : alpha ? 6 : 2;
+        Filter f = pal != null ? Filter.NONE : filter;
+        int rowBytes = w * bpp;
+        int rowsPerBlock = Math.max(1, blockSize / (rowBytes + 1));
+        int blocks = (h + rowsPerBlock - 1) / rowsPerBlock;
+
+        // 1. 逐块转换并过滤扫描行
+        byte[][] filtered = new byte[blocks][];
+        long[] adlers = new long[blocks];
+        IntStream.range(0, blocks).parallel().forEach(b -> {
+            int y0 = b * rowsPerBlock, y1 = Math.min(h, y0 + rowsPerBlock);
+            byte[] data = new byte[(y1 - y0) * (rowBytes + 1)];
+            byte[] prev = new byte[rowBytes];
+            byte[] cur = new byte[rowBytes];
+            if (y0 > 0) toBytes(px, w, y0 - 1, pal, bpp, prev);
+            for (int y = y0; y < y1; y++) {
+                toBytes(px, w, y, pal, bpp, cur);
+                filterRow(f, cur, prev, bpp, data, (y - y0) * (rowBytes + 1));
+                byte[] t = prev;
+                prev = cur;
+                cur = t;
+            }
+            Adler32 adler = new Adler32();
+            adler.update(data);
+            filtered[b] = data;
+            adlers[b] = adler.getValue();
+        });
+
+        // 2. 各块独立 deflate，以前一块末尾作为字典
+        byte[][] compressed = new byte[blocks][];
+        IntStream.range(0, blocks).parallel().forEach(b ->
+                compressed[b] = deflate(filtered[b], b > 0 ? filtered[b - 1] : null, b == blocks - 1, f != Filter.NONE));
+
+        long adler = adlers[0];
+        for (int b = 1; b < blocks; b++) adler = adler32Combine(adler, adlers[b], filtered[b].length);
+
+        // 3. 输出
+        out.write(SIGNATURE);
+        byte[] ihdr = new byte[13];
+        putInt(ihdr, 0, w);
+        putInt(ihdr, 4, h);
+        ihdr[8] = 8;
+        ihdr[9] = (byte) colorType;
+        writeChunk(out, "IHDR", ihdr, ihdr.length);
+        if (pal != null) {
+            byte[] plte = new byte[pal.size * 3];
+            for (int i = 0; i < pal.size; i++) {
+                int c = pal.colors[i];
+                plte[i * 3] = (byte) (c >>> 16);
+                plte[i * 3 + 1] = (byte) (c >>> 8);
+                plte[i * 3 + 2] = (byte) c;
+            }
+            writeChunk(out, "PLTE", plte, plte.length);
+            if (alpha) {
+                // 末尾连续的不透明条目可以省略
+                int n = pal.size;
+                while (n > 0 && pal.colors[n - 1] >>> 24 == 0xFF) n--;
+                byte[] trns = new byte[n];
+                for (int i = 0; i < n; i++) trns[i] = (byte) (pal.colors[i] >>> 24);
+                if (n > 0) writeChunk(out, "tRNS", trns, n);
+            }
+        }
+        for (int b = 0; b < blocks; b++) {
+            byte[] data = compressed[b];
+            int len = data.length;
+            if (b == 0 || b == blocks - 1) {
+                // 首块带 zlib 头，末块带 Adler-32
+                int head = b == 0 ? 2 : 0, tail = b == blocks - 1 ? 4 : 0;
+                byte[] framed = new byte[head + len + tail];
+                if (head > 0) {
+                    framed[0] = 0x78;
+                    int flevel = level < 2 ? 0 : level < 6 ? 1 : level == 6 ? 2 : 3;
+                    int flg = flevel << 6;
+                    framed[1] = (byte) (flg + (31 - (0x78 * 256 + flg) % 31) % 31);
+                }
+                System.arraycopy(data, 0, framed, head, len);
+                if (tail > 0) putInt(framed, head + len, (int) adler);
+                data = framed;
+                len = framed.length;
+            }
+            writeChunk(out, "IDAT", data, len);
+        }
+        writeChunk(out, "IEND", new byte[0], 0);
+    }
+
+    // ++=============** helpers **=============++
+
+    /**
+     * 不超过 256 种颜色的调色板；含透明时 alpha 为 0 的颜色统一视为同一种
+     */
+    private static final class Palette {
+        private final int[] colors = new int[256];
+        private final int[] keys = new int[1024];
+        private final short[] indices = new short[1024];
+        private final boolean alpha;
+        private int size;
+
+        private Palette(boolean alpha) {
+            this.alpha = alpha;
+            Arrays.fill(indices, (short) -1);
+        }
+
+        static Palette of(int[] px, boolean alpha) {
+            Palette p = new Palette(alpha);
+            int last = 0;
+            boolean hasLast = false;
+            for (int c : px) {
+                int k = p.normalize(c);
+                if (hasLast && k == last) continue;
+                if (p.indexOf(k) < 0) {
+                    if (p.size == 256) return null;
+                    p.add(k);
+                }
+                last = k;
+                hasLast = true;
+            }
+            return p;
+        }
+
+        int normalize(int c) {
+            if (!alpha) return c | 0xFF000000;
+            return c >>> 24 == 0 ? 0 : c;
+        }
+
+        int indexOf(int k) {
+            int i = (k * 0x9E3779B9) >>> 22;
+            while (indices[i] >= 0) {
+                if (keys[i] == k) return indices[i];
+                i = (i + 1) & 1023;
+            }
+            return -1;
+        }
+
+        void add(int k) {
+            int i = (k * 0x9E3779B9) >>> 22;
+            while (indices[i] >= 0) i = (i + 1) & 1023;
+            keys[i] = k;
+            indices[i] = (short) size;
+            colors[size++] = k;
+        }
+    }
+
+    /**
+     * 取出 0xAARRGGBB 像素；紧凑布局的 INT_ARGB / INT_RGB 直接使用底层数组
+     */
+    private static int[] argb(BufferedImage img) {
+        int w = img.getWidth(), h = img.getHeight();
+        int type = img.getType();
+        if ((type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB)
+                && img.getRaster().getDataBuffer() instanceof DataBufferInt buf
+                && buf.getNumBanks() == 1 && buf.getOffset() == 0
+                && img.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel sm
+                && sm.getScanlineStride() == w
+                && img.getRaster().getSampleModelTranslateX() == 0 && img.getRaster().getSampleModelTranslateY() == 0
+                && buf.getData().length == w * h) {
+            return buf.getData();
+        }
+        return img.getRGB(0, 0, w, h, null, 0, w);
+    }
+
+    private static boolean hasTranslucentPixel(int[] px) {
+        for (int c : px) if (c >>> 24 != 0xFF) return true;
+        return false;
+    }
+
+    private static void toBytes(int[] px, int w, int y, Palette pal, int bpp, byte[] row) {
+        int base = y * w;
+        if (pal != null) {
+            for (int x = 0; x < w; x++) row[x] = (byte) pal.indexOf(pal.normalize(px[base + x]));
+        } else if (bpp == 3) {
+            for (int x = 0, i = 0; x < w; x++, i += 3) {
+                int c = px[base + x];
+                row[i] = (byte) (c >>> 16);
+                row[i + 1] = (byte) (c >>> 8);
+                row[i + 2] = (byte) c;
+            }
+        } else {
+            for (int x = 0, i = 0; x < w; x++, i += 4) {
+                int c = px[base + x];
+                row[i] = (byte) (c >>> 16);
+                row[i + 1] = (byte) (c >>> 8);
+                row[i + 2] = (byte) c;
+                row[i + 3] = (byte) (c >>> 24);
+            }
+        }
+    }
+
+    /**
+     * 过滤一行写入 out[off]（过滤类型字节）与 out[off + 1 ..]；第一行的 prev 为全 0
+     */
+    private static void filterRow(Filter f, byte[] cur, byte[] prev, int bpp, byte[] out, int off) {
+        if (f != Filter.ADAPTIVE) {
+            applyFilter(f.ordinal(), cur, prev, bpp, out, off);
+            return;
+        }
+        int best = 0;
+        long bestSum = Long.MAX_VALUE;
+        for (int t = 0; t < 5; t++) {
+            applyFilter(t, cur, prev, bpp, out, off);
+            long sum = 0;
+            for (int i = off + 1, end = off + 1 + cur.length; i < end; i++) sum += Math.abs((int) out[i]);
+            if (sum < bestSum) {
+                bestSum = sum;
+                best = t;
+            }
+        }
+        if (best != 4) applyFilter(best, cur, prev, bpp, out, off);
+    }
+
+    private static void applyFilter(int type, byte[] cur, byte[] prev, int bpp, byte[] out, int off) {
+        out[off] = (byte) type;
+        int n = cur.length, o = off + 1;
+        switch (type) {
+            case 0 -> System.arraycopy(cur, 0, out, o, n);
+            case 1 -> {
+                for (int i = 0; i < bpp; i++) out[o + i] = cur[i];
+                for (int i = bpp; i < n; i++) out[o + i] = (byte) (cur[i] - cur[i - bpp]);
+            }
+            case 2 -> {
+                for (int i = 0; i < n; i++) out[o + i] = (byte) (cur[i] - prev[i]);
+            }
+            case 3 -> {
+                for (int i = 0; i < bpp; i++) out[o + i] = (byte) (cur[i] - ((prev[i] & 0xFF) >>> 1));
+                for (int i = bpp; i < n; i++) out[o + i] = (byte) (cur[i] - (((cur[i - bpp] & 0xFF) + (prev[i] & 0xFF)) >>> 1));
+            }
+            default -> {
+                for (int i = 0; i < bpp; i++) out[o + i] = (byte) (cur[i] - prev[i]);
+                for (int i = bpp; i < n; i++) {
+                    int a = cur[i - bpp] & 0xFF, b = prev[i] & 0xFF, c = prev[i - bpp] & 0xFF;
+                    int p = a + b - c;
+                    int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+                    int pred = pa <= pb && pa <= pc ? a : pb <= pc ? b : c;
+                    out[o + i] = (byte) (cur[i] - pred);
+                }
+            }
+        }
+    }
+
+    /**
+     * 压缩一块为不带 zlib 头尾的 deflate 数据；非末块以 SYNC_FLUSH 结束，末块以 BFINAL 结束
+     */
+    private byte[] deflate(byte[] data, byte[] previous, boolean last, boolean filtered) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (filtered) deflater.setStrategy(Deflater.FILTERED);
+            if (previous != null) {
+                int n = Math.min(WINDOW, previous.length);
+                deflater.setDictionary(previous, previous.length - n, n);
+            }
+            deflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(1024, data.length / 4));
+            byte[] buf = new byte[64 * 1024];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) out.write(buf, 0, deflater.deflate(buf));
+            } else {
+                // 设置策略后的首次调用只应用参数、可能不消耗输入，须持续到输入耗尽且输出缓冲未被填满
+                int n;
+                do {
+                    n = deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+                    out.write(buf, 0, n);
+                } while (n == buf.length || !deflater.needsInput());
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 合并两段数据的 Adler-32（zlib adler32_combine）
+     */
+    private static long adler32Combine(long adler1, long adler2, long len2) {
+        final long base = 65521;
+        long rem = len2 % base;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (rem * sum1) % base;
+        sum1 += (adler2 & 0xFFFF) + base - 1;
+        sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + base - rem;
+        if (sum1 >= base) sum1 -= base;
+        if (sum1 >= base) sum1 -= base;
+        if (sum2 >= (base << 1)) sum2 -= (base << 1);
+        if (sum2 >= base) sum2 -= base;
+        return sum1 | (sum2 << 16);
+    }
+
+    private static void writeChunk(OutputStream out, String type, byte[] data, int len) throws IOException {
+        byte[] header = new byte[8];
+        putInt(header, 0, len);
+        byte[] t = type.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(t, 0, header, 4, 4);
+        CRC32 crc = new CRC32();
+        crc.update(t);
+        crc.update(data, 0, len);
+        byte[] trailer = new byte[4];
+        putInt(trailer, 0, (int) crc.getValue());
+        out.write(header);
+        out.write(data, 0, len);
+        out.write(trailer);
+    }
+
+    private static void putInt(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte) v;
+    }
+}
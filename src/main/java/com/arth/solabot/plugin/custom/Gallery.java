@@ -6,6 +6,7 @@ import com.arth.solabot.core.bot.dto.ParsedPayloadDTO;
 import com.arth.solabot.core.bot.invoker.annotation.BotCommand;
 import com.arth.solabot.core.bot.invoker.annotation.BotPlugin;
 import com.arth.solabot.core.general.utils.FileUtils;
+import com.arth.solabot.core.general.utils.PngEncoder;
 import com.arth.solabot.plugin.resource.LocalData;
 import com.arth.solabot.plugin.resource.MemoryData;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -62,6 +63,7 @@ public class Gallery extends Plugin {
     private final ApiPaths apiPaths;
     private final LocalData localData;
     private final FileUtils fileUtils;
+    private final PngEncoder pngEncoder;
     private final WebClient webClient;
     private final ObjectMapper objectMapper;
     private final TaskScheduler taskScheduler;
@@ -331,7 +333,7 @@ public class Gallery extends Plugin {
 
                         g.dispose();
                         Path outFile = LocalData.GALLERY_THUMBNAILS_BASE.resolve(roleName + ".png");
-                        ImageIO.write(gallery, "png", outFile.toFile());
+                        Files.write(outFile, pngEncoder.encode(gallery));
                         log.debug("[plugin.gallery] thumbnail generated: {}", outFile);
 
                     } catch (IOException e) {
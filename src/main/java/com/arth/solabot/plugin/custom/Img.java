@@ -1,28 +1,28 @@
 package com.arth.solabot.plugin.custom;
 
-import com.arth.solabot.adapter.controller.ApiPaths;
 import com.arth.solabot.adapter.sender.Sender;
+import com.arth.solabot.adapter.fetcher.http.GifDecoder;
+import com.arth.solabot.adapter.fetcher.http.ImageProbe;
 import com.arth.solabot.adapter.fetcher.http.ImgService;
-import com.arth.solabot.adapter.fetcher.http.ImgService.GifData;
-import com.arth.solabot.core.general.cache.service.ImageCacheService;
 import com.arth.solabot.core.bot.dto.ParsedPayloadDTO;
-import com.arth.solabot.core.bot.exception.InternalServerErrorException;
+import com.arth.solabot.core.bot.exception.InvalidCommandArgsException;
+import com.arth.solabot.core.bot.invoker.CommandChainContext;
 import com.arth.solabot.core.bot.invoker.annotation.BotCommand;
 import com.arth.solabot.core.bot.invoker.annotation.BotPlugin;
+import com.arth.solabot.plugin.custom.img.CutoutKernel;
+import com.arth.solabot.plugin.custom.img.GifPipeline;
+import com.arth.solabot.plugin.custom.img.ImgBatchExecutor;
+import com.arth.solabot.plugin.custom.img.ImgChain;
+import com.arth.solabot.plugin.custom.img.RasterKernels;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 
-import javax.imageio.*;
-import javax.imageio.metadata.IIOMetadata;
-import javax.imageio.metadata.IIOMetadataNode;
-import javax.imageio.stream.ImageOutputStream;
-import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.*;
 import java.util.List;
+import java.util.function.UnaryOperator;
 
 @BotPlugin({"img"})
 @RequiredArgsConstructor
@@ -30,11 +30,20 @@ public class Img extends Plugin {
 
     private final Sender sender;
     private final ImgService imgService;
-    private final ImageCacheService imageCacheService;
-    private final ApiPaths apiPaths;
+    private final GifPipeline gifPipeline;
+    private final ImgBatchExecutor batch;
 
-    private static final int GIF_MIN_CS = 2;      // GIF 最小播放时间间隔
-    private static final int GIF_MAX_CS = 65535;  // GIF 最大播放时间间隔
+    @Value("${app.parameter.plugin.img.cutout-reuse-background:false}")
+    private boolean cutoutReuseBackground;
+
+    @Value("${app.parameter.plugin.img.max-canvas-pixels:16777216}")
+    private long maxCanvasPixels;
+
+    @Value("${app.parameter.plugin.img.gif-max-canvas-pixels:1048576}")
+    private long gifMaxCanvasPixels;
+
+    /* 命令链上下文中 ImgChain 的键 */
+    private static final String CHAIN_KEY = "img.chain";
 
     @Getter
     public final String helpText = """
@@ -55,7 +64,9 @@ public class Img extends Plugin {
               - gif: 转gif
                 在QQ里看起来会更像表情包
               - png: 转png
-              - check: 检查图片url""";
+              - check: 检查图片url
+            l / r / u / d / rotate / gray / invert / mirror 可以连写，依次作用于同一张图，如：/img l gray rot 90
+              rotate 会把后面的内容都当作参数，连写时需放在最后""";
 
     @Override
     @BotCommand("index")
@@ -70,192 +81,55 @@ public class Img extends Plugin {
     }
 
     @BotCommand({"l", "left"})
-    public void leftSymmetry(ParsedPayloadDTO payload) throws IOException {
-        // 支持静态图片与 GIF（动态）混合输入，输出保持输入顺序
-        List<String> urls = imgService.extractImgUrls(payload, true);
-        if (urls == null || urls.isEmpty()) return;
-
-        int n = urls.size();
-        List<String> cacheUrlsOrdered = new ArrayList<>(Collections.nCopies(n, null));
-
-        for (int i = 0; i < n; i++) {
-            String url = urls.get(i);
-            byte[] data = imgService.getBytes(url);
-            if (data == null || data.length == 0) continue;
-            String type = imgService.detectImageType(data);
-            if ("gif".equals(type)) {
-                // 处理 GIF：解析、逐帧 midLeft、写回 GIF
-                GifData gif = imgService.getGifFlattened(new ByteArrayInputStream(data));
-                if (gif == null) continue;
-                gifSymmetryByLeft(List.of(gif));
-                byte[] outBytes = writeGifToBytes(gif.getFrames(), gif.getDelaysCs(), gif.getLoopCount());
-                String uuid = imageCacheService.cacheImage(outBytes);
-                cacheUrlsOrdered.set(i, apiPaths.buildGifUrl(uuid));
-            } else {
-                // 处理静态图片（PNG/JPEG/...）
-                BufferedImage img = ImageIO.read(new ByteArrayInputStream(data));
-                if (img == null) continue;
-                List<BufferedImage> imgs = new ArrayList<>();
-                imgs.add(img);
-                // 原有静态逻辑：midLeft
-                symmetryByLeft(imgs);
-                // 缓存为 png
-                String uuid = imageCacheService.cacheImage(imgs.get(0), "png");
-                cacheUrlsOrdered.set(i, apiPaths.buildPngUrl(uuid));
-            }
-        }
-
-        List<String> cacheUrls = new ArrayList<>();
-        for (String s : cacheUrlsOrdered) if (s != null) cacheUrls.add(s);
-        if (!cacheUrls.isEmpty()) sender.sendImage(payload, cacheUrls);
+    public void leftSymmetry(CommandChainContext ctx) {
+        chain(ctx, "left", "", ImgChain.Op.LEFT);
     }
 
     @BotCommand({"r", "right"})
-    public void rightSymmetry(ParsedPayloadDTO payload) throws IOException {
-        // 支持静态图片与 GIF（动态）混合输入，输出保持输入顺序
-        List<String> urls = imgService.extractImgUrls(payload, true);
-        if (urls == null || urls.isEmpty()) return;
-
-        int n = urls.size();
-        List<String> cacheUrlsOrdered = new ArrayList<>(Collections.nCopies(n, null));
-
-        for (int i = 0; i < n; i++) {
-            String url = urls.get(i);
-            byte[] data = imgService.getBytes(url);
-            if (data == null || data.length == 0) continue;
-            String type = imgService.detectImageType(data);
-            if ("gif".equals(type)) {
-                GifData gif = imgService.getGifFlattened(new ByteArrayInputStream(data));
-                if (gif == null) continue;
-                gifSymmetryByRight(List.of(gif));
-                byte[] outBytes = writeGifToBytes(gif.getFrames(), gif.getDelaysCs(), gif.getLoopCount());
-                String uuid = imageCacheService.cacheImage(outBytes);
-                cacheUrlsOrdered.set(i, apiPaths.buildGifUrl(uuid));
-            } else {
-                BufferedImage img = ImageIO.read(new ByteArrayInputStream(data));
-                if (img == null) continue;
-                List<BufferedImage> imgs = new ArrayList<>();
-                imgs.add(img);
-                symmetryByRight(imgs);
-                String uuid = imageCacheService.cacheImage(imgs.get(0), "png");
-                cacheUrlsOrdered.set(i, apiPaths.buildPngUrl(uuid));
-            }
-        }
-
-        List<String> cacheUrls = new ArrayList<>();
-        for (String s : cacheUrlsOrdered) if (s != null) cacheUrls.add(s);
-        if (!cacheUrls.isEmpty()) sender.sendImage(payload, cacheUrls);
+    public void rightSymmetry(CommandChainContext ctx) {
+        chain(ctx, "right", "", ImgChain.Op.RIGHT);
     }
 
     @BotCommand({"u", "up"})
-    public void up(ParsedPayloadDTO payload) throws IOException {
-        // 支持静态图片与 GIF（动态）混合输入，输出保持输入顺序
-        List<String> urls = imgService.extractImgUrls(payload, true);
-        if (urls == null || urls.isEmpty()) return;
-
-        int n = urls.size();
-        List<String> cacheUrlsOrdered = new ArrayList<>(Collections.nCopies(n, null));
-
-        for (int i = 0; i < n; i++) {
-            String url = urls.get(i);
-            byte[] data = imgService.getBytes(url);
-            if (data == null || data.length == 0) continue;
-            String type = imgService.detectImageType(data);
-
-            if ("gif".equals(type)) {
-                // 解析 GIF 并逐帧处理
-                GifData gif = imgService.getGifFlattened(new ByteArrayInputStream(data));
-                if (gif == null) continue;
-                gifSymmetryByUp(List.of(gif));
-                byte[] outBytes = writeGifToBytes(gif.getFrames(), gif.getDelaysCs(), gif.getLoopCount());
-                String uuid = imageCacheService.cacheImage(outBytes);
-                cacheUrlsOrdered.set(i, apiPaths.buildGifUrl(uuid));
-            } else {
-                // 静态图片：单帧翻转
-                BufferedImage img = ImageIO.read(new ByteArrayInputStream(data));
-                if (img == null) continue;
-                List<BufferedImage> imgs = new ArrayList<>();
-                imgs.add(img);
-                symmetryByUp(imgs);
-                String uuid = imageCacheService.cacheImage(imgs.get(0), "png");
-                cacheUrlsOrdered.set(i, apiPaths.buildPngUrl(uuid));
-            }
-        }
-
-        List<String> cacheUrls = new ArrayList<>();
-        for (String s : cacheUrlsOrdered) if (s != null) cacheUrls.add(s);
-        if (!cacheUrls.isEmpty()) sender.sendImage(payload, cacheUrls);
+    public void up(CommandChainContext ctx) {
+        chain(ctx, "up", "", ImgChain.Op.UP);
     }
 
     @BotCommand({"d", "down"})
-    public void down(ParsedPayloadDTO payload) throws IOException {
-        // 支持静态图片与 GIF（动态）混合输入，输出保持输入顺序
-        List<String> urls = imgService.extractImgUrls(payload, true);
-        if (urls == null || urls.isEmpty()) return;
-
-        int n = urls.size();
-        List<String> cacheUrlsOrdered = new ArrayList<>(Collections.nCopies(n, null));
-
-        for (int i = 0; i < n; i++) {
-            String url = urls.get(i);
-            byte[] data = imgService.getBytes(url);
-            if (data == null || data.length == 0) continue;
-            String type = imgService.detectImageType(data);
-
-            if ("gif".equals(type)) {
-                GifData gif = imgService.getGifFlattened(new ByteArrayInputStream(data));
-                if (gif == null) continue;
-                gifSymmetryByDown(List.of(gif));
-                byte[] outBytes = writeGifToBytes(gif.getFrames(), gif.getDelaysCs(), gif.getLoopCount());
-                String uuid = imageCacheService.cacheImage(outBytes);
-                cacheUrlsOrdered.set(i, apiPaths.buildGifUrl(uuid));
-            } else {
-                BufferedImage img = ImageIO.read(new ByteArrayInputStream(data));
-                if (img == null) continue;
-                List<BufferedImage> imgs = new ArrayList<>();
-                imgs.add(img);
-                symmetryByDown(imgs);
-                String uuid = imageCacheService.cacheImage(imgs.get(0), "png");
-                cacheUrlsOrdered.set(i, apiPaths.buildPngUrl(uuid));
-            }
-        }
-
-        List<String> cacheUrls = new ArrayList<>();
-        for (String s : cacheUrlsOrdered) if (s != null) cacheUrls.add(s);
-        if (!cacheUrls.isEmpty()) sender.sendImage(payload, cacheUrls);
+    public void down(CommandChainContext ctx) {
+        chain(ctx, "down", "", ImgChain.Op.DOWN);
     }
 
     /**
      * 兼容旧命令 mid
      *
-     * @param payload
-     * @throws IOException
+     * @param ctx
      */
     @BotCommand("mid")
-    public void mid(ParsedPayloadDTO payload) throws IOException {
-        leftSymmetry(payload);
+    public void mid(CommandChainContext ctx) {
+        leftSymmetry(ctx);
     }
 
     /**
      * 兼容旧命令 mid <args>
      *
-     * @param payload
+     * @param ctx
      * @param args
-     * @throws IOException
      */
     @BotCommand("mid")
-    public void mid(ParsedPayloadDTO payload, List<String> args) throws IOException {
+    public void mid(CommandChainContext ctx, List<String> args) {
         if (args == null || args.isEmpty() || args.get(0).equals("l") || args.get(0).equals("left")) {
-            leftSymmetry(payload);
+            leftSymmetry(ctx);
         } else if (args.get(0).equals("r") || args.get(0).equals("right")) {
-            rightSymmetry(payload);
+            rightSymmetry(ctx);
         } else {
-            sender.replyText(payload, "mid 命令支持的参数是 l 或 r，默认 l");
+            sender.replyText(ctx.getPayload(), "mid 命令支持的参数是 l 或 r，默认 l");
         }
     }
 
     @BotCommand({"rot", "rotate"})
-    public void rotate(ParsedPayloadDTO payload, List<String> args) throws IOException {
+    public void rotate(CommandChainContext ctx, List<String> args) {
+        ParsedPayloadDTO payload = ctx.getPayload();
         int angle = 90;
 
         if (args != null && !args.isEmpty()) {
@@ -275,47 +149,13 @@ public class Img extends Plugin {
             return;
         }
 
-        // 统一提取输入图片
-        List<String> urls = imgService.extractImgUrls(payload, true);
-        if (urls == null || urls.isEmpty()) return;
-
-        if (angle == 0) {
-            sender.sendImage(payload, urls);
-            return;
-        }
-
-        int n = urls.size();
-        List<String> cacheUrlsOrdered = new ArrayList<>(Collections.nCopies(n, null));
-
-        for (int i = 0; i < n; i++) {
-            String url = urls.get(i);
-            byte[] data = imgService.getBytes(url);
-            if (data == null || data.length == 0) continue;
-            String type = imgService.detectImageType(data);
-
-            if ("gif".equals(type)) {
-                // ---- 动态 GIF ----
-                GifData gif = imgService.getGifFlattened(new ByteArrayInputStream(data));
-                if (gif == null) continue;
-                rotateGif(gif, angle);
-                byte[] outBytes = writeGifToBytes(gif.getFrames(), gif.getDelaysCs(), gif.getLoopCount());
-                String uuid = imageCacheService.cacheImage(outBytes);
-                cacheUrlsOrdered.set(i, apiPaths.buildGifUrl(uuid));
-            } else {
-                // ---- 静态图片 ----
-                BufferedImage img = ImageIO.read(new ByteArrayInputStream(data));
-                if (img == null) continue;
-                List<BufferedImage> imgs = new ArrayList<>();
-                imgs.add(img);
-                rotateImg(imgs, angle);
-                String uuid = imageCacheService.cacheImage(imgs.get(0), "png");
-                cacheUrlsOrdered.set(i, apiPaths.buildPngUrl(uuid));
-            }
+        // 旋转 0° 不改变图像，整条链都不改变图像时原样发回
+        switch (angle) {
+            case 90 -> chain(ctx, "rotate", "90", ImgChain.Op.ROTATE_90);
+            case 180 -> chain(ctx, "rotate", "180", ImgChain.Op.ROTATE_180);
+            case 270 -> chain(ctx, "rotate", "270", ImgChain.Op.ROTATE_270);
+            default -> chain(ctx, "rotate", "0");
         }
-
-        List<String> cacheUrls = new ArrayList<>();
-        for (String s : cacheUrlsOrdered) if (s != null) cacheUrls.add(s);
-        if (!cacheUrls.isEmpty()) sender.sendImage(payload, cacheUrls);
     }
 
     @BotCommand("speed")
@@ -346,18 +186,9 @@ public class Img extends Plugin {
         List<String> urls = imgService.extractImgUrls(payload, true);
         if (urls == null || urls.isEmpty()) return;
 
-        List<String> cacheUrls = new ArrayList<>();
-
-        var gifs = imgService.getGifFlattened(urls);
-
-        for (var gif : gifs) {
-            GifData out = retime(gif, r, reverse);
-            byte[] outBytes = writeGifToBytes(out.getFrames(), out.getDelaysCs(), out.getLoopCount());
-            String uuid = imageCacheService.cacheImage(outBytes);
-            cacheUrls.add(apiPaths.buildGifUrl(uuid));
-        }
-
-        if (!cacheUrls.isEmpty()) sender.sendImage(payload, cacheUrls);
+        // 帧计划只依赖延时，帧本身按 GifPipeline 的帧许可流式处理，大画布先降采样
+        reply(payload, batch.run("speed", Double.toString(rate), urls, (data, type) ->
+                new ImgBatchExecutor.Output(gifPipeline.retime(data, r, reverse, downscaled(UnaryOperator.identity())), "gif")));
     }
 
     @BotCommand({"cut", "cutout"})
@@ -377,245 +208,56 @@ public class Img extends Plugin {
         if (urls == null || urls.isEmpty()) return;
 
         // 支持静态图片与 GIF 的混合输入，输出顺序保留输入顺序
-        int n = urls.size();
-        List<String> cacheUrlsOrdered = new ArrayList<>(Collections.nCopies(n, null));
-
-        for (int i = 0; i < n; i++) {
-            String url = urls.get(i);
-            byte[] data = imgService.getBytes(url);
-            if (data == null || data.length == 0) continue;
-            String type = imgService.detectImageType(data);
+        int t = threshold;
+        // 是否复用首帧背景色会影响 GIF 的结果，一并计入结果缓存的参数
+        String cacheArgs = t + (cutoutReuseBackground ? ":reuse-bg" : "");
+        reply(payload, batch.run("cutout", cacheArgs, urls, (data, type) -> {
             if ("gif".equals(type)) {
                 // GIF：逐帧抠图
-                GifData gif = imgService.getGifFlattened(new ByteArrayInputStream(data));
-                if (gif == null) continue;
-                // 检查帧尺寸，若有帧过小则直接提示并返回（与静态逻辑保持一致）
-                for (BufferedImage frame : gif.getFrames()) {
-                    if (frame.getWidth() < 6 || frame.getHeight() < 6) {
-                        sender.replyText(payload, "图片过小");
-                        return;
-                    }
-                }
-                gifCutout(gif, threshold);
-                byte[] outBytes = writeGifToBytes(gif.getFrames(), gif.getDelaysCs(), gif.getLoopCount());
-                String uuid = imageCacheService.cacheImage(outBytes);
-                cacheUrlsOrdered.set(i, apiPaths.buildGifUrl(uuid));
-            } else {
-                // 静态图片：保留原有完整逻辑（针对单张图片）
-                BufferedImage img = ImageIO.read(new ByteArrayInputStream(data));
-                if (img == null) continue;
-                // 强制使用支持 ARGB 的 BufferedImage 子类型，否则写入时 alpha 通道会被 ImageIO 忽略
-                List<BufferedImage> imgs = new ArrayList<>();
-                imgs.add(img);
-                toARGB(imgs);
-
-                int[][] dirs = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}, {-1, -1}, {-1, 1}, {1, -1}, {1, 1}};
-
-                for (BufferedImage targetImg : imgs) {
-                    int width = targetImg.getWidth();
-                    int height = targetImg.getHeight();
-                    /* map pixel to index */
-                    Map<Integer, Set<Long>> rgbSta = new HashMap<>();
-
-                    if (width < 6 || height < 6) {
-                        sender.replyText(payload, "图片过小");
-                        return;
-                    }
-
-                    // 1. 统计四个边缘上出现频次最高的颜色，每条边宽度硬编码 3
-                    for (int w = 0; w < width; w++) {
-                        for (int k = 0; k < 3; k++) {
-                            rgbSta.computeIfAbsent(targetImg.getRGB(w, k), kk -> new HashSet<>()).add(((long) w << 32) | (k & 0xffffffffL));
-                            rgbSta.computeIfAbsent(targetImg.getRGB(w, height - k - 1), kk -> new HashSet<>()).add(((long) w << 32) | ((height - k - 1) & 0xffffffffL));
-                        }
-                    }
-                    for (int h = 1; h < height - 1; h++) {
-                        for (int k = 0; k < 3; k++) {
-                            rgbSta.computeIfAbsent(targetImg.getRGB(k, h), kk -> new HashSet<>()).add(((long) k << 32) | (h & 0xffffffffL));
-                            rgbSta.computeIfAbsent(targetImg.getRGB(width - k - 1, h), kk -> new HashSet<>()).add(((long) (width - k - 1) << 32) | (h & 0xffffffffL));
-                        }
-                    }
-
-                    Set<Long> bgPixelIndex = rgbSta.values().stream()
-                            .max(Comparator.comparingInt(Set::size))
-                            .orElseThrow(() -> new InternalServerErrorException("rgbSta cannot be empty"));
-
-                    if (bgPixelIndex.isEmpty()) throw new InternalServerErrorException("bgPixelIndex cannot be empty");
-
-                    long aBgIndex = bgPixelIndex.iterator().next();
-                    int bgRgb = targetImg.getRGB((int) (aBgIndex >>> 32), (int) aBgIndex);
-
-                    // 2. 初始化优先队列，将所有边缘上出现频次最高的颜色加入优先队列
-                    Set<Long> visited = new HashSet<>(bgPixelIndex);
-                    PriorityQueue<Pixel> pq = new PriorityQueue<>(Comparator.comparingDouble(Pixel::dist));
-                    for (long index : bgPixelIndex) {
-                        int x = (int) (index >>> 32);
-                        int y = (int) index;
-                        pq.offer(new Pixel(x, y, targetImg.getRGB(x, y), 0));
-                    }
-
-                    // 3. BFS 抠图透明底
-                    while (!pq.isEmpty()) {
-                        Pixel p = pq.poll();
-                        int x = p.x();
-                        int y = p.y();
-
-                        if (p.dist() > threshold) continue;
-                        targetImg.setRGB(x, y, p.rgb() & 0x00ffffff);
-
-                        for (int[] d : dirs) {
-                            int nx = x + d[0];
-                            int ny = y + d[1];
-                            if (nx < 0 || ny < 0 || nx >= width || ny >= height) continue;
-
-                            long idx = ((long) nx << 32) | (ny & 0xffffffffL);
-                            if (visited.contains(idx)) continue;
-
-                            visited.add(idx);
-                            int nRgb = targetImg.getRGB(nx, ny);
-                            int dist = distance(bgRgb, nRgb);
-
-                            pq.offer(new Pixel(nx, ny, nRgb, dist));
-                        }
-                    }
+                GifDecoder gif = imgService.openGif(data);
+                // 展开后的帧均为画布尺寸，检查画布即可（与静态逻辑保持一致）
+                if (gif.width() < 6 || gif.height() < 6) throw new InvalidCommandArgsException("image too small", "图片过小");
+                if (cutoutReuseBackground) {
+                    // 以首帧估计的背景色处理全部帧，省去逐帧统计，也避免背景色在帧间跳变；首帧由流水线解码一次后复用
+                    return new ImgBatchExecutor.Output(gifPipeline.runWithFirstFrame(gif, firstFrame -> {
+                        BufferedImage first = RasterKernels.toArgb(RasterKernels.scaleDown(firstFrame, gifMaxCanvasPixels));
+                        int bg = CutoutKernel.background(RasterKernels.pixels(first), first.getWidth(), first.getHeight());
+                        return downscaled(f -> {
+                            BufferedImage argb = RasterKernels.toArgb(f);
+                            CutoutKernel.apply(RasterKernels.pixels(argb), argb.getWidth(), argb.getHeight(), bg, t);
+                            return argb;
+                        });
+                    }), "gif");
                 }
-
-                String uuid = imageCacheService.cacheImage(imgs.get(0), "png");
-                cacheUrlsOrdered.set(i, apiPaths.buildPngUrl(uuid));
-            }
-        }
-
-        List<String> cacheUrls = new ArrayList<>();
-        for (String s : cacheUrlsOrdered) if (s != null) cacheUrls.add(s);
-        if (!cacheUrls.isEmpty()) sender.sendImage(payload, cacheUrls);
+                return new ImgBatchExecutor.Output(gifPipeline.run(gif, downscaled(f -> {
+                    BufferedImage argb = RasterKernels.toArgb(f);
+                    cutoutImage(argb, t);
+                    return argb;
+                })), "gif");
+            }
+            // 静态图片：与 GIF 单帧使用同一套抠图逻辑
+            BufferedImage img = readStatic(data);
+            if (img.getWidth() < 6 || img.getHeight() < 6) throw new InvalidCommandArgsException("image too small", "图片过小");
+            // 强制使用支持 ARGB 的 BufferedImage 子类型，否则写入时 alpha 通道会被 ImageIO 忽略
+            img = RasterKernels.toArgb(img);
+            cutoutImage(img, t);
+            return ImgBatchExecutor.Output.of(img, "png");
+        }));
     }
 
     @BotCommand("gray")
-    public void gray(ParsedPayloadDTO payload) throws IOException {
-        List<String> urls = imgService.extractImgUrls(payload, true);
-        if (urls == null || urls.isEmpty()) return;
-
-        int n = urls.size();
-        List<String> cacheUrlsOrdered = new ArrayList<>(Collections.nCopies(n, null));
-
-        for (int i = 0; i < n; i++) {
-            String url = urls.get(i);
-            byte[] data = imgService.getBytes(url);
-            if (data == null || data.length == 0) continue;
-            String type = imgService.detectImageType(data);
-            if ("gif".equals(type)) {
-                GifData gif = imgService.getGifFlattened(new ByteArrayInputStream(data));
-                if (gif == null) continue;
-                gifGray(gif);
-                byte[] outBytes = writeGifToBytes(gif.getFrames(), gif.getDelaysCs(), gif.getLoopCount());
-                String uuid = imageCacheService.cacheImage(outBytes);
-                cacheUrlsOrdered.set(i, apiPaths.buildGifUrl(uuid));
-            } else {
-                BufferedImage img = ImageIO.read(new ByteArrayInputStream(data));
-                if (img == null) continue;
-                int width = img.getWidth();
-                int height = img.getHeight();
-
-                BufferedImage grayImg = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
-                Graphics g = grayImg.getGraphics();
-                g.drawImage(img, 0, 0, null);
-                g.dispose();
-                // 为与原本输出为 png 的路径一致，缓存为 ARGB png
-                BufferedImage outImg = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-                Graphics2D g2 = outImg.createGraphics();
-                g2.drawImage(grayImg, 0, 0, null);
-                g2.dispose();
-
-                String uuid = imageCacheService.cacheImage(outImg, "png");
-                cacheUrlsOrdered.set(i, apiPaths.buildPngUrl(uuid));
-            }
-        }
-
-        List<String> cacheUrls = new ArrayList<>();
-        for (String s : cacheUrlsOrdered) if (s != null) cacheUrls.add(s);
-        if (!cacheUrls.isEmpty()) sender.sendImage(payload, cacheUrls);
+    public void gray(CommandChainContext ctx) {
+        chain(ctx, "gray", "", ImgChain.Op.GRAY);
     }
 
     @BotCommand("invert")
-    public void invert(ParsedPayloadDTO payload) throws IOException {
-        List<String> urls = imgService.extractImgUrls(payload, true);
-        if (urls == null || urls.isEmpty()) return;
-
-        int n = urls.size();
-        List<String> cacheUrlsOrdered = new ArrayList<>(Collections.nCopies(n, null));
-
-        for (int i = 0; i < n; i++) {
-            String url = urls.get(i);
-            byte[] data = imgService.getBytes(url);
-            if (data == null || data.length == 0) continue;
-
-            String type = imgService.detectImageType(data);
-
-            if ("gif".equals(type)) {
-                GifData gif = imgService.getGifFlattened(new ByteArrayInputStream(data));
-                if (gif == null) continue;
-                gifInvert(gif);
-                byte[] outBytes = writeGifToBytes(gif.getFrames(), gif.getDelaysCs(), gif.getLoopCount());
-                String uuid = imageCacheService.cacheImage(outBytes);
-                cacheUrlsOrdered.set(i, apiPaths.buildGifUrl(uuid));
-            } else {
-                BufferedImage img = ImageIO.read(new ByteArrayInputStream(data));
-                if (img == null) continue;
-                invertImage(img);
-                String uuid = imageCacheService.cacheImage(img, "png");
-                cacheUrlsOrdered.set(i, apiPaths.buildPngUrl(uuid));
-            }
-        }
-
-        List<String> cacheUrls = new ArrayList<>();
-        for (String s : cacheUrlsOrdered) if (s != null) cacheUrls.add(s);
-        if (!cacheUrls.isEmpty()) sender.sendImage(payload, cacheUrls);
+    public void invert(CommandChainContext ctx) {
+        chain(ctx, "invert", "", ImgChain.Op.INVERT);
     }
 
     @BotCommand("mirror")
-    public void mirror(ParsedPayloadDTO payload) throws IOException {
-        List<String> urls = imgService.extractImgUrls(payload, true);
-        if (urls == null || urls.isEmpty()) return;
-
-        int n = urls.size();
-        List<String> cacheUrlsOrdered = new ArrayList<>(Collections.nCopies(n, null));
-
-        for (int i = 0; i < n; i++) {
-            String url = urls.get(i);
-            byte[] data = imgService.getBytes(url);
-            if (data == null || data.length == 0) continue;
-            String type = imgService.detectImageType(data);
-            if ("gif".equals(type)) {
-                GifData gif = imgService.getGifFlattened(new ByteArrayInputStream(data));
-                if (gif == null) continue;
-                gifMirror(gif);
-                byte[] outBytes = writeGifToBytes(gif.getFrames(), gif.getDelaysCs(), gif.getLoopCount());
-                String uuid = imageCacheService.cacheImage(outBytes);
-                cacheUrlsOrdered.set(i, apiPaths.buildGifUrl(uuid));
-            } else {
-                BufferedImage img = ImageIO.read(new ByteArrayInputStream(data));
-                if (img == null) continue;
-                int width = img.getWidth();
-                int height = img.getHeight();
-
-                for (int y = 0; y < height; y++) {
-                    for (int x = 0; x < width / 2; x++) {
-                        int leftPixel = img.getRGB(x, y);
-                        int rightPixel = img.getRGB(width - x - 1, y);
-
-                        img.setRGB(x, y, rightPixel);
-                        img.setRGB(width - x - 1, y, leftPixel);
-                    }
-                }
-
-                String uuid = imageCacheService.cacheImage(img, "png");
-                cacheUrlsOrdered.set(i, apiPaths.buildPngUrl(uuid));
-            }
-        }
-
-        List<String> cacheUrls = new ArrayList<>();
-        for (String s : cacheUrlsOrdered) if (s != null) cacheUrls.add(s);
-        if (!cacheUrls.isEmpty()) sender.sendImage(payload, cacheUrls);
+    public void mirror(CommandChainContext ctx) {
+        chain(ctx, "mirror", "", ImgChain.Op.MIRROR);
     }
 
     @BotCommand("gif")
@@ -644,471 +286,75 @@ public class Img extends Plugin {
     // ***** ============= helper ============= *****
 
 
-    private record Pixel(int x, int y, int rgb, int dist) {
-    }
-
     /**
-     * 返回 RGB 的平方距离差值（避免欧氏距离的根号计算）
+     * 纯色背景抠图：以边缘出现频次最高的颜色为背景，从边缘出发洪泛，
+     * 与背景色距离不超过 threshold 的像素 alpha 置零，见 CutoutKernel
      *
-     * @param rgb1
-     * @param rgb2
-     * @return
+     * @param img 紧凑布局的 TYPE_INT_ARGB 图像，宽高均不小于 6
      */
-    private int distance(int rgb1, int rgb2) {
-        int r1 = (rgb1 >> 16) & 0xff;
-        int g1 = (rgb1 >> 8) & 0xff;
-        int b1 = rgb1 & 0xff;
-
-        int r2 = (rgb2 >> 16) & 0xff;
-        int g2 = (rgb2 >> 8) & 0xff;
-        int b2 = rgb2 & 0xff;
-
-        return (r1 - r2) * (r1 - r2) + (g1 - g2) * (g1 - g2) + (b1 - b2) * (b1 - b2);
-    }
-
-    private void toARGB(List<BufferedImage> imgs) {
-        for (int i = 0; i < imgs.size(); i++) {
-            BufferedImage img = imgs.get(i);
-            if (img.getType() != BufferedImage.TYPE_INT_ARGB) {
-                BufferedImage argbImg = new BufferedImage(
-                        img.getWidth(),
-                        img.getHeight(),
-                        BufferedImage.TYPE_INT_ARGB
-                );
-                Graphics2D g = argbImg.createGraphics();
-                g.drawImage(img, 0, 0, null);
-                g.dispose();
-                imgs.set(i, argbImg);
-            }
-        }
-    }
-
-    private byte[] writeGifToBytes(List<BufferedImage> frames, List<Integer> delaysCs, int loopCount) throws IOException {
-        if (frames == null || frames.isEmpty()) throw new IllegalArgumentException("No frames");
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
-        ImageWriter writer = ImageIO.getImageWritersByFormatName("gif").next();
-        ImageWriteParam params = writer.getDefaultWriteParam();
-
-        try (ImageOutputStream ios = ImageIO.createImageOutputStream(baos)) {
-            writer.setOutput(ios);
-            ImageTypeSpecifier type = ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_ARGB);
-
-            // 流级元数据：写入 NETSCAPE 2.0 循环扩展
-            IIOMetadata streamMeta = writer.getDefaultImageMetadata(type, params);
-            String format = streamMeta.getNativeMetadataFormatName();
-            IIOMetadataNode root = (IIOMetadataNode) streamMeta.getAsTree(format);
-            IIOMetadataNode appExts = new IIOMetadataNode("ApplicationExtensions");
-            IIOMetadataNode appExt = new IIOMetadataNode("ApplicationExtension");
-            appExt.setAttribute("applicationID", "NETSCAPE");
-            appExt.setAttribute("authenticationCode", "2.0");
-            int loop = Math.max(0, loopCount); // 0 = 无限
-            byte[] loopBytes = new byte[]{0x01, (byte) (loop & 0xFF), (byte) ((loop >> 8) & 0xFF)};
-            appExt.setUserObject(loopBytes);
-            appExts.appendChild(appExt);
-            root.appendChild(appExts);
-            streamMeta.setFromTree(format, root);
-
-            writer.prepareWriteSequence(streamMeta);
-
-            for (int i = 0; i < frames.size(); i++) {
-                BufferedImage bi = frames.get(i);
-                int delay = Math.min(Math.max(delaysCs.get(i), GIF_MIN_CS), GIF_MAX_CS);
-
-                IIOMetadata frameMeta = writer.getDefaultImageMetadata(type, params);
-                IIOMetadataNode fmRoot = (IIOMetadataNode) frameMeta.getAsTree(format);
-                IIOMetadataNode gce = imgService.findNode(fmRoot, "GraphicControlExtension");
-                if (gce == null) {
-                    gce = new IIOMetadataNode("GraphicControlExtension");
-                    fmRoot.appendChild(gce);
-                }
-                gce.setAttribute("disposalMethod", "restoreToBackgroundColor");
-                gce.setAttribute("userInputFlag", "FALSE");
-                gce.setAttribute("transparentColorFlag", "FALSE");
-                gce.setAttribute("delayTime", Integer.toString(delay));
-                gce.setAttribute("transparentColorIndex", "0");
-
-                frameMeta.setFromTree(format, fmRoot);
-                writer.writeToSequence(new IIOImage(bi, null, frameMeta), params);
-            }
-            writer.endWriteSequence();
-        } finally {
-            writer.dispose();
-        }
-        return baos.toByteArray();
-    }
-
-    private GifData retime(GifData gif, double rateAbs, boolean reverse) {
-        if (rateAbs <= 0) throw new IllegalArgumentException("rate must be > 0");
-
-        List<BufferedImage> frames = new ArrayList<>(gif.getFrames());
-        List<Integer> delays = new ArrayList<>(gif.getDelaysCs());
-
-        if (reverse) {
-            Collections.reverse(frames);
-            Collections.reverse(delays);
-        }
-
-        GifData out = new GifData();
-        out.setLoopCount(gif.getLoopCount());
-
-        if (rateAbs == 1.0) {
-            out.setFrames(frames);
-            out.setDelaysCs(delays);
-            return out;
-        }
-
-        if (rateAbs < 1.0) {
-            for (int i = 0; i < frames.size(); i++) {
-                int d = delays.get(i);
-                int nd = Math.max(GIF_MIN_CS, Math.min(GIF_MAX_CS, (int) Math.round(d / rateAbs)));
-                out.getFrames().add(frames.get(i));
-                out.getDelaysCs().add(nd);
-            }
-            return out;
-        }
-
-        double need = rateAbs;
-        List<BufferedImage> curF = frames;
-        List<Integer> curD = delays;
-
-        while (true) {
-            boolean allOk = true;
-            for (int d : curD) {
-                int scaled = Math.max((int) Math.round(d / need), GIF_MIN_CS);
-                if (scaled <= GIF_MIN_CS) {
-                    allOk = false;
-                    break;
-                }
-            }
-            if (allOk) break;
-
-            // 当无法保证最小播放间隔时间处于合理范围时，考虑删帧
-            // 删奇数帧（索引 1,3,5, ...），保留偶数 0,2,4,...
-            if (curF.size() <= 1) break;
-            List<BufferedImage> nf = new ArrayList<>((curF.size() + 1) / 2);
-            List<Integer> nd = new ArrayList<>((curD.size() + 1) / 2);
-            for (int i = 0; i < curF.size(); i += 2) {
-                nf.add(curF.get(i));
-                nd.add(curD.get(i));
-            }
-            curF = nf;
-            curD = nd;
-
-            need /= 2.0;
-            if (need <= 1.0) break;
-        }
-
-        for (int i = 0; i < curF.size(); i++) {
-            int d = curD.get(i);
-            int scaled = Math.max((int) Math.round(d / Math.max(need, 1.0)), GIF_MIN_CS);
-            out.getFrames().add(curF.get(i));
-            out.getDelaysCs().add(scaled);
-        }
-        if (out.getFrames().isEmpty()) {
-            out.getFrames().add(frames.get(0));
-            out.getDelaysCs().add(Math.max(GIF_MIN_CS, (int) Math.round(delays.get(0) / rateAbs)));
-        }
-        return out;
-    }
-
-    private void symmetryByLeft(List<BufferedImage> imgs) {
-        for (BufferedImage img : imgs) {
-            int width = img.getWidth();
-            int height = img.getHeight();
-
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width / 2; x++) {
-                    int leftPixel = img.getRGB(x, y);
-                    img.setRGB(width - x - 1, y, leftPixel);
-                }
-            }
-        }
-    }
-
-    private void symmetryByRight(List<BufferedImage> imgs) {
-        for (BufferedImage img : imgs) {
-            int width = img.getWidth();
-            int height = img.getHeight();
-
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width / 2; x++) {
-                    int rightPixel = img.getRGB(width - x - 1, y);
-                    img.setRGB(x, y, rightPixel);
-                }
-            }
-        }
-    }
-
-    private void symmetryByUp(List<BufferedImage> imgs) {
-        for (BufferedImage img : imgs) {
-            int width = img.getWidth();
-            int height = img.getHeight();
-            int half = height / 2;
-            for (int y = 0; y < half; y++) {
-                for (int x = 0; x < width; x++) {
-                    int topPixel = img.getRGB(x, y);
-                    img.setRGB(x, height - y - 1, topPixel);
-                }
-            }
-        }
-    }
-
-    private void symmetryByDown(List<BufferedImage> imgs) {
-        for (BufferedImage img : imgs) {
-            int width = img.getWidth();
-            int height = img.getHeight();
-            int half = height / 2;
-            for (int y = 0; y < half; y++) {
-                for (int x = 0; x < width; x++) {
-                    int bottomPixel = img.getRGB(x, height - y - 1);
-                    img.setRGB(x, y, bottomPixel);
-                }
-            }
-        }
-    }
-
-    private void gifSymmetryByLeft(List<GifData> gifs) {
-        for (GifData gif : gifs) symmetryByLeft(gif.getFrames());
-    }
-
-    private void gifSymmetryByRight(List<GifData> gifs) {
-        for (GifData gif : gifs) symmetryByRight(gif.getFrames());
-    }
-
-    private void gifSymmetryByUp(List<GifData> gifs) {
-        for (GifData gif : gifs) symmetryByUp(gif.getFrames());
-    }
-
-    private void gifSymmetryByDown(List<GifData> gifs) {
-        for (GifData gif : gifs) symmetryByDown(gif.getFrames());
-    }
-
-    private void gifCutout(GifData gif, int threshold) {
-        // 对每一帧单独执行 cutout 算法（与静态图片的处理逻辑对齐）
-        int[][] dirs = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}, {-1, -1}, {-1, 1}, {1, -1}, {1, 1}};
-        List<BufferedImage> frames = gif.getFrames();
-        for (int fi = 0; fi < frames.size(); fi++) {
-            BufferedImage img = frames.get(fi);
-            // 强制 ARGB
-            if (img.getType() != BufferedImage.TYPE_INT_ARGB) {
-                BufferedImage argbImg = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_ARGB);
-                Graphics2D g = argbImg.createGraphics();
-                g.drawImage(img, 0, 0, null);
-                g.dispose();
-                frames.set(fi, argbImg);
-                img = argbImg;
-            }
-
-            int width = img.getWidth();
-            int height = img.getHeight();
-            Map<Integer, Set<Long>> rgbSta = new HashMap<>();
-
-            if (width < 6 || height < 6) {
-                // 图片过小
-                return;
-            }
-
-            // 1. 统计四个边缘上出现频次最高的颜色，每条边宽度硬编码 3
-            for (int w = 0; w < width; w++) {
-                for (int i = 0; i < 3; i++) {
-                    rgbSta.computeIfAbsent(img.getRGB(w, i), k -> new HashSet<>()).add(((long) w << 32) | (i & 0xffffffffL));
-                    rgbSta.computeIfAbsent(img.getRGB(w, height - i - 1), k -> new HashSet<>()).add(((long) w << 32) | ((height - i - 1) & 0xffffffffL));
-                }
-            }
-            for (int h = 1; h < height - 1; h++) {
-                for (int i = 0; i < 3; i++) {
-                    rgbSta.computeIfAbsent(img.getRGB(i, h), k -> new HashSet<>()).add(((long) i << 32) | (h & 0xffffffffL));
-                    rgbSta.computeIfAbsent(img.getRGB(width - i - 1, h), k -> new HashSet<>()).add(((long) (width - i - 1) << 32) | (h & 0xffffffffL));
-                }
-            }
-
-            Set<Long> bgPixelIndex = rgbSta.values().stream()
-                    .max(Comparator.comparingInt(Set::size))
-                    .orElseThrow(() -> new InternalServerErrorException("rgbSta cannot be empty"));
-
-            if (bgPixelIndex.isEmpty()) throw new InternalServerErrorException("bgPixelIndex cannot be empty");
-
-            long aBgIndex = bgPixelIndex.iterator().next();
-            int bgRgb = img.getRGB((int) (aBgIndex >>> 32), (int) aBgIndex);
-
-            // 2. 初始化优先队列，将所有边缘上出现频次最高的颜色加入优先队列
-            Set<Long> visited = new HashSet<>(bgPixelIndex);
-            PriorityQueue<Pixel> pq = new PriorityQueue<>(Comparator.comparingDouble(Pixel::dist));
-            for (long index : bgPixelIndex) {
-                int x = (int) (index >>> 32);
-                int y = (int) index;
-                pq.offer(new Pixel(x, y, img.getRGB(x, y), 0));
-            }
-
-            // 3. BFS 抠图透明底
-            while (!pq.isEmpty()) {
-                Pixel p = pq.poll();
-                int x = p.x();
-                int y = p.y();
-
-                if (p.dist() > threshold) continue;
-                img.setRGB(x, y, p.rgb() & 0x00ffffff);
-
-                for (int[] d : dirs) {
-                    int nx = x + d[0];
-                    int ny = y + d[1];
-                    if (nx < 0 || ny < 0 || nx >= width || ny >= height) continue;
-
-                    long idx = ((long) nx << 32) | (ny & 0xffffffffL);
-                    if (visited.contains(idx)) continue;
-
-                    visited.add(idx);
-                    int nRgb = img.getRGB(nx, ny);
-                    int dist = distance(bgRgb, nRgb);
-
-                    pq.offer(new Pixel(nx, ny, nRgb, dist));
-                }
-            }
-        }
-    }
-
-    private void gifGray(GifData gif) {
-        List<BufferedImage> frames = gif.getFrames();
-        for (int i = 0; i < frames.size(); i++) {
-            BufferedImage img = frames.get(i);
-            int width = img.getWidth();
-            int height = img.getHeight();
-
-            BufferedImage grayImg = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
-            Graphics g = grayImg.getGraphics();
-            g.drawImage(img, 0, 0, null);
-            g.dispose();
-
-            // 转回 ARGB（writeGifToBytes 期望 ARGB）
-            BufferedImage outImg = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2 = outImg.createGraphics();
-            g2.drawImage(grayImg, 0, 0, null);
-            g2.dispose();
-
-            frames.set(i, outImg);
-        }
-    }
-
-    private void gifMirror(GifData gif) {
-        List<BufferedImage> frames = gif.getFrames();
-        for (BufferedImage img : frames) {
-            if (img.getType() != BufferedImage.TYPE_INT_ARGB) {
-                BufferedImage argbImg = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_ARGB);
-                Graphics2D g = argbImg.createGraphics();
-                g.drawImage(img, 0, 0, null);
-                g.dispose();
-                img = argbImg;
-            }
-            int width = img.getWidth();
-            int height = img.getHeight();
-
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width / 2; x++) {
-                    int leftPixel = img.getRGB(x, y);
-                    int rightPixel = img.getRGB(width - x - 1, y);
-
-                    img.setRGB(x, y, rightPixel);
-                    img.setRGB(width - x - 1, y, leftPixel);
-                }
-            }
-        }
+    private void cutoutImage(BufferedImage img, int threshold) {
+        CutoutKernel.cutout(RasterKernels.pixels(img), img.getWidth(), img.getHeight(), threshold);
     }
 
-    private BufferedImage rotateImg(BufferedImage img, int angle) {
-        int w = img.getWidth();
-        int h = img.getHeight();
-        BufferedImage dst;
-
-        switch (angle) {
-            case 90 -> {
-                dst = new BufferedImage(h, w, BufferedImage.TYPE_INT_ARGB);
-                for (int y = 0; y < h; y++) {
-                    for (int x = 0; x < w; x++) {
-                        dst.setRGB(h - 1 - y, x, img.getRGB(x, y));
-                    }
-                }
-            }
-            case 180 -> {
-                dst = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
-                for (int y = 0; y < h; y++) {
-                    for (int x = 0; x < w; x++) {
-                        dst.setRGB(w - 1 - x, h - 1 - y, img.getRGB(x, y));
-                    }
-                }
-            }
-            case 270 -> {
-                dst = new BufferedImage(h, w, BufferedImage.TYPE_INT_ARGB);
-                for (int y = 0; y < h; y++) {
-                    for (int x = 0; x < w; x++) {
-                        dst.setRGB(y, w - 1 - x, img.getRGB(x, y));
-                    }
-                }
-            }
-            default -> throw new IllegalArgumentException("illegal angle argument");
-        }
-
-        return dst;
+    private void toType(ParsedPayloadDTO payload, String type) throws IOException {
+        List<String> urls = imgService.extractImgUrls(payload, true);
+        if (urls == null || urls.isEmpty()) return;
+        reply(payload, batch.run(type, "", urls, (data, srcType) -> ImgBatchExecutor.Output.of(readStatic(data), type)));
     }
 
-    private void rotateImg(List<BufferedImage> imgs, int angle) {
-        imgs.replaceAll(img -> rotateImg(img, angle));
+    /**
+     * 把一个逐帧变换步骤登记到命令链的执行计划中，链路结束时统一执行，见 ImgChain
+     */
+    private void chain(CommandChainContext ctx, String command, String args, ImgChain.Op... ops) {
+        ImgChain chain = (ImgChain) ctx.getBag().computeIfAbsent(CHAIN_KEY, k -> new ImgChain());
+        chain.add(command, args, ops);
+        ctx.onFinish(CHAIN_KEY, () -> runChain(ctx.getPayload(), chain));
     }
 
-    private void rotateGif(GifData gif, int angle) {
-        for (int i = 0; i < gif.getFrames().size(); i++) {
-            BufferedImage frame = gif.getFrames().get(i);
-            BufferedImage rotated = rotateImg(frame, angle);
-            gif.getFrames().set(i, rotated);
+    /**
+     * 执行命令链中登记的全部逐帧变换：每张图片只解码、编码一次。GIF 走 GifPipeline 逐帧处理，静态图片变换后缓存为 png
+     */
+    private void runChain(ParsedPayloadDTO payload, ImgChain chain) throws IOException {
+        List<String> urls = imgService.extractImgUrls(payload, true);
+        if (urls == null || urls.isEmpty()) return;
+        if (chain.isIdentity()) {
+            sender.sendImage(payload, urls);
+            return;
         }
+        UnaryOperator<BufferedImage> op = chain.compile();
+        reply(payload, batch.run(chain.command(), chain.args(), urls, (data, type) -> transform(data, type, op)));
     }
 
-    private void rotateGif(List<GifData> gifs, int angle) {
-        for (GifData gif : gifs) {
-            List<BufferedImage> frames = gif.getFrames();
-            List<BufferedImage> rotated = new ArrayList<>(frames.size());
-            for (BufferedImage frame : frames) {
-                rotated.add(rotateImg(frame, angle));
-            }
-            gif.setFrames(rotated);
+    private ImgBatchExecutor.Output transform(byte[] data, String type, UnaryOperator<BufferedImage> op) throws IOException {
+        if ("gif".equals(type)) {
+            ImageProbe.Info info = imgService.probe(data);
+            if (info.pixels() > gifMaxCanvasPixels) op = downscaled(op);
+            return new ImgBatchExecutor.Output(gifPipeline.run(data, op), "gif");
         }
+        return ImgBatchExecutor.Output.of(op.apply(readStatic(data)), "png");
     }
 
-    private void invertImage(BufferedImage img) {
-        int width = img.getWidth();
-        int height = img.getHeight();
-
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int rgba = img.getRGB(x, y);
-                Color col = new Color(rgba, true);
-                int r = 255 - col.getRed();
-                int g = 255 - col.getGreen();
-                int b = 255 - col.getBlue();
-                int a = col.getAlpha();
-                img.setRGB(x, y, new Color(r, g, b, a).getRGB());
-            }
-        }
+    /**
+     * 先把超出 gif-max-canvas-pixels 的帧缩小再执行 op：GIF 的编码与内存开销按 帧数 x 画布 增长，大画布动图降采样后处理
+     */
+    private UnaryOperator<BufferedImage> downscaled(UnaryOperator<BufferedImage> op) {
+        return f -> op.apply(RasterKernels.scaleDown(f, gifMaxCanvasPixels));
     }
 
-    private void gifInvert(GifData gif) {
-        for (BufferedImage frame : gif.getFrames()) {
-            invertImage(frame);
-        }
+    /**
+     * 解码静态图片，超出 max-canvas-pixels 的图片由解码器直接按步长降采样
+     */
+    private BufferedImage readStatic(byte[] data) throws IOException {
+        BufferedImage img = imgService.readImage(data, maxCanvasPixels);
+        if (img == null) throw new InvalidCommandArgsException("unsupported image format", "无法识别的图片格式");
+        return img;
     }
 
-    private void toType(ParsedPayloadDTO payload, String type) throws IOException {
-        List<String> urls = imgService.extractImgUrls(payload, true);
-        if (urls == null || urls.isEmpty()) return;
-        List<BufferedImage> imgs = imgService.getBufferedImg(urls);
-
-        List<String> uuids = new ArrayList<>();
-        for (BufferedImage img : imgs) {
-            uuids.add(imageCacheService.cacheImage(img, type));
-        }
-
-        List<String> cacheUrls = new ArrayList<>(uuids.size());
-        for (String uuid : uuids) cacheUrls.add(apiPaths.buildImgUrl(type, uuid));
-        if (!cacheUrls.isEmpty()) sender.sendImage(payload, cacheUrls);
+    /**
+     * 发送成功的图片，并提示失败的图片（如有）
+     */
+    private void reply(ParsedPayloadDTO payload, ImgBatchExecutor.Result result) {
+        if (!result.urls().isEmpty()) sender.sendImage(payload, result.urls());
+        if (!result.failures().isEmpty()) sender.replyText(payload, result.failureMessage());
     }
 }
@@ -0,0 +1,143 @@
+package com.arth.solabot.plugin.custom.img;
+
+/**
+ * 纯色背景抠图内核，直接作用于 TYPE_INT_ARGB 的 int[] 像素：
+ * - 背景色：四条边各 3 像素宽的边框带中出现位置数最多的颜色（按完整 ARGB 比较）；
+ * 并列时的取舍与原先基于 HashMap 的统计保持一致（按 HashMap 桶序，同桶内后出现者优先）
+ * - 从边框带上所有背景色像素出发做 8 邻域洪泛，与背景色的 RGB 平方距离不超过 threshold 的像素 alpha 置零
+ * - 每个像素的距离只取决于自身颜色，原先优先队列的出队顺序不影响结果，因此以一次性分配的 int[] 工作队列与 boolean[] 访问标记代替
+ * - 单帧内串行，GIF 的多帧由 GifPipeline 并行调用
+ */
+public final class CutoutKernel {
+
+    /* 边框带宽度 */
+    private static final int BAND = 3;
+
+    private CutoutKernel() {
+    }
+
+    /**
+     * 估计背景色并抠图
+     *
+     * @param px 像素，宽高均不小于 6
+     */
+    public static void cutout(int[] px, int w, int h, int threshold) {
+        apply(px, w, h, background(px, w, h), threshold);
+    }
+
+    /**
+     * 以 bgArgb 为背景色抠图：边框带上颜色等于 bgArgb 的像素作为洪泛起点
+     */
+    public static void apply(int[] px, int w, int h, int bgArgb, int threshold) {
+        if (threshold < 0) return;  // 起点自身的距离为 0，阈值为负时没有像素会被清除
+        int bgR = (bgArgb >> 16) & 0xff, bgG = (bgArgb >> 8) & 0xff, bgB = bgArgb & 0xff;
+        boolean[] visited = new boolean[px.length];
+        int[] queue = new int[px.length];
+        int tail = 0;
+
+        for (int y = 0; y < h; y++) {
+            boolean edgeRow = y < BAND || y >= h - BAND;
+            for (int x = 0; x < w; x++) {
+                if (!edgeRow && x == BAND) x = w - BAND;  // 中间行只看左右两侧
+                int i = y * w + x;
+                if (px[i] == bgArgb) {
+                    visited[i] = true;
+                    queue[tail++] = i;
+                }
+            }
+        }
+
+        for (int head = 0; head < tail; head++) {
+            int i = queue[head];
+            px[i] &= 0x00ffffff;
+            int x = i % w, y = i / w;
+            int x0 = Math.max(0, x - 1), x1 = Math.min(w - 1, x + 1);
+            int y0 = Math.max(0, y - 1), y1 = Math.min(h - 1, y + 1);
+            for (int ny = y0; ny <= y1; ny++) {
+                for (int nx = x0, n = ny * w + x0; nx <= x1; nx++, n++) {
+                    if (visited[n]) continue;
+                    visited[n] = true;
+                    int c = px[n];
+                    int dr = ((c >> 16) & 0xff) - bgR, dg = ((c >> 8) & 0xff) - bgG, db = (c & 0xff) - bgB;
+                    if (dr * dr + dg * dg + db * db <= threshold) queue[tail++] = n;
+                }
+            }
+        }
+    }
+
+    /**
+     * 边框带中出现位置数最多的颜色
+     *
+     * @param px 像素，宽高均不小于 6
+     */
+    public static int background(int[] px, int w, int h) {
+        Histogram hist = new Histogram(2 * BAND * (w + h));
+        // 与原实现相同的遍历顺序：先上下边框的整行，再左右边框去掉已统计角落后的中间部分
+        for (int x = 0; x < w; x++) {
+            for (int i = 0; i < BAND; i++) {
+                hist.add(px[i * w + x]);
+                hist.add(px[(h - i - 1) * w + x]);
+            }
+        }
+        for (int y = BAND; y < h - BAND; y++) {
+            for (int i = 0; i < BAND; i++) {
+                hist.add(px[y * w + i]);
+                hist.add(px[y * w + w - i - 1]);
+            }
+        }
+        return hist.mode();
+    }
+
+    /**
+     * 颜色 -> 出现次数的开放寻址表，保留首次出现顺序
+     */
+    private static final class Histogram {
+        private final int[] keys;
+        private final int[] counts;
+        private final boolean[] used;
+        private final int[] order;  // 按首次出现顺序排列的槽位
+        private int size;
+
+        Histogram(int expected) {
+            int cap = Integer.highestOneBit(Math.max(16, expected * 2) - 1) << 1;
+            keys = new int[cap];
+            counts = new int[cap];
+            used = new boolean[cap];
+            order = new int[cap];
+        }
+
+        void add(int argb) {
+            int mask = keys.length - 1;
+            int s = (argb * 0x9E3779B1) >>> 7 & mask;
+            while (used[s] && keys[s] != argb) s = (s + 1) & mask;
+            if (!used[s]) {
+                used[s] = true;
+                keys[s] = argb;
+                order[size++] = s;
+            }
+            counts[s]++;
+        }
+
+        /**
+         * 次数最多的颜色；并列时取 HashMap&lt;Integer, ?&gt; 迭代顺序中靠前者，
+         * 即按扩容后容量下的桶下标升序，同桶内 computeIfAbsent 头插，后出现者在前
+         */
+        int mode() {
+            int cap = 16;
+            while (size > cap * 3 / 4) cap <<= 1;
+            int best = -1, bestCount = -1, bestBucket = Integer.MAX_VALUE;
+            for (int k = 0; k < size; k++) {
+                int s = order[k];
+                int key = keys[s];
+                int bucket = (key ^ (key >>> 16)) & (cap - 1);
+                int c = counts[s];
+                if (c > bestCount || (c == bestCount && bucket <= bestBucket)) {
+                    best = key;
+                    bestCount = c;
+                    bestBucket = bucket;
+                }
+            }
+            return best;
+        }
+    }
+}
@@ -0,0 +1,904 @@
+package com.arth.solabot.plugin.custom.img;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * 面向 bot 输出场景的 GIF89a 编码器，直接写入 OutputStream：
+ * - 调色板：全部帧的颜色合计不超过 255 种时使用无损的全局调色板；否则各帧分别不超过 255 种时使用无损的局部调色板；
+ * 都不满足时对全部帧的 RGB555 直方图做 median-cut，得到一个共享的全局调色板
+ * - 帧差：全不透明、尺寸一致的动图从第二帧起只写出与上一帧显示结果不同的最小矩形，处置方式为 doNotDispose，
+ * 矩形内未变化的像素写为透明色以提高 LZW 压缩率
+ * - 含透明像素的动图无法用叠加表达“变透明”，退回到整帧 + restoreToBackgroundColor，与 ImageIO 写出的结构一致
+ * - 帧的映射与 LZW 压缩可交给线程池按批并行，写出顺序始终与输入一致
+ * - open() 返回逐帧写出的 Writer，不需要预先持有全部帧，代价是只能使用逐帧的局部调色板
+ */
+public final class GifEncoder {
+
+    private static final int DISPOSE_NONE = 1;        // doNotDispose
+    private static final int DISPOSE_BACKGROUND = 2;  // restoreToBackgroundColor
+
+    /* alpha 低于该值的像素视为透明 */
+    private static final int ALPHA_THRESHOLD = 128;
+
+    /* 共享 median-cut 调色板的平均误差（RGB 三通道绝对差之和）上限，超出后改用逐帧调色板 */
+    private static final double GLOBAL_ERROR_LIMIT = 12.0;
+
+    /* median-cut 直方图采样的像素上限，超出后按步长抽样 */
+    private static final long HISTOGRAM_SAMPLES = 4L << 20;
+
+    private GifEncoder() {
+    }
+
+    /**
+     * 编码并写出 GIF，不关闭 out
+     *
+     * @param frames    帧，非 TYPE_INT_ARGB 的帧会先转换（不修改入参列表）
+     * @param delaysCs  每帧延时（1/100 秒），会被限制在 [GIF_MIN_CS, GIF_MAX_CS]
+     * @param loopCount 循环次数，0 表示无限
+     * @param pool      用于并行编码帧的线程池，为 null 时在调用线程上顺序执行
+     */
+    public static void write(List<BufferedImage> frames, List<Integer> delaysCs, int loopCount,
+                             OutputStream out, ExecutorService pool) throws IOException {
+        if (frames == null || frames.isEmpty()) throw new IllegalArgumentException("No frames");
+        new Job(frames, delaysCs, loopCount, pool).run(out instanceof BufferedOutputStream ? out : new BufferedOutputStream(out, 1 << 16));
+    }
+
+    /**
+     * 打开逐帧写出的编码器，画布尺寸取首帧尺寸；写完后须调用 Writer.finish()，不关闭 out
+     *
+     * @param loopCount 循环次数，0 表示无限
+     */
+    public static Writer open(OutputStream out, int loopCount) {
+        return new Writer(out instanceof BufferedOutputStream ? out : new BufferedOutputStream(out, 1 << 16), loopCount);
+    }
+
+    // ++=============** 逐帧编码 **=============++
+
+    /**
+     * 逐帧编码器，只在内存中保留上一帧的显示结果与一个尚未写出的帧：
+     * - 每帧使用局部调色板：颜色不超过 255 种时无损，否则对本帧做 median-cut，并固定保留一个透明色下标
+     * - 当前帧的透明像素处上一帧显示结果也透明时，以 doNotDispose 叠加写出与上一帧不同的最小矩形
+     * - 否则把上一帧的处置改为 restoreToBackgroundColor（必要时将其矩形扩大到覆盖全部可见像素），
+     * 使画布在当前帧前被清空，当前帧只写出不透明像素的包围盒
+     * - 上一帧的处置方式要看到下一帧才能确定，因此每帧延后一帧写出
+     */
+    public static final class Writer {
+        private final OutputStream out;
+        private final int loopCount;
+
+        private int canvasW, canvasH;
+        private int[] shown;  // 上一帧显示后的画布，透明为 0
+        private int[] spare;
+        private StreamFrame pending;
+
+        private Writer(OutputStream out, int loopCount) {
+            this.out = out;
+            this.loopCount = loopCount;
+        }
+
+        /**
+         * 追加一帧；尺寸与首帧不同的帧按左上角对齐裁剪或以透明补齐
+         *
+         * @param delayCs 延时（1/100 秒），会被限制在 [GIF_MIN_CS, GIF_MAX_CS]
+         */
+        public void add(BufferedImage frame, int delayCs) throws IOException {
+            BufferedImage img = RasterKernels.toArgb(frame);
+            if (shown == null) {
+                canvasW = img.getWidth();
+                canvasH = img.getHeight();
+                shown = new int[canvasW * canvasH];
+                spare = new int[canvasW * canvasH];
+                writeScreen(out, canvasW, canvasH, null, 0, loopCount);
+            }
+            int[] cur = fit(img);
+
+            ExactPalette exact = new ExactPalette(255);
+            Palette pal = exact.addAll(cur) ? exact : MedianCutPalette.build(new int[][]{cur}, 255);
+            int trans = pal.size();
+
+            // 量化后的显示颜色与全画布下标
+            int[] q = spare;
+            byte[] full = new byte[cur.length];
+            for (int p = 0; p < cur.length; p++) {
+                int c = cur[p];
+                if ((c >>> 24) < ALPHA_THRESHOLD) {
+                    full[p] = (byte) trans;
+                    q[p] = 0;
+                } else {
+                    int ci = pal.index(c);
+                    full[p] = (byte) ci;
+                    q[p] = 0xFF000000 | pal.color(ci);
+                }
+            }
+
+            boolean overlay = pending != null;
+            for (int p = 0; overlay && p < q.length; p++) {
+                if (q[p] == 0 && shown[p] != 0) overlay = false;
+            }
+
+            StreamFrame f = new StreamFrame(pal, full, delayCs);
+            if (overlay) {
+                f.clip(q, shown, canvasW);
+            } else {
+                if (pending != null) {
+                    // 上一帧改为整体清除；若它是叠加写出的，矩形需覆盖画布上全部可见像素
+                    if (!pending.onEmpty) pending.clip(shown, null, canvasW);
+                    pending.disposal = DISPOSE_BACKGROUND;
+                }
+                f.clip(q, null, canvasW);
+                f.onEmpty = true;
+            }
+            if (pending != null) pending.writeTo(out);
+            pending = f;
+            spare = shown;
+            shown = q;
+        }
+
+        /**
+         * 写出最后一帧与结束符并 flush
+         */
+        public void finish() throws IOException {
+            if (pending == null) throw new IllegalStateException("No frames");
+            pending.writeTo(out);
+            pending = null;
+            out.write(0x3B);
+            out.flush();
+        }
+
+        private int[] fit(BufferedImage img) {
+            int[] px = RasterKernels.pixels(img);
+            int w = img.getWidth(), h = img.getHeight();
+            if (w == canvasW && h == canvasH) return px;
+            int[] out = new int[canvasW * canvasH];
+            int cw = Math.min(w, canvasW);
+            for (int y = 0, ch = Math.min(h, canvasH); y < ch; y++) System.arraycopy(px, y * w, out, y * canvasW, cw);
+            return out;
+        }
+    }
+
+    /**
+     * Writer 中尚未写出的帧
+     */
+    private static final class StreamFrame {
+        final Palette pal;
+        final byte[] full;   // 全画布下标，透明像素为透明色下标
+        final int delayCs;
+        int disposal = DISPOSE_NONE;
+        boolean onEmpty;     // 是否绘制在已清空的画布上
+        int x, y, w, h;
+        byte[] rect;
+
+        StreamFrame(Palette pal, byte[] full, int delayCs) {
+            this.pal = pal;
+            this.full = full;
+            this.delayCs = delayCs;
+        }
+
+        /**
+         * 取 shown 与 base（为 null 时视为全透明）不同的像素的包围盒作为帧矩形，矩形内未变化的像素写为透明色
+         */
+        void clip(int[] shown, int[] base, int canvasW) {
+            int trans = pal.size();
+            int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = -1, maxY = -1;
+            for (int p = 0; p < shown.length; p++) {
+                if (shown[p] == (base == null ? 0 : base[p])) continue;
+                int px = p % canvasW, py = p / canvasW;
+                if (px < minX) minX = px;
+                if (px > maxX) maxX = px;
+                if (py < minY) minY = py;
+                if (py > maxY) maxY = py;
+            }
+            if (maxX < 0) {
+                // 无任何变化：写一个透明的 1x1 帧占位，保持帧数与延时不变
+                x = y = 0;
+                w = h = 1;
+                rect = new byte[]{(byte) trans};
+                return;
+            }
+            x = minX;
+            y = minY;
+            w = maxX - minX + 1;
+            h = maxY - minY + 1;
+            rect = new byte[w * h];
+            for (int r = 0, q = 0; r < h; r++) {
+                for (int c = 0, p = (y + r) * canvasW + x; c < w; c++, p++, q++) {
+                    boolean changed = shown[p] != (base == null ? 0 : base[p]);
+                    rect[q] = changed ? full[p] : (byte) trans;
+                }
+            }
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            int bits = tableBits(pal.size() + 1);
+            int delay = Math.min(Math.max(delayCs, GifPipeline.GIF_MIN_CS), GifPipeline.GIF_MAX_CS);
+            new EncodedFrame(x, y, w, h, disposal, delay, pal.size(), colorTable(pal, bits), bits,
+                    Lzw.encode(rect, Math.max(2, bits))).writeTo(out);
+        }
+    }
+
+    // ++=============** 编码任务 **=============++
+
+    private static final class Job {
+        final int n;
+        final int[][] px;
+        final int[] fw, fh;
+        final List<Integer> delays;
+        final int loopCount;
+        final ExecutorService pool;
+
+        int canvasW, canvasH;
+        boolean transparent;  // 任意帧含透明像素
+        boolean delta;        // 是否使用帧差
+        boolean reserve;      // 是否保留一个透明色下标
+
+        Palette global;       // 全局调色板，为 null 时使用 locals
+        Palette[] locals;
+
+        Job(List<BufferedImage> frames, List<Integer> delays, int loopCount, ExecutorService pool) {
+            this.n = frames.size();
+            this.px = new int[n][];
+            this.fw = new int[n];
+            this.fh = new int[n];
+            this.delays = delays;
+            this.loopCount = loopCount;
+            this.pool = pool;
+            for (int i = 0; i < n; i++) {
+                BufferedImage img = RasterKernels.toArgb(frames.get(i));
+                px[i] = RasterKernels.pixels(img);
+                fw[i] = img.getWidth();
+                fh[i] = img.getHeight();
+            }
+        }
+
+        void run(OutputStream out) throws IOException {
+            boolean sameSize = true;
+            for (int i = 0; i < n; i++) {
+                canvasW = Math.max(canvasW, fw[i]);
+                canvasH = Math.max(canvasH, fh[i]);
+                if (fw[i] != fw[0] || fh[i] != fh[0]) sameSize = false;
+            }
+            transparent = hasTransparency();
+            delta = !transparent && sameSize && n > 1;
+            reserve = transparent || delta;
+            buildPalettes(reserve ? 255 : 256);
+
+            writeHeader(out);
+            int batch = pool == null ? 1 : Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+            for (int from = 0; from < n; from += batch) {
+                int to = Math.min(n, from + batch);
+                for (EncodedFrame f : encodeBatch(from, to)) f.writeTo(out);
+            }
+            out.write(0x3B);
+            out.flush();
+        }
+
+        private boolean hasTransparency() {
+            for (int[] p : px) {
+                for (int c : p) if ((c >>> 24) < ALPHA_THRESHOLD) return true;
+            }
+            return false;
+        }
+
+        // ---------- 调色板 ----------
+
+        private void buildPalettes(int maxColors) {
+            ExactPalette union = new ExactPalette(maxColors);
+            boolean fits = true;
+            for (int i = 0; i < n && fits; i++) fits = union.addAll(px[i]);
+            if (fits) {
+                global = union;
+                return;
+            }
+            if (n > 1) {
+                ExactPalette[] each = new ExactPalette[n];
+                boolean allFit = true;
+                for (int i = 0; i < n && allFit; i++) {
+                    each[i] = new ExactPalette(maxColors);
+                    allFit = each[i].addAll(px[i]);
+                }
+                if (allFit) {
+                    locals = each;
+                    return;
+                }
+            }
+            MedianCutPalette shared = MedianCutPalette.build(px, maxColors);
+            if (n > 1 && shared.meanError > GLOBAL_ERROR_LIMIT) {
+                // 各帧色彩差异过大，共享调色板失真明显，改为逐帧 median-cut
+                locals = new Palette[n];
+                for (int i = 0; i < n; i++) locals[i] = MedianCutPalette.build(new int[][]{px[i]}, maxColors);
+                return;
+            }
+            global = shared;
+        }
+
+        Palette palette(int i) {
+            return global != null ? global : locals[i];
+        }
+
+        // ---------- 帧 ----------
+
+        private List<EncodedFrame> encodeBatch(int from, int to) throws IOException {
+            List<EncodedFrame> out = new ArrayList<>(to - from);
+            if (pool == null || to - from == 1) {
+                for (int i = from; i < to; i++) out.add(encodeFrame(i));
+                return out;
+            }
+            List<Future<EncodedFrame>> futures = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                int idx = i;
+                futures.add(pool.submit(() -> encodeFrame(idx)));
+            }
+            try {
+                for (Future<EncodedFrame> f : futures) out.add(f.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while encoding gif frames");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException re) throw re;
+                throw new IOException(e.getCause());
+            }
+            return out;
+        }
+
+        private EncodedFrame encodeFrame(int i) {
+            Palette pal = palette(i);
+            int[] cur = px[i];
+            int w = fw[i], h = fh[i];
+            int trans = reserve ? pal.size() : -1;
+
+            int x0 = 0, y0 = 0, x1 = w, y1 = h;
+            byte[] idx;
+            if (delta && i > 0) {
+                Palette prevPal = palette(i - 1);
+                int[] prev = px[i - 1];
+                // 以量化后的显示颜色比较，量化到同一颜色的像素视为未变化
+                int minX = w, minY = h, maxX = -1, maxY = -1;
+                byte[] full = new byte[w * h];
+                boolean[] changed = new boolean[w * h];
+                for (int y = 0, p = 0; y < h; y++) {
+                    for (int x = 0; x < w; x++, p++) {
+                        int ci = pal.index(cur[p]);
+                        full[p] = (byte) ci;
+                        int c = cur[p], o = prev[p];
+                        if (c == o && pal == prevPal) continue;
+                        if (pal.color(ci) == prevPal.color(prevPal.index(o))) continue;
+                        changed[p] = true;
+                        if (x < minX) minX = x;
+                        if (x > maxX) maxX = x;
+                        if (y < minY) minY = y;
+                        if (y > maxY) maxY = y;
+                    }
+                }
+                if (maxX < 0) {
+                    // 与上一帧完全相同：写一个透明的 1x1 帧占位，保持帧数与延时不变
+                    idx = new byte[]{(byte) trans};
+                    x1 = 1;
+                    y1 = 1;
+                } else {
+                    x0 = minX;
+                    y0 = minY;
+                    x1 = maxX + 1;
+                    y1 = maxY + 1;
+                    int rw = x1 - x0;
+                    idx = new byte[rw * (y1 - y0)];
+                    for (int y = y0, q = 0; y < y1; y++) {
+                        for (int x = x0, p = y * w + x0; x < x1; x++, p++, q++) {
+                            idx[q] = changed[p] ? full[p] : (byte) trans;
+                        }
+                    }
+                }
+            } else {
+                idx = new byte[w * h];
+                for (int p = 0; p < idx.length; p++) {
+                    int c = cur[p];
+                    idx[p] = (byte) ((c >>> 24) < ALPHA_THRESHOLD && trans >= 0 ? trans : pal.index(c));
+                }
+            }
+
+            int tableBits = tableBits(pal.size() + (reserve ? 1 : 0));
+            int delay = Math.min(Math.max(i < delays.size() ? delays.get(i) : 10, GifPipeline.GIF_MIN_CS), GifPipeline.GIF_MAX_CS);
+            return new EncodedFrame(
+                    x0, y0, x1 - x0, y1 - y0,
+                    delta ? DISPOSE_NONE : DISPOSE_BACKGROUND,
+                    delay, trans,
+                    global == null ? colorTable(pal, tableBits) : null,
+                    tableBits,
+                    Lzw.encode(idx, Math.max(2, tableBits)));
+        }
+
+        private void writeHeader(OutputStream out) throws IOException {
+            int bits = global != null ? tableBits(global.size() + (reserve ? 1 : 0)) : 0;
+            writeScreen(out, canvasW, canvasH, global, bits, loopCount);
+        }
+    }
+
+    private record EncodedFrame(int x, int y, int w, int h, int disposal, int delayCs, int transIndex,
+                                byte[] localTable, int tableBits, byte[] data) {
+
+        void writeTo(OutputStream out) throws IOException {
+            // Graphic Control Extension
+            out.write(new byte[]{0x21, (byte) 0xF9, 0x04});
+            out.write((disposal << 2) | (transIndex >= 0 ? 1 : 0));
+            writeShort(out, delayCs);
+            out.write(Math.max(0, transIndex));
+            out.write(0);
+            // Image Descriptor
+            out.write(0x2C);
+            writeShort(out, x);
+            writeShort(out, y);
+            writeShort(out, w);
+            writeShort(out, h);
+            if (localTable != null) {
+                out.write(0x80 | (tableBits - 1));
+                out.write(localTable);
+            } else {
+                out.write(0);
+            }
+            out.write(data);
+        }
+    }
+
+    // ++=============** 调色板实现 **=============++
+
+    private interface Palette {
+        int size();
+
+        /* RGB 颜色（不含 alpha） */
+        int color(int index);
+
+        /* ARGB 像素映射到的调色板下标 */
+        int index(int argb);
+    }
+
+    /**
+     * 无损调色板：颜色数不超过上限时逐色精确映射（开放寻址哈希）
+     */
+    private static final class ExactPalette implements Palette {
+        private final int max;
+        private final int[] keys = new int[1024];
+        private final byte[] values = new byte[1024];
+        private final int[] colors = new int[256];
+        private int size;
+
+        ExactPalette(int max) {
+            this.max = max;
+            Arrays.fill(keys, -1);
+        }
+
+        boolean addAll(int[] px) {
+            int last = -1;
+            for (int c : px) {
+                if ((c >>> 24) < ALPHA_THRESHOLD) continue;
+                int rgb = c & 0xFFFFFF;
+                if (rgb == last) continue;
+                last = rgb;
+                int slot = slot(rgb);
+                if (keys[slot] == rgb) continue;
+                if (size == max) return false;
+                keys[slot] = rgb;
+                values[slot] = (byte) size;
+                colors[size++] = rgb;
+            }
+            return true;
+        }
+
+        private int slot(int rgb) {
+            int h = (rgb * 0x9E3779B1) >>> 22;
+            while (keys[h] != -1 && keys[h] != rgb) h = (h + 1) & 1023;
+            return h;
+        }
+
+        @Override
+        public int size() {
+            return Math.max(1, size);
+        }
+
+        @Override
+        public int color(int index) {
+            return colors[index];
+        }
+
+        @Override
+        public int index(int argb) {
+            int slot = slot(argb & 0xFFFFFF);
+            return keys[slot] == -1 ? 0 : values[slot] & 0xFF;
+        }
+    }
+
+    /**
+     * 对 RGB555 直方图做 median-cut 得到的调色板，映射时按 RGB555 查表，表项首次访问时计算最近色
+     */
+    private static final class MedianCutPalette implements Palette {
+        private final int[] colors;
+        private final int[] lut = new int[1 << 15];
+        /* 按直方图估计的平均量化误差 */
+        private double meanError;
+
+        private MedianCutPalette(int[] colors) {
+            this.colors = colors;
+            Arrays.fill(lut, -1);
+        }
+
+        static MedianCutPalette build(int[][] frames, int maxColors) {
+            long total = 0;
+            for (int[] p : frames) total += p.length;
+            int step = (int) Math.max(1, total / HISTOGRAM_SAMPLES);
+
+            int[] count = new int[1 << 15];
+            long[] sumR = new long[1 << 15], sumG = new long[1 << 15], sumB = new long[1 << 15];
+            for (int[] p : frames) {
+                for (int i = 0; i < p.length; i += step) {
+                    int c = p[i];
+                    if ((c >>> 24) < ALPHA_THRESHOLD) continue;
+                    int r = (c >> 16) & 0xFF, g = (c >> 8) & 0xFF, b = c & 0xFF;
+                    int k = ((r >> 3) << 10) | ((g >> 3) << 5) | (b >> 3);
+                    count[k]++;
+                    sumR[k] += r;
+                    sumG[k] += g;
+                    sumB[k] += b;
+                }
+            }
+
+            List<Box> boxes = new ArrayList<>(maxColors);
+            Box all = new Box(0, 31, 0, 31, 0, 31);
+            all.shrink(count);
+            if (all.count > 0) boxes.add(all);
+            while (boxes.size() < maxColors) {
+                // 选择像素数与最长边乘积最大的可分割盒子
+                Box best = null;
+                long bestScore = 0;
+                for (Box b : boxes) {
+                    long score = (long) b.count * b.longest() * b.longest();
+                    if (b.longest() > 0 && score > bestScore) {
+                        bestScore = score;
+                        best = b;
+                    }
+                }
+                if (best == null) break;
+                Box other = best.split(count);
+                if (other == null) break;
+                boxes.add(other);
+            }
+
+            int[] colors = new int[Math.max(1, boxes.size())];
+            for (int i = 0; i < boxes.size(); i++) colors[i] = boxes.get(i).average(count, sumR, sumG, sumB);
+            MedianCutPalette pal = new MedianCutPalette(colors);
+
+            long err = 0, samples = 0;
+            for (int k = 0; k < count.length; k++) {
+                if (count[k] == 0) continue;
+                int key = ((k >> 10) << 19) | (((k >> 5) & 0x1F) << 11) | ((k & 0x1F) << 3);
+                int c = colors[pal.index(key)];  // 顺带预热查找表
+                int r = (int) (sumR[k] / count[k]), g = (int) (sumG[k] / count[k]), b = (int) (sumB[k] / count[k]);
+                err += (long) count[k] * (Math.abs(((c >> 16) & 0xFF) - r) + Math.abs(((c >> 8) & 0xFF) - g) + Math.abs((c & 0xFF) - b));
+                samples += count[k];
+            }
+            pal.meanError = samples == 0 ? 0 : (double) err / samples;
+            return pal;
+        }
+
+        @Override
+        public int size() {
+            return colors.length;
+        }
+
+        @Override
+        public int color(int index) {
+            return colors[index];
+        }
+
+        @Override
+        public int index(int argb) {
+            int k = (((argb >> 19) & 0x1F) << 10) | (((argb >> 11) & 0x1F) << 5) | ((argb >> 3) & 0x1F);
+            int v = lut[k];
+            if (v < 0) {
+                // 并发写入的值相同，无需同步
+                v = nearest(((k >> 10) << 3) | 4, (((k >> 5) & 0x1F) << 3) | 4, ((k & 0x1F) << 3) | 4);
+                lut[k] = v;
+            }
+            return v;
+        }
+
+        private int nearest(int r, int g, int b) {
+            int best = 0, bestD = Integer.MAX_VALUE;
+            for (int i = 0; i < colors.length; i++) {
+                int c = colors[i];
+                int dr = ((c >> 16) & 0xFF) - r, dg = ((c >> 8) & 0xFF) - g, db = (c & 0xFF) - b;
+                int d = dr * dr * 2 + dg * dg * 4 + db * db * 3;
+                if (d < bestD) {
+                    bestD = d;
+                    best = i;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * RGB555 空间中的轴对齐盒子，边界均为闭区间
+     */
+    private static final class Box {
+        int r0, r1, g0, g1, b0, b1;
+        int count;
+
+        Box(int r0, int r1, int g0, int g1, int b0, int b1) {
+            this.r0 = r0;
+            this.r1 = r1;
+            this.g0 = g0;
+            this.g1 = g1;
+            this.b0 = b0;
+            this.b1 = b1;
+        }
+
+        int longest() {
+            return Math.max(r1 - r0, Math.max(g1 - g0, b1 - b0));
+        }
+
+        /**
+         * 收缩到实际有像素的范围并重新计数
+         */
+        void shrink(int[] hist) {
+            int nr0 = 32, nr1 = -1, ng0 = 32, ng1 = -1, nb0 = 32, nb1 = -1;
+            int c = 0;
+            for (int r = r0; r <= r1; r++) {
+                for (int g = g0; g <= g1; g++) {
+                    int base = (r << 10) | (g << 5);
+                    for (int b = b0; b <= b1; b++) {
+                        int v = hist[base | b];
+                        if (v == 0) continue;
+                        c += v;
+                        if (r < nr0) nr0 = r;
+                        if (r > nr1) nr1 = r;
+                        if (g < ng0) ng0 = g;
+                        if (g > ng1) ng1 = g;
+                        if (b < nb0) nb0 = b;
+                        if (b > nb1) nb1 = b;
+                    }
+                }
+            }
+            count = c;
+            if (c == 0) return;
+            r0 = nr0;
+            r1 = nr1;
+            g0 = ng0;
+            g1 = ng1;
+            b0 = nb0;
+            b1 = nb1;
+        }
+
+        /**
+         * 沿最长边在加权中位数处切开，本盒子保留低半部分，返回高半部分
+         */
+        Box split(int[] hist) {
+            int axis = (r1 - r0) >= (g1 - g0) && (r1 - r0) >= (b1 - b0) ? 0 : (g1 - g0) >= (b1 - b0) ? 1 : 2;
+            int lo = axis == 0 ? r0 : axis == 1 ? g0 : b0;
+            int hi = axis == 0 ? r1 : axis == 1 ? g1 : b1;
+            int[] slice = new int[32];
+            for (int r = r0; r <= r1; r++) {
+                for (int g = g0; g <= g1; g++) {
+                    int base = (r << 10) | (g << 5);
+                    for (int b = b0; b <= b1; b++) {
+                        int v = hist[base | b];
+                        if (v != 0) slice[axis == 0 ? r : axis == 1 ? g : b] += v;
+                    }
+                }
+            }
+            int half = count / 2, acc = 0, cut = lo;
+            for (int i = lo; i < hi; i++) {
+                acc += slice[i];
+                cut = i;
+                if (acc >= half) break;
+            }
+            Box other = new Box(r0, r1, g0, g1, b0, b1);
+            switch (axis) {
+                case 0 -> {
+                    r1 = cut;
+                    other.r0 = cut + 1;
+                }
+                case 1 -> {
+                    g1 = cut;
+                    other.g0 = cut + 1;
+                }
+                default -> {
+                    b1 = cut;
+                    other.b0 = cut + 1;
+                }
+            }
+            shrink(hist);
+            other.shrink(hist);
+            return other.count > 0 ? other : null;
+        }
+
+        int average(int[] hist, long[] sumR, long[] sumG, long[] sumB) {
+            long c = 0, r = 0, g = 0, b = 0;
+            for (int ri = r0; ri <= r1; ri++) {
+                for (int gi = g0; gi <= g1; gi++) {
+                    int base = (ri << 10) | (gi << 5);
+                    for (int bi = b0; bi <= b1; bi++) {
+                        int k = base | bi;
+                        c += hist[k];
+                        r += sumR[k];
+                        g += sumG[k];
+                        b += sumB[k];
+                    }
+                }
+            }
+            if (c == 0) return 0;
+            return (int) (r / c) << 16 | (int) (g / c) << 8 | (int) (b / c);
+        }
+    }
+
+    // ++=============** LZW **=============++
+
+    /**
+     * GIF 变长码 LZW，沿用 compress 的双重散列字典，输出含最小码长字节、数据子块与块终止符
+     */
+    private static final class Lzw {
+        private static final int BITS = 12;
+        private static final int HSIZE = 5003;
+        private static final int HSHIFT = 4;
+
+        private final ByteArrayOutputStream out;
+        private final byte[] block = new byte[256];
+        private int blockLen;
+        private int acc, accBits;
+        private int initBits, nBits, maxCode, freeEnt;
+
+        private Lzw(int capacity) {
+            out = new ByteArrayOutputStream(capacity);
+        }
+
+        static byte[] encode(byte[] idx, int minCodeSize) {
+            Lzw z = new Lzw(Math.max(64, idx.length / 2));
+            z.out.write(minCodeSize);
+            z.compress(idx, minCodeSize);
+            return z.out.toByteArray();
+        }
+
+        private void compress(byte[] idx, int minCodeSize) {
+            int clear = 1 << minCodeSize;
+            int eoi = clear + 1;
+            int[] htab = new int[HSIZE];
+            int[] codetab = new int[HSIZE];
+            Arrays.fill(htab, -1);
+
+            initBits = minCodeSize + 1;
+            nBits = initBits;
+            maxCode = (1 << nBits) - 1;
+            freeEnt = clear + 2;
+
+            output(clear, false);
+            int ent = idx[0] & 0xFF;
+            outer:
+            for (int i = 1; i < idx.length; i++) {
+                int c = idx[i] & 0xFF;
+                int fcode = (c << BITS) + ent;
+                int h = (c << HSHIFT) ^ ent;
+                if (htab[h] == fcode) {
+                    ent = codetab[h];
+                    continue;
+                }
+                if (htab[h] >= 0) {
+                    int disp = h == 0 ? 1 : HSIZE - h;
+                    do {
+                        h -= disp;
+                        if (h < 0) h += HSIZE;
+                        if (htab[h] == fcode) {
+                            ent = codetab[h];
+                            continue outer;
+                        }
+                    } while (htab[h] >= 0);
+                }
+                output(ent, false);
+                ent = c;
+                if (freeEnt < (1 << BITS)) {
+                    codetab[h] = freeEnt++;
+                    htab[h] = fcode;
+                } else {
+                    // 字典已满：清空并发出 clear 码，码长随之复位
+                    Arrays.fill(htab, -1);
+                    freeEnt = clear + 2;
+                    output(clear, true);
+                }
+            }
+            output(ent, false);
+            output(eoi, false);
+            if (accBits > 0) put(acc & 0xFF);
+            flushBlock();
+            out.write(0);
+        }
+
+        /**
+         * 以当前码长写出 code，随后按 compress 的规则调整码长
+         */
+        private void output(int code, boolean reset) {
+            acc |= code << accBits;
+            accBits += nBits;
+            while (accBits >= 8) {
+                put(acc & 0xFF);
+                acc >>>= 8;
+                accBits -= 8;
+            }
+            if (reset) {
+                nBits = initBits;
+                maxCode = (1 << nBits) - 1;
+            } else if (freeEnt > maxCode) {
+                nBits++;
+                maxCode = nBits == BITS ? (1 << BITS) : (1 << nBits) - 1;
+            }
+        }
+
+        private void put(int b) {
+            block[blockLen++] = (byte) b;
+            if (blockLen == 255) flushBlock();
+        }
+
+        private void flushBlock() {
+            if (blockLen == 0) return;
+            out.write(blockLen);
+            out.write(block, 0, blockLen);
+            blockLen = 0;
+        }
+    }
+
+    // ++=============** helpers **=============++
+
+    /**
+     * 写出文件头、逻辑屏幕描述符、全局调色板（global 为 null 时省略）与 NETSCAPE 2.0 循环扩展
+     */
+    private static void writeScreen(OutputStream out, int canvasW, int canvasH, Palette global, int bits,
+                                    int loopCount) throws IOException {
+        out.write("GIF89a".getBytes(StandardCharsets.US_ASCII));
+        writeShort(out, canvasW);
+        writeShort(out, canvasH);
+        if (global != null) {
+            out.write(0x80 | 0x70 | (bits - 1));  // 全局调色板，8 位色深
+            out.write(0);                         // 背景色下标
+            out.write(0);                         // 像素宽高比
+            out.write(colorTable(global, bits));
+        } else {
+            out.write(0x70);
+            out.write(0);
+            out.write(0);
+        }
+        // NETSCAPE 2.0 循环扩展
+        out.write(new byte[]{0x21, (byte) 0xFF, 0x0B});
+        out.write("NETSCAPE2.0".getBytes(StandardCharsets.US_ASCII));
+        int loop = Math.max(0, loopCount);  // 0 = 无限
+        out.write(new byte[]{0x03, 0x01, (byte) (loop & 0xFF), (byte) ((loop >> 8) & 0xFF), 0x00});
+    }
+
+    private static int tableBits(int colors) {
+        int bits = 1;
+        while ((1 << bits) < colors) bits++;
+        return bits;
+    }
+
+    private static byte[] colorTable(Palette pal, int bits) {
+        byte[] t = new byte[3 << bits];
+        for (int i = 0; i < pal.size(); i++) {
+            int c = pal.color(i);
+            t[i * 3] = (byte) (c >> 16);
+            t[i * 3 + 1] = (byte) (c >> 8);
+            t[i * 3 + 2] = (byte) c;
+        }
+        return t;
+    }
+
+    private static void writeShort(OutputStream out, int v) throws IOException {
+        out.write(v & 0xFF);
+        out.write((v >> 8) & 0xFF);
+    }
+}
@@ -0,0 +1,461 @@
+package com.arth.solabot.plugin.custom.img;
+
+import com.arth.solabot.adapter.fetcher.http.GifDecoder;
+import com.arth.solabot.adapter.fetcher.http.ImgService;
+import com.arth.solabot.adapter.fetcher.http.ImgService.GifData;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * GIF 处理流水线：decode -> 逐帧 transform -> encode。
+ * - run 以流水线方式执行：GifDecoder 按需解码，各帧提交到所有图片命令共享的有界 ForkJoinPool 变换，
+ * 变换完成的帧按顺序交给 GifEncoder.Writer 写出，任何时刻都不持有全部帧
+ * - 全局信号量限制同时处于解码到写出之间的帧数，单个超大 GIF 也无法一次性占满堆
+ * - 输出帧与延时严格保持输入顺序
+ * - 变速 / 倒放（retime）按 GifRetime 的帧计划流式处理，倒放时分块倒序解码，同样受帧许可限制
+ * - 已持有全部帧的 GifData 使用 encode，帧的量化与压缩在同一池中按批并行
+ * - 各阶段耗时记录到 solabot.img.gif.stage{stage}，并在 debug 日志中逐次输出
+ */
+@Slf4j
+@Component
+public class GifPipeline {
+
+    public static final int GIF_MIN_CS = 2;      // GIF 最小播放时间间隔
+    public static final int GIF_MAX_CS = 65535;  // GIF 最大播放时间间隔
+
+    private final ImgService imgService;
+    private final MeterRegistry meterRegistry;
+    private final ForkJoinPool framePool;
+    private final Semaphore framePermits;
+    private final int maxFramesInFlight;
+
+    private final Timer decodeTimer;
+    private final Timer transformTimer;
+    private final Timer encodeTimer;
+
+    public GifPipeline(ImgService imgService,
+                       MeterRegistry meterRegistry,
+                       @Value("${app.parameter.plugin.img.frame-parallelism:0}") int parallelism,
+                       @Value("${app.parameter.plugin.img.max-frames-in-flight:64}") int maxFramesInFlight) {
+        this.imgService = imgService;
+        this.meterRegistry = meterRegistry;
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.framePool = new ForkJoinPool(threads, pool -> {
+            var t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName("img-frame-" + t.getPoolIndex());
+            t.setDaemon(true);
+            return t;
+        }, null, false);
+        this.maxFramesInFlight = Math.max(1, maxFramesInFlight);
+        this.framePermits = new Semaphore(this.maxFramesInFlight);
+
+        decodeTimer = meterRegistry.timer("solabot.img.gif.stage", "stage", "decode");
+        transformTimer = meterRegistry.timer("solabot.img.gif.stage", "stage", "transform");
+        encodeTimer = meterRegistry.timer("solabot.img.gif.stage", "stage", "encode");
+    }
+
+    @PostConstruct
+    void init() {
+        Gauge.builder("solabot.img.gif.frames.in.flight", this,
+                p -> p.maxFramesInFlight - p.framePermits.availablePermits()).register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        framePool.shutdownNow();
+    }
+
+    /**
+     * 流水线执行 decode -> transform -> encode
+     *
+     * @param data 原始 GIF 数据
+     * @param op   逐帧变换，可原地修改后返回入参，也可返回新帧；会被多个线程并发调用
+     */
+    public byte[] run(byte[] data, UnaryOperator<BufferedImage> op) throws IOException {
+        return run(imgService.openGif(data), op);
+    }
+
+    /**
+     * 流水线执行 decode -> transform -> encode：
+     * 调用线程按需解码下一帧并提交变换，同时按顺序把已完成的帧交给 GifEncoder.Writer，
+     * 每帧从解码到写出期间占用一个帧许可，内存中最多同时存在 max-frames-in-flight 帧
+     *
+     * @param decoder 尚未开始迭代的解码器
+     * @param op      逐帧变换，可原地修改后返回入参，也可返回新帧；会被多个线程并发调用
+     * @throws InterruptedIOException 等待帧许可时被中断
+     */
+    public byte[] run(GifDecoder decoder, UnaryOperator<BufferedImage> op) throws IOException {
+        return stream(decoder, decoder, op);
+    }
+
+    /**
+     * 同 run(GifDecoder, op)，但逐帧变换依赖首帧（如以首帧估计的背景色处理全部帧）：
+     * 首帧解码后先交给 opFactory 生成变换，再与其余帧一起进入流水线，首帧只解码一次
+     *
+     * @param decoder   尚未开始迭代的解码器
+     * @param opFactory 由首帧生成逐帧变换，只可读取首帧，不可修改
+     */
+    public byte[] runWithFirstFrame(GifDecoder decoder,
+                                    Function<BufferedImage, UnaryOperator<BufferedImage>> opFactory) throws IOException {
+        GifDecoder.Frame first;
+        try {
+            if (!decoder.hasNext()) throw new IOException("gif has no frames");
+            first = decoder.next();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        UnaryOperator<BufferedImage> op = opFactory.apply(first.image());
+        Iterator<GifDecoder.Frame> frames = new Iterator<>() {
+            private GifDecoder.Frame head = first;
+
+            @Override
+            public boolean hasNext() {
+                return head != null || decoder.hasNext();
+            }
+
+            @Override
+            public GifDecoder.Frame next() {
+                if (head == null) return decoder.next();
+                GifDecoder.Frame f = head;
+                head = null;
+                return f;
+            }
+        };
+        return stream(decoder, frames, op);
+    }
+
+    /**
+     * 变速 / 倒放：先解码一遍取得全部帧延时并确定输出帧与新延时（GifRetime），再按计划流式编码
+     * - 输出帧序递增（未倒放）时，解码器按序过滤出计划中的帧，交给 run 的流水线，内存占用与 run 相同
+     * - 倒放时按块倒序处理，见 runDescending
+     *
+     * @param rateAbs 倍率绝对值，大于 0
+     * @param op      逐帧变换，会被多个线程并发调用
+     */
+    public byte[] retime(byte[] data, double rateAbs, boolean reverse, UnaryOperator<BufferedImage> op) throws IOException {
+        int[] delays = scanDelays(data);
+        GifRetime.Plan plan = GifRetime.plan(delays, rateAbs, reverse);
+        if (plan.ascending()) {
+            GifDecoder decoder = imgService.openGif(data);
+            return stream(decoder, select(decoder, plan), op);
+        }
+        return runDescending(data, delays.length, plan, op);
+    }
+
+    /**
+     * 流水线主循环，source 为 decoder 本身或其上的过滤视图
+     */
+    private byte[] stream(GifDecoder decoder, Iterator<GifDecoder.Frame> source,
+                          UnaryOperator<BufferedImage> op) throws IOException {
+        long start = System.nanoTime();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        Deque<ForkJoinTask<BufferedImage>> window = new ArrayDeque<>();
+        Deque<Integer> delays = new ArrayDeque<>();
+        AtomicLong transformNs = new AtomicLong();
+        long decodeNs = 0, encodeNs = 0;
+        int frames = 0;
+        GifEncoder.Writer writer = null;
+        try {
+            while (true) {
+                // 拿不到帧许可时先写出窗口头部的帧，归还许可后再继续解码
+                if (!framePermits.tryAcquire()) {
+                    if (!window.isEmpty()) {
+                        encodeNs += writeHead(window, delays, writer);
+                        continue;
+                    }
+                    framePermits.acquire();
+                }
+                long t0 = System.nanoTime();
+                GifDecoder.Frame frame;
+                try {
+                    frame = source.hasNext() ? source.next() : null;
+                } catch (UncheckedIOException e) {
+                    framePermits.release();
+                    throw e.getCause();
+                }
+                decodeNs += System.nanoTime() - t0;
+                if (frame == null) {
+                    framePermits.release();
+                    break;
+                }
+                if (writer == null) writer = GifEncoder.open(out, decoder.loopCount());
+
+                BufferedImage in = frame.image();
+                try {
+                    window.add(framePool.submit(() -> {
+                        long s = System.nanoTime();
+                        try {
+                            return op.apply(in);
+                        } finally {
+                            transformNs.addAndGet(System.nanoTime() - s);
+                        }
+                    }));
+                } catch (RejectedExecutionException e) {
+                    framePermits.release();
+                    throw e;
+                }
+                delays.add(frame.delayCs());
+                frames++;
+
+                while (!window.isEmpty() && window.peekFirst().isDone()) {
+                    encodeNs += writeHead(window, delays, writer);
+                }
+            }
+            while (!window.isEmpty()) encodeNs += writeHead(window, delays, writer);
+            if (writer == null) throw new IOException("gif has no frames");
+            long t0 = System.nanoTime();
+            writer.finish();
+            encodeNs += System.nanoTime() - t0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for frame permits");
+        } finally {
+            // 失败时取消尚未开始的帧，等待正在执行的帧结束后归还其许可
+            for (ForkJoinTask<BufferedImage> task : window) {
+                task.cancel(false);
+                task.quietlyJoin();
+                framePermits.release();
+            }
+        }
+
+        decodeTimer.record(decodeNs, TimeUnit.NANOSECONDS);
+        transformTimer.record(transformNs.get(), TimeUnit.NANOSECONDS);
+        encodeTimer.record(encodeNs, TimeUnit.NANOSECONDS);
+        log.debug("[plugin.img] gif pipeline: {} frames in {} ms, decode {} ms, transform {} ms (summed), encode {} ms",
+                frames, (System.nanoTime() - start) / 1_000_000, decodeNs / 1_000_000,
+                transformNs.get() / 1_000_000, encodeNs / 1_000_000);
+        return out.toByteArray();
+    }
+
+    /**
+     * 倒序输出：GIF 的帧只能从首帧起依次合成，而输出从末帧开始，因此分块处理，内存中至多同时持有 max-frames-in-flight 张画布
+     * - 先顺序解码一遍，每隔 spacing 帧以 GifDecoder.fork 保存一个检查点
+     * - 从末尾起每次取源帧序号跨度不超过 chunk 的一组输出帧，从不晚于该组的最近检查点继续解码，
+     * 变换并行提交到帧池，整组倒序写出后再处理下一组
+     * - 检查点、块内的帧与工作中的解码器画布所需的许可在开始时一次性取得，等待期间不持有任何许可，不会与其他流水线互相等待
+     * - 每帧最多被解码 (spacing + chunk) / chunk 次，默认配置下 1000 帧以内为两次
+     */
+    private byte[] runDescending(byte[] data, int frameCount, GifRetime.Plan plan,
+                                 UnaryOperator<BufferedImage> op) throws IOException {
+        long start = System.nanoTime();
+        int chunk = Math.max(1, (maxFramesInFlight - 1) / 2);
+        int spacing = Math.max(chunk, ceilDiv(frameCount, Math.max(1, maxFramesInFlight - 1 - chunk)));
+        int checkpoints = ceilDiv(frameCount, spacing);
+        int permits = Math.min(maxFramesInFlight, 1 + chunk + checkpoints);
+
+        int[] order = plan.frames();
+        int[] delays = plan.delaysCs();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        List<ForkJoinTask<BufferedImage>> tasks = new ArrayList<>(chunk);
+        AtomicLong transformNs = new AtomicLong();
+        long decodeNs = 0, encodeNs = 0;
+        try {
+            framePermits.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for frame permits");
+        }
+        try {
+            long t0 = System.nanoTime();
+            GifDecoder[] marks = new GifDecoder[checkpoints];
+            GifDecoder decoder = imgService.openGif(data);
+            for (int i = 0; i < frameCount; i++) {
+                if (i % spacing == 0) marks[i / spacing] = decoder.fork();
+                decoder.next();
+            }
+            int loopCount = decoder.loopCount();
+            decodeNs += System.nanoTime() - t0;
+
+            GifEncoder.Writer writer = GifEncoder.open(out, loopCount);
+            for (int p = 0; p < order.length; ) {
+                // 本组输出 [p, q)，源帧序号位于 [low, order[p]]
+                int q = p + 1;
+                while (q < order.length && order[q] <= order[p] && order[p] - order[q] < chunk) q++;
+                int low = order[q - 1];
+
+                t0 = System.nanoTime();
+                int mark = low / spacing;
+                for (int m = mark + 1; m < marks.length; m++) marks[m] = null;  // 之后的组只会用到更早的检查点
+                decoder = marks[mark].fork();
+                BufferedImage[] group = new BufferedImage[order[p] - low + 1];
+                for (int i = mark * spacing; i <= order[p]; i++) {
+                    GifDecoder.Frame f = decoder.next();
+                    if (i >= low) group[i - low] = f.image();
+                }
+                decodeNs += System.nanoTime() - t0;
+
+                for (int e = p; e < q; e++) {
+                    BufferedImage in = group[order[e] - low];
+                    tasks.add(framePool.submit(() -> {
+                        long s = System.nanoTime();
+                        try {
+                            return op.apply(in);
+                        } finally {
+                            transformNs.addAndGet(System.nanoTime() - s);
+                        }
+                    }));
+                }
+                for (int e = p; e < q; e++) {
+                    BufferedImage img = tasks.get(e - p).join();
+                    t0 = System.nanoTime();
+                    writer.add(img, delays[e]);
+                    encodeNs += System.nanoTime() - t0;
+                }
+                tasks.clear();
+                p = q;
+            }
+            t0 = System.nanoTime();
+            writer.finish();
+            encodeNs += System.nanoTime() - t0;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (ForkJoinTask<BufferedImage> task : tasks) {
+                task.cancel(false);
+                task.quietlyJoin();
+            }
+            framePermits.release(permits);
+        }
+
+        decodeTimer.record(decodeNs, TimeUnit.NANOSECONDS);
+        transformTimer.record(transformNs.get(), TimeUnit.NANOSECONDS);
+        encodeTimer.record(encodeNs, TimeUnit.NANOSECONDS);
+        log.debug("[plugin.img] gif pipeline (descending): {} of {} frames in {} ms, decode {} ms, transform {} ms (summed), encode {} ms",
+                order.length, frameCount, (System.nanoTime() - start) / 1_000_000, decodeNs / 1_000_000,
+                transformNs.get() / 1_000_000, encodeNs / 1_000_000);
+        return out.toByteArray();
+    }
+
+    /**
+     * 顺序解码一遍，只保留各帧延时；同一时刻只持有一帧，占用一个帧许可
+     */
+    private int[] scanDelays(byte[] data) throws IOException {
+        long t0 = System.nanoTime();
+        try {
+            framePermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for frame permits");
+        }
+        try {
+            GifDecoder decoder = imgService.openGif(data);
+            int[] delays = new int[16];
+            int n = 0;
+            while (decoder.hasNext()) {
+                if (n == delays.length) delays = Arrays.copyOf(delays, n * 2);
+                delays[n++] = decoder.next().delayCs();
+            }
+            if (n == 0) throw new IOException("gif has no frames");
+            return Arrays.copyOf(delays, n);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            framePermits.release();
+            decodeTimer.record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 按递增的计划过滤解码器输出的帧，并替换为计划中的延时；计划外的帧解码后立即丢弃
+     */
+    private static Iterator<GifDecoder.Frame> select(GifDecoder decoder, GifRetime.Plan plan) {
+        int[] order = plan.frames();
+        int[] delays = plan.delaysCs();
+        return new Iterator<>() {
+            private int k;
+            private GifDecoder.Frame next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && k < order.length && decoder.hasNext()) {
+                    GifDecoder.Frame f = decoder.next();
+                    if (f.index() == order[k]) {
+                        next = new GifDecoder.Frame(f.image(), delays[k], f.index());
+                        k++;
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public GifDecoder.Frame next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                GifDecoder.Frame f = next;
+                next = null;
+                return f;
+            }
+        };
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+
+    /**
+     * 等待窗口头部的帧变换完成并写出，归还其许可
+     *
+     * @return 写出耗时（纳秒）
+     */
+    private long writeHead(Deque<ForkJoinTask<BufferedImage>> window, Deque<Integer> delays,
+                           GifEncoder.Writer writer) throws IOException {
+        ForkJoinTask<BufferedImage> task = window.pollFirst();
+        int delay = delays.pollFirst();
+        try {
+            BufferedImage img = task.join();
+            long t0 = System.nanoTime();
+            writer.add(img, delay);
+            return System.nanoTime() - t0;
+        } finally {
+            framePermits.release();
+        }
+    }
+
+    /**
+     * 按 gif 中的帧、延时与循环次数编码为 GIF
+     */
+    public byte[] encode(GifData gif) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        encode(gif, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * 按 gif 中的帧、延时与循环次数编码为 GIF 并直接写入 out，不关闭 out
+     */
+    public void encode(GifData gif, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        try {
+            GifEncoder.write(gif.getFrames(), gif.getDelaysCs(), gif.getLoopCount(), out, framePool);
+        } finally {
+            encodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.arth.solabot.plugin.custom.img;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.arth.solabot.plugin.custom.img.GifPipeline.GIF_MAX_CS;
+import static com.arth.solabot.plugin.custom.img.GifPipeline.GIF_MIN_CS;
+
+/**
+ * GIF 变速 / 倒放的帧计划，只依赖各帧延时，不持有任何帧：
+ * - 倒放时先反转帧序，再按倍率处理
+ * - 减速：逐帧放大延时
+ * - 加速：缩小后的延时无法高于 GIF_MIN_CS 时反复隔帧抽取（保留偶数位），直到剩余帧能以合理延时播放
+ */
+final class GifRetime {
+
+    /**
+     * @param frames   输出帧依次对应的源帧序号
+     * @param delaysCs 输出帧的延时
+     */
+    record Plan(int[] frames, int[] delaysCs) {
+
+        /**
+         * 源帧序号是否递增，递增时可以边解码边写出
+         */
+        boolean ascending() {
+            for (int i = 1; i < frames.length; i++) if (frames[i] < frames[i - 1]) return false;
+            return true;
+        }
+    }
+
+    private GifRetime() {
+    }
+
+    /**
+     * @param delays  源帧延时，至少一帧
+     * @param rateAbs 倍率绝对值，大于 0
+     * @param reverse 是否倒放
+     */
+    static Plan plan(int[] delays, double rateAbs, boolean reverse) {
+        if (rateAbs <= 0) throw new IllegalArgumentException("rate must be > 0");
+        if (delays.length == 0) throw new IllegalArgumentException("No frames");
+
+        List<Integer> frames = new ArrayList<>(delays.length);
+        for (int i = 0; i < delays.length; i++) frames.add(i);
+        if (reverse) Collections.reverse(frames);
+
+        List<Integer> outF = new ArrayList<>(frames.size());
+        List<Integer> outD = new ArrayList<>(frames.size());
+
+        if (rateAbs == 1.0) {
+            for (int f : frames) {
+                outF.add(f);
+                outD.add(delays[f]);
+            }
+            return toPlan(outF, outD);
+        }
+
+        if (rateAbs < 1.0) {
+            for (int f : frames) {
+                outF.add(f);
+                outD.add(Math.max(GIF_MIN_CS, Math.min(GIF_MAX_CS, (int) Math.round(delays[f] / rateAbs))));
+            }
+            return toPlan(outF, outD);
+        }
+
+        double need = rateAbs;
+        List<Integer> cur = frames;
+
+        while (true) {
+            boolean allOk = true;
+            for (int f : cur) {
+                int scaled = Math.max((int) Math.round(delays[f] / need), GIF_MIN_CS);
+                if (scaled <= GIF_MIN_CS) {
+                    allOk = false;
+                    break;
+                }
+            }
+            if (allOk) break;
+
+            // 当无法保证最小播放间隔时间处于合理范围时，考虑删帧
+            // 删奇数帧（索引 1,3,5, ...），保留偶数 0,2,4,...
+            if (cur.size() <= 1) break;
+            List<Integer> next = new ArrayList<>((cur.size() + 1) / 2);
+            for (int i = 0; i < cur.size(); i += 2) next.add(cur.get(i));
+            cur = next;
+
+            need /= 2.0;
+            if (need <= 1.0) break;
+        }
+
+        for (int f : cur) {
+            outF.add(f);
+            outD.add(Math.max((int) Math.round(delays[f] / Math.max(need, 1.0)), GIF_MIN_CS));
+        }
+        if (outF.isEmpty()) {
+            outF.add(frames.get(0));
+            outD.add(Math.max(GIF_MIN_CS, (int) Math.round(delays[frames.get(0)] / rateAbs)));
+        }
+        return toPlan(outF, outD);
+    }
+
+    private static Plan toPlan(List<Integer> frames, List<Integer> delays) {
+        return new Plan(frames.stream().mapToInt(Integer::intValue).toArray(),
+                delays.stream().mapToInt(Integer::intValue).toArray());
+    }
+}
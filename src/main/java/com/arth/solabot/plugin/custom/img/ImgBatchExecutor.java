@@ -0,0 +1,229 @@
+package com.arth.solabot.plugin.custom.img;
+
+import com.arth.solabot.adapter.controller.ApiPaths;
+import com.arth.solabot.adapter.fetcher.http.ImgService;
+import com.arth.solabot.core.bot.exception.BusinessException;
+import com.arth.solabot.core.bot.exception.ExternalServiceErrorException;
+import com.arth.solabot.core.general.cache.service.ImageCacheService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Img 插件的多图任务执行器：
+ * - 每张图片的 下载 -> 解码 -> 变换 -> 编码 在独立的虚拟线程上执行，单次命令内同时处理的图片数受 batch-concurrency 限制；
+ * 下载期间只阻塞虚拟线程，GIF 的逐帧变换仍落在 GifPipeline 的有界线程池中
+ * - 处理前先查 ImgResultCache：命中仍在 Redis 中的结果时直接复用其 URL，命中磁盘层时跳过 解码 -> 变换 -> 编码
+ * - 全部完成后以一次 Redis pipeline 写入需要写入的结果，URL 按输入顺序组装
+ * - 单张失败不影响其余图片，失败的序号与原因随结果返回
+ * - 每个命令的端到端耗时记录到 solabot.img.command.latency{command}（含直方图），失败张数记录到 solabot.img.command.failures{command}
+ */
+@Slf4j
+@Component
+public class ImgBatchExecutor {
+
+    private final ImgService imgService;
+    private final ImageCacheService imageCacheService;
+    private final ImgResultCache resultCache;
+    private final ApiPaths apiPaths;
+    private final MeterRegistry meterRegistry;
+    private final int concurrency;
+
+    private final ExecutorService workers =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("img-batch-", 0).factory());
+
+    public ImgBatchExecutor(ImgService imgService,
+                            ImageCacheService imageCacheService,
+                            ImgResultCache resultCache,
+                            ApiPaths apiPaths,
+                            MeterRegistry meterRegistry,
+                            @Value("${app.parameter.plugin.img.batch-concurrency:4}") int concurrency) {
+        this.imgService = imgService;
+        this.imageCacheService = imageCacheService;
+        this.resultCache = resultCache;
+        this.apiPaths = apiPaths;
+        this.meterRegistry = meterRegistry;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * 单张图片的处理
+     */
+    @FunctionalInterface
+    public interface Job {
+        /**
+         * @param data 下载得到的原始数据
+         * @param type detectImageType 的结果，如 gif / png / jpeg
+         * @return 编码后的输出；抛出 BusinessException 时以其 description 作为该张图片的失败原因
+         */
+        Output apply(byte[] data, String type) throws Exception;
+    }
+
+    /**
+     * 编码后的输出
+     *
+     * @param bytes 图片数据
+     * @param type  缓存类型，同时决定 URL 中的类型段，如 gif / png
+     */
+    public record Output(byte[] bytes, String type) {
+
+        /**
+         * 在当前（工作）线程上以 ImageIO 编码为 type 格式
+         */
+        public static Output of(BufferedImage img, String type) throws IOException {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(64 * 1024);
+            if (!ImageIO.write(img, type, baos)) throw new IOException("no ImageIO writer for " + type);
+            return new Output(baos.toByteArray(), type);
+        }
+    }
+
+    /**
+     * 单张图片的处理结果
+     *
+     * @param output 输出；复用 Redis 中已有结果时为 null
+     * @param type   输出类型
+     * @param uuid   已在 Redis 中的 UUID；需要写入时为 null
+     * @param key    结果缓存的键，结果缓存关闭时为 null
+     */
+    private record Done(Output output, String type, String uuid, String key) {
+    }
+
+    /**
+     * @param index  输入中的下标，从 0 开始
+     * @param reason 可读的失败原因
+     */
+    public record Failure(int index, String reason) {
+    }
+
+    /**
+     * @param urls     成功图片的缓存 URL，保持输入顺序
+     * @param failures 失败的图片
+     */
+    public record Result(List<String> urls, List<Failure> failures) {
+
+        /**
+         * 失败提示，如：有 2 张图片处理失败（第 2 张：下载失败，第 5 张：图片过小）
+         */
+        public String failureMessage() {
+            StringJoiner joiner = new StringJoiner("，", "有 " + failures.size() + " 张图片处理失败（", "）");
+            for (Failure f : failures) joiner.add("第 " + (f.index() + 1) + " 张：" + f.reason());
+            return joiner.toString();
+        }
+    }
+
+    /**
+     * 并行处理 urls 中的每张图片，结果一次性写入缓存
+     *
+     * @param command 命令名，用作指标标签与结果缓存的键
+     * @param args    规范化后的命令参数，与 command 一起决定输出；无参数时传空串
+     * @throws InterruptedIOException 等待期间被中断，未完成的图片会被取消
+     */
+    public Result run(String command, String args, List<String> urls, Job job) throws IOException {
+        long start = System.nanoTime();
+        int n = urls.size();
+        Semaphore limit = new Semaphore(concurrency);
+        List<Future<Done>> futures = new ArrayList<>(n);
+        for (String url : urls) {
+            futures.add(workers.submit(() -> {
+                limit.acquire();
+                try {
+                    return process(url, command, args, job);
+                } finally {
+                    limit.release();
+                }
+            }));
+        }
+
+        Done[] outputs = new Done[n];
+        List<Failure> failures = new ArrayList<>();
+        try {
+            for (int i = 0; i < n; i++) {
+                try {
+                    outputs[i] = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    failures.add(new Failure(i, reason(cause)));
+                    log.warn("[plugin.img] {} failed on image #{} ({}): {}", command, i + 1, urls.get(i), cause.toString());
+                }
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while processing images");
+        }
+
+        // 尚未在 Redis 中的结果以一次 pipeline 写入
+        List<Integer> pending = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) if (outputs[i] != null && outputs[i].uuid() == null) pending.add(i);
+        byte[][] bytes = new byte[pending.size()][];
+        List<String> types = new ArrayList<>(pending.size());
+        for (int k = 0; k < pending.size(); k++) {
+            bytes[k] = outputs[pending.get(k)].output().bytes();
+            types.add(outputs[pending.get(k)].type());
+        }
+        List<String> uuids = bytes.length == 0 ? List.of() : imageCacheService.cacheImage(bytes, types);
+        for (int k = 0; k < pending.size(); k++) {
+            Done d = outputs[pending.get(k)];
+            outputs[pending.get(k)] = new Done(null, d.type(), uuids.get(k), d.key());
+            resultCache.remember(d.key(), d.type(), uuids.get(k));
+        }
+
+        List<String> cacheUrls = new ArrayList<>(n);
+        for (Done d : outputs) if (d != null) cacheUrls.add(apiPaths.buildImgUrl(d.type(), d.uuid()));
+
+        Timer.builder("solabot.img.command.latency")
+                .tag("command", command)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (!failures.isEmpty()) meterRegistry.counter("solabot.img.command.failures", "command", command).increment(failures.size());
+        return new Result(cacheUrls, failures);
+    }
+
+    private Done process(String url, String command, String args, Job job) throws Exception {
+        byte[] data = imgService.getBytes(url);
+        if (data == null || data.length == 0) throw new ExternalServiceErrorException("failed to download " + url, "下载失败");
+
+        String key = resultCache.key(data, command, args);
+        ImgResultCache.Hit hit = resultCache.lookup(key);
+        if (hit != null) {
+            if (hit.uuid() != null) return new Done(null, hit.type(), hit.uuid(), key);
+            return new Done(new Output(hit.bytes(), hit.type()), hit.type(), null, key);
+        }
+
+        Output out = job.apply(data, imgService.detectImageType(data));
+        if (out.bytes().length > imageCacheService.getMaxSize()) {
+            throw new ExternalServiceErrorException("output too large: " + out.bytes().length, "结果超出大小限制");
+        }
+        resultCache.store(key, out.type(), out.bytes());
+        return new Done(out, out.type(), null, key);
+    }
+
+    private static String reason(Throwable t) {
+        if (t instanceof BusinessException be && be.getDescription() != null) return be.getDescription();
+        return "处理失败";
+    }
+}
@@ -0,0 +1,206 @@
+package com.arth.solabot.plugin.custom.img;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.function.UnaryOperator;
+
+/**
+ * Img 链式命令的执行计划，如 /img l gray rot 90：
+ * - 各步骤只登记逐帧变换，链路结束时编译为一个逐帧算子，每张图只下载、解码、编码、写缓存各一次
+ * - 对称、镜像、旋转都是坐标重映射，任意组合可以合成为一次 gather（RasterKernels.remap）
+ * - 灰度、反色是逐像素变换，与上述重映射可交换，因此全部合并为一个 ColorMap，在 gather 的同一遍中完成
+ * - 只有一个几何变换且没有颜色变换时沿用原地内核，与单条命令的行为完全一致
+ * - 非线程安全，只在命令链所在线程上构建；compile 返回的算子可被多个线程并发调用
+ */
+public final class ImgChain {
+
+    public enum Op {
+        LEFT, RIGHT, UP, DOWN, MIRROR, ROTATE_90, ROTATE_180, ROTATE_270, GRAY, INVERT;
+
+        boolean isColor() {
+            return this == GRAY || this == INVERT;
+        }
+    }
+
+    /**
+     * @param command 规范命令名
+     * @param args    规范化后的参数
+     */
+    private record Step(String command, String args) {
+    }
+
+    /**
+     * 单个几何变换的坐标表，含义同 RasterKernels.remap
+     */
+    private record Gather(int w, int h, boolean swap, int[] ta, int[] tb) {
+    }
+
+    private final List<Step> steps = new ArrayList<>();
+    private final List<Op> ops = new ArrayList<>();
+
+    /**
+     * 登记一个步骤，ops 为空表示该步骤不改变图像（如旋转 0°）
+     */
+    public void add(String command, String args, Op... ops) {
+        steps.add(new Step(command, args == null ? "" : args));
+        this.ops.addAll(List.of(ops));
+    }
+
+    /**
+     * 是否没有任何变换
+     */
+    public boolean isIdentity() {
+        return ops.isEmpty();
+    }
+
+    /**
+     * 指标标签与结果缓存使用的命令名：单步时为该步骤的命令名，与单条命令共享结果缓存
+     */
+    public String command() {
+        return steps.size() == 1 ? steps.get(0).command() : "chain";
+    }
+
+    /**
+     * 结果缓存使用的参数：单步时为该步骤的参数，多步时为完整的步骤序列
+     */
+    public String args() {
+        if (steps.size() == 1) return steps.get(0).args();
+        StringJoiner joiner = new StringJoiner(",");
+        for (Step s : steps) joiner.add(s.args().isEmpty() ? s.command() : s.command() + " " + s.args());
+        return joiner.toString();
+    }
+
+    /**
+     * 编译为逐帧算子，返回 ARGB 结果帧；入参帧已是 ARGB 时可能被原地修改
+     */
+    public UnaryOperator<BufferedImage> compile() {
+        List<Op> geometry = new ArrayList<>();
+        List<Op> colors = new ArrayList<>();
+        for (Op op : ops) (op.isColor() ? colors : geometry).add(op);
+        RasterKernels.ColorMap color = fuseColors(colors);
+
+        if (geometry.isEmpty()) {
+            return img -> {
+                img = RasterKernels.toArgb(img);
+                if (color != null) RasterKernels.map(RasterKernels.pixels(img), img.getWidth(), img.getHeight(), color);
+                return img;
+            };
+        }
+        if (geometry.size() == 1 && color == null) {
+            Op op = geometry.get(0);
+            return img -> applyInPlace(op, RasterKernels.toArgb(img));
+        }
+        return img -> {
+            img = RasterKernels.toArgb(img);
+            Gather g = compose(geometry, img.getWidth(), img.getHeight());
+            return RasterKernels.remap(img, g.w(), g.h(), g.swap(), g.ta(), g.tb(), color);
+        };
+    }
+
+    // ++=============** helpers **=============++
+
+    /**
+     * 合并颜色变换：第一次灰度之前的反色合并为 preXor，之后的灰度不再改变像素、反色合并为 postXor；没有颜色变换时返回 null
+     */
+    private static RasterKernels.ColorMap fuseColors(List<Op> colors) {
+        int pre = 0, post = 0;
+        boolean gray = false;
+        for (Op op : colors) {
+            if (op == Op.GRAY) {
+                gray = true;
+            } else if (gray) {
+                post ^= 0x00ffffff;
+            } else {
+                pre ^= 0x00ffffff;
+            }
+        }
+        if (!gray && pre == 0) return null;
+        return new RasterKernels.ColorMap(pre, gray, post);
+    }
+
+    private static BufferedImage applyInPlace(Op op, BufferedImage img) {
+        int[] px = RasterKernels.pixels(img);
+        int w = img.getWidth(), h = img.getHeight();
+        switch (op) {
+            case LEFT -> RasterKernels.symmetryLeft(px, w, h);
+            case RIGHT -> RasterKernels.symmetryRight(px, w, h);
+            case UP -> RasterKernels.symmetryUp(px, w, h);
+            case DOWN -> RasterKernels.symmetryDown(px, w, h);
+            case MIRROR -> RasterKernels.mirror(px, w, h);
+            case ROTATE_90 -> img = RasterKernels.rotate(img, 90);
+            case ROTATE_180 -> img = RasterKernels.rotate(img, 180);
+            case ROTATE_270 -> img = RasterKernels.rotate(img, 270);
+            default -> throw new IllegalArgumentException("not a geometric op: " + op);
+        }
+        return img;
+    }
+
+    /**
+     * 把依次执行的几何变换合成为从结果坐标到源坐标的一张坐标表：
+     * 已合成部分 G 把中间坐标映射到源坐标，新变换 O 把结果坐标映射到中间坐标，
+     * O 不交换宽高时 ta = G.ta ∘ O.ta、tb = G.tb ∘ O.tb，交换时 ta = G.tb ∘ O.ta、tb = G.ta ∘ O.tb
+     */
+    private static Gather compose(List<Op> geometry, int w, int h) {
+        Gather g = new Gather(w, h, false, identity(w), identity(h));
+        for (Op op : geometry) {
+            Gather o = single(op, g.w(), g.h());
+            int[] ta = new int[o.w()];
+            int[] tb = new int[o.h()];
+            int[] srcA = o.swap() ? g.tb() : g.ta();
+            int[] srcB = o.swap() ? g.ta() : g.tb();
+            for (int x = 0; x < ta.length; x++) ta[x] = srcA[o.ta()[x]];
+            for (int y = 0; y < tb.length; y++) tb[y] = srcB[o.tb()[y]];
+            g = new Gather(o.w(), o.h(), g.swap() ^ o.swap(), ta, tb);
+        }
+        return g;
+    }
+
+    /**
+     * 单个几何变换在 w x h 输入上的坐标表，与 RasterKernels 中对应的原地内核逐像素一致
+     */
+    private static Gather single(Op op, int w, int h) {
+        int[] ta = identity(op == Op.ROTATE_90 || op == Op.ROTATE_270 ? h : w);
+        int[] tb = identity(op == Op.ROTATE_90 || op == Op.ROTATE_270 ? w : h);
+        switch (op) {
+            case LEFT -> {
+                for (int x = w - w / 2; x < w; x++) ta[x] = w - 1 - x;
+            }
+            case RIGHT -> {
+                for (int x = 0; x < w / 2; x++) ta[x] = w - 1 - x;
+            }
+            case UP -> {
+                for (int y = h - h / 2; y < h; y++) tb[y] = h - 1 - y;
+            }
+            case DOWN -> {
+                for (int y = 0; y < h / 2; y++) tb[y] = h - 1 - y;
+            }
+            case MIRROR -> {
+                for (int x = 0; x < w; x++) ta[x] = w - 1 - x;
+            }
+            case ROTATE_180 -> {
+                for (int x = 0; x < w; x++) ta[x] = w - 1 - x;
+                for (int y = 0; y < h; y++) tb[y] = h - 1 - y;
+            }
+            case ROTATE_90 -> {
+                // 源 (x, y) -> 结果 (h-1-y, x)：sy = h-1-X，sx = Y
+                for (int x = 0; x < h; x++) ta[x] = h - 1 - x;
+                return new Gather(h, w, true, ta, tb);
+            }
+            case ROTATE_270 -> {
+                // 源 (x, y) -> 结果 (y, w-1-x)：sy = X，sx = w-1-Y
+                for (int y = 0; y < w; y++) tb[y] = w - 1 - y;
+                return new Gather(h, w, true, ta, tb);
+            }
+            default -> throw new IllegalArgumentException("not a geometric op: " + op);
+        }
+        return new Gather(w, h, false, ta, tb);
+    }
+
+    private static int[] identity(int n) {
+        int[] t = new int[n];
+        for (int i = 0; i < n; i++) t[i] = i;
+        return t;
+    }
+}
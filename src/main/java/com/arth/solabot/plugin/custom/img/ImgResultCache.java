@@ -0,0 +1,259 @@
+package com.arth.solabot.plugin.custom.img;
+
+import com.arth.solabot.core.general.cache.service.ImageCacheService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Img 命令的结果缓存：Img 的各命令都是 (输入内容, 命令, 参数) 的纯函数，同一张图被反复处理时直接复用上次的输出
+ * - 键为 输入内容 md5 + 配置指纹 + 命令 + 规范化参数；配置指纹覆盖 Img 插件中所有影响输出字节的配置（画布上限、抠图背景策略），
+ *   修改这些配置后旧结果自然失效，不会复用按旧配置生成的输出
+ * - 索引层：键 -> 上次写入 ImageCacheService 的 (类型, UUID)；命中且 Redis 中仍存在（同时续期）时直接复用 URL，不再写 Redis
+ * - 磁盘层：键 -> 输出字节，保留时间比 Redis 临时图片长得多；命中时只需重新写入 Redis，跳过 解码 -> 变换 -> 编码
+ * - 命中与未命中通过 solabot.img.result.cache{result} 暴露
+ */
+@Slf4j
+@Component
+public class ImgResultCache {
+
+    /**
+     * 查询结果
+     *
+     * @param type  输出类型，如 gif / png
+     * @param uuid  仍在 Redis 中的缓存 UUID；为 null 时需以 bytes 重新写入
+     * @param bytes 磁盘层中的输出；uuid 非 null 时为 null
+     */
+    public record Hit(String type, String uuid, byte[] bytes) {
+    }
+
+    /* 索引层中的条目 */
+    private record Entry(String type, String uuid) {
+    }
+
+    private final ImageCacheService imageCacheService;
+    private final boolean enabled;
+    private final Path diskDir;
+    private final long diskLimitBytes;
+    private final long diskTtlMillis;
+    private final String configFingerprint;
+    private final Cache<String, Entry> index;
+    private final AtomicLong diskBytes = new AtomicLong();
+
+    private final Counter redisHits;
+    private final Counter diskHits;
+    private final Counter misses;
+
+    public ImgResultCache(ImageCacheService imageCacheService,
+                          MeterRegistry meterRegistry,
+                          @Value("${app.parameter.cache.img-result.enabled:true}") boolean enabled,
+                          @Value("${app.parameter.cache.tmp-img.ttl}") int redisTtlMinutes,
+                          @Value("${app.parameter.cache.img-result.index-size:4096}") long indexSize,
+                          @Value("${app.parameter.cache.img-result.disk-ttl:24}") long diskTtlHours,
+                          @Value("${app.parameter.cache.img-result.disk-size:268435456}") long diskLimitBytes,
+                          @Value("${app.parameter.cache.img-result.disk-dir:data/cache/img-result}") String diskDir,
+                          @Value("${app.parameter.plugin.img.max-canvas-pixels:16777216}") long maxCanvasPixels,
+                          @Value("${app.parameter.plugin.img.gif-max-canvas-pixels:1048576}") long gifMaxCanvasPixels,
+                          @Value("${app.parameter.plugin.img.cutout-reuse-background:false}") boolean cutoutReuseBackground) {
+        this.imageCacheService = imageCacheService;
+        this.enabled = enabled;
+        this.configFingerprint = md5Hex(("canvas=" + maxCanvasPixels
+                + ";gif-canvas=" + gifMaxCanvasPixels
+                + ";cutout-reuse-bg=" + cutoutReuseBackground)
+                .getBytes(StandardCharsets.UTF_8)).substring(0, 8);
+        this.diskDir = Path.of(diskDir);
+        this.diskLimitBytes = diskLimitBytes;
+        this.diskTtlMillis = Duration.ofHours(diskTtlHours).toMillis();
+        // 条目在 Redis 中的存活时间不会超过 tmp-img.ttl（复用时会续期），过期后只剩磁盘层可用
+        this.index = Caffeine.newBuilder()
+                .maximumSize(indexSize)
+                .expireAfterAccess(Duration.ofMinutes(redisTtlMinutes))
+                .build();
+
+        redisHits = meterRegistry.counter("solabot.img.result.cache", "result", "redis_hit");
+        diskHits = meterRegistry.counter("solabot.img.result.cache", "result", "disk_hit");
+        misses = meterRegistry.counter("solabot.img.result.cache", "result", "miss");
+        Gauge.builder("solabot.img.result.disk.bytes", diskBytes, AtomicLong::get).register(meterRegistry);
+    }
+
+    @PostConstruct
+    void init() {
+        if (!enabled) return;
+        try {
+            Files.createDirectories(diskDir);
+            try (Stream<Path> files = Files.list(diskDir)) {
+                files.filter(Files::isRegularFile).forEach(p -> {
+                    try {
+                        diskBytes.addAndGet(Files.size(p));
+                    } catch (IOException ignored) {
+                    }
+                });
+            }
+            log.info("[plugin.img] result cache ready, disk dir: {}, disk usage: {} bytes", diskDir, diskBytes.get());
+        } catch (IOException e) {
+            log.warn("[plugin.img] failed to prepare result cache dir: {}", diskDir, e);
+        }
+    }
+
+    /**
+     * 结果缓存的键；关闭时返回 null
+     *
+     * @param args 规范化后的参数，相同语义的参数必须得到相同的字符串
+     */
+    public String key(byte[] input, String command, String args) {
+        if (!enabled) return null;
+        return md5Hex(input) + ":" + configFingerprint + ":" + command + ":" + (args == null ? "" : args);
+    }
+
+    /**
+     * 依次查询索引层与磁盘层，均未命中时返回 null
+     */
+    public Hit lookup(String key) {
+        if (key == null) return null;
+        Entry entry = index.getIfPresent(key);
+        if (entry != null) {
+            if (imageCacheService.touch(entry.type(), entry.uuid())) {
+                redisHits.increment();
+                return new Hit(entry.type(), entry.uuid(), null);
+            }
+            index.invalidate(key);
+        }
+        Hit hit = readDisk(key);
+        if (hit != null) {
+            diskHits.increment();
+            return hit;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 记录新计算出的输出，写入磁盘层
+     */
+    public void store(String key, String type, byte[] bytes) {
+        if (key != null) writeDisk(key, type, bytes);
+    }
+
+    /**
+     * 记录输出在 ImageCacheService 中的 UUID
+     */
+    public void remember(String key, String type, String uuid) {
+        if (key != null) index.put(key, new Entry(type, uuid));
+    }
+
+    // ++=============** helpers **=============++
+
+    /*
+      磁盘文件格式：类型（ASCII）+ '\n' + 输出字节，文件名为键的 md5，修改时间即写入时间
+    */
+
+    private Hit readDisk(String key) {
+        Path file = diskDir.resolve(md5Hex(key.getBytes(StandardCharsets.UTF_8)));
+        byte[] raw;
+        try {
+            if (System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis() > diskTtlMillis) {
+                delete(file);
+                return null;
+            }
+            raw = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            log.debug("[plugin.img] failed to read cached result {}", file, e);
+            return null;
+        }
+        int nl = -1;
+        for (int i = 0; i < Math.min(raw.length, 16); i++) {
+            if (raw[i] == '\n') {
+                nl = i;
+                break;
+            }
+        }
+        if (nl <= 0) {
+            delete(file);
+            return null;
+        }
+        return new Hit(new String(raw, 0, nl, StandardCharsets.US_ASCII), null, Arrays.copyOfRange(raw, nl + 1, raw.length));
+    }
+
+    private void writeDisk(String key, String type, byte[] bytes) {
+        if (diskLimitBytes <= 0 || bytes.length > diskLimitBytes) return;
+        Path file = diskDir.resolve(md5Hex(key.getBytes(StandardCharsets.UTF_8)));
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(bytes.length + 8);
+            baos.write(type.getBytes(StandardCharsets.US_ASCII));
+            baos.write('\n');
+            baos.write(bytes);
+            long old = Files.exists(file) ? Files.size(file) : 0;
+            Path tmp = Files.createTempFile(diskDir, file.getFileName().toString(), ".tmp");
+            Files.write(tmp, baos.toByteArray());
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            if (diskBytes.addAndGet(baos.size() - old) > diskLimitBytes) evictDisk();
+        } catch (IOException e) {
+            log.debug("[plugin.img] failed to write cached result {}", file, e);
+        }
+    }
+
+    private void delete(Path file) {
+        try {
+            long size = Files.size(file);
+            if (Files.deleteIfExists(file)) diskBytes.addAndGet(-size);
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * 磁盘层超限时按写入时间从旧到新删除（过期文件总是最先被删除），直到降至上限的 90%
+     */
+    private synchronized void evictDisk() {
+        if (diskBytes.get() <= diskLimitBytes) return;
+        long target = diskLimitBytes / 10 * 9;
+        List<Path> files;
+        try (Stream<Path> s = Files.list(diskDir)) {
+            files = new ArrayList<>(s.filter(p -> Files.isRegularFile(p) && !p.toString().endsWith(".tmp")).toList());
+        } catch (IOException e) {
+            log.warn("[plugin.img] failed to list result cache dir", e);
+            return;
+        }
+        files.sort(Comparator.comparingLong(p -> {
+            try {
+                return Files.getLastModifiedTime(p).toMillis();
+            } catch (IOException e) {
+                return 0L;
+            }
+        }));
+        for (Path p : files) {
+            if (diskBytes.get() <= target) break;
+            delete(p);
+        }
+    }
+
+    private static String md5Hex(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.arth.solabot.plugin.custom.img;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * 直接作用于 TYPE_INT_ARGB 图像底层 int[]（DataBufferInt）的像素内核。
+ * - 绕开 getRGB / setRGB 的逐像素 ColorModel 换算，像素格式固定为非预乘 0xAARRGGBB
+ * - 对称、镜像、180° 旋转与 ColorMap 逐像素变换原地完成；90° / 270° 旋转需要新的宽高，返回新图像
+ * - remap 以一遍 gather 完成任意 对称 / 镜像 / 旋转 组合并顺带逐像素颜色变换，供 ImgChain 融合链式命令
+ * - 像素数不低于 PARALLEL_PIXELS 的帧按行分段并行（ForkJoin 公共池），小图串行，避免调度开销
+ */
+public final class RasterKernels {
+
+    /* 单帧像素数达到该值时按行并行 */
+    static final int PARALLEL_PIXELS = 1 << 18;
+
+    /* 旋转时的分块边长，保证源与目标的访问都落在缓存内 */
+    private static final int TILE = 64;
+
+    private RasterKernels() {
+    }
+
+    @FunctionalInterface
+    private interface RowRange {
+        void run(int y0, int y1);
+    }
+
+    // ++=============** 格式 **=============++
+
+    /**
+     * 返回可直接取 int[] 的 ARGB 图像：已是紧凑布局的 TYPE_INT_ARGB 时原样返回，否则绘制到新的 TYPE_INT_ARGB 图像
+     */
+    public static BufferedImage toArgb(BufferedImage img) {
+        if (isPackedArgb(img)) return img;
+        BufferedImage argb = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = argb.createGraphics();
+        g.drawImage(img, 0, 0, null);
+        g.dispose();
+        return argb;
+    }
+
+    /**
+     * 像素数超过 maxPixels 时按原宽高比双线性缩小到不超过 maxPixels，结果为 ARGB；未超出时原样返回
+     */
+    public static BufferedImage scaleDown(BufferedImage img, long maxPixels) {
+        int w = img.getWidth(), h = img.getHeight();
+        if (maxPixels <= 0 || (long) w * h <= maxPixels) return img;
+        double f = Math.sqrt((double) maxPixels / ((long) w * h));
+        int wd = Math.max(1, (int) (w * f)), hd = Math.max(1, (int) (h * f));
+        BufferedImage dst = new BufferedImage(wd, hd, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = dst.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(img, 0, 0, wd, hd, null);
+        g.dispose();
+        return dst;
+    }
+
+    /**
+     * 取出 ARGB 图像的像素数组，按行存储，下标为 y * width + x
+     *
+     * @throws IllegalArgumentException 图像不是紧凑布局的 TYPE_INT_ARGB，需先经过 toArgb
+     */
+    public static int[] pixels(BufferedImage img) {
+        if (!isPackedArgb(img)) throw new IllegalArgumentException("image is not a packed TYPE_INT_ARGB raster");
+        return ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+    }
+
+    private static boolean isPackedArgb(BufferedImage img) {
+        if (img.getType() != BufferedImage.TYPE_INT_ARGB) return false;
+        WritableRaster raster = img.getRaster();
+        return raster.getDataBuffer() instanceof DataBufferInt buf
+                && buf.getNumBanks() == 1
+                && buf.getOffset() == 0
+                && raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel sm
+                && sm.getScanlineStride() == img.getWidth();
+    }
+
+    // ++=============** 对称 / 镜像 **=============++
+
+    /**
+     * 左半边镜像覆盖右半边
+     */
+    public static void symmetryLeft(int[] px, int w, int h) {
+        forRows(w, h, (y0, y1) -> {
+            for (int y = y0; y < y1; y++) {
+                int row = y * w;
+                for (int x = 0, r = row + w - 1; x < w / 2; x++, r--) px[r] = px[row + x];
+            }
+        });
+    }
+
+    /**
+     * 右半边镜像覆盖左半边
+     */
+    public static void symmetryRight(int[] px, int w, int h) {
+        forRows(w, h, (y0, y1) -> {
+            for (int y = y0; y < y1; y++) {
+                int row = y * w;
+                for (int x = 0, r = row + w - 1; x < w / 2; x++, r--) px[row + x] = px[r];
+            }
+        });
+    }
+
+    /**
+     * 上半部分镜像覆盖下半部分
+     */
+    public static void symmetryUp(int[] px, int w, int h) {
+        forRows(w, h / 2, (y0, y1) -> {
+            for (int y = y0; y < y1; y++) System.arraycopy(px, y * w, px, (h - 1 - y) * w, w);
+        });
+    }
+
+    /**
+     * 下半部分镜像覆盖上半部分
+     */
+    public static void symmetryDown(int[] px, int w, int h) {
+        forRows(w, h / 2, (y0, y1) -> {
+            for (int y = y0; y < y1; y++) System.arraycopy(px, (h - 1 - y) * w, px, y * w, w);
+        });
+    }
+
+    /**
+     * 水平镜像翻转
+     */
+    public static void mirror(int[] px, int w, int h) {
+        forRows(w, h, (y0, y1) -> {
+            for (int y = y0; y < y1; y++) {
+                for (int l = y * w, r = l + w - 1; l < r; l++, r--) {
+                    int t = px[l];
+                    px[l] = px[r];
+                    px[r] = t;
+                }
+            }
+        });
+    }
+
+    // ++=============** 旋转 **=============++
+
+    /**
+     * 顺时针旋转 90 的整数倍；180° 原地完成并返回原图像，90° / 270° 返回新图像
+     *
+     * @param img 紧凑布局的 TYPE_INT_ARGB 图像
+     */
+    public static BufferedImage rotate(BufferedImage img, int angle) {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        int[] src = pixels(img);
+        switch (angle) {
+            case 0 -> {
+                return img;
+            }
+            case 180 -> {
+                rotate180(src);
+                return img;
+            }
+            case 90, 270 -> {
+                BufferedImage dst = new BufferedImage(h, w, BufferedImage.TYPE_INT_ARGB);
+                int[] out = pixels(dst);
+                boolean cw = angle == 90;
+                forRows(w, h, (y0, y1) -> {
+                    for (int ty = y0; ty < y1; ty += TILE) {
+                        int tyEnd = Math.min(y1, ty + TILE);
+                        for (int tx = 0; tx < w; tx += TILE) {
+                            int txEnd = Math.min(w, tx + TILE);
+                            for (int y = ty; y < tyEnd; y++) {
+                                int s = y * w;
+                                for (int x = tx; x < txEnd; x++) {
+                                    // 90°: (x, y) -> (h-1-y, x)；270°: (x, y) -> (y, w-1-x)，目标宽度为 h
+                                    int d = cw ? x * h + (h - 1 - y) : (w - 1 - x) * h + y;
+                                    out[d] = src[s + x];
+                                }
+                            }
+                        }
+                    }
+                });
+                return dst;
+            }
+            default -> throw new IllegalArgumentException("illegal angle argument");
+        }
+    }
+
+    // ++=============** 重映射 **=============++
+
+    /**
+     * 融合后的逐像素颜色变换：先按 preXor 反色，再按需转灰度，最后按 postXor 反色。
+     * 灰度像素再转灰度不变、反色后仍是灰度，因此任意 灰度 / 反色 序列都可以化简为这一形式
+     */
+    public record ColorMap(int preXor, boolean gray, int postXor) {
+
+        /**
+         * 原地变换 px[from, to)
+         */
+        public void apply(int[] px, int from, int to) {
+            if (!gray) {
+                int mask = preXor ^ postXor;
+                for (int i = from; i < to; i++) px[i] ^= mask;
+                return;
+            }
+            int pre = preXor, post = postXor;
+            for (int i = from; i < to; i++) {
+                int p = px[i] ^ pre;
+                int l = (((p >> 16) & 0xff) * 77 + ((p >> 8) & 0xff) * 150 + (p & 0xff) * 29 + 128) >> 8;
+                px[i] = ((p & 0xff000000) | (l << 16) | (l << 8) | l) ^ post;
+            }
+        }
+    }
+
+    /**
+     * 坐标重映射（gather），返回 wd x hd 的新图像：dst(x, y) = color(src(sx, sy))，
+     * swap 为 false 时 sx = ta[x]、sy = tb[y]；为 true 时 sy = ta[x]、sx = tb[y]（宽高互换的旋转）
+     *
+     * @param img   紧凑布局的 TYPE_INT_ARGB 图像
+     * @param ta    长度为 wd 的坐标表
+     * @param tb    长度为 hd 的坐标表
+     * @param color 逐像素颜色变换，为 null 时直接复制
+     */
+    public static BufferedImage remap(BufferedImage img, int wd, int hd, boolean swap, int[] ta, int[] tb, ColorMap color) {
+        int ws = img.getWidth();
+        int[] src = pixels(img);
+        BufferedImage dstImg = new BufferedImage(wd, hd, BufferedImage.TYPE_INT_ARGB);
+        int[] dst = pixels(dstImg);
+        if (!swap) {
+            // 对称、镜像的组合在每行内都是若干段斜率为 ±1 的连续映射，按段复制
+            int[] runs = runs(ta);
+            forRows(wd, hd, (y0, y1) -> {
+                for (int y = y0; y < y1; y++) {
+                    int s = tb[y] * ws, d = y * wd;
+                    for (int r = 0; r < runs.length; r += 3) {
+                        int dx = runs[r], sx = runs[r + 1], len = runs[r + 2];
+                        if (len > 0) {
+                            System.arraycopy(src, s + sx, dst, d + dx, len);
+                        } else {
+                            for (int k = 0; k < -len; k++) dst[d + dx + k] = src[s + sx - k];
+                        }
+                    }
+                    // 颜色变换在该行仍在缓存中时完成
+                    if (color != null) color.apply(dst, d, d + wd);
+                }
+            });
+            return dstImg;
+        }
+        // 宽高互换时按列读取源图，分块使源与目标的访问都落在缓存内
+        int[] rowStart = new int[wd];
+        for (int x = 0; x < wd; x++) rowStart[x] = ta[x] * ws;
+        forRows(wd, hd, (y0, y1) -> {
+            for (int ty = y0; ty < y1; ty += TILE) {
+                int tyEnd = Math.min(y1, ty + TILE);
+                for (int tx = 0; tx < wd; tx += TILE) {
+                    int txEnd = Math.min(wd, tx + TILE);
+                    for (int y = ty; y < tyEnd; y++) {
+                        int sx = tb[y], d = y * wd;
+                        for (int x = tx; x < txEnd; x++) dst[d + x] = src[rowStart[x] + sx];
+                    }
+                }
+                // 颜色变换在这一组行仍在缓存中时完成
+                if (color != null) color.apply(dst, ty * wd, tyEnd * wd);
+            }
+        });
+        return dstImg;
+    }
+
+    /**
+     * 把坐标表拆成连续段，每段 3 个 int：目标起点、源起点、长度（源坐标递减时为负）
+     */
+    private static int[] runs(int[] t) {
+        int[] out = new int[3 * t.length];
+        int n = 0;
+        for (int x = 0; x < t.length; ) {
+            int step = x + 1 < t.length && t[x + 1] == t[x] - 1 ? -1 : 1;
+            int end = x + 1;
+            while (end < t.length && t[end] == t[end - 1] + step) end++;
+            out[n++] = x;
+            out[n++] = t[x];
+            out[n++] = step * (end - x);
+            x = end;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static void rotate180(int[] px) {
+        for (int l = 0, r = px.length - 1; l < r; l++, r--) {
+            int t = px[l];
+            px[l] = px[r];
+            px[r] = t;
+        }
+    }
+
+    // ++=============** 逐像素 **=============++
+
+    /**
+     * 原地执行逐像素颜色变换
+     */
+    public static void map(int[] px, int w, int h, ColorMap color) {
+        forRows(w, h, (y0, y1) -> {
+            color.apply(px, y0 * w, y1 * w);
+        });
+    }
+
+    // ++=============** helpers **=============++
+
+    /**
+     * 对 [0, rows) 行执行 body；像素数不低于阈值时按行分段并行，每段至少覆盖 PARALLEL_PIXELS / 4 个像素
+     */
+    private static void forRows(int w, int rows, RowRange body) {
+        long pixels = (long) w * rows;
+        int bands = Math.min(Runtime.getRuntime().availableProcessors() * 2, (int) (pixels / (PARALLEL_PIXELS / 4)));
+        if (pixels < PARALLEL_PIXELS || bands <= 1) {
+            body.run(0, rows);
+            return;
+        }
+        int step = (rows + bands - 1) / bands;
+        IntStream.range(0, bands).parallel().forEach(b -> {
+            int y0 = b * step;
+            int y1 = Math.min(rows, y0 + step);
+            if (y0 < y1) body.run(y0, y1);
+        });
+    }
+}
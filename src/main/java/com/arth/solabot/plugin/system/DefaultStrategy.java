@@ -3,7 +3,9 @@ package com.arth.solabot.plugin.system;
 import com.arth.solabot.adapter.sender.Sender;
 import com.arth.solabot.core.bot.dto.ParsedPayloadDTO;
 import jakarta.annotation.Resource;
+import org.springframework.stereotype.Component;
 
+@Component
 public final class DefaultStrategy {
 
     @Resource
@@ -17,5 +19,14 @@ public final class DefaultStrategy {
         // sender.sendText(payload, payload.getRawText());
     }
 
+    /**
+     * 是否需要接收非命令消息
+     * 返回 false 时，CommandPrefilter 会在解码前直接丢弃非 '/' 开头的消息，defaultHandle 只会收到以 '/' 开头但未匹配的命令；
+     * 若默认策略需要处理普通聊天（例如接入 LLM），改为返回 true 即可
+     */
+    public boolean wantsNonCommandMessages() {
+        return false;
+    }
+
 
 }
@@ -0,0 +1,115 @@
+package com.arth.solabot.adapter.controller.http;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 读取接口对本地 Redis（embedded-redis）的并发负载：CachedResourceController 按块 GETRANGE 流式写出，
+ * 与 user-021 之前的实现（整体 GET 后包装为 ByteArrayResource 写出）对比
+ * - 8 个线程同时读取同一张图片，近缓存关闭，每次请求都经过 Redis
+ * - 响应体写入只计数的 OutputStream，不含 Servlet 容器与网络的开销
+ * - 吞吐为 ops/s；-prof gc 的 gc.alloc.rate.norm 为每次请求分配的字节数（两者都要分配完整内容，区别在同时存活的部分，
+ *   慢客户端下同时存活的堆见 CachedResourceControllerTest.inFlightResponsesHoldOneChunkEach）
+ * <p>
+ * 运行：mvn test-compile 后以 test classpath 执行本类 main
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class CachedResourceBenchmark {
+
+    /* 图片字节数：一次往返即可读完的小图，与需要逐块读取的大图 */
+    @Param({"65536", "4194304"})
+    public int size;
+
+    private static final int CHUNK = 262_144;
+
+    private LocalRedis redis;
+    private CachedResourceController controller;
+    private String uuid;
+
+    @Setup
+    public void setup() throws IOException {
+        redis = new LocalRedis(0);
+        controller = redis.controller(CHUNK);
+        byte[] data = new byte[size];
+        new SplittableRandom(21).nextBytes(data);
+        uuid = redis.imageCacheService.cacheImage(data, "png");
+        if (streaming() != size || legacy() != size) throw new IllegalStateException("unexpected body length");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        redis.close();
+    }
+
+    @Benchmark
+    public long streaming() throws IOException {
+        ResponseEntity<StreamingResponseBody> resp = controller.getPng(uuid, null, null, null);
+        if (resp.getStatusCode() != HttpStatus.OK) throw new IllegalStateException(resp.getStatusCode().toString());
+        CountingOutputStream out = new CountingOutputStream();
+        resp.getBody().writeTo(out);
+        return out.count;
+    }
+
+    /**
+     * user-021 之前的读取接口：GET 整个值，以 ResourceHttpMessageConverter 的方式经 ByteArrayResource 写出
+     */
+    @Benchmark
+    public long legacy() throws IOException {
+        ResponseEntity<Resource> resp = legacyGetPng(uuid);
+        if (resp.getStatusCode() != HttpStatus.OK) throw new IllegalStateException(resp.getStatusCode().toString());
+        CountingOutputStream out = new CountingOutputStream();
+        try (InputStream in = resp.getBody().getInputStream()) {
+            in.transferTo(out);
+        }
+        return out.count;
+    }
+
+    private ResponseEntity<Resource> legacyGetPng(String uuid) {
+        if (!uuid.matches("[a-zA-Z0-9_-]+")) return ResponseEntity.badRequest().build();
+        byte[] imageBytes = redis.template.opsForValue().get("temp:image:png:" + uuid);
+        if (imageBytes == null || imageBytes.length == 0) return ResponseEntity.notFound().build();
+        return ResponseEntity.ok()
+                .contentType(MediaType.IMAGE_PNG)
+                .cacheControl(CacheControl.maxAge(Duration.ofMinutes(3)))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + uuid + ".png\"")
+                .body(new ByteArrayResource(imageBytes));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CachedResourceBenchmark.class.getSimpleName()).addProfiler("gc").build()).run();
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
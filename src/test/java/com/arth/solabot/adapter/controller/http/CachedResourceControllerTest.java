@@ -0,0 +1,230 @@
+package com.arth.solabot.adapter.controller.http;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 读取接口对本地 Redis 的端到端行为：分块拼接、Range、If-None-Match 与慢客户端下的堆占用；近缓存关闭，每次读取都经过 Redis
+ */
+class CachedResourceControllerTest {
+
+    private static final int CHUNK = 4096;
+
+    private static LocalRedis redis;
+    private static CachedResourceController controller;
+
+    @BeforeAll
+    static void start() throws IOException {
+        redis = new LocalRedis(0);
+        controller = redis.controller(CHUNK);
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        redis.close();
+    }
+
+    private static byte[] random(int n, long seed) {
+        byte[] b = new byte[n];
+        new SplittableRandom(seed).nextBytes(b);
+        return b;
+    }
+
+    private static byte[] body(ResponseEntity<StreamingResponseBody> resp) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        resp.getBody().writeTo(out);
+        return out.toByteArray();
+    }
+
+    @Test
+    void smallImageServedFromFirstRoundTrip() throws IOException {
+        byte[] data = random(CHUNK - 1, 1);
+        String uuid = redis.imageCacheService.cacheImage(data, "png");
+        ResponseEntity<StreamingResponseBody> resp = controller.getPng(uuid, null, null, null);
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertEquals(data.length, resp.getHeaders().getContentLength());
+        assertArrayEquals(data, body(resp));
+    }
+
+    @Test
+    void exactlyOneChunkNeedsLength() throws IOException {
+        // 首块恰好取满时无法判断是否还有后续，需要 STRLEN
+        byte[] data = random(CHUNK, 7);
+        String uuid = redis.imageCacheService.cacheImage(data, "png");
+        ResponseEntity<StreamingResponseBody> resp = controller.getPng(uuid, null, null, null);
+        assertEquals(data.length, resp.getHeaders().getContentLength());
+        assertArrayEquals(data, body(resp));
+    }
+
+    @Test
+    void largeImageStreamedInChunks() throws IOException {
+        byte[] data = random(10 * CHUNK + 123, 2);
+        String uuid = redis.imageCacheService.cacheImage(data, "gif");
+        ResponseEntity<StreamingResponseBody> resp = controller.getGif(uuid, null, null, null);
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertArrayEquals(data, body(resp));
+    }
+
+    @Test
+    void rangeRequests() throws IOException {
+        byte[] data = random(3 * CHUNK + 7, 3);
+        String uuid = redis.imageCacheService.cacheImage(data, "png");
+        String etag = "\"png-" + uuid + "\"";
+
+        ResponseEntity<StreamingResponseBody> mid = controller.getPng(uuid, "bytes=100-" + (2 * CHUNK + 50), null, null);
+        assertEquals(HttpStatus.PARTIAL_CONTENT, mid.getStatusCode());
+        assertEquals("bytes 100-" + (2 * CHUNK + 50) + "/" + data.length, mid.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertArrayEquals(Arrays.copyOfRange(data, 100, 2 * CHUNK + 51), body(mid));
+
+        ResponseEntity<StreamingResponseBody> suffix = controller.getPng(uuid, "bytes=-10", etag, null);
+        assertEquals(HttpStatus.PARTIAL_CONTENT, suffix.getStatusCode());
+        assertArrayEquals(Arrays.copyOfRange(data, data.length - 10, data.length), body(suffix));
+
+        // If-Range 不匹配时返回完整内容
+        ResponseEntity<StreamingResponseBody> stale = controller.getPng(uuid, "bytes=0-9", "\"png-other\"", null);
+        assertEquals(HttpStatus.OK, stale.getStatusCode());
+        assertArrayEquals(data, body(stale));
+
+        ResponseEntity<StreamingResponseBody> beyond = controller.getPng(uuid, "bytes=" + data.length + "-", null, null);
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, beyond.getStatusCode());
+        assertEquals("bytes */" + data.length, beyond.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void writeKeepsFirstValueAndSetsTtl() {
+        byte[] data = random(100, 5);
+        String uuid = redis.imageCacheService.cacheImage(data, "gif");
+        assertEquals(uuid, redis.imageCacheService.cacheImage(data.clone(), "gif"));
+        Long ttl = redis.template.getExpire("temp:image:gif:" + uuid);
+        assertTrue(ttl != null && ttl > 0 && ttl <= 600, "ttl " + ttl);
+    }
+
+    @Test
+    void conditionalAndMissing() throws IOException {
+        byte[] data = random(100, 4);
+        String uuid = redis.imageCacheService.cacheImage(data, "png");
+        assertEquals(HttpStatus.NOT_MODIFIED, controller.getPng(uuid, null, null, "W/\"png-" + uuid + "\"").getStatusCode());
+
+        assertEquals(HttpStatus.NOT_FOUND, controller.getPng("missing", null, null, null).getStatusCode());
+        assertEquals(HttpStatus.NOT_FOUND, controller.getPng("missing", null, null, "\"png-missing\"").getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, controller.getPng("bad/uuid", null, null, null).getStatusCode());
+    }
+
+    // ++=============** 堆占用 **=============++
+
+    private static final int CLIENTS = 16;
+    private static final int LARGE = 4 * 1024 * 1024;
+    private static final int LARGE_CHUNK = 262_144;
+
+    /**
+     * 多个慢客户端同时读取同一张大图，各自读到 1MB 后暂停：流式读取时每个响应只持有当前块，
+     * 作为对照，整体 GET 的读取方式（user-021 之前）每个响应都持有完整内容
+     */
+    @Test
+    void inFlightResponsesHoldOneChunkEach() throws Exception {
+        String uuid = redis.imageCacheService.cacheImage(random(LARGE, 6), "png");
+        CachedResourceController large = redis.controller(LARGE_CHUNK);
+
+        long streaming = retainedWhileInFlight(out -> large.getPng(uuid, null, null, null).getBody().writeTo(out));
+        long legacy = retainedWhileInFlight(out -> {
+            byte[] bytes = redis.template.opsForValue().get("temp:image:png:" + uuid);
+            try (InputStream in = new ByteArrayResource(bytes).getInputStream()) {
+                in.transferTo(out);
+            }
+        });
+
+        assertTrue(legacy > CLIENTS * (long) LARGE / 2, "legacy retained " + legacy);
+        assertTrue(streaming < CLIENTS * (long) LARGE / 4, "streaming retained " + streaming);
+    }
+
+    @FunctionalInterface
+    private interface Client {
+        void read(OutputStream out) throws IOException;
+    }
+
+    /**
+     * 全部客户端暂停时相对启动前多占用的堆（Full GC 之后）
+     */
+    private static long retainedWhileInFlight(Client client) throws Exception {
+        CountDownLatch paused = new CountDownLatch(CLIENTS);
+        CountDownLatch resume = new CountDownLatch(1);
+        long before = usedAfterGc();
+        ExecutorService pool = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            List<Future<Long>> reads = new ArrayList<>();
+            for (int i = 0; i < CLIENTS; i++) {
+                reads.add(pool.submit(() -> {
+                    SlowSink sink = new SlowSink(paused, resume);
+                    client.read(sink);
+                    return sink.count;
+                }));
+            }
+            assertTrue(paused.await(30, TimeUnit.SECONDS));
+            long retained = usedAfterGc() - before;
+            resume.countDown();
+            for (Future<Long> r : reads) assertEquals(LARGE, r.get(30, TimeUnit.SECONDS));
+            return retained;
+        } finally {
+            resume.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    private static long usedAfterGc() {
+        System.gc();
+        System.gc();
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /**
+     * 写入 1MB 后暂停，直到 resume
+     */
+    private static final class SlowSink extends OutputStream {
+
+        private final CountDownLatch paused;
+        private final CountDownLatch resume;
+        private boolean pausedOnce;
+        long count;
+
+        SlowSink(CountDownLatch paused, CountDownLatch resume) {
+            this.paused = paused;
+            this.resume = resume;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            count += len;
+            if (!pausedOnce && count >= 1024 * 1024) {
+                pausedOnce = true;
+                paused.countDown();
+                try {
+                    if (!resume.await(30, TimeUnit.SECONDS)) throw new IOException("not resumed");
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+    }
+}
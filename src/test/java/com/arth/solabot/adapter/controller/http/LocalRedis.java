@@ -0,0 +1,78 @@
+package com.arth.solabot.adapter.controller.http;
+
+import com.arth.solabot.core.general.cache.service.ImageCacheService;
+import com.arth.solabot.core.general.utils.PngEncoder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * 测试与基准用的本地 Redis：embedded-redis 在随机端口上启动 redis-server，
+ * 并按 RedisCacheConfig 的方式装配 RedisTemplate 与 ImageCacheService
+ */
+final class LocalRedis implements AutoCloseable {
+
+    final RedisServer server;
+    final LettuceConnectionFactory factory;
+    final RedisTemplate<String, byte[]> template;
+    final ImageCacheService imageCacheService;
+
+    /**
+     * @param nearSize ImageCacheService 近缓存的字节数，0 表示每次读取都经过 Redis
+     */
+    LocalRedis(long nearSize) throws IOException {
+        int port;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort();
+        }
+        server = RedisServer.newRedisServer()
+                .port(port)
+                .bind("127.0.0.1")
+                .setting("save \"\"")
+                .setting("appendonly no")
+                .build();
+        server.start();
+
+        // 与生产环境的自动配置一致：main classpath 中没有 commons-pool2，不使用连接池
+        factory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+        factory.afterPropertiesSet();
+        factory.start();
+
+        template = new RedisTemplate<>();
+        template.setConnectionFactory(factory);
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setValueSerializer(RedisSerializer.byteArray());
+        template.afterPropertiesSet();
+
+        imageCacheService = new ImageCacheService(template, new SimpleMeterRegistry(),
+                new PngEncoder(4, PngEncoder.Filter.ADAPTIVE, 262_144, true));
+        ReflectionTestUtils.setField(imageCacheService, "ttl", 10);
+        ReflectionTestUtils.setField(imageCacheService, "maxSize", 64 * 1024 * 1024);
+        ReflectionTestUtils.setField(imageCacheService, "nearSize", nearSize);
+        ReflectionTestUtils.invokeMethod(imageCacheService, "init");
+    }
+
+    /**
+     * 按 application.yaml 中 tmp-img.chunk-size 的方式构造读取接口
+     */
+    CachedResourceController controller(int chunkSize) {
+        CachedResourceController controller = new CachedResourceController(imageCacheService);
+        ReflectionTestUtils.setField(controller, "chunkSize", chunkSize);
+        return controller;
+    }
+
+    @Override
+    public void close() throws IOException {
+        ReflectionTestUtils.invokeMethod(imageCacheService, "shutdown");
+        factory.destroy();
+        server.stop();
+    }
+}
@@ -0,0 +1,64 @@
+package com.arth.solabot.adapter.fetcher.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GifDecoderTest {
+
+    private static final GifDecoder.Limits LIMITS = new GifDecoder.Limits(1000, 150_000_000L);
+
+    /**
+     * 10x10 画布、单帧、全局调色板两色；帧矩形尺寸由参数给出，LZW 数据只有 clear + 一个像素 + EOI
+     */
+    private static byte[] gif(int fw, int fh) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes("GIF89a".getBytes());
+        u16(out, 10);
+        u16(out, 10);
+        out.write(0x80);  // 全局调色板，2 色
+        out.write(0);
+        out.write(0);
+        out.writeBytes(new byte[]{(byte) 0xFF, 0, 0, 0, 0, (byte) 0xFF});
+        out.write(0x2C);
+        u16(out, 0);
+        u16(out, 0);
+        u16(out, fw);
+        u16(out, fh);
+        out.write(0);
+        out.write(2);  // LZW 最小码长
+        out.write(2);
+        out.write(0x44);  // clear(4), 0, eoi(5)，3 位码
+        out.write(0x01);
+        out.write(0);
+        out.write(0x3B);
+        return out.toByteArray();
+    }
+
+    private static void u16(ByteArrayOutputStream out, int v) {
+        out.write(v & 0xFF);
+        out.write(v >> 8);
+    }
+
+    @Test
+    void frameInsideCanvasDecodes() throws IOException {
+        GifDecoder d = GifDecoder.open(gif(10, 10), LIMITS);
+        GifDecoder.Frame f = d.next();
+        assertEquals(0xFFFF0000, f.image().getRGB(0, 0));
+        assertEquals(0, f.image().getRGB(1, 0));
+        assertFalse(d.hasNext());
+    }
+
+    @Test
+    void frameLargerThanCanvasIsRejected() throws IOException {
+        for (int size : new int[]{40_000, 65_535}) {
+            GifDecoder d = GifDecoder.open(gif(size, size), LIMITS);
+            UncheckedIOException e = assertThrows(UncheckedIOException.class, d::hasNext);
+            assertTrue(e.getCause().getMessage().contains("larger than canvas"), e.getCause().getMessage());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.arth.solabot.adapter.fetcher.http;
+
+import com.arth.solabot.core.bot.exception.InvalidCommandArgsException;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImgServiceTest {
+
+    private final ImgService imgService = imgService(10_000);
+
+    private static ImgService imgService(long maxImagePixels) {
+        ImgService s = new ImgService(null, null, null, null);
+        ReflectionTestUtils.setField(s, "maxDownloadBytes", 1L << 24);
+        ReflectionTestUtils.setField(s, "gifMaxFrames", 1000);
+        ReflectionTestUtils.setField(s, "gifMaxTotalPixels", 150_000_000L);
+        ReflectionTestUtils.setField(s, "maxImagePixels", maxImagePixels);
+        return s;
+    }
+
+    private static byte[] tiff(int w, int h) throws IOException {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        img.setRGB(0, 0, 0xFF0000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(ImageIO.write(img, "tiff", out));
+        return out.toByteArray();
+    }
+
+    @Test
+    void formatUnknownToProbePassesHeaderCheckAndDecodes() throws IOException {
+        byte[] data = tiff(40, 30);
+        ImageProbe.Info info = ImageProbe.probe(data);
+        assertFalse(info.isKnown());
+        imgService.checkHeader(info);
+
+        BufferedImage img = imgService.readImage(data, 0);
+        assertEquals(40, img.getWidth());
+        assertEquals(30, img.getHeight());
+        assertEquals(0xFFFF0000, img.getRGB(0, 0));
+    }
+
+    @Test
+    void formatUnknownToProbeIsDownscaledByDecoderSize() throws IOException {
+        // 40x30 = 1200 像素，上限 300 时步长 2
+        BufferedImage img = imgService.readImage(tiff(40, 30), 300);
+        assertEquals(20, img.getWidth());
+        assertEquals(15, img.getHeight());
+    }
+
+    @Test
+    void formatUnknownToProbeStillBoundedByMaxImagePixels() throws IOException {
+        byte[] data = tiff(200, 100);
+        InvalidCommandArgsException e = assertThrows(InvalidCommandArgsException.class, () -> imgService.readImage(data, 0));
+        assertTrue(e.getMessage().contains("200x100"), e.getMessage());
+    }
+
+    @Test
+    void undecodableDataIsLeftToDecoder() throws IOException {
+        byte[] data = "not an image at all".getBytes();
+        imgService.checkHeader(ImageProbe.probe(data));
+        assertNull(imgService.readImage(data, 0));
+    }
+}
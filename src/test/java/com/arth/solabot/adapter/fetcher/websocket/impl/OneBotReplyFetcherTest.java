@@ -0,0 +1,79 @@
+package com.arth.solabot.adapter.fetcher.websocket.impl;
+
+import com.arth.solabot.adapter.parser.impl.OneBotPayloadParser;
+import com.arth.solabot.adapter.sender.Sender;
+import com.arth.solabot.core.bot.dto.ParsedPayloadDTO;
+import com.arth.solabot.core.bot.dto.ReplayedMessagePayloadDTO;
+import com.arth.solabot.core.bot.dto.replay.ImageRef;
+import com.arth.solabot.core.bot.dto.replay.MediaSourceType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+/**
+ * 入站图片消息由解码后的 segments 直接写入引用消息缓存，与经 get_msg 映射的结果在图片命令用到的字段上一致
+ */
+class OneBotReplyFetcherTest {
+
+    private static final String FRAME = """
+            {"self_id":3000000001,"user_id":1234567,"time":1760000000,"message_id":42,"message_type":"group",\
+            "sender":{"role":"member"},"raw_message":"看图[CQ:image,file=a.png][CQ:image,file=b.png][CQ:mface,summary=x]",\
+            "message":[{"type":"text","data":{"text":"看图"}},\
+            {"type":"image","data":{"file":"a.png","url":"https://multimedia.nt.qq.com.cn/download?fileid=a","md5":"0123456789ABCDEF0123456789ABCDEF"}},\
+            {"type":"image","data":{"file":"b.png"}},\
+            {"type":"mface","data":{"url":"https://gxh.vip.qq.com/club/item/parcel/item/ab/abcd/raw300.gif","emoji_id":"abcd"}},\
+            {"type":"record","data":{"file":"c.amr"}}],\
+            "message_format":"array","post_type":"message","group_id":765432109}""";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Sender sender = mock(Sender.class);
+    private final OneBotReplyFetcher fetcher = new OneBotReplyFetcher(sender, objectMapper, new SimpleMeterRegistry(), 16, 10);
+
+    @Test
+    void rememberedMessageServedWithoutGetMsg() throws IOException {
+        ParsedPayloadDTO payload = new OneBotPayloadParser(objectMapper).decode(FRAME).payload();
+        fetcher.remember(payload);
+
+        ReplayedMessagePayloadDTO r = fetcher.fetch(3000000001L, 42);
+        verifyNoInteractions(sender);
+        assertNull(ReflectionTestUtils.getField(payload, "rawRoot"), "remember must not build the JSON tree");
+
+        ReplayedMessagePayloadDTO expected = ReflectionTestUtils.invokeMethod(fetcher, "toDTOFromData", objectMapper.readTree(FRAME));
+        assertNotNull(expected);
+        assertEquals(expected.getMessageId(), r.getMessageId());
+        assertEquals(expected.getUserId(), r.getUserId());
+        assertEquals(expected.getGroupId(), r.getGroupId());
+        assertEquals(expected.getTimeEpochSec(), r.getTimeEpochSec());
+        assertEquals(expected.getRawMessage(), r.getRawMessage());
+        assertEquals(expected.getTexts(), r.getTexts());
+        // 有 url 为 URL，仅有 file 为 FILE_ID，与 get_msg 映射一致
+        assertEquals(sources(expected.getImages()), sources(r.getImages()));
+        assertEquals(MediaSourceType.FILE_ID, r.getImages().get(1).getSourceType());
+        assertEquals("0123456789ABCDEF0123456789ABCDEF", r.getImages().get(0).getMd5());
+        assertNull(r.getImages().get(1).getMd5());
+        assertEquals(expected.getMfaces().get(0).getUrl(), r.getMfaces().get(0).getUrl());
+    }
+
+    @Test
+    void messagesWithoutMediaAreNotRemembered() throws IOException {
+        String frame = FRAME.replaceAll("\\{\"type\":\"(image|mface)\",\"data\":\\{[^}]*}},", "");
+        ParsedPayloadDTO payload = new OneBotPayloadParser(objectMapper).decode(frame).payload();
+        assertEquals(1, payload.getSegments().size());
+        fetcher.remember(payload);
+        AsyncCache<?, ?> cache = (AsyncCache<?, ?>) ReflectionTestUtils.getField(fetcher, "cache");
+        assertEquals(0, cache.synchronous().estimatedSize());
+    }
+
+    private static List<String> sources(List<ImageRef> images) {
+        return images.stream().map(i -> i.getSourceType() + ":" + i.getSource()).toList();
+    }
+}
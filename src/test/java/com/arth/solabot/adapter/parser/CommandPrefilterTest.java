@@ -0,0 +1,57 @@
+package com.arth.solabot.adapter.parser;
+
+import com.arth.solabot.plugin.system.DefaultStrategy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CommandPrefilterTest {
+
+    private final CommandPrefilter prefilter = new CommandPrefilter(new DefaultStrategy(), new SimpleMeterRegistry(), true);
+
+    private static String array(String segments) {
+        return "{\"self_id\":1,\"post_type\":\"message\",\"message_id\":7,\"message\":[" + segments + "],\"raw_message\":\"\"}";
+    }
+
+    private static String cq(String message) {
+        return "{\"self_id\":1,\"post_type\":\"message\",\"message_id\":7,\"message\":\"" + message + "\"}";
+    }
+
+    @Test
+    void plainTextIsDropped() {
+        assertEquals(CommandPrefilter.Decision.DROP, prefilter.decide(array("{\"type\":\"text\",\"data\":{\"text\":\"hello\"}}")));
+        assertEquals(CommandPrefilter.Decision.DROP, prefilter.decide(cq("hello [CQ:face,id=1]")));
+    }
+
+    @Test
+    void commandsPass() {
+        assertEquals(CommandPrefilter.Decision.PASS, prefilter.decide(array(
+                "{\"type\":\"reply\",\"data\":{\"id\":\"3\"}},{\"type\":\"text\",\"data\":{\"text\":\" /img l\"}}")));
+        assertEquals(CommandPrefilter.Decision.PASS, prefilter.decide(cq("[CQ:reply,id=3][CQ:at,qq=1] /img l")));
+    }
+
+    @Test
+    void imageMessagesAreRemembered() {
+        // 图片在文本之后、之前，或没有文本
+        assertEquals(CommandPrefilter.Decision.REMEMBER, prefilter.decide(array(
+                "{\"type\":\"text\",\"data\":{\"text\":\"look\"}},{\"type\":\"image\",\"data\":{\"file\":\"a.png\",\"url\":\"http://x/a\"}}")));
+        assertEquals(CommandPrefilter.Decision.REMEMBER, prefilter.decide(array(
+                "{\"data\":{\"file\":\"a.png\"},\"type\":\"image\"},{\"type\":\"text\",\"data\":{\"text\":\"look\"}}")));
+        assertEquals(CommandPrefilter.Decision.REMEMBER, prefilter.decide(array("{\"type\":\"mface\",\"data\":{\"emoji_id\":\"1\"}}")));
+        assertEquals(CommandPrefilter.Decision.REMEMBER, prefilter.decide(cq("look [CQ:image,file=a.png,url=http://x/a]")));
+        assertEquals(CommandPrefilter.Decision.REMEMBER, prefilter.decide(cq("[CQ:mface,emoji_id=1]")));
+    }
+
+    @Test
+    void imageLikeTextIsNotMedia() {
+        assertEquals(CommandPrefilter.Decision.DROP, prefilter.decide(cq("[CQ:imagex,file=a] hi")));
+    }
+
+    @Test
+    void echoAndOtherEventsPass() {
+        assertEquals(CommandPrefilter.Decision.PASS, prefilter.decide("{\"status\":\"ok\",\"data\":{},\"echo\":\"1\"}"));
+        assertEquals(CommandPrefilter.Decision.PASS, prefilter.decide("{\"self_id\":1,\"post_type\":\"notice\",\"message\":\"hi\"}"));
+        assertEquals(CommandPrefilter.Decision.PASS, prefilter.decide(cq("\\u002fimg l")));
+    }
+}
@@ -0,0 +1,235 @@
+package com.arth.solabot.adapter.parser.impl;
+
+import com.arth.solabot.adapter.parser.PayloadParser;
+import com.arth.solabot.core.bot.dto.ParsedPayloadDTO;
+import com.arth.solabot.core.bot.dto.message.*;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 单帧解码：OneBotPayloadParser.decode 的流式解码 与 user-005 之前的实现（readTree 构建完整 JSON 树后逐字段取值）的对比
+ * - 帧取自 WS 入口的四类典型报文：array 模式群消息、CQ 字符串模式私聊消息、心跳、携带大 data 的 action 响应
+ * - 旧实现按当时 OneBotWsController 的流程：先 readTree，echo 响应直接返回，其余帧都经 parseRawToDTO
+ * - 两条路径在 setup 中比对结果（消息帧比对整个 DTO，其余帧比对 self_id / post_type / echo），不一致时直接失败
+ * - 时间为 ns/op；-prof gc 的 gc.alloc.rate.norm 为每帧分配的字节数
+ * <p>
+ * 运行：mvn test-compile 后以 test classpath 执行本类 main
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadDecodeBenchmark {
+
+    @Param({"group-array", "private-cq", "heartbeat", "echo-response"})
+    public String frame;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final OneBotPayloadParser parser = new OneBotPayloadParser(objectMapper);
+    private String raw;
+
+    @Setup
+    public void setup() throws IOException {
+        raw = switch (frame) {
+            case "group-array" -> """
+                    {"self_id":3000000001,"user_id":1234567,"time":1760000000,"message_id":987654321,"message_seq":987654321,\
+                    "real_id":987654321,"message_type":"group","sender":{"user_id":1234567,"nickname":"某群友","card":"名片",\
+                    "role":"admin","title":""},"raw_message":"[CQ:reply,id=11223344][CQ:at,qq=3000000001] /img rot 90 [CQ:image,file=a.png]",\
+                    "font":14,"sub_type":"normal","message":[{"type":"reply","data":{"id":"11223344"}},\
+                    {"type":"at","data":{"qq":"3000000001","name":"bot"}},{"type":"text","data":{"text":" /img rot 90 "}},\
+                    {"type":"image","data":{"summary":"","file":"a.png","sub_type":0,"url":"https://multimedia.nt.qq.com.cn/download?appid=1407&fileid=abcdef","file_size":"123456"}}],\
+                    "message_format":"array","post_type":"message","group_id":765432109}""";
+            case "private-cq" -> """
+                    {"self_id":3000000001,"user_id":1234567,"time":1760000000,"message_id":123,"message_type":"private",\
+                    "sender":{"user_id":1234567,"nickname":"某人","card":""},"raw_message":"[CQ:reply,id=556677]/pjsk box",\
+                    "font":14,"sub_type":"friend","message":"[CQ:reply,id=556677]/pjsk box","message_format":"string","post_type":"message"}""";
+            case "heartbeat" -> """
+                    {"time":1760000000,"self_id":3000000001,"post_type":"meta_event","meta_event_type":"heartbeat",\
+                    "status":{"online":true,"good":true},"interval":30000}""";
+            case "echo-response" -> {
+                StringBuilder sb = new StringBuilder("{\"status\":\"ok\",\"retcode\":0,\"data\":{\"messages\":[");
+                for (int i = 0; i < 40; i++) {
+                    if (i > 0) sb.append(',');
+                    sb.append("{\"self_id\":3000000001,\"user_id\":").append(1000 + i)
+                            .append(",\"time\":1760000000,\"message_id\":").append(i)
+                            .append(",\"message_type\":\"group\",\"sender\":{\"user_id\":").append(1000 + i)
+                            .append(",\"nickname\":\"n").append(i).append("\",\"role\":\"member\"},\"raw_message\":\"历史消息 ").append(i)
+                            .append("\",\"message\":[{\"type\":\"text\",\"data\":{\"text\":\"历史消息 ").append(i).append("\"}}]}");
+                }
+                yield sb.append("]},\"message\":\"\",\"wording\":\"\",\"echo\":\"get_group_msg_history:42\"}").toString();
+            }
+            default -> throw new IllegalArgumentException(frame);
+        };
+
+        PayloadParser.Frame a = legacy(), b = streaming();
+        if (a.selfId() != b.selfId() || !Objects.equals(a.postType(), b.postType()) || !Objects.equals(a.echo(), b.echo())
+                || (b.payload() != null && !b.payload().equals(a.payload()))) {
+            throw new IllegalStateException("mismatch on " + frame + ": " + a + " vs " + b);
+        }
+    }
+
+    @Benchmark
+    public PayloadParser.Frame streaming() throws IOException {
+        return parser.decode(raw);
+    }
+
+    /**
+     * user-005 之前 WS 入口的解码：整帧 readTree，echo 响应直接返回，其余帧都经 parseRawToDTO
+     */
+    @Benchmark
+    public PayloadParser.Frame legacy() throws IOException {
+        JsonNode root = objectMapper.readTree(raw);
+        JsonNode echoNode = root.get("echo");
+        String echo = echoNode != null && !echoNode.isNull() ? echoNode.asText() : null;
+        if (echo != null && root.get("post_type") == null) {
+            return new PayloadParser.Frame(root.path("self_id").asLong(0L), null, echo, null);
+        }
+        ParsedPayloadDTO dto = parseRawToDTO(root, raw);
+        boolean message = "message".equals(dto.getPostType()) || "message_sent".equals(dto.getPostType());
+        return new PayloadParser.Frame(dto.getSelfId(), dto.getPostType(), echo, message ? dto : null);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PayloadDecodeBenchmark.class.getSimpleName()).addProfiler("gc").build()).run();
+    }
+
+    // ++=============** 旧实现（user-005 之前的 OneBotPayloadParser.parseRawToDTO） **=============++
+
+    private static final Pattern CQ_REPLY_ID = Pattern.compile("\\[CQ:reply,([^]]+)]");
+
+    private static ParsedPayloadDTO parseRawToDTO(JsonNode root, String raw) {
+        List<MessageSegment> segments = new ArrayList<>();
+        String replyId = null;
+        String commandText;
+
+        if (root.path("message").isArray()) {
+            StringBuilder textOnly = new StringBuilder();
+            for (JsonNode s : root.path("message")) {
+                String type = s.path("type").asText("");
+                JsonNode data = s.path("data");
+                switch (type) {
+                    case "text" -> {
+                        String txt = data.path("text").asText("");
+                        TextSegment seg = new TextSegment();
+                        seg.setData(Map.of("text", txt));
+                        segments.add(seg);
+                        textOnly.append(txt);
+                    }
+                    case "at", "mention" -> {
+                        AtSegment seg = new AtSegment();
+                        seg.setData(Map.of("qq", data.path("qq").asText("")));
+                        segments.add(seg);
+                    }
+                    case "image" -> {
+                        ImageSegment seg = new ImageSegment();
+                        String url = data.hasNonNull("url") ? data.get("url").asText("") : data.path("file").asText("");
+                        seg.setData(Map.of("url", url));
+                        segments.add(seg);
+                    }
+                    case "mface" -> {
+                        MfaceSegment seg = new MfaceSegment();
+                        String url = data.hasNonNull("url") ? data.get("url").asText("") : data.path("file").asText("");
+                        seg.setData(Map.of("url", url));
+                        segments.add(seg);
+                    }
+                    case "reply" -> {
+                        String id = data.path("id").asText(null);
+                        if (id != null && !id.isBlank()) replyId = id;
+                    }
+                    default -> {
+                    }
+                }
+            }
+            commandText = stripLeadingSpaces(textOnly.toString());
+        } else {
+            String cq = root.path("message").asText("");
+            replyId = extractReplyIdFromCq(cq);
+            commandText = cq;
+            if (!commandText.isEmpty() && commandText.charAt(0) == '[') {
+                commandText = stripLeadingReplyOrAtCq(commandText);
+            }
+        }
+
+        ParsedPayloadDTO payload = new ParsedPayloadDTO();
+        payload.setPostType(root.path("post_type").asText());
+        payload.setMessageType(root.path("message_type").asText());
+        payload.setSelfId(root.path("self_id").asLong(0));
+        payload.setUserId(root.path("user_id").asLong(0));
+        payload.setGroupId(root.has("group_id") ? root.path("group_id").asLong() : null);
+        payload.setMessageId(root.path("message_id").asLong(0));
+        payload.setReplyToMessageId(replyId);
+        payload.setTime(root.path("time").asLong(0));
+        payload.setRawText(root.path("raw_message").asText(""));
+        payload.setSenderRole(root.path("sender").path("role").asText(""));
+        payload.setSegments(segments);
+        payload.setCommandText(commandText);
+        payload.setRawRoot(root);
+        payload.setOriginalJsonString(raw);
+        return payload;
+    }
+
+    private static String extractReplyIdFromCq(String cq) {
+        if (cq == null || cq.isEmpty()) return null;
+        Matcher m = CQ_REPLY_ID.matcher(cq);
+        if (!m.find()) return null;
+        String attrs = m.group(1);
+        int p = attrs.indexOf("id=");
+        if (p < 0) return null;
+        int start = p + 3;
+        int end = attrs.indexOf(',', start);
+        String raw = (end >= 0) ? attrs.substring(start, end) : attrs.substring(start);
+        return raw.replace("&#44;", ",").replace("&#91;", "[").replace("&#93;", "]").replace("&amp;", "&").trim();
+    }
+
+    private static String stripLeadingSpaces(String s) {
+        if (s == null || s.isEmpty()) return s;
+        int i = 0, n = s.length();
+        while (i < n) {
+            char c = s.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\r' || c == '\n') i++;
+            else break;
+        }
+        return (i == 0) ? s : s.substring(i);
+    }
+
+    private static String stripLeadingReplyOrAtCq(String s) {
+        if (s == null || s.isEmpty()) return s;
+        int i = 0, n = s.length();
+        while (true) {
+            while (i < n) {
+                char c = s.charAt(i);
+                if (c == ' ' || c == '\t' || c == '\r' || c == '\n') i++;
+                else break;
+            }
+            if (i + 4 >= n || s.charAt(i) != '[' || s.charAt(i + 1) != 'C' || s.charAt(i + 2) != 'Q' || s.charAt(i + 3) != ':')
+                break;
+            int typeStart = i + 4, j = typeStart;
+            while (j < n) {
+                char c = s.charAt(j);
+                if (c == ',' || c == ']') break;
+                j++;
+            }
+            String type = s.substring(typeStart, j);
+            if (!"reply".equalsIgnoreCase(type) && !"at".equalsIgnoreCase(type)) break;
+            int close = s.indexOf(']', j);
+            if (close < 0) break;
+            i = close + 1;
+        }
+        return stripLeadingSpaces(s.substring(i));
+    }
+}
@@ -0,0 +1,175 @@
+package com.arth.solabot.core.bot.invoker;
+
+import com.arth.solabot.core.bot.invoker.annotation.BotCommand;
+import com.arth.solabot.core.bot.invoker.annotation.BotPlugin;
+import com.arth.solabot.plugin.resource.MemoryData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 根命令 / glue 前缀 / 子命令解析：前缀树 + 无正则切分 与 旧实现（两次 replaceAll、逐别名 startsWith 扫描）的对比
+ * - 别名集取自 plugin.custom 下真实的 @BotPlugin / @BotCommand 注解，glue 参数取自 MemoryData.alias 的全部中文角色别名
+ * - 两条路径在 setup 中逐条比对结果，不一致时直接失败
+ * - 只解析不执行，greedy 吞参按 “当前命令接参” 处理，两条路径一致
+ * <p>
+ * 运行：mvn test-compile 后以 test classpath 执行本类 main
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AliasResolveBenchmark {
+
+    /**
+     * 解析结果：模块别名（未命中为 null）、首个子命令、其参数
+     */
+    record Resolved(String plugin, String step, List<String> args) {
+    }
+
+    private record PluginAliases(String name, boolean glued, Set<String> subAliases, AliasTrie<String> subTrie) {
+    }
+
+    private final Map<String, PluginAliases> registry = new HashMap<>();
+    private AliasTrie<PluginAliases> rootTrie;
+    private String[] messages;
+
+    @Setup
+    public void setup() throws Exception {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(BotPlugin.class));
+        for (var bd : scanner.findCandidateComponents("com.arth.solabot.plugin.custom")) {
+            Class<?> clazz = Class.forName(bd.getBeanClassName(), false, getClass().getClassLoader());
+            BotPlugin pluginAnn = clazz.getAnnotation(BotPlugin.class);
+            Map<String, String> subs = new HashMap<>();
+            for (Method m : clazz.getMethods()) {
+                BotCommand cmdAnn = m.getAnnotation(BotCommand.class);
+                if (cmdAnn == null) continue;
+                for (String alias : cmdAnn.value()) {
+                    String key = alias.trim().toLowerCase(Locale.ROOT);
+                    subs.put(key, key);
+                }
+            }
+            PluginAliases p = new PluginAliases(clazz.getSimpleName(), pluginAnn.glued(), subs.keySet(), AliasTrie.of(subs));
+            for (String alias : pluginAnn.value()) registry.putIfAbsent(alias.trim().toLowerCase(Locale.ROOT), p);
+        }
+        rootTrie = AliasTrie.of(registry);
+
+        List<String> corpus = new ArrayList<>(List.of(
+                "/img l", "/img rot 90", "/img  cut 40 gray", "/pjsk 绑定 1234567890", "/pjsk box", "/pjsk 卡牌一览 cn",
+                "/live 查房 炫狗", "/live 订阅 22637261", "/live alias 22637261 炫狗", "/help", "//help img",
+                "/test canshu a b c", "/看", "/看 update", "/看更新", "/unknown cmd", "/IMG MIRROR", "  /  img\tgray  "));
+        for (String alias : MemoryData.alias.keySet()) {
+            corpus.add("/看" + alias);
+            corpus.add("/看 " + alias + " 3");
+        }
+        messages = corpus.toArray(String[]::new);
+
+        for (String msg : messages) {
+            Resolved a = legacy(msg), b = trie(msg);
+            if (!a.equals(b)) throw new IllegalStateException("mismatch on `" + msg + "`: " + a + " vs " + b);
+        }
+    }
+
+    @Benchmark
+    public void legacy(Blackhole bh) {
+        for (String msg : messages) bh.consume(legacy(msg));
+    }
+
+    @Benchmark
+    public void trie(Blackhole bh) {
+        for (String msg : messages) bh.consume(trie(msg));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AliasResolveBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    // ++=============** 当前实现 **=============++
+
+    private Resolved trie(String text) {
+        int rootStart = CommandTokenizer.commandStart(text);
+        AliasTrie.TokenMatch<PluginAliases> m = rootTrie.scanToken(text, rootStart, p -> p.glued());
+        if (m.exact() != null) {
+            return group(m.exact().name(), CommandTokenizer.tokenize(text, m.tokenEnd()), m.exact().subTrie());
+        }
+        if (m.prefixValue() == null) return new Resolved(null, null, List.of());
+
+        PluginAliases p = m.prefixValue();
+        int firstStart = CommandTokenizer.skipSpaces(text, m.prefixEnd());
+        if (firstStart >= text.length()) return new Resolved(p.name(), "", List.of());
+        AliasTrie.TokenMatch<String> sub = p.subTrie().scanToken(text, firstStart, a -> true);
+        if (sub.prefixValue() == null) return new Resolved(p.name(), "", CommandTokenizer.tokenize(text, firstStart));
+        List<String> rest = CommandTokenizer.tokenize(text, sub.tokenEnd());
+        List<String> args = new ArrayList<>(rest.size() + 1);
+        if (sub.prefixEnd() < sub.tokenEnd()) args.add(text.substring(sub.prefixEnd(), sub.tokenEnd()));
+        args.addAll(rest);
+        return new Resolved(p.name(), sub.prefixValue(), List.copyOf(args));
+    }
+
+    private static Resolved group(String plugin, List<String> tokens, AliasTrie<String> subs) {
+        if (tokens.isEmpty()) return new Resolved(plugin, "", List.of());
+        String first = subs.get(tokens.get(0), 0, tokens.get(0).length());
+        return first != null
+                ? new Resolved(plugin, first, List.copyOf(tokens.subList(1, tokens.size())))
+                : new Resolved(plugin, "", List.copyOf(tokens));
+    }
+
+    // ++=============** 旧实现（user-003 之前的 CommandInvoker.parse / PluginRegistry.matchGlueByLongestPrefix） **=============++
+
+    private Resolved legacy(String raw) {
+        String s = raw.trim()
+                .replaceAll("\\s+", " ")
+                .replaceAll("^/+", "/");
+        String cmdNoSlash = s.substring(1).trim();
+        List<String> tokens = new ArrayList<>(Arrays.asList(cmdNoSlash.split(" ")));
+        String root = tokens.remove(0).toLowerCase(Locale.ROOT);
+
+        PluginAliases holder = registry.get(root);
+        if (holder != null) {
+            if (tokens.isEmpty()) return new Resolved(holder.name(), "", List.of());
+            String low = tokens.get(0).toLowerCase(Locale.ROOT);
+            return holder.subAliases().contains(low)
+                    ? new Resolved(holder.name(), low, List.copyOf(tokens.subList(1, tokens.size())))
+                    : new Resolved(holder.name(), "", List.copyOf(tokens));
+        }
+
+        String lower = cmdNoSlash.toLowerCase(Locale.ROOT);
+        String bestAlias = null;
+        for (Map.Entry<String, PluginAliases> e : registry.entrySet()) {
+            if (!e.getValue().glued()) continue;
+            if (lower.startsWith(e.getKey()) && (bestAlias == null || e.getKey().length() > bestAlias.length())) {
+                bestAlias = e.getKey();
+            }
+        }
+        if (bestAlias == null) return new Resolved(null, null, List.of());
+
+        holder = registry.get(bestAlias);
+        String rest = cmdNoSlash.substring(bestAlias.length()).trim();
+        tokens = rest.isEmpty() ? List.of() : new ArrayList<>(Arrays.asList(rest.split(" ")));
+        if (tokens.isEmpty()) return new Resolved(holder.name(), "", List.of());
+
+        String first = tokens.get(0);
+        String firstLow = first.toLowerCase(Locale.ROOT);
+        String bestSub = null;
+        for (String a : holder.subAliases()) {
+            if (firstLow.startsWith(a) && (bestSub == null || a.length() > bestSub.length())) bestSub = a;
+        }
+        if (bestSub == null) return new Resolved(holder.name(), "", List.copyOf(tokens));
+        List<String> args = new ArrayList<>();
+        String remain = first.substring(bestSub.length());
+        if (!remain.isEmpty()) args.add(remain);
+        args.addAll(tokens.subList(1, tokens.size()));
+        return new Resolved(holder.name(), bestSub, List.copyOf(args));
+    }
+}
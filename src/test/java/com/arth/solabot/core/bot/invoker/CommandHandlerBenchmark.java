@@ -0,0 +1,157 @@
+package com.arth.solabot.core.bot.invoker;
+
+import com.arth.solabot.core.bot.dto.ParsedPayloadDTO;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单次命令调用的开销，六种受支持的签名各测一遍：
+ * - specialized：CommandHandlers.create，每个方法一个隐藏类，句柄为常量
+ * - legacy：user-004 之前的实现，匿名类持有绑定实例后的非常量 MethodHandle，以 invoke + asType 适配调用
+ * - sites 为同一调用点轮流调用的不同命令数：1 为单态，8 模拟真实插件中同签名的多个命令共享分派调用点
+ * <p>
+ * 运行：mvn test-compile 后以 test classpath 执行本类 main
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandHandlerBenchmark {
+
+    @Param({"NONE", "PAYLOAD", "PAYLOAD_ARGS", "ARGS", "CTX", "CTX_ARGS"})
+    public String signature;
+
+    @Param({"1", "8"})
+    public int sites;
+
+    private CommandHandler[] specialized;
+    private CommandHandler[] legacy;
+    private int next;
+
+    private final ParsedPayloadDTO payload = new ParsedPayloadDTO();
+    private final CommandChainContext chainCtx = new CommandChainContext(payload);
+    private final List<String> args = List.of("a", "b");
+
+    @Setup
+    public void setup() throws Exception {
+        CommandHandlers.Signature sig = CommandHandlers.Signature.valueOf(signature);
+        Commands target = new Commands();
+        List<CommandHandler> s = new ArrayList<>(), l = new ArrayList<>();
+        for (Method m : Commands.class.getMethods()) {
+            if (m.getDeclaringClass() != Commands.class) continue;
+            if (CommandHandlers.Signature.of(m.getParameterTypes()) != sig) continue;
+            if (s.size() == sites) break;
+            s.add(CommandHandlers.create(target, m));
+            l.add(new LegacyHandler(sig, MethodHandles.lookup().unreflect(m).bindTo(target)
+                    .asType(MethodType.methodType(Object.class, sig.params))));
+        }
+        if (s.size() != sites) throw new IllegalStateException("not enough " + signature + " commands");
+        specialized = s.toArray(CommandHandler[]::new);
+        legacy = l.toArray(CommandHandler[]::new);
+    }
+
+    @Benchmark
+    public Object specialized() throws Throwable {
+        return specialized[next++ & (sites - 1)].handle(chainCtx, payload, args);
+    }
+
+    @Benchmark
+    public Object legacy() throws Throwable {
+        return legacy[next++ & (sites - 1)].handle(chainCtx, payload, args);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CommandHandlerBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    /**
+     * user-004 之前 PluginRegistry.createHandler 生成的匿名类的等价物
+     */
+    private record LegacyHandler(CommandHandlers.Signature sig, MethodHandle mh) implements CommandHandler {
+
+        @Override
+        public Object handle(CommandChainContext chainCtx, ParsedPayloadDTO payload, List<String> args) throws Throwable {
+            return switch (sig) {
+                case NONE -> mh.invoke();
+                case PAYLOAD -> mh.invoke(payload);
+                case PAYLOAD_ARGS -> mh.invoke(payload, args);
+                case ARGS -> mh.invoke(args);
+                case CTX -> mh.invoke(chainCtx);
+                case CTX_ARGS -> mh.invoke(chainCtx, args);
+            };
+        }
+    }
+
+    /**
+     * 每种签名 8 个互不相同的命令
+     */
+    public static class Commands {
+        public long sink;
+
+        public void n0() { sink += 1; }
+        public void n1() { sink += 2; }
+        public void n2() { sink += 3; }
+        public void n3() { sink += 4; }
+        public void n4() { sink += 5; }
+        public void n5() { sink += 6; }
+        public void n6() { sink += 7; }
+        public void n7() { sink += 8; }
+
+        public void p0(ParsedPayloadDTO p) { sink += p.getSelfId() + 1; }
+        public void p1(ParsedPayloadDTO p) { sink += p.getSelfId() + 2; }
+        public void p2(ParsedPayloadDTO p) { sink += p.getSelfId() + 3; }
+        public void p3(ParsedPayloadDTO p) { sink += p.getSelfId() + 4; }
+        public void p4(ParsedPayloadDTO p) { sink += p.getSelfId() + 5; }
+        public void p5(ParsedPayloadDTO p) { sink += p.getSelfId() + 6; }
+        public void p6(ParsedPayloadDTO p) { sink += p.getSelfId() + 7; }
+        public void p7(ParsedPayloadDTO p) { sink += p.getSelfId() + 8; }
+
+        public void pl0(ParsedPayloadDTO p, List<String> a) { sink += a.size() + 1; }
+        public void pl1(ParsedPayloadDTO p, List<String> a) { sink += a.size() + 2; }
+        public void pl2(ParsedPayloadDTO p, List<String> a) { sink += a.size() + 3; }
+        public void pl3(ParsedPayloadDTO p, List<String> a) { sink += a.size() + 4; }
+        public void pl4(ParsedPayloadDTO p, List<String> a) { sink += a.size() + 5; }
+        public void pl5(ParsedPayloadDTO p, List<String> a) { sink += a.size() + 6; }
+        public void pl6(ParsedPayloadDTO p, List<String> a) { sink += a.size() + 7; }
+        public void pl7(ParsedPayloadDTO p, List<String> a) { sink += a.size() + 8; }
+
+        public void l0(List<String> a) { sink += a.size() + 1; }
+        public void l1(List<String> a) { sink += a.size() + 2; }
+        public void l2(List<String> a) { sink += a.size() + 3; }
+        public void l3(List<String> a) { sink += a.size() + 4; }
+        public void l4(List<String> a) { sink += a.size() + 5; }
+        public void l5(List<String> a) { sink += a.size() + 6; }
+        public void l6(List<String> a) { sink += a.size() + 7; }
+        public void l7(List<String> a) { sink += a.size() + 8; }
+
+        public void c0(CommandChainContext c) { sink += c != null ? 1 : 0; }
+        public void c1(CommandChainContext c) { sink += c != null ? 2 : 0; }
+        public void c2(CommandChainContext c) { sink += c != null ? 3 : 0; }
+        public void c3(CommandChainContext c) { sink += c != null ? 4 : 0; }
+        public void c4(CommandChainContext c) { sink += c != null ? 5 : 0; }
+        public void c5(CommandChainContext c) { sink += c != null ? 6 : 0; }
+        public void c6(CommandChainContext c) { sink += c != null ? 7 : 0; }
+        public void c7(CommandChainContext c) { sink += c != null ? 8 : 0; }
+
+        public void cl0(CommandChainContext c, List<String> a) { sink += a.size() + 1; }
+        public void cl1(CommandChainContext c, List<String> a) { sink += a.size() + 2; }
+        public void cl2(CommandChainContext c, List<String> a) { sink += a.size() + 3; }
+        public void cl3(CommandChainContext c, List<String> a) { sink += a.size() + 4; }
+        public void cl4(CommandChainContext c, List<String> a) { sink += a.size() + 5; }
+        public void cl5(CommandChainContext c, List<String> a) { sink += a.size() + 6; }
+        public void cl6(CommandChainContext c, List<String> a) { sink += a.size() + 7; }
+        public void cl7(CommandChainContext c, List<String> a) { sink += a.size() + 8; }
+    }
+}
@@ -0,0 +1,84 @@
+package com.arth.solabot.core.general.cache.service;
+
+import com.arth.solabot.core.general.utils.PngEncoder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 编码线程池只承担编码，Redis pipeline 写入不占用编码线程
+ */
+class ImageCacheServiceTest {
+
+    private final List<String> writerThreads = new CopyOnWriteArrayList<>();
+    private ImageCacheService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        RedisTemplate<String, byte[]> redis = mock(RedisTemplate.class);
+        when(redis.execute(any(RedisCallback.class))).thenAnswer(inv -> {
+            writerThreads.add(Thread.currentThread().getName());
+            return List.of();
+        });
+        service = new ImageCacheService(redis, new SimpleMeterRegistry(), new PngEncoder(4, PngEncoder.Filter.ADAPTIVE, 262_144, true));
+        ReflectionTestUtils.setField(service, "ttl", 10);
+        ReflectionTestUtils.setField(service, "maxSize", 1 << 24);
+        ReflectionTestUtils.setField(service, "nearSize", 0L);
+        ReflectionTestUtils.setField(service, "encodeParallelism", 2);
+        service.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    private static BufferedImage image(int rgb) {
+        BufferedImage img = new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB);
+        img.setRGB(0, 0, rgb);
+        return img;
+    }
+
+    @Test
+    void singleImageEncodesAndWritesOnCaller() throws IOException {
+        String uuid = service.cacheImage(image(0xFF112233), "png");
+        assertEquals(22, uuid.length());
+        assertEquals(List.of(Thread.currentThread().getName()), writerThreads);
+    }
+
+    @Test
+    void syncBatchWritesOnCaller() throws IOException {
+        List<String> uuids = service.cacheImage(List.of(image(0xFF112233), image(0xFF445566)), List.of("png", "png"));
+        assertEquals(2, uuids.size());
+        assertNotEquals(uuids.get(0), uuids.get(1));
+        assertEquals(List.of(Thread.currentThread().getName()), writerThreads);
+    }
+
+    @Test
+    void asyncBatchWritesOffEncoderPool() {
+        List<String> uuids = service.cacheImageAsync(List.of(image(0xFF112233), image(0xFF445566)), List.of("png", "png")).join();
+        assertEquals(2, uuids.size());
+        assertEquals(1, writerThreads.size());
+        assertFalse(writerThreads.get(0).startsWith("img-encode-"), writerThreads.get(0));
+    }
+
+    @Test
+    void sameContentGivesSameUuid() throws IOException {
+        assertEquals(service.cacheImage(image(0xFF112233)), service.cacheImageAsync(image(0xFF112233), "png").join());
+    }
+}
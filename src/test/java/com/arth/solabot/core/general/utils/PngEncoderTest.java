@@ -0,0 +1,286 @@
+package com.arth.solabot.core.general.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PngEncoder 写出后由 ImageIO 解码回来逐像素比对，并直接检查 chunk 结构与 zlib 流：
+ * 多块（预置字典 + SYNC_FLUSH 拼接）能被标准 inflate 一次解开，合并得到的 Adler-32 与解压数据一致
+ */
+class PngEncoderTest {
+
+    /* 构造器允许的最小块大小，200x200 RGB 时约 55 行一块 */
+    private static final int MIN_BLOCK = 32 * 1024;
+
+    // ++=============** 直接色 **=============++
+
+    @Test
+    void everyFilterRoundTripsAcrossBlocks() throws IOException {
+        BufferedImage rgb = noisyGradient(200, 200, false);
+        BufferedImage rgba = noisyGradient(200, 200, true);
+        for (PngEncoder.Filter f : PngEncoder.Filter.values()) {
+            for (BufferedImage img : List.of(rgb, rgba)) {
+                String what = f + (img == rgba ? " rgba" : " rgb");
+                byte[] png = new PngEncoder(6, f, MIN_BLOCK, true).encode(img);
+
+                Png p = Png.parse(png);
+                assertEquals(img == rgba ? 6 : 2, p.colorType, what);
+                assertTrue(p.idatCount >= 4, what + ": " + p.idatCount + " IDAT chunks");
+                byte[] raw = p.inflate();
+                int rowBytes = 200 * (img == rgba ? 4 : 3) + 1;
+                assertEquals(200 * rowBytes, raw.length, what);
+                if (f != PngEncoder.Filter.ADAPTIVE) {
+                    for (int y = 0; y < 200; y++) assertEquals(f.ordinal(), raw[y * rowBytes], what + " row " + y);
+                }
+                assertPixels(img, png, what);
+            }
+        }
+    }
+
+    @Test
+    void presetDictionaryKeepsCrossBlockMatches() throws IOException {
+        // 40 行噪声（约 24KB，在 32KB 窗口内）重复平铺：没有预置字典时每块都得重新写出一遍噪声
+        SplittableRandom rnd = new SplittableRandom(7);
+        int[] tile = new int[200 * 40];
+        for (int i = 0; i < tile.length; i++) tile[i] = 0xFF000000 | rnd.nextInt(0x1000000);
+        BufferedImage img = image(200, 240, (x, y) -> tile[y % 40 * 200 + x]);
+
+        byte[] blocked = new PngEncoder(6, PngEncoder.Filter.NONE, MIN_BLOCK, false).encode(img);
+        byte[] single = new PngEncoder(6, PngEncoder.Filter.NONE, Integer.MAX_VALUE, false).encode(img);
+        assertTrue(Png.parse(blocked).idatCount >= 4);
+        assertEquals(1, Png.parse(single).idatCount);
+        assertTrue(blocked.length < single.length * 11 / 10, blocked.length + " vs single block " + single.length);
+        assertPixels(img, blocked, "tiled");
+    }
+
+    @Test
+    void adaptiveUsesMoreThanOneFilterType() throws IOException {
+        byte[] raw = Png.parse(new PngEncoder(6, PngEncoder.Filter.ADAPTIVE, MIN_BLOCK, false)
+                .encode(noisyGradient(200, 200, false))).inflate();
+        boolean[] seen = new boolean[5];
+        for (int y = 0; y < 200; y++) seen[raw[y * 601]] = true;
+        int kinds = 0;
+        for (boolean s : seen) if (s) kinds++;
+        assertTrue(kinds > 1, "adaptive picked a single filter for every row");
+    }
+
+    @Test
+    void paletteDisabledStaysDirectColor() throws IOException {
+        BufferedImage img = image(40, 30, (x, y) -> x < 20 ? 0xFF336699 : 0xFF996633);
+        byte[] png = new PngEncoder(4, PngEncoder.Filter.PAETH, MIN_BLOCK, false).encode(img);
+        assertEquals(2, Png.parse(png).colorType);
+        assertPixels(img, png, "rgb");
+    }
+
+    // ++=============** 索引色 **=============++
+
+    @Test
+    void paletteWithTransparencyAcrossBlocks() throws IOException {
+        // 256x256，恰好 256 种颜色（含半透明与全透明），每行 256 字节，约 127 行一块
+        BufferedImage img = image(256, 256, (x, y) -> {
+            int k = (x * 7 + y * 13) & 0xFF;
+            if (k < 16) return (k * 0x010203) & 0x00FFFFFF;  // alpha 为 0：RGB 不同但应合并为同一种
+            int a = k < 64 ? 0x80 : 0xFF;
+            return a << 24 | k << 16 | (255 - k) << 8 | k * 3 & 0xFF;
+        });
+        byte[] png = new PngEncoder(6, PngEncoder.Filter.ADAPTIVE, MIN_BLOCK, true).encode(img);
+
+        Png p = Png.parse(png);
+        assertEquals(3, p.colorType);
+        assertTrue(p.idatCount >= 2, p.idatCount + " IDAT chunks");
+        assertNotNull(p.chunk("PLTE"));
+        byte[] trns = p.chunk("tRNS");
+        assertNotNull(trns);
+        // 末尾连续的不透明条目被省略
+        assertTrue(trns.length < p.chunk("PLTE").length / 3);
+        assertNotEquals((byte) 0xFF, trns[trns.length - 1]);
+        assertEquals(256 * 257, p.inflate().length);
+        assertPixels(img, png, "palette");
+    }
+
+    @Test
+    void opaquePaletteHasNoTrns() throws IOException {
+        BufferedImage img = image(50, 40, (x, y) -> 0xFF000000 | (x / 5) * 0x101010 | y / 4);
+        byte[] png = new PngEncoder(4, PngEncoder.Filter.ADAPTIVE, MIN_BLOCK, true).encode(img);
+        Png p = Png.parse(png);
+        assertEquals(3, p.colorType);
+        assertNull(p.chunk("tRNS"));
+        assertPixels(img, png, "opaque palette");
+    }
+
+    // ++=============** 边界 **=============++
+
+    @Test
+    void oneByOne() throws IOException {
+        for (int c : new int[]{0xFF123456, 0x80123456, 0x00000000}) {
+            BufferedImage img = image(1, 1, (x, y) -> c);
+            for (boolean palette : new boolean[]{true, false}) {
+                for (PngEncoder.Filter f : PngEncoder.Filter.values()) {
+                    byte[] png = new PngEncoder(9, f, MIN_BLOCK, palette).encode(img);
+                    assertEquals(1, Png.parse(png).idatCount);
+                    assertPixels(img, png, Integer.toHexString(c) + " " + f + " palette=" + palette);
+                }
+            }
+        }
+    }
+
+    @Test
+    void levelZeroStillValid() throws IOException {
+        BufferedImage img = noisyGradient(200, 200, true);
+        byte[] png = new PngEncoder(0, PngEncoder.Filter.SUB, MIN_BLOCK, false).encode(img);
+        assertTrue(Png.parse(png).idatCount >= 4);
+        assertPixels(img, png, "level 0");
+    }
+
+    @Test
+    void adler32CombineMatchesWholeChecksum() {
+        SplittableRandom rnd = new SplittableRandom(25);
+        for (int len1 : new int[]{0, 1, 65520, 65521, 70_000}) {
+            for (int len2 : new int[]{0, 1, 5552, 65521, 200_000}) {
+                byte[] a = new byte[len1], b = new byte[len2];
+                rnd.nextBytes(a);
+                rnd.nextBytes(b);
+                Adler32 whole = new Adler32();
+                whole.update(a);
+                whole.update(b);
+                Long combined = ReflectionTestUtils.invokeMethod(PngEncoder.class, "adler32Combine",
+                        adler(a), adler(b), (long) len2);
+                assertEquals(whole.getValue(), combined, len1 + " + " + len2);
+            }
+        }
+    }
+
+    // ++=============** helpers **=============++
+
+    @FunctionalInterface
+    private interface Pixel {
+        int at(int x, int y);
+    }
+
+    private static BufferedImage image(int w, int h, Pixel pixel) {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < h; y++) for (int x = 0; x < w; x++) img.setRGB(x, y, pixel.at(x, y));
+        return img;
+    }
+
+    /**
+     * 渐变叠加噪声：颜色远超 256 种，各过滤器的残差也各不相同
+     */
+    private static BufferedImage noisyGradient(int w, int h, boolean alpha) {
+        SplittableRandom rnd = new SplittableRandom(w * 31L + h + (alpha ? 1 : 0));
+        BufferedImage img = new BufferedImage(w, h, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int n = rnd.nextInt(16);
+                int a = alpha ? (x + y) * 255 / (w + h) : 0xFF;
+                img.setRGB(x, y, a << 24 | (x + n & 0xFF) << 16 | (y * 2 + n & 0xFF) << 8 | (x ^ y) & 0xFF);
+            }
+        }
+        return img;
+    }
+
+    private static long adler(byte[] data) {
+        Adler32 a = new Adler32();
+        a.update(data);
+        return a.getValue();
+    }
+
+    /**
+     * ImageIO 解码后与原图逐像素一致；alpha 为 0 的像素只比较透明
+     */
+    private static void assertPixels(BufferedImage expected, byte[] png, String what) throws IOException {
+        BufferedImage actual = ImageIO.read(new ByteArrayInputStream(png));
+        assertNotNull(actual, what);
+        assertEquals(expected.getWidth(), actual.getWidth(), what);
+        assertEquals(expected.getHeight(), actual.getHeight(), what);
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int e = expected.getRGB(x, y), a = actual.getRGB(x, y);
+                if (e >>> 24 == 0) assertEquals(0, a >>> 24, what + " at " + x + "," + y);
+                else assertEquals(e, a, what + " at " + x + "," + y);
+            }
+        }
+    }
+
+    /**
+     * 按 chunk 拆开的 PNG
+     */
+    private record Png(int colorType, int idatCount, List<String> types, List<byte[]> data, byte[] zlib) {
+
+        static Png parse(byte[] png) {
+            ByteBuffer buf = ByteBuffer.wrap(png);
+            buf.position(8);
+            List<String> types = new ArrayList<>();
+            List<byte[]> data = new ArrayList<>();
+            ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+            int idat = 0;
+            while (buf.hasRemaining()) {
+                int len = buf.getInt();
+                byte[] t = new byte[4];
+                buf.get(t);
+                byte[] d = new byte[len];
+                buf.get(d);
+                buf.getInt();  // CRC 由 ImageIO 校验
+                String type = new String(t, StandardCharsets.US_ASCII);
+                types.add(type);
+                data.add(d);
+                if (type.equals("IDAT")) {
+                    idat++;
+                    zlib.writeBytes(d);
+                }
+            }
+            assertEquals("IHDR", types.get(0));
+            assertEquals("IEND", types.get(types.size() - 1));
+            return new Png(data.get(0)[9], idat, types, data, zlib.toByteArray());
+        }
+
+        byte[] chunk(String type) {
+            int i = types.indexOf(type);
+            return i < 0 ? null : data.get(i);
+        }
+
+        /**
+         * 以标准 zlib inflate 一次解开全部 IDAT，并核对流末的 Adler-32
+         */
+        byte[] inflate() {
+            assertEquals(0, ((zlib[0] & 0xFF) << 8 | zlib[1] & 0xFF) % 31, "zlib header check");
+            assertEquals(0, zlib[1] & 0x20, "no FDICT in the zlib header");
+            Inflater inf = new Inflater();
+            try {
+                inf.setInput(zlib);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buf = new byte[64 * 1024];
+                while (!inf.finished()) {
+                    int n = inf.inflate(buf);
+                    if (n == 0 && (inf.needsInput() || inf.needsDictionary())) fail("truncated zlib stream");
+                    out.write(buf, 0, n);
+                }
+                assertEquals(0, inf.getRemaining(), "trailing bytes after the zlib stream");
+                byte[] raw = out.toByteArray();
+                long trailer = ByteBuffer.wrap(zlib, zlib.length - 4, 4).getInt() & 0xFFFFFFFFL;
+                assertEquals(adler(raw), trailer, "Adler-32 trailer");
+                return raw;
+            } catch (DataFormatException e) {
+                throw new AssertionError("invalid zlib stream", e);
+            } finally {
+                inf.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.arth.solabot.plugin.custom.img;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单帧抠图耗时：CutoutKernel 与旧实现（HashMap 统计边框颜色 + 装箱 PriorityQueue 洪泛）的对比
+ * - 输入为纯色背景 + 带描边的圆形主体 + 背景上的轻微噪点，阈值 100，约七成像素被清除
+ * - 两条路径在 setup 中逐像素比对结果，不一致时直接失败
+ * - 每次调用先从原图复制像素（两条路径相同的固定开销），避免在已抠过的图上重复抠图
+ * <p>
+ * 运行：mvn test-compile 后以 test classpath 执行本类 main
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CutoutBenchmark {
+
+    /* 边长 */
+    @Param({"256", "1024"})
+    public int size;
+
+    private static final int THRESHOLD = 100;
+
+    private int[] source;
+    private int[] work;
+
+    @Setup
+    public void setup() {
+        source = image(size);
+        work = new int[source.length];
+        int[] a = source.clone(), b = source.clone();
+        CutoutKernel.cutout(a, size, size, THRESHOLD);
+        legacy(b, size, size, THRESHOLD);
+        if (!Arrays.equals(a, b)) throw new IllegalStateException("kernel and legacy differ");
+    }
+
+    @Benchmark
+    public int[] kernel() {
+        System.arraycopy(source, 0, work, 0, source.length);
+        CutoutKernel.cutout(work, size, size, THRESHOLD);
+        return work;
+    }
+
+    @Benchmark
+    public int[] legacy() {
+        System.arraycopy(source, 0, work, 0, source.length);
+        legacy(work, size, size, THRESHOLD);
+        return work;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CutoutBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private static int[] image(int n) {
+        int[] px = new int[n * n];
+        int bg = 0xFF2080C0;
+        SplittableRandom rnd = new SplittableRandom(15);
+        double c = n / 2.0, r = n / 4.0;
+        for (int y = 0; y < n; y++) {
+            for (int x = 0; x < n; x++) {
+                double d = Math.hypot(x - c, y - c);
+                int p = bg;
+                if (d < r) p = 0xFFD02020;
+                else if (d < r + 2) p = 0xFF2A8ACA;
+                else if (d < r + 4) p = 0xFF2484C8;
+                else if (rnd.nextInt(9) == 0) {
+                    p = 0xFF000000 | (0x20 + rnd.nextInt(9) - 4) << 16 | (0x80 + rnd.nextInt(9) - 4) << 8 | (0xC0 + rnd.nextInt(9) - 4);
+                }
+                px[y * n + x] = p;
+            }
+        }
+        return px;
+    }
+
+    // ++=============** 旧实现（user-015 之前的 Img.cutoutImage） **=============++
+
+    private record Pixel(int x, int y, int rgb, int dist) {
+    }
+
+    private static void legacy(int[] px, int width, int height, int threshold) {
+        int[][] dirs = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}, {-1, -1}, {-1, 1}, {1, -1}, {1, 1}};
+        Map<Integer, Set<Long>> rgbSta = new HashMap<>();
+        for (int w = 0; w < width; w++) {
+            for (int i = 0; i < 3; i++) {
+                rgbSta.computeIfAbsent(px[i * width + w], k -> new HashSet<>()).add(((long) w << 32) | (i & 0xffffffffL));
+                rgbSta.computeIfAbsent(px[(height - i - 1) * width + w], k -> new HashSet<>()).add(((long) w << 32) | ((height - i - 1) & 0xffffffffL));
+            }
+        }
+        for (int h = 1; h < height - 1; h++) {
+            for (int i = 0; i < 3; i++) {
+                rgbSta.computeIfAbsent(px[h * width + i], k -> new HashSet<>()).add(((long) i << 32) | (h & 0xffffffffL));
+                rgbSta.computeIfAbsent(px[h * width + width - i - 1], k -> new HashSet<>()).add(((long) (width - i - 1) << 32) | (h & 0xffffffffL));
+            }
+        }
+        Set<Long> bgPixelIndex = rgbSta.values().stream().max(Comparator.comparingInt(Set::size)).orElseThrow();
+        long aBgIndex = bgPixelIndex.iterator().next();
+        int bgRgb = px[(int) aBgIndex * width + (int) (aBgIndex >>> 32)];
+
+        Set<Long> visited = new HashSet<>(bgPixelIndex);
+        PriorityQueue<Pixel> pq = new PriorityQueue<>(Comparator.comparingDouble(Pixel::dist));
+        for (long index : bgPixelIndex) {
+            int x = (int) (index >>> 32);
+            int y = (int) index;
+            pq.offer(new Pixel(x, y, px[y * width + x], 0));
+        }
+        while (!pq.isEmpty()) {
+            Pixel p = pq.poll();
+            int x = p.x(), y = p.y();
+            if (p.dist() > threshold) continue;
+            px[y * width + x] &= 0x00ffffff;
+            for (int[] d : dirs) {
+                int nx = x + d[0], ny = y + d[1];
+                if (nx < 0 || ny < 0 || nx >= width || ny >= height) continue;
+                long idx = ((long) nx << 32) | (ny & 0xffffffffL);
+                if (visited.contains(idx)) continue;
+                visited.add(idx);
+                int n = px[ny * width + nx];
+                int dr = ((bgRgb >> 16) & 0xff) - ((n >> 16) & 0xff);
+                int dg = ((bgRgb >> 8) & 0xff) - ((n >> 8) & 0xff);
+                int db = (bgRgb & 0xff) - (n & 0xff);
+                pq.offer(new Pixel(nx, ny, n, dr * dr + dg * dg + db * db));
+            }
+        }
+    }
+}
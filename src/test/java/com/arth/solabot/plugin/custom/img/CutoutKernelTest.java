@@ -0,0 +1,269 @@
+package com.arth.solabot.plugin.custom.img;
+
+import com.arth.solabot.adapter.fetcher.http.GifDecoder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 抠图结果的回归测试：
+ * - still / anim 的期望结果（resources/img/cutout/*-expected.*）由 user-015 之前基于 HashMap + PriorityQueue 的实现生成
+ * - 阈值边界与背景色并列的取舍用手工构造的小图逐项断言，并与同一旧实现（legacy）逐像素比对
+ */
+class CutoutKernelTest {
+
+    private static final int BG = 0xFF000000;
+
+    // ++=============** 期望图像 **=============++
+
+    @Test
+    void stillMatchesGolden() throws IOException {
+        BufferedImage img = read("still.png");
+        int w = img.getWidth(), h = img.getHeight();
+        int[] px = img.getRGB(0, 0, w, h, null, 0, w);
+        CutoutKernel.cutout(px, w, h, 100);
+        BufferedImage expected = read("still-expected.png");
+        // getRGB 不经过合成，透明像素保留原 RGB
+        assertArrayEquals(expected.getRGB(0, 0, w, h, null, 0, w), px);
+    }
+
+    @Test
+    void gifMatchesGolden() throws IOException {
+        assertGifGolden((pipeline, decoder) -> pipeline.run(decoder, f -> {
+            BufferedImage argb = RasterKernels.toArgb(f);
+            CutoutKernel.cutout(RasterKernels.pixels(argb), argb.getWidth(), argb.getHeight(), 100);
+            return argb;
+        }));
+    }
+
+    @Test
+    void gifWithFirstFrameBackgroundMatchesGolden() throws IOException {
+        // anim 每帧的背景色相同，以首帧背景色处理全部帧结果不变；首帧只从同一个解码器取出一次
+        assertGifGolden((pipeline, decoder) -> pipeline.runWithFirstFrame(decoder, first -> {
+            int bg = CutoutKernel.background(RasterKernels.pixels(first), first.getWidth(), first.getHeight());
+            assertEquals(0xFFF0F0F0, bg);
+            return f -> {
+                CutoutKernel.apply(RasterKernels.pixels(f), f.getWidth(), f.getHeight(), bg, 100);
+                return f;
+            };
+        }));
+    }
+
+    @FunctionalInterface
+    private interface GifRun {
+        byte[] run(GifPipeline pipeline, GifDecoder decoder) throws IOException;
+    }
+
+    private static void assertGifGolden(GifRun run) throws IOException {
+        GifPipeline pipeline = new GifPipeline(null, new SimpleMeterRegistry(), 2, 4);
+        try {
+            byte[] out = run.run(pipeline, GifDecoder.open(bytes("anim.gif"), null));
+            GifDecoder actual = GifDecoder.open(out, null);
+            GifDecoder expected = GifDecoder.open(bytes("anim-expected.gif"), null);
+            int n = 0;
+            while (expected.hasNext()) {
+                assertTrue(actual.hasNext(), "missing frame " + n);
+                assertArrayEquals(RasterKernels.pixels(expected.next().image()), RasterKernels.pixels(actual.next().image()), "frame " + n);
+                n++;
+            }
+            assertFalse(actual.hasNext());
+            assertEquals(5, n);
+        } finally {
+            pipeline.shutdown();
+        }
+    }
+
+    // ++=============** 阈值 **=============++
+
+    @Test
+    void thresholdIsInclusiveSquaredRgbDistance() {
+        // 距离 3² + 4² + 5² = 50
+        int[] px = canvas(10, 10);
+        px[44] = 0xFF030405;
+        int[] a = px.clone(), b = px.clone();
+        cutout(a, 10, 10, 50);
+        cutout(b, 10, 10, 49);
+        assertEquals(0x00030405, a[44]);
+        assertEquals(0xFF030405, b[44]);
+    }
+
+    @Test
+    void negativeThresholdClearsNothing() {
+        int[] px = canvas(8, 8);
+        int[] before = px.clone();
+        cutout(px, 8, 8, -1);
+        assertArrayEquals(before, px);
+    }
+
+    @Test
+    void zeroThresholdClearsOnlyBackgroundRgb() {
+        int[] px = canvas(8, 8);
+        px[27] = 0x80000000;  // alpha 不同、RGB 与背景相同：距离为 0
+        px[28] = 0xFF000001;
+        cutout(px, 8, 8, 0);
+        assertEquals(0x00000000, px[27]);
+        assertEquals(0xFF000001, px[28]);
+        assertEquals(0x00000000, px[0]);
+    }
+
+    @Test
+    void fillIsEightConnectedAndStopsAtFarPixels() {
+        // 四周一圈远色把中心围住，只在 (3,3)-(4,4) 之间留出一条对角缝
+        int w = 12, h = 12;
+        int[] px = canvas(w, h);
+        for (int y = 3; y <= 8; y++) {
+            for (int x = 3; x <= 8; x++) {
+                if (x == 3 || x == 8 || y == 3 || y == 8) px[y * w + x] = 0xFFFFFFFF;
+            }
+        }
+        px[3 * w + 3] = BG;
+        px[5 * w + 5] = 0xFFFFFFFF;
+        int[] expected = legacy(px, w, h, 10);
+        cutout(px, w, h, 10);
+        assertArrayEquals(expected, px);
+        assertEquals(0, px[4 * w + 4] >>> 24);  // 只能经对角缝到达
+        assertEquals(0, px[6 * w + 6] >>> 24);  // 绕过远色的 (5,5) 仍可到达
+        assertEquals(0xFF, px[5 * w + 5] >>> 24);
+        assertEquals(0xFF, px[3 * w + 4] >>> 24);
+    }
+
+    // ++=============** 背景色并列 **=============++
+
+    @Test
+    void tieBrokenByBucketIndex() {
+        // 两色在边框带中各 30 个位置，先出现的 0xFF000002 落在桶 2，后出现的 0xFF000001 落在桶 1
+        int[] px = halves(0xFF000002, 0xFF000001);
+        assertEquals(0xFF000001, CutoutKernel.background(px, 8, 8));
+        assertEquals(0xFF000001, legacyBackground(px, 8, 8));
+    }
+
+    @Test
+    void tieInSameBucketPrefersLaterColor() {
+        // 0xFF000001 与 0xFF000011 同在桶 1，computeIfAbsent 头插，后出现者排在前面
+        int[] px = halves(0xFF000001, 0xFF000011);
+        assertEquals(0xFF000011, CutoutKernel.background(px, 8, 8));
+        assertEquals(0xFF000011, legacyBackground(px, 8, 8));
+
+        int[] a = px.clone();
+        cutout(a, 8, 8, 0);
+        assertArrayEquals(legacy(px, 8, 8, 0), a);
+        assertEquals(0xFF, a[0] >>> 24);
+        assertEquals(0, a[7] >>> 24);
+    }
+
+    @Test
+    void matchesLegacyOnRandomFewColorImages() {
+        SplittableRandom rnd = new SplittableRandom(15);
+        for (int t = 0; t < 300; t++) {
+            int w = 6 + rnd.nextInt(20), h = 6 + rnd.nextInt(20);
+            int[] palette = new int[2 + rnd.nextInt(4)];
+            for (int i = 0; i < palette.length; i++) palette[i] = rnd.nextInt();
+            int[] px = new int[w * h];
+            for (int i = 0; i < px.length; i++) px[i] = palette[rnd.nextInt(palette.length)];
+            int threshold = new int[]{-1, 0, 100, 20_000, 200_000}[rnd.nextInt(5)];
+            int[] expected = legacy(px, w, h, threshold);
+            cutout(px, w, h, threshold);
+            assertArrayEquals(expected, px, "case " + t);
+        }
+    }
+
+    // ++=============** helpers **=============++
+
+    private static void cutout(int[] px, int w, int h, int threshold) {
+        CutoutKernel.cutout(px, w, h, threshold);
+    }
+
+    private static int[] canvas(int w, int h) {
+        int[] px = new int[w * h];
+        Arrays.fill(px, BG);
+        return px;
+    }
+
+    /**
+     * 8x8，左 4 列为 left、右 4 列为 right：边框带中两色各占 30 个位置，(0,0) 为 left
+     */
+    private static int[] halves(int left, int right) {
+        int[] px = new int[64];
+        for (int i = 0; i < 64; i++) px[i] = i % 8 < 4 ? left : right;
+        return px;
+    }
+
+    private static BufferedImage read(String name) throws IOException {
+        try (InputStream in = CutoutKernelTest.class.getResourceAsStream("/img/cutout/" + name)) {
+            return ImageIO.read(Objects.requireNonNull(in, name));
+        }
+    }
+
+    private static byte[] bytes(String name) throws IOException {
+        try (InputStream in = CutoutKernelTest.class.getResourceAsStream("/img/cutout/" + name)) {
+            return Objects.requireNonNull(in, name).readAllBytes();
+        }
+    }
+
+    // ++=============** 旧实现（user-015 之前的 Img.cutoutImage） **=============++
+
+    private record Pixel(int x, int y, int rgb, int dist) {
+    }
+
+    private static Set<Long> legacyBackgroundPositions(int[] px, int width, int height) {
+        Map<Integer, Set<Long>> rgbSta = new HashMap<>();
+        for (int w = 0; w < width; w++) {
+            for (int i = 0; i < 3; i++) {
+                rgbSta.computeIfAbsent(px[i * width + w], k -> new HashSet<>()).add(((long) w << 32) | (i & 0xffffffffL));
+                rgbSta.computeIfAbsent(px[(height - i - 1) * width + w], k -> new HashSet<>()).add(((long) w << 32) | ((height - i - 1) & 0xffffffffL));
+            }
+        }
+        for (int h = 1; h < height - 1; h++) {
+            for (int i = 0; i < 3; i++) {
+                rgbSta.computeIfAbsent(px[h * width + i], k -> new HashSet<>()).add(((long) i << 32) | (h & 0xffffffffL));
+                rgbSta.computeIfAbsent(px[h * width + width - i - 1], k -> new HashSet<>()).add(((long) (width - i - 1) << 32) | (h & 0xffffffffL));
+            }
+        }
+        return rgbSta.values().stream().max(Comparator.comparingInt(Set::size)).orElseThrow();
+    }
+
+    private static int legacyBackground(int[] px, int width, int height) {
+        long any = legacyBackgroundPositions(px, width, height).iterator().next();
+        return px[(int) any * width + (int) (any >>> 32)];
+    }
+
+    private static int[] legacy(int[] src, int width, int height, int threshold) {
+        int[] px = src.clone();
+        int[][] dirs = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}, {-1, -1}, {-1, 1}, {1, -1}, {1, 1}};
+        Set<Long> bgPixelIndex = legacyBackgroundPositions(px, width, height);
+        int bgRgb = legacyBackground(px, width, height);
+
+        Set<Long> visited = new HashSet<>(bgPixelIndex);
+        PriorityQueue<Pixel> pq = new PriorityQueue<>(Comparator.comparingDouble(Pixel::dist));
+        for (long index : bgPixelIndex) {
+            int x = (int) (index >>> 32);
+            int y = (int) index;
+            pq.offer(new Pixel(x, y, px[y * width + x], 0));
+        }
+        while (!pq.isEmpty()) {
+            Pixel p = pq.poll();
+            int x = p.x(), y = p.y();
+            if (p.dist() > threshold) continue;
+            px[y * width + x] &= 0x00ffffff;
+            for (int[] d : dirs) {
+                int nx = x + d[0], ny = y + d[1];
+                if (nx < 0 || ny < 0 || nx >= width || ny >= height) continue;
+                long idx = ((long) nx << 32) | (ny & 0xffffffffL);
+                if (!visited.add(idx)) continue;
+                int n = px[ny * width + nx];
+                int dr = ((bgRgb >> 16) & 0xff) - ((n >> 16) & 0xff);
+                int dg = ((bgRgb >> 8) & 0xff) - ((n >> 8) & 0xff);
+                int db = (bgRgb & 0xff) - (n & 0xff);
+                pq.offer(new Pixel(nx, ny, n, dr * dr + dg * dg + db * db));
+            }
+        }
+        return px;
+    }
+}
@@ -0,0 +1,271 @@
+package com.arth.solabot.plugin.custom.img;
+
+import com.arth.solabot.adapter.fetcher.http.GifDecoder;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * GifEncoder 写出后解码回来逐像素比对（GifDecoder 负责按处置方式合成画布），
+ * 并用 ImageIO 读取的帧元数据确认走到了预期的调色板 / 帧差 / 处置分支
+ */
+class GifEncoderTest {
+
+    private static final int W = 24, H = 18;
+
+    // ++=============** 整体编码 **=============++
+
+    @Test
+    void losslessGlobalPalette() throws IOException {
+        List<BufferedImage> frames = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            int k = i;
+            frames.add(image(W, H, (x, y) -> (x + y + k) % 4 == 0 ? 0xFF102030 : 0xFF000000 | (x / 4 * 40 << 16 | y / 4 * 50 << 8 | k * 40)));
+        }
+        byte[] gif = write(frames, null);
+
+        assertEquals(frames.size(), roundTrip(gif, frames));
+        Meta meta = Meta.read(gif);
+        assertTrue(meta.globalTable);
+        for (FrameMeta f : meta.frames) assertFalse(f.localTable);
+    }
+
+    @Test
+    void localPalettesWhenFramesTogetherExceed255Colors() throws IOException {
+        // 每帧 200 种颜色且互不重叠：合计 400 种放不进全局表，逐帧仍可无损
+        List<BufferedImage> frames = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            int k = i;
+            frames.add(image(20, 10, (x, y) -> 0xFF000000 | k << 23 | (y * 20 + x) * 3));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            byte[] gif = write(frames, pool);
+            assertEquals(frames.size(), roundTrip(gif, frames));
+            Meta meta = Meta.read(gif);
+            assertFalse(meta.globalTable);
+            for (FrameMeta f : meta.frames) assertTrue(f.localTable);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void medianCutFallbackForMoreThan256Colors() throws IOException {
+        // 64x64 平滑渐变，4096 种颜色
+        BufferedImage img = image(64, 64, (x, y) -> 0xFF000000 | x * 4 << 16 | y * 4 << 8 | (x + y) * 2);
+        byte[] gif = write(List.of(img), null);
+
+        GifDecoder d = GifDecoder.open(gif, GifDecoder.Limits.UNLIMITED);
+        int[] expected = RasterKernels.pixels(img), actual = RasterKernels.pixels(d.next().image());
+        long sum = 0;
+        int worst = 0;
+        for (int p = 0; p < expected.length; p++) {
+            assertEquals(0xFF, actual[p] >>> 24, "pixel " + p + " must stay opaque");
+            int e = Math.abs((expected[p] >> 16 & 0xFF) - (actual[p] >> 16 & 0xFF))
+                    + Math.abs((expected[p] >> 8 & 0xFF) - (actual[p] >> 8 & 0xFF))
+                    + Math.abs((expected[p] & 0xFF) - (actual[p] & 0xFF));
+            sum += e;
+            worst = Math.max(worst, e);
+        }
+        double mean = (double) sum / expected.length;
+        assertTrue(mean <= 12.0, "mean error " + mean);
+        assertTrue(worst <= 48, "worst error " + worst);
+        assertTrue(Meta.read(gif).globalTable);
+    }
+
+    @Test
+    void opaqueFramesWrittenAsDeltaRects() throws IOException {
+        BufferedImage base = image(W, H, (x, y) -> 0xFF000000 | x / 3 * 30 << 16 | y / 3 * 40 << 8);
+        List<BufferedImage> frames = new ArrayList<>(List.of(base));
+        // 第二帧只改动 (5,4)-(8,6)，第三帧与第二帧相同
+        frames.add(image(W, H, (x, y) -> x >= 5 && x <= 8 && y >= 4 && y <= 6 ? 0xFFFFFFFF : base.getRGB(x, y)));
+        frames.add(frames.get(1));
+        byte[] gif = write(frames, null);
+
+        assertEquals(frames.size(), roundTrip(gif, frames));
+        List<FrameMeta> meta = Meta.read(gif).frames;
+        for (FrameMeta f : meta) assertEquals("doNotDispose", f.disposal);
+        assertEquals(new FrameMeta(0, 0, W, H), meta.get(0).rect());
+        assertEquals(new FrameMeta(5, 4, 4, 3), meta.get(1).rect());
+        assertEquals(new FrameMeta(0, 0, 1, 1), meta.get(2).rect());
+    }
+
+    @Test
+    void transparentFramesRestoreToBackground() throws IOException {
+        List<BufferedImage> frames = List.of(
+                image(W, H, (x, y) -> x < W / 2 ? 0xFFFF0000 : 0),
+                image(W, H, (x, y) -> x >= W / 2 ? 0xFF0000FF : 0));
+        byte[] gif = write(frames, null);
+
+        assertEquals(frames.size(), roundTrip(gif, frames));
+        for (FrameMeta f : Meta.read(gif).frames) assertEquals("restoreToBackgroundColor", f.disposal);
+    }
+
+    // ++=============** 逐帧写出 **=============++
+
+    @Test
+    void writerOverlaysWhileNothingTurnsTransparent() throws IOException {
+        List<BufferedImage> frames = List.of(
+                image(W, H, (x, y) -> y < 6 ? 0 : 0xFF00FF00),
+                image(W, H, (x, y) -> y < 6 ? 0 : x == 3 && y == 10 ? 0xFFFFFF00 : 0xFF00FF00));
+        byte[] gif = stream(frames);
+
+        assertEquals(frames.size(), roundTrip(gif, frames));
+        List<FrameMeta> meta = Meta.read(gif).frames;
+        assertEquals("doNotDispose", meta.get(0).disposal);
+        assertEquals(new FrameMeta(3, 10, 1, 1), meta.get(1).rect());
+        for (FrameMeta f : meta) assertTrue(f.localTable);
+    }
+
+    @Test
+    void writerRestoresPreviousFrameWhenPixelsTurnTransparent() throws IOException {
+        List<BufferedImage> frames = List.of(
+                image(W, H, (x, y) -> 0xFFFF0000),
+                // 右下角的像素加入：可叠加写出
+                image(W, H, (x, y) -> x > 20 && y > 14 ? 0xFF0000FF : 0xFFFF0000),
+                // 左半变透明：叠加无法表达，上一帧须改为整体清除
+                image(W, H, (x, y) -> x < W / 2 ? 0 : 0xFF00FF00),
+                image(W, H, (x, y) -> x < W / 2 ? 0 : 0xFF00FF00));
+        byte[] gif = stream(frames);
+
+        assertEquals(frames.size(), roundTrip(gif, frames));
+        List<FrameMeta> meta = Meta.read(gif).frames;
+        assertEquals("doNotDispose", meta.get(0).disposal);
+        assertEquals("restoreToBackgroundColor", meta.get(1).disposal);
+        // 被清除的上一帧是叠加写出的，其矩形扩大到覆盖画布上全部可见像素
+        assertEquals(new FrameMeta(0, 0, W, H), meta.get(1).rect());
+        assertEquals(new FrameMeta(W / 2, 0, W / 2, H), meta.get(2).rect());
+        assertEquals(new FrameMeta(0, 0, 1, 1), meta.get(3).rect());
+    }
+
+    @Test
+    void writerMedianCutKeepsTransparentIndex() throws IOException {
+        BufferedImage img = image(64, 64, (x, y) -> x < 8 ? 0 : 0xFF000000 | x * 4 << 16 | y * 4 << 8 | (x + y) * 2);
+        byte[] gif = stream(List.of(img));
+
+        int[] expected = RasterKernels.pixels(img);
+        int[] actual = RasterKernels.pixels(GifDecoder.open(gif, GifDecoder.Limits.UNLIMITED).next().image());
+        for (int p = 0; p < expected.length; p++) {
+            assertEquals(expected[p] == 0, actual[p] >>> 24 == 0, "transparency of pixel " + p);
+        }
+        assertTrue(Meta.read(gif).frames.get(0).localTable);
+    }
+
+    @Test
+    void oneByOneFrame() throws IOException {
+        List<BufferedImage> frames = List.of(image(1, 1, (x, y) -> 0xFF123456));
+        assertEquals(1, roundTrip(write(frames, null), frames));
+        assertEquals(1, roundTrip(stream(frames), frames));
+    }
+
+    // ++=============** helpers **=============++
+
+    @FunctionalInterface
+    private interface Pixel {
+        int at(int x, int y);
+    }
+
+    private static BufferedImage image(int w, int h, Pixel pixel) {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        int[] px = RasterKernels.pixels(img);
+        for (int p = 0; p < px.length; p++) px[p] = pixel.at(p % w, p / w);
+        return img;
+    }
+
+    private static byte[] write(List<BufferedImage> frames, ExecutorService pool) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<Integer> delays = new ArrayList<>();
+        for (int i = 0; i < frames.size(); i++) delays.add(5 + i);
+        GifEncoder.write(frames, delays, 0, out, pool);
+        return out.toByteArray();
+    }
+
+    private static byte[] stream(List<BufferedImage> frames) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GifEncoder.Writer writer = GifEncoder.open(out, 0);
+        for (int i = 0; i < frames.size(); i++) writer.add(frames.get(i), 5 + i);
+        writer.finish();
+        return out.toByteArray();
+    }
+
+    /**
+     * 解码合成后的每帧与期望逐像素一致（alpha 低于 128 的像素期望为全透明），返回帧数
+     */
+    private static int roundTrip(byte[] gif, List<BufferedImage> expected) throws IOException {
+        GifDecoder d = GifDecoder.open(gif, GifDecoder.Limits.UNLIMITED);
+        int i = 0;
+        while (d.hasNext()) {
+            GifDecoder.Frame f = d.next();
+            int[] want = RasterKernels.pixels(RasterKernels.toArgb(expected.get(i))).clone();
+            for (int p = 0; p < want.length; p++) if ((want[p] >>> 24) < 128) want[p] = 0;
+            assertArrayEquals(want, RasterKernels.pixels(f.image()), "frame " + i);
+            assertEquals(5 + i, f.delayCs(), "delay of frame " + i);
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * ImageIO 读出的帧结构
+     */
+    private record FrameMeta(int x, int y, int w, int h, String disposal, boolean localTable) {
+
+        FrameMeta(int x, int y, int w, int h) {
+            this(x, y, w, h, null, false);
+        }
+
+        FrameMeta rect() {
+            return new FrameMeta(x, y, w, h);
+        }
+    }
+
+    private record Meta(boolean globalTable, List<FrameMeta> frames) {
+
+        static Meta read(byte[] gif) throws IOException {
+            ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+            try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(gif))) {
+                reader.setInput(in);
+                Node stream = reader.getStreamMetadata().getAsTree("javax_imageio_gif_stream_1.0");
+                boolean global = child(stream, "GlobalColorTable") != null;
+                List<FrameMeta> frames = new ArrayList<>();
+                for (int i = 0, n = reader.getNumImages(true); i < n; i++) {
+                    Node root = reader.getImageMetadata(i).getAsTree("javax_imageio_gif_image_1.0");
+                    IIOMetadataNode desc = child(root, "ImageDescriptor");
+                    IIOMetadataNode gce = child(root, "GraphicControlExtension");
+                    frames.add(new FrameMeta(
+                            Integer.parseInt(desc.getAttribute("imageLeftPosition")),
+                            Integer.parseInt(desc.getAttribute("imageTopPosition")),
+                            Integer.parseInt(desc.getAttribute("imageWidth")),
+                            Integer.parseInt(desc.getAttribute("imageHeight")),
+                            gce.getAttribute("disposalMethod"),
+                            child(root, "LocalColorTable") != null));
+                }
+                return new Meta(global, frames);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        private static IIOMetadataNode child(Node node, String name) {
+            for (Node c = node.getFirstChild(); c != null; c = c.getNextSibling()) {
+                if (name.equals(c.getNodeName())) return (IIOMetadataNode) c;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.arth.solabot.plugin.custom.img;
+
+import com.arth.solabot.adapter.fetcher.http.GifDecoder;
+import com.arth.solabot.adapter.fetcher.http.ImgService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GifPipelineTest {
+
+    private static final int FRAMES = 23;
+
+    private final ImgService imgService = imgService();
+    /* 帧许可取得很小，倒放时会分成多块、多个检查点 */
+    private final GifPipeline pipeline = new GifPipeline(imgService, new SimpleMeterRegistry(), 2, 5);
+
+    private final List<BufferedImage> frames = new ArrayList<>();
+    private final List<Integer> delays = new ArrayList<>();
+    private final byte[] gif = source();
+
+    @AfterEach
+    void shutdown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    void slowDownKeepsAllFrames() throws IOException {
+        assertRetimed(0.5, false);
+    }
+
+    @Test
+    void speedUpDropsFrames() throws IOException {
+        assertRetimed(8, false);
+    }
+
+    @Test
+    void reverseAcrossChunks() throws IOException {
+        assertRetimed(1, true);
+        assertRetimed(0.3, true);
+    }
+
+    @Test
+    void reverseSpeedUpDropsFrames() throws IOException {
+        assertRetimed(6, true);
+    }
+
+    /**
+     * 结果与按帧计划直接从全部源帧挑选的结果逐像素一致
+     */
+    private void assertRetimed(double rate, boolean reverse) throws IOException {
+        GifRetime.Plan plan = GifRetime.plan(delays.stream().mapToInt(Integer::intValue).toArray(), rate, reverse);
+        byte[] out = pipeline.retime(gif, rate, reverse, UnaryOperator.identity());
+
+        GifDecoder decoder = imgService.openGif(out);
+        int i = 0;
+        while (decoder.hasNext()) {
+            GifDecoder.Frame f = decoder.next();
+            BufferedImage expected = frames.get(plan.frames()[i]);
+            assertArrayEquals(RasterKernels.pixels(expected), RasterKernels.pixels(f.image()), "frame " + i);
+            assertEquals(plan.delaysCs()[i], f.delayCs(), "delay of frame " + i);
+            i++;
+        }
+        assertEquals(plan.frames().length, i);
+    }
+
+    /**
+     * 每帧颜色各不相同、延时长短交替的不透明动图
+     */
+    private byte[] source() {
+        for (int i = 0; i < FRAMES; i++) {
+            BufferedImage img = new BufferedImage(40, 30, BufferedImage.TYPE_INT_ARGB);
+            int[] px = RasterKernels.pixels(img);
+            for (int p = 0; p < px.length; p++) {
+                int x = p % 40, y = p / 40;
+                px[p] = x / 8 == i % 5 || y / 6 == i % 5 ? 0xFF000000 | (i * 0x0B0905) : 0xFFFFFFFF;
+            }
+            frames.add(img);
+            delays.add(i % 3 == 0 ? 4 : 12);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            GifEncoder.write(frames, delays, 0, out, null);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static ImgService imgService() {
+        ImgService s = new ImgService(null, null, null, null);
+        ReflectionTestUtils.setField(s, "maxDownloadBytes", 1L << 24);
+        ReflectionTestUtils.setField(s, "gifMaxFrames", 1000);
+        ReflectionTestUtils.setField(s, "gifMaxTotalPixels", 150_000_000L);
+        ReflectionTestUtils.setField(s, "maxImagePixels", 50_000_000L);
+        return s;
+    }
+}
@@ -0,0 +1,43 @@
+package com.arth.solabot.plugin.custom.img;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImgResultCacheTest {
+
+    private static final byte[] INPUT = {1, 2, 3};
+
+    private static ImgResultCache cache(long canvas, long gifCanvas, boolean reuseBg) {
+        return new ImgResultCache(null, new SimpleMeterRegistry(), true, 10, 16, 24, 1 << 20, "unused",
+                canvas, gifCanvas, reuseBg);
+    }
+
+    private static ImgResultCache defaults() {
+        return cache(16_777_216, 1_048_576, false);
+    }
+
+    @Test
+    void sameConfigGivesSameKey() {
+        assertEquals(defaults().key(INPUT, "cut", "100"), defaults().key(INPUT, "cut", "100"));
+    }
+
+    @Test
+    void outputAffectingConfigChangesKey() {
+        String base = defaults().key(INPUT, "cut", "100");
+        ImgResultCache[] changed = {
+                cache(4_000_000, 1_048_576, false),
+                cache(16_777_216, 262_144, false),
+                cache(16_777_216, 1_048_576, true),
+        };
+        for (ImgResultCache c : changed) assertNotEquals(base, c.key(INPUT, "cut", "100"));
+    }
+
+    @Test
+    void disabledCacheHasNoKey() {
+        ImgResultCache c = new ImgResultCache(null, new SimpleMeterRegistry(), false, 10, 16, 24, 1 << 20, "unused",
+                16_777_216, 1_048_576, false);
+        assertNull(c.key(INPUT, "cut", "100"));
+    }
+}
@@ -0,0 +1,188 @@
+package com.arth.solabot.plugin.custom.img;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+/**
+ * 单帧逐操作耗时：int[] 内核与旧实现的对比
+ * - kernel：单步 ImgChain 编译出的算子，即 Img 单条命令实际走的路径（原地内核 / ColorMap）
+ * - legacy：user-011 之前 Img 中的 getRGB / setRGB 逐像素实现，灰度为 TYPE_BYTE_GRAY 往返
+ * - 几何变换与反色在 setup 中逐像素比对两条路径的结果，不一致时直接失败；灰度的旧实现会丢失 alpha，不做比对
+ * - 原地操作重复作用于同一帧，耗时与像素内容无关
+ * <p>
+ * 运行：mvn test-compile 后以 test classpath 执行本类 main
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RasterKernelsBenchmark {
+
+    @Param({"LEFT", "RIGHT", "UP", "DOWN", "MIRROR", "ROTATE_90", "ROTATE_180", "ROTATE_270", "GRAY", "INVERT"})
+    public String op;
+
+    /* 边长：256 低于并行阈值，1024 按行并行 */
+    @Param({"256", "1024"})
+    public int size;
+
+    private BufferedImage kernelFrame;
+    private BufferedImage legacyFrame;
+    private UnaryOperator<BufferedImage> kernel;
+    private UnaryOperator<BufferedImage> legacy;
+
+    @Setup
+    public void setup() {
+        ImgChain.Op o = ImgChain.Op.valueOf(op);
+        ImgChain chain = new ImgChain();
+        chain.add(op.toLowerCase(), "", o);
+        kernel = chain.compile();
+        legacy = legacy(o);
+
+        if (o != ImgChain.Op.GRAY) {
+            BufferedImage a = random(size + 1, size - 1), b = copy(a);
+            int[] x = RasterKernels.pixels(kernel.apply(a));
+            int[] y = RasterKernels.pixels(RasterKernels.toArgb(legacy.apply(b)));
+            if (!Arrays.equals(x, y)) throw new IllegalStateException("kernel and legacy differ on " + op);
+        }
+        kernelFrame = random(size, size);
+        legacyFrame = copy(kernelFrame);
+    }
+
+    @Benchmark
+    public BufferedImage kernel() {
+        return kernel.apply(kernelFrame);
+    }
+
+    @Benchmark
+    public BufferedImage legacy() {
+        return legacy.apply(legacyFrame);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RasterKernelsBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private static BufferedImage random(int w, int h) {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        int[] px = RasterKernels.pixels(img);
+        SplittableRandom rnd = new SplittableRandom(42);
+        for (int i = 0; i < px.length; i++) px[i] = rnd.nextInt();
+        return img;
+    }
+
+    private static BufferedImage copy(BufferedImage img) {
+        BufferedImage out = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        System.arraycopy(RasterKernels.pixels(img), 0, RasterKernels.pixels(out), 0, img.getWidth() * img.getHeight());
+        return out;
+    }
+
+    // ++=============** 旧实现（user-011 之前的 Img 私有方法） **=============++
+
+    private static UnaryOperator<BufferedImage> legacy(ImgChain.Op op) {
+        return switch (op) {
+            case LEFT -> img -> {
+                int width = img.getWidth(), height = img.getHeight();
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width / 2; x++) img.setRGB(width - x - 1, y, img.getRGB(x, y));
+                }
+                return img;
+            };
+            case RIGHT -> img -> {
+                int width = img.getWidth(), height = img.getHeight();
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width / 2; x++) img.setRGB(x, y, img.getRGB(width - x - 1, y));
+                }
+                return img;
+            };
+            case UP -> img -> {
+                int width = img.getWidth(), height = img.getHeight();
+                for (int y = 0; y < height / 2; y++) {
+                    for (int x = 0; x < width; x++) img.setRGB(x, height - y - 1, img.getRGB(x, y));
+                }
+                return img;
+            };
+            case DOWN -> img -> {
+                int width = img.getWidth(), height = img.getHeight();
+                for (int y = 0; y < height / 2; y++) {
+                    for (int x = 0; x < width; x++) img.setRGB(x, y, img.getRGB(x, height - y - 1));
+                }
+                return img;
+            };
+            case MIRROR -> img -> {
+                int width = img.getWidth(), height = img.getHeight();
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width / 2; x++) {
+                        int leftPixel = img.getRGB(x, y);
+                        int rightPixel = img.getRGB(width - x - 1, y);
+                        img.setRGB(x, y, rightPixel);
+                        img.setRGB(width - x - 1, y, leftPixel);
+                    }
+                }
+                return img;
+            };
+            case ROTATE_90 -> img -> rotate(img, 90);
+            case ROTATE_180 -> img -> rotate(img, 180);
+            case ROTATE_270 -> img -> rotate(img, 270);
+            case GRAY -> img -> {
+                int width = img.getWidth(), height = img.getHeight();
+                BufferedImage grayImg = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+                Graphics g = grayImg.getGraphics();
+                g.drawImage(img, 0, 0, null);
+                g.dispose();
+                BufferedImage outImg = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+                Graphics2D g2 = outImg.createGraphics();
+                g2.drawImage(grayImg, 0, 0, null);
+                g2.dispose();
+                return outImg;
+            };
+            case INVERT -> img -> {
+                int width = img.getWidth(), height = img.getHeight();
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        Color col = new Color(img.getRGB(x, y), true);
+                        img.setRGB(x, y, new Color(255 - col.getRed(), 255 - col.getGreen(), 255 - col.getBlue(), col.getAlpha()).getRGB());
+                    }
+                }
+                return img;
+            };
+        };
+    }
+
+    private static BufferedImage rotate(BufferedImage img, int angle) {
+        int w = img.getWidth(), h = img.getHeight();
+        BufferedImage dst;
+        switch (angle) {
+            case 90 -> {
+                dst = new BufferedImage(h, w, BufferedImage.TYPE_INT_ARGB);
+                for (int y = 0; y < h; y++) {
+                    for (int x = 0; x < w; x++) dst.setRGB(h - 1 - y, x, img.getRGB(x, y));
+                }
+            }
+            case 180 -> {
+                dst = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+                for (int y = 0; y < h; y++) {
+                    for (int x = 0; x < w; x++) dst.setRGB(w - 1 - x, h - 1 - y, img.getRGB(x, y));
+                }
+            }
+            case 270 -> {
+                dst = new BufferedImage(h, w, BufferedImage.TYPE_INT_ARGB);
+                for (int y = 0; y < h; y++) {
+                    for (int x = 0; x < w; x++) dst.setRGB(y, w - 1 - x, img.getRGB(x, y));
+                }
+            }
+            default -> throw new IllegalArgumentException("illegal angle argument");
+        }
+        return dst;
+    }
+}